@@ -0,0 +1,71 @@
+/*
+* MIT License
+*
+* Copyright (c) 2021 MyBerry. All rights reserved.
+* https://myberry.org/
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+
+*   * Redistributions of source code must retain the above copyright notice, this
+* list of conditions and the following disclaimer.
+
+*   * Redistributions in binary form must reproduce the above copyright notice,
+* this list of conditions and the following disclaimer in the documentation
+* and/or other materials provided with the distribution.
+
+*   * Neither the name of MyBerry. nor the names of its contributors may be used
+* to endorse or promote products derived from this software without specific
+* prior written permission.
+
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+* SOFTWARE.
+*/
+package org.myberry.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import org.myberry.store.config.StoreConfig;
+
+public final class BenchmarkUtils {
+
+  /** Each benchmark fork needs these to map and unmap block files, see MappedFile. */
+  public static final String ADD_EXPORTS_NIO = "--add-exports=java.base/sun.nio.ch=ALL-UNNAMED";
+
+  public static final String ADD_EXPORTS_REF =
+      "--add-exports=java.base/jdk.internal.ref=ALL-UNNAMED";
+
+  private BenchmarkUtils() {}
+
+  public static StoreConfig createStoreConfig() throws IOException {
+    StoreConfig storeConfig = new StoreConfig();
+    storeConfig.setStorePath(Files.createTempDirectory("myberry-benchmark").toString());
+    return storeConfig;
+  }
+
+  public static void delete(StoreConfig storeConfig) throws IOException {
+    File storePath = new File(storeConfig.getStorePath());
+    if (!storePath.exists()) {
+      return;
+    }
+    try (Stream<Path> paths = Files.walk(storePath.toPath())) {
+      paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+    }
+  }
+}
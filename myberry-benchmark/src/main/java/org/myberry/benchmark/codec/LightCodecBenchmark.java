@@ -0,0 +1,101 @@
+/*
+* MIT License
+*
+* Copyright (c) 2021 MyBerry. All rights reserved.
+* https://myberry.org/
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+
+*   * Redistributions of source code must retain the above copyright notice, this
+* list of conditions and the following disclaimer.
+
+*   * Redistributions in binary form must reproduce the above copyright notice,
+* this list of conditions and the following disclaimer in the documentation
+* and/or other materials provided with the distribution.
+
+*   * Neither the name of MyBerry. nor the names of its contributors may be used
+* to endorse or promote products derived from this software without specific
+* prior written permission.
+
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+* SOFTWARE.
+*/
+package org.myberry.benchmark.codec;
+
+import java.util.concurrent.TimeUnit;
+import org.myberry.common.codec.LightCodec;
+import org.myberry.common.protocol.body.user.CRPullResultData;
+import org.myberry.common.protocol.body.user.NSPullResultData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** {@link LightCodec} round trips of the pull response bodies. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LightCodecBenchmark {
+
+  private CRPullResultData crPullResultData;
+  private NSPullResultData nsPullResultData;
+
+  private byte[] crBytes;
+  private byte[] nsBytes;
+
+  @Setup
+  public void setup() {
+    crPullResultData = new CRPullResultData();
+    crPullResultData.setNewId("20201018mz3000000123456");
+
+    nsPullResultData = new NSPullResultData();
+    nsPullResultData.setStart(100001);
+    nsPullResultData.setEnd(100100);
+    nsPullResultData.setSynergyId(1);
+
+    crBytes = LightCodec.toBytes(crPullResultData);
+    nsBytes = LightCodec.toBytes(nsPullResultData);
+  }
+
+  @Benchmark
+  public byte[] crToBytes() {
+    return LightCodec.toBytes(crPullResultData);
+  }
+
+  @Benchmark
+  public CRPullResultData crToObj() {
+    return LightCodec.toObj(crBytes, CRPullResultData.class);
+  }
+
+  @Benchmark
+  public byte[] nsToBytes() {
+    return LightCodec.toBytes(nsPullResultData);
+  }
+
+  @Benchmark
+  public NSPullResultData nsToObj() {
+    return LightCodec.toObj(nsBytes, NSPullResultData.class);
+  }
+}
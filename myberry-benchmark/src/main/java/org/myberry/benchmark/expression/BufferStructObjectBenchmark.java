@@ -0,0 +1,109 @@
+/*
+* MIT License
+*
+* Copyright (c) 2021 MyBerry. All rights reserved.
+* https://myberry.org/
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+
+*   * Redistributions of source code must retain the above copyright notice, this
+* list of conditions and the following disclaimer.
+
+*   * Redistributions in binary form must reproduce the above copyright notice,
+* this list of conditions and the following disclaimer in the documentation
+* and/or other materials provided with the distribution.
+
+*   * Neither the name of MyBerry. nor the names of its contributors may be used
+* to endorse or promote products derived from this software without specific
+* prior written permission.
+
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+* SOFTWARE.
+*/
+package org.myberry.benchmark.expression;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.myberry.common.expression.impl.ExpressionParser;
+import org.myberry.server.expression.ConverterManager;
+import org.myberry.server.expression.impl.BufferStructObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link BufferStructObject#getResult} for each placeholder type, with a builder per id as for a
+ * single pull and with one reused as for a batch. Run with {@code -prof gc} to see the allocation
+ * rate per rendered id.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BufferStructObjectBenchmark {
+
+  @Param({
+    "[#incr(0)]",
+    "[#incr(5) #incr(4) #incr(3) #incr(2) #incr(1) #incr(0)]",
+    "[#sid(1) #sid(0) #incr(0)]",
+    "[#time(day) #incr(0)]",
+    "[#rand(4) #incr(0)]",
+    "[$dynamic(k) #incr(0)]",
+    "[a b c 1 2 3 #incr(0)]",
+    "[#time(day) m z #sid(0) #incr(3) #incr(2) #incr(1) #incr(0) #rand(2) $dynamic(k)]"
+  })
+  private String expression;
+
+  private final Map<String, String> attachments = Collections.singletonMap("k", "abc");
+
+  private BufferStructObject bufferStructObject;
+
+  private final StringBuilder result = BufferStructObject.newResultBuilder();
+
+  private long incrNumber;
+
+  @Setup
+  public void setup() {
+    ConverterManager converterManager = ConverterManager.getInstance();
+    converterManager.registerDefaultConverter();
+    bufferStructObject =
+        converterManager
+            .getExpressionConverterFactory()
+            .doConvert(ExpressionParser.split(expression));
+    bufferStructObject.setSid(3);
+  }
+
+  @Benchmark
+  public String getResult() {
+    return bufferStructObject.getResult(incrNumber++, attachments);
+  }
+
+  @Benchmark
+  public String getResultReused() {
+    return bufferStructObject.getResult(result, incrNumber++, 0, attachments);
+  }
+}
@@ -0,0 +1,136 @@
+/*
+* MIT License
+*
+* Copyright (c) 2021 MyBerry. All rights reserved.
+* https://myberry.org/
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+
+*   * Redistributions of source code must retain the above copyright notice, this
+* list of conditions and the following disclaimer.
+
+*   * Redistributions in binary form must reproduce the above copyright notice,
+* this list of conditions and the following disclaimer in the documentation
+* and/or other materials provided with the distribution.
+
+*   * Neither the name of MyBerry. nor the names of its contributors may be used
+* to endorse or promote products derived from this software without specific
+* prior written permission.
+
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+* SOFTWARE.
+*/
+package org.myberry.benchmark.remoting;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.myberry.common.protocol.RequestCode;
+import org.myberry.common.protocol.header.user.PullIdBackRequestHeader;
+import org.myberry.remoting.CommandCustomHeader;
+import org.myberry.remoting.protocol.RemotingCommand;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Wire encoding and decoding of a pull request, including its custom header. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RemotingCommandBenchmark {
+
+  private PullIdBackRequestHeader requestHeader;
+
+  private byte[] frame;
+
+  private ByteBuf directFrame;
+
+  @Setup
+  public void setup() {
+    requestHeader = new PullIdBackRequestHeader();
+    requestHeader.setKey("key1");
+
+    ByteBuffer encoded = encode();
+    // Netty's frame decoder strips the total length before decode() sees the frame.
+    encoded.getInt();
+    frame = new byte[encoded.remaining()];
+    encoded.get(frame);
+
+    directFrame = Unpooled.directBuffer(frame.length).writeBytes(frame);
+  }
+
+  @TearDown
+  public void tearDown() {
+    directFrame.release();
+  }
+
+  @Benchmark
+  public ByteBuffer encode() {
+    return RemotingCommand.createRequestCommand(RequestCode.PULL_ID, requestHeader).encode();
+  }
+
+  @Benchmark
+  public CommandCustomHeader decode() throws Exception {
+    return RemotingCommand.decode(ByteBuffer.wrap(frame))
+        .decodeCommandCustomHeader(PullIdBackRequestHeader.class);
+  }
+
+  /** What NettyEncoder does: write the frame into a pooled direct buffer. */
+  @Benchmark
+  public int encodeByteBuf() {
+    ByteBuf out = PooledByteBufAllocator.DEFAULT.directBuffer();
+    try {
+      RemotingCommand.createRequestCommand(RequestCode.PULL_ID, requestHeader).encode(out);
+      return out.readableBytes();
+    } finally {
+      out.release();
+    }
+  }
+
+  /** What NettyEncoder used to do: encode the header into a heap buffer, then copy it. */
+  @Benchmark
+  public int encodeHeaderCopy() {
+    ByteBuf out = PooledByteBufAllocator.DEFAULT.directBuffer();
+    try {
+      RemotingCommand request =
+          RemotingCommand.createRequestCommand(RequestCode.PULL_ID, requestHeader);
+      out.writeBytes(request.encodeHeader());
+      return out.readableBytes();
+    } finally {
+      out.release();
+    }
+  }
+
+  /** What NettyDecoder does: decode straight from the inbound frame. */
+  @Benchmark
+  public CommandCustomHeader decodeByteBuf() throws Exception {
+    return RemotingCommand.decode(directFrame.duplicate())
+        .decodeCommandCustomHeader(PullIdBackRequestHeader.class);
+  }
+}
@@ -0,0 +1,127 @@
+/*
+* MIT License
+*
+* Copyright (c) 2021 MyBerry. All rights reserved.
+* https://myberry.org/
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+
+*   * Redistributions of source code must retain the above copyright notice, this
+* list of conditions and the following disclaimer.
+
+*   * Redistributions in binary form must reproduce the above copyright notice,
+* this list of conditions and the following disclaimer in the documentation
+* and/or other materials provided with the distribution.
+
+*   * Neither the name of MyBerry. nor the names of its contributors may be used
+* to endorse or promote products derived from this software without specific
+* prior written permission.
+
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+* SOFTWARE.
+*/
+package org.myberry.benchmark.server;
+
+import java.util.concurrent.TimeUnit;
+import org.myberry.benchmark.BenchmarkUtils;
+import org.myberry.common.protocol.body.admin.CRComponentData;
+import org.myberry.common.protocol.body.user.CRPullResultData;
+import org.myberry.server.converter.ConverterService;
+import org.myberry.server.impl.MyberryServiceImpl;
+import org.myberry.store.DefaultMyberryStore;
+import org.myberry.store.MyberryStore;
+import org.myberry.store.config.StoreConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Throughput of CR pulls on a single hot key as the number of pulling threads grows. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(
+    value = 1,
+    jvmArgsAppend = {BenchmarkUtils.ADD_EXPORTS_NIO, BenchmarkUtils.ADD_EXPORTS_REF})
+public class CRContentionBenchmark {
+
+  private static final String KEY = "hot";
+
+  private StoreConfig storeConfig;
+  private MyberryStore myberryStore;
+  private ConverterService converterService;
+  private MyberryServiceImpl myberryServiceImpl;
+
+  @Setup
+  public void setup() throws Exception {
+    storeConfig = BenchmarkUtils.createStoreConfig();
+    myberryStore = new DefaultMyberryStore(storeConfig);
+    myberryStore.start();
+    converterService = new ConverterService(myberryStore);
+    converterService.start();
+    myberryServiceImpl = new MyberryServiceImpl(myberryStore, converterService);
+
+    CRComponentData crcd = new CRComponentData();
+    crcd.setKey(KEY);
+    crcd.setExpression("[#time(day) #sid(0) #incr(5) #incr(4) #incr(3) #incr(2) #incr(1) #incr(0)]");
+    myberryServiceImpl.addComponent(crcd);
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    converterService.shutdown();
+    myberryStore.shutdown();
+    BenchmarkUtils.delete(storeConfig);
+  }
+
+  private CRPullResultData pull() throws Exception {
+    return myberryServiceImpl.getNewId(KEY, null);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public CRPullResultData threads01() throws Exception {
+    return pull();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public CRPullResultData threads04() throws Exception {
+    return pull();
+  }
+
+  @Benchmark
+  @Threads(16)
+  public CRPullResultData threads16() throws Exception {
+    return pull();
+  }
+
+  @Benchmark
+  @Threads(64)
+  public CRPullResultData threads64() throws Exception {
+    return pull();
+  }
+}
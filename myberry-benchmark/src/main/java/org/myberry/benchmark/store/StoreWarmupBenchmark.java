@@ -0,0 +1,177 @@
+/*
+* MIT License
+*
+* Copyright (c) 2021 MyBerry. All rights reserved.
+* https://myberry.org/
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+
+*   * Redistributions of source code must retain the above copyright notice, this
+* list of conditions and the following disclaimer.
+
+*   * Redistributions in binary form must reproduce the above copyright notice,
+* this list of conditions and the following disclaimer in the documentation
+* and/or other materials provided with the distribution.
+
+*   * Neither the name of MyBerry. nor the names of its contributors may be used
+* to endorse or promote products derived from this software without specific
+* prior written permission.
+
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+* SOFTWARE.
+*/
+package org.myberry.benchmark.store;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import org.myberry.benchmark.BenchmarkUtils;
+import org.myberry.common.structure.Structure;
+import org.myberry.store.AbstractComponent;
+import org.myberry.store.DefaultMyberryStore;
+import org.myberry.store.MyberryStore;
+import org.myberry.store.NSComponent;
+import org.myberry.store.config.StoreConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Restart of a store holding keyCount NS keys, with and without {@link
+ * StoreConfig#isWarmupBlockFileEnable()}: {@code start} is the time to load the store, {@code
+ * firstUpdate} the first counter update of every key right after the load. The page cache stays
+ * warm between restarts, so only the minor faults of the new mapping are measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(
+    value = 1,
+    jvmArgsAppend = {BenchmarkUtils.ADD_EXPORTS_NIO, BenchmarkUtils.ADD_EXPORTS_REF})
+public class StoreWarmupBenchmark {
+
+  @Param({"false", "true"})
+  private boolean warmupBlockFileEnable;
+
+  @Param({"200000"})
+  private int keyCount;
+
+  private StoreConfig storeConfig;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    storeConfig = BenchmarkUtils.createStoreConfig();
+    storeConfig.setWarmupBlockFileEnable(warmupBlockFileEnable);
+
+    MyberryStore myberryStore = new DefaultMyberryStore(storeConfig);
+    myberryStore.start();
+    for (int i = 0; i < keyCount; i++) {
+      myberryStore.addComponent(createNSComponent("ns" + i, myberryStore.getLastPosition()));
+    }
+    myberryStore.shutdown();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    BenchmarkUtils.delete(storeConfig);
+  }
+
+  @State(Scope.Thread)
+  public static class StoppedStore {
+    private MyberryStore myberryStore;
+
+    @Setup(Level.Invocation)
+    public void setup(StoreWarmupBenchmark benchmark) throws Exception {
+      myberryStore = new DefaultMyberryStore(benchmark.storeConfig);
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() {
+      myberryStore.shutdown();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class StartedStore {
+    private MyberryStore myberryStore;
+    private int[] blockIndexes;
+    private int[] counterOffsets;
+
+    @Setup(Level.Invocation)
+    public void setup(StoreWarmupBenchmark benchmark) throws Exception {
+      myberryStore = new DefaultMyberryStore(benchmark.storeConfig);
+      myberryStore.start();
+
+      blockIndexes = new int[benchmark.keyCount];
+      counterOffsets = new int[benchmark.keyCount];
+      int i = 0;
+      for (AbstractComponent component : myberryStore.getComponentMap().values()) {
+        blockIndexes[i] = component.getBlockIndex();
+        counterOffsets[i] = component.getPhyOffset() + NSComponent.currentNumberRelativeOffset;
+        i++;
+      }
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() {
+      myberryStore.shutdown();
+    }
+  }
+
+  @Benchmark
+  public void start(StoppedStore stoppedStore) throws Exception {
+    stoppedStore.myberryStore.start();
+  }
+
+  @Benchmark
+  public void firstUpdate(StartedStore startedStore) {
+    for (int i = 0; i < startedStore.blockIndexes.length; i++) {
+      startedStore.myberryStore.updateBufferInt(
+          startedStore.blockIndexes[i], startedStore.counterOffsets[i], 1);
+    }
+  }
+
+  private static NSComponent createNSComponent(String key, int phyOffset) {
+    long currentTime = new Date().getTime();
+    int keyLength = key.getBytes(StandardCharsets.UTF_8).length;
+    NSComponent nsc = new NSComponent();
+    nsc.setComponentLength((short) (NSComponent.COMPONENT_FIXED_FIELD_LENGTH + keyLength));
+    nsc.setStructure((byte) Structure.NS);
+    nsc.setStatus((byte) 1);
+    nsc.setPhyOffset(phyOffset);
+    nsc.setCreateTime(currentTime);
+    nsc.setUpdateTime(currentTime);
+    nsc.setInitNumber(1);
+    nsc.setCurrentNumber(1);
+    nsc.setStepSize(1);
+    nsc.setResetType((byte) 0);
+    nsc.setKeyLength((short) keyLength);
+    nsc.setKey(key);
+    return nsc;
+  }
+}
@@ -54,9 +54,11 @@ import org.myberry.common.protocol.body.admin.ClusterListData;
 import org.myberry.common.protocol.body.admin.ComponentSizeData;
 import org.myberry.common.protocol.body.admin.NSComponentData;
 import org.myberry.common.protocol.body.admin.RouteData;
+import org.myberry.common.protocol.body.user.CRBatchPullResultData;
 import org.myberry.common.protocol.body.user.CRPullResultData;
 import org.myberry.common.protocol.body.user.NSPullResultData;
 import org.myberry.common.protocol.header.admin.ManageComponentResponseHeader;
+import org.myberry.common.protocol.header.user.PullIdBackRequestHeader;
 import org.myberry.common.protocol.header.user.PullIdBackResponseHeader;
 import org.myberry.common.structure.Structure;
 import org.myberry.remoting.CommandCustomHeader;
@@ -110,8 +112,12 @@ public class MyberryClientAPIImpl {
       final CommunicationMode communicationMode, //
       final PullCallback pullCallback //
       ) throws RemotingException, InterruptedException, MyberryServerException {
-    RemotingCommand request =
-        RemotingCommand.createRequestCommand(RequestCode.PULL_ID, requestHeader);
+    int code = RequestCode.PULL_ID;
+    if (requestHeader instanceof PullIdBackRequestHeader
+        && null != ((PullIdBackRequestHeader) requestHeader).getCount()) {
+      code = RequestCode.PULL_ID_BATCH;
+    }
+    RemotingCommand request = RemotingCommand.createRequestCommand(code, requestHeader);
     request.setBody(Maps.serialize(attachments));
     switch (communicationMode) {
       case ONEWAY:
@@ -136,7 +142,7 @@ public class MyberryClientAPIImpl {
       ) throws RemotingException, InterruptedException, MyberryServerException {
     RemotingCommand response = this.remotingClient.invokeSync(addr, request, timeoutMillis);
     assert response != null;
-    return this.processPullResponse(response);
+    return this.processPullResponse(request.getCode(), response);
   }
 
   private void pullAsync( //
@@ -157,7 +163,7 @@ public class MyberryClientAPIImpl {
             try {
               pullResult =
                   MyberryClientAPIImpl.this.processPullResponse(
-                      responseFuture.getResponseCommand());
+                      request.getCode(), responseFuture.getResponseCommand());
             } catch (Throwable e) {
               pullCallback.onException(e);
             }
@@ -166,7 +172,7 @@ public class MyberryClientAPIImpl {
         });
   }
 
-  private PullResult processPullResponse(final RemotingCommand response)
+  private PullResult processPullResponse(final int code, final RemotingCommand response)
       throws MyberryServerException, RemotingCommandException {
     PullStatus pullStatus = PullStatus.KEY_NOT_EXISTED;
     switch (response.getCode()) {
@@ -186,19 +192,31 @@ public class MyberryClientAPIImpl {
 
     switch (pullStatus) {
       case PULL_OK:
-        if (Structure.CR == responseHeader.getStructure()) {
+        if (Structure.CR == responseHeader.getStructure()
+            && RequestCode.PULL_ID_BATCH == code) {
+          CRBatchPullResultData crBatchPullResultData =
+              LightCodec.toObj(response.getBody(), CRBatchPullResultData.class);
+          PullResult pullResult =
+              new PullResult(
+                  pullStatus, responseHeader.getKey(), crBatchPullResultData.getNewIds());
+          pullResult.setTimeBased(crBatchPullResultData.isTimeBased());
+          return pullResult;
+        } else if (Structure.CR == responseHeader.getStructure()) {
           CRPullResultData crPullResultData =
               LightCodec.toObj(response.getBody(), CRPullResultData.class);
           return new PullResult(pullStatus, responseHeader.getKey(), crPullResultData.getNewId());
         } else if (Structure.NS == responseHeader.getStructure()) {
           NSPullResultData nsPullResultData =
               LightCodec.toObj(response.getBody(), NSPullResultData.class);
-          return new PullResult(
-              pullStatus,
-              responseHeader.getKey(),
-              nsPullResultData.getStart(),
-              nsPullResultData.getEnd(),
-              nsPullResultData.getSynergyId());
+          PullResult pullResult =
+              new PullResult(
+                  pullStatus,
+                  responseHeader.getKey(),
+                  nsPullResultData.getStart(),
+                  nsPullResultData.getEnd(),
+                  nsPullResultData.getSynergyId());
+          pullResult.setTimeBased(nsPullResultData.isTimeBased());
+          return pullResult;
         }
       default:
         return new PullResult(pullStatus, responseHeader.getKey());
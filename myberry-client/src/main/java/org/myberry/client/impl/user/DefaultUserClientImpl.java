@@ -50,6 +50,7 @@ import org.myberry.client.user.DefaultUserClient;
 import org.myberry.client.user.PullCallback;
 import org.myberry.client.user.PullResult;
 import org.myberry.common.ThreadFactoryImpl;
+import org.myberry.common.VirtualThreads;
 import org.myberry.common.protocol.header.user.PullIdBackRequestHeader;
 import org.myberry.remoting.exception.RemotingException;
 
@@ -60,6 +61,7 @@ public class DefaultUserClientImpl extends AbstractClientImpl {
   private final BlockingQueue<Runnable> asyncSenderThreadPoolQueue;
 
   private ExecutorService asyncSenderExecutor;
+  private PrefetchService prefetchService;
 
   public DefaultUserClientImpl(final DefaultUserClient defaultUserClient) {
     super(defaultUserClient);
@@ -78,6 +80,40 @@ public class DefaultUserClientImpl extends AbstractClientImpl {
     this.defaultUserInvoker = new DefaultUserInvoker(this);
   }
 
+  @Override
+  public void start() throws MyberryClientException {
+    super.start();
+    if (defaultUserClient.isVirtualThreadEnable()) {
+      ExecutorService virtualThreadExecutor =
+          VirtualThreads.newVirtualThreadPerTaskExecutor("AsyncSenderVirtualThread_");
+      if (virtualThreadExecutor != null) {
+        this.defaultAsyncSenderExecutor.shutdown();
+        this.defaultAsyncSenderExecutor = virtualThreadExecutor;
+      }
+    }
+    if (defaultUserClient.isPrefetchEnable()) {
+      this.prefetchService =
+          new PrefetchService(
+              (key, count, timeout, timesRetry) ->
+                  this.pullBatch(key, null, count, timeout, timesRetry),
+              this.getAsyncSenderExecutor(),
+              defaultUserClient.getPrefetchSize(),
+              defaultUserClient.getPrefetchLowWaterMark());
+    }
+  }
+
+  @Override
+  public void shutdown() {
+    if (this.prefetchService != null) {
+      this.prefetchService.clear();
+    }
+    super.shutdown();
+  }
+
+  public PrefetchService getPrefetchService() {
+    return prefetchService;
+  }
+
   public DefaultUserClient getDefaultUserClient() {
     return defaultUserClient;
   }
@@ -113,6 +149,9 @@ public class DefaultUserClientImpl extends AbstractClientImpl {
       String key, HashMap<String, String> attachments, long timeout, int timesRetry)
       throws RemotingException, InterruptedException, MyberryServerException,
           MyberryClientException {
+    if (prefetchService != null && (attachments == null || attachments.isEmpty())) {
+      return prefetchService.pull(key, timeout, timesRetry);
+    }
     return this.pullWithoutStatusImpl(
         key, attachments, CommunicationMode.SYNC, null, timeout, timesRetry);
   }
@@ -142,6 +181,24 @@ public class DefaultUserClientImpl extends AbstractClientImpl {
         key, attachments, CommunicationMode.ASYNC, pullCallback, timeout, timesRetry);
   }
 
+  public PullResult pullBatch(String key, HashMap<String, String> attachments, int count)
+      throws RemotingException, InterruptedException, MyberryServerException,
+          MyberryClientException {
+    return this.pullBatch(key, attachments, count, defaultUserClient.getPullMsgTimeout(), 0);
+  }
+
+  public PullResult pullBatch(
+      String key, HashMap<String, String> attachments, int count, long timeout, int timesRetry)
+      throws RemotingException, InterruptedException, MyberryServerException,
+          MyberryClientException {
+    PullIdBackRequestHeader pullIdBackRequestHeader = new PullIdBackRequestHeader();
+    pullIdBackRequestHeader.setKey(key);
+    pullIdBackRequestHeader.setCount(count);
+
+    return defaultUserInvoker.pull(
+        pullIdBackRequestHeader, attachments, timeout, timesRetry, CommunicationMode.SYNC);
+  }
+
   private PullResult pullWithoutStatusImpl( //
       String key, //
       HashMap<String, String> attachments, //
@@ -0,0 +1,274 @@
+/*
+* MIT License
+*
+* Copyright (c) 2021 MyBerry. All rights reserved.
+* https://myberry.org/
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+
+*   * Redistributions of source code must retain the above copyright notice, this
+* list of conditions and the following disclaimer.
+
+*   * Redistributions in binary form must reproduce the above copyright notice,
+* this list of conditions and the following disclaimer in the documentation
+* and/or other materials provided with the distribution.
+
+*   * Neither the name of MyBerry. nor the names of its contributors may be used
+* to endorse or promote products derived from this software without specific
+* prior written permission.
+
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+* SOFTWARE.
+*/
+package org.myberry.client.impl.user;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import org.myberry.client.exception.MyberryClientException;
+import org.myberry.client.exception.MyberryServerException;
+import org.myberry.client.user.PullResult;
+import org.myberry.client.user.PullStatus;
+import org.myberry.common.constant.LoggerName;
+import org.myberry.remoting.exception.RemotingException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps a per-key buffer of pre-pulled ids (CR) or number segments (NS). A buffer is filled by one
+ * batch pull and refilled in background once it drops below the low-water mark. Callers finding a
+ * buffer empty wait for the one load in flight instead of each pulling a batch, and a failed refill
+ * leaves the ids already buffered in place. Ids left in a buffer are lost when the client shuts
+ * down, the same as an unused NS segment.
+ *
+ * <p>Ids with a #time placeholder are never buffered: one pre-pulled across a day/month/year
+ * rollover would carry the old period. Neither are segments of an NS key with a reset type, which
+ * the server hands out again from the init number once the period rolls over. Once a batch tells
+ * such a key, the rest of it is dropped and the key is pulled one id at a time.
+ */
+public class PrefetchService {
+
+  private static final Logger log = LoggerFactory.getLogger(LoggerName.CLIENT_LOGGER_NAME);
+
+  private final ConcurrentMap<String, PrefetchBuffer> bufferTable = new ConcurrentHashMap<>();
+
+  private final AtomicLong hitTimes = new AtomicLong(0);
+  private final AtomicLong missTimes = new AtomicLong(0);
+  private final AtomicLong refillTimes = new AtomicLong(0);
+
+  private final PrefetchLoader prefetchLoader;
+  private final ExecutorService refillExecutor;
+  private final int prefetchSize;
+  private final int lowWaterMark;
+
+  public PrefetchService(
+      final PrefetchLoader prefetchLoader,
+      final ExecutorService refillExecutor,
+      final int prefetchSize,
+      final int lowWaterMark) {
+    this.prefetchLoader = prefetchLoader;
+    this.refillExecutor = refillExecutor;
+    this.prefetchSize = prefetchSize;
+    this.lowWaterMark = lowWaterMark;
+  }
+
+  public PullResult pull(String key, long timeout, int timesRetry)
+      throws RemotingException, InterruptedException, MyberryServerException,
+          MyberryClientException {
+    PrefetchBuffer buffer = bufferTable.computeIfAbsent(key, k -> new PrefetchBuffer());
+    if (buffer.timeBased) {
+      return this.pullOne(key, buffer, timeout, timesRetry);
+    }
+
+    PullResult pullResult = buffer.poll();
+    if (pullResult != null) {
+      hitTimes.incrementAndGet();
+      this.refillIfNecessary(key, buffer, timeout, timesRetry);
+      return pullResult;
+    }
+
+    // one caller loads an empty buffer, the others wait for its batch (or a running refill)
+    buffer.loadLock.lock();
+    try {
+      pullResult = buffer.poll();
+      if (pullResult != null) {
+        hitTimes.incrementAndGet();
+        this.refillIfNecessary(key, buffer, timeout, timesRetry);
+        return pullResult;
+      }
+      if (buffer.timeBased) {
+        return this.pullOne(key, buffer, timeout, timesRetry);
+      }
+
+      missTimes.incrementAndGet();
+      PullResult batchResult = prefetchLoader.load(key, prefetchSize, timeout, timesRetry);
+      if (PullStatus.PULL_OK != batchResult.getPullStatus()) {
+        bufferTable.remove(key, buffer);
+        return batchResult;
+      }
+
+      List<PullResult> pullResults = split(batchResult, prefetchSize);
+      if (isTimeBased(batchResult)) {
+        buffer.markTimeBased();
+      } else {
+        buffer.offerAll(pullResults.subList(1, pullResults.size()));
+      }
+      return pullResults.get(0);
+    } finally {
+      buffer.loadLock.unlock();
+    }
+  }
+
+  private PullResult pullOne(
+      final String key, final PrefetchBuffer buffer, final long timeout, final int timesRetry)
+      throws RemotingException, InterruptedException, MyberryServerException,
+          MyberryClientException {
+    missTimes.incrementAndGet();
+    PullResult singleResult = prefetchLoader.load(key, 1, timeout, timesRetry);
+    if (PullStatus.PULL_OK != singleResult.getPullStatus()) {
+      bufferTable.remove(key, buffer);
+      return singleResult;
+    }
+    return split(singleResult, 1).get(0);
+  }
+
+  private void refillIfNecessary(
+      final String key, final PrefetchBuffer buffer, final long timeout, final int timesRetry) {
+    if (buffer.size() >= lowWaterMark || !buffer.refilling.compareAndSet(false, true)) {
+      return;
+    }
+
+    try {
+      refillExecutor.submit(
+          () -> {
+            buffer.loadLock.lock();
+            try {
+              if (buffer.size() >= lowWaterMark) {
+                return;
+              }
+              PullResult batchResult = prefetchLoader.load(key, prefetchSize, timeout, timesRetry);
+              if (PullStatus.PULL_OK != batchResult.getPullStatus()) {
+                // the ids still buffered stay usable, the next pull that empties it reports why
+                log.warn("refill key: {} status: {}", key, batchResult.getPullStatus());
+              } else if (isTimeBased(batchResult)) {
+                buffer.markTimeBased();
+              } else {
+                buffer.offerAll(split(batchResult, prefetchSize));
+                refillTimes.incrementAndGet();
+              }
+            } catch (Throwable e) {
+              log.warn("refill key: {} error: ", key, e);
+            } finally {
+              buffer.refilling.set(false);
+              buffer.loadLock.unlock();
+            }
+          });
+    } catch (RejectedExecutionException e) {
+      buffer.refilling.set(false);
+      log.warn("refill key: {} rejected: ", key, e);
+    }
+  }
+
+  static List<PullResult> split(final PullResult batchResult, final int count) {
+    List<PullResult> pullResults = new ArrayList<>(count);
+    if (batchResult.getNewIds() != null) {
+      for (String newId : batchResult.getNewIds()) {
+        pullResults.add(new PullResult(PullStatus.PULL_OK, batchResult.getKey(), newId));
+      }
+      return pullResults;
+    }
+
+    // the first total % count segments take one number more, so none is left over
+    int total = batchResult.getEnd() - batchResult.getStart() + 1;
+    int stepSize = total / count;
+    int remainder = total % count;
+    int start = batchResult.getStart();
+    for (int i = 0; i < count && start <= batchResult.getEnd(); i++) {
+      int end = start + stepSize + (i < remainder ? 1 : 0) - 1;
+      pullResults.add(
+          new PullResult(
+              PullStatus.PULL_OK, batchResult.getKey(), start, end, batchResult.getSynergyId()));
+      start = end + 1;
+    }
+    return pullResults;
+  }
+
+  private static boolean isTimeBased(PullResult batchResult) {
+    return Boolean.TRUE.equals(batchResult.getTimeBased());
+  }
+
+  public void clear() {
+    bufferTable.clear();
+  }
+
+  public long getHitTimes() {
+    return hitTimes.get();
+  }
+
+  public long getMissTimes() {
+    return missTimes.get();
+  }
+
+  public long getRefillTimes() {
+    return refillTimes.get();
+  }
+
+  public interface PrefetchLoader {
+
+    PullResult load(String key, int count, long timeout, int timesRetry)
+        throws RemotingException, InterruptedException, MyberryServerException,
+            MyberryClientException;
+  }
+
+  static class PrefetchBuffer {
+
+    private final ConcurrentLinkedQueue<PullResult> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger(0);
+    private final AtomicBoolean refilling = new AtomicBoolean(false);
+    private final ReentrantLock loadLock = new ReentrantLock();
+    private volatile boolean timeBased = false;
+
+    PullResult poll() {
+      PullResult pullResult = queue.poll();
+      if (pullResult != null) {
+        size.decrementAndGet();
+      }
+      return pullResult;
+    }
+
+    void offerAll(List<PullResult> pullResults) {
+      queue.addAll(pullResults);
+      size.addAndGet(pullResults.size());
+    }
+
+    int size() {
+      return size.get();
+    }
+
+    void markTimeBased() {
+      timeBased = true;
+      while (poll() != null) {}
+    }
+  }
+}
@@ -58,9 +58,9 @@ public class DefaultUserInvoker {
   public DefaultUserInvoker(final DefaultUserClientImpl defaultUserClientImpl) {
     this.defaultUserClientImpl = defaultUserClientImpl;
     this.invokerTable.put(
-        FailfastInvoker.NAME, new FailfastInvoker(defaultUserClientImpl.getAsyncSenderExecutor()));
+        FailfastInvoker.NAME, new FailfastInvoker(defaultUserClientImpl::getAsyncSenderExecutor));
     this.invokerTable.put(
-        FailoverInvoker.NAME, new FailoverInvoker(defaultUserClientImpl.getAsyncSenderExecutor()));
+        FailoverInvoker.NAME, new FailoverInvoker(defaultUserClientImpl::getAsyncSenderExecutor));
   }
 
   public PullResult pull( //
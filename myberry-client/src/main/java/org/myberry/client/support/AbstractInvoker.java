@@ -38,6 +38,7 @@ package org.myberry.client.support;
 import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
 import org.myberry.client.exception.MyberryClientException;
 import org.myberry.client.exception.MyberryServerException;
 import org.myberry.client.impl.CommunicationMode;
@@ -51,12 +52,20 @@ import org.myberry.remoting.exception.RemotingException;
 
 public abstract class AbstractInvoker {
 
-  protected final ExecutorService asyncSenderExecutor;
+  /**
+   * Looked up per call so that an executor replaced after construction (for example the
+   * virtual-thread executor installed on start) is the one async pulls are submitted to.
+   */
+  private final Supplier<ExecutorService> asyncSenderExecutor;
 
-  public AbstractInvoker(final ExecutorService asyncSenderExecutor) {
+  public AbstractInvoker(final Supplier<ExecutorService> asyncSenderExecutor) {
     this.asyncSenderExecutor = asyncSenderExecutor;
   }
 
+  protected ExecutorService getAsyncSenderExecutor() {
+    return asyncSenderExecutor.get();
+  }
+
   protected void checkInvokers(List<Invoker> invokers) throws MyberryClientException {
     if (MixAll.isEmpty(invokers)) {
       throw new MyberryClientException("no available invoker");
@@ -39,6 +39,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
 import org.myberry.client.exception.MyberryClientException;
 import org.myberry.client.exception.MyberryServerException;
 import org.myberry.client.impl.CommunicationMode;
@@ -64,7 +65,7 @@ public class FailfastInvoker extends AbstractInvoker {
 
   public static final String NAME = "failfast";
 
-  public FailfastInvoker(final ExecutorService asyncSenderExecutor) {
+  public FailfastInvoker(final Supplier<ExecutorService> asyncSenderExecutor) {
     super(asyncSenderExecutor);
   }
 
@@ -116,7 +117,7 @@ public class FailfastInvoker extends AbstractInvoker {
     final List<Invoker> invokers = defaultRouter.getInvokers();
     final String addr = defaultRouter.getInvoker(invokers).getAddr();
     try {
-      this.asyncSenderExecutor.submit(
+      this.getAsyncSenderExecutor().submit(
           new Runnable() {
             @Override
             public void run() {
@@ -206,7 +207,7 @@ public class FailfastInvoker extends AbstractInvoker {
     final List<Invoker> invokers = defaultRouter.getInvokers();
     final String addr = defaultRouter.getInvoker(invokers, sessionKey).getAddr();
     try {
-      this.asyncSenderExecutor.submit(
+      this.getAsyncSenderExecutor().submit(
           new Runnable() {
             @Override
             public void run() {
@@ -40,6 +40,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
 import org.myberry.client.exception.MyberryClientException;
 import org.myberry.client.exception.MyberryServerException;
 import org.myberry.client.impl.CommunicationMode;
@@ -69,7 +70,7 @@ public class FailoverInvoker extends AbstractInvoker {
 
   public static final String NAME = "failover";
 
-  public FailoverInvoker(final ExecutorService asyncSenderExecutor) {
+  public FailoverInvoker(final Supplier<ExecutorService> asyncSenderExecutor) {
     super(asyncSenderExecutor);
   }
 
@@ -103,7 +104,7 @@ public class FailoverInvoker extends AbstractInvoker {
       throws MyberryClientException {
     final long beginStartTime = System.currentTimeMillis();
     try {
-      this.asyncSenderExecutor.submit(
+      this.getAsyncSenderExecutor().submit(
           new Runnable() {
             @Override
             public void run() {
@@ -346,7 +347,7 @@ public class FailoverInvoker extends AbstractInvoker {
       throws MyberryClientException {
     final long beginStartTime = System.currentTimeMillis();
     try {
-      this.asyncSenderExecutor.submit(
+      this.getAsyncSenderExecutor().submit(
           new Runnable() {
             @Override
             public void run() {
@@ -41,6 +41,7 @@ import org.myberry.client.AbstractMyberryClient;
 import org.myberry.client.exception.MyberryClientException;
 import org.myberry.client.exception.MyberryServerException;
 import org.myberry.client.impl.user.DefaultUserClientImpl;
+import org.myberry.client.impl.user.PrefetchService;
 import org.myberry.remoting.exception.RemotingException;
 import org.myberry.remoting.netty.NettyRemotingClient;
 
@@ -51,6 +52,20 @@ public class DefaultUserClient extends AbstractMyberryClient implements UserClie
   private String clientGroup;
   /** Timeout for pulling messages. */
   private int pullMsgTimeout = 3000;
+  /**
+   * Serve synchronous pulls without attachments and session key from a local buffer of pre-pulled
+   * ids, which is refilled in background. Ids left in the buffer are lost on shutdown.
+   */
+  private boolean prefetchEnable = false;
+  /** Number of ids pulled by one refill of the prefetch buffer. */
+  private int prefetchSize = 100;
+  /** The prefetch buffer is refilled in background when it holds fewer ids than this. */
+  private int prefetchLowWaterMark = 20;
+  /**
+   * Run asynchronous sends on a virtual thread per send instead of the default pool sized to the
+   * cores, on Java 21+ only. Ignored if an async sender executor is set.
+   */
+  private boolean virtualThreadEnable = false;
 
   /** Default constructor. */
   public DefaultUserClient() {
@@ -602,6 +617,72 @@ public class DefaultUserClient extends AbstractMyberryClient implements UserClie
     defaultUserClientImpl.pull(key, attachments, pullCallback, sessionKey, timeout, timesRetry);
   }
 
+  /**
+   * Pull <code>count</code> ids of the key in a single round trip, synchronous mode. For CR keys
+   * the ids are returned by {@link PullResult#getNewIds()}, for NS keys the segments are merged
+   * into one segment from {@link PullResult#getStart()} to {@link PullResult#getEnd()}.
+   *
+   * @param key mandatory.
+   * @param count number of ids, between 1 and {@link
+   *     org.myberry.common.security.Verifier#MAX_BATCH_COUNT}.
+   * @return {@link PullResult} instance to inform pullers details of the deliverable, say key of
+   *     the id, {@link PullStatus} indicating id status, etc.
+   * @throws RemotingException if there is any network-tier error.
+   * @throws MyberryServerException if there is any error with server.
+   * @throws InterruptedException if the pulling thread is interrupted.
+   * @throws MyberryClientException if there is any error with client.
+   */
+  @Override
+  public PullResult pullBatch(String key, int count)
+      throws RemotingException, InterruptedException, MyberryServerException,
+          MyberryClientException {
+    return this.pullBatch(key, null, count);
+  }
+
+  /**
+   * Same to {@link #pullBatch(java.lang.String, int)} with attachments specified in addition.
+   *
+   * @param key mandatory.
+   * @param attachments optional.
+   * @param count number of ids.
+   * @return {@link PullResult} instance to inform pullers details of the deliverable, say key of
+   *     the id, {@link PullStatus} indicating id status, etc.
+   * @throws RemotingException if there is any network-tier error.
+   * @throws MyberryServerException if there is any error with server.
+   * @throws InterruptedException if the pulling thread is interrupted.
+   * @throws MyberryClientException if there is any error with client.
+   */
+  @Override
+  public PullResult pullBatch(String key, HashMap<String, String> attachments, int count)
+      throws RemotingException, InterruptedException, MyberryServerException,
+          MyberryClientException {
+    return defaultUserClientImpl.pullBatch(key, attachments, count);
+  }
+
+  /**
+   * Same to {@link #pullBatch(java.lang.String, HashMap<String, String>, int)} with pull timeout
+   * and retry specified in addition.
+   *
+   * @param key mandatory.
+   * @param attachments optional.
+   * @param count number of ids.
+   * @param timeout timeout in each time.
+   * @param timesRetry number of retries after request failed.
+   * @return {@link PullResult} instance to inform pullers details of the deliverable, say key of
+   *     the id, {@link PullStatus} indicating id status, etc.
+   * @throws RemotingException if there is any network-tier error.
+   * @throws MyberryServerException if there is any error with server.
+   * @throws InterruptedException if the pulling thread is interrupted.
+   * @throws MyberryClientException if there is any error with client.
+   */
+  @Override
+  public PullResult pullBatch(
+      String key, HashMap<String, String> attachments, int count, long timeout, int timesRetry)
+      throws RemotingException, InterruptedException, MyberryServerException,
+          MyberryClientException {
+    return defaultUserClientImpl.pullBatch(key, attachments, count, timeout, timesRetry);
+  }
+
   /**
    * Sets an Executor to be used for executing callback methods. If the Executor is not set, {@link
    * NettyRemotingClient#publicExecutor} will be used.
@@ -638,6 +719,53 @@ public class DefaultUserClient extends AbstractMyberryClient implements UserClie
     this.pullMsgTimeout = pullMsgTimeout;
   }
 
+  public boolean isVirtualThreadEnable() {
+    return virtualThreadEnable;
+  }
+
+  public void setVirtualThreadEnable(boolean virtualThreadEnable) {
+    this.virtualThreadEnable = virtualThreadEnable;
+  }
+
+  public boolean isPrefetchEnable() {
+    return prefetchEnable;
+  }
+
+  public void setPrefetchEnable(boolean prefetchEnable) {
+    this.prefetchEnable = prefetchEnable;
+  }
+
+  public int getPrefetchSize() {
+    return prefetchSize;
+  }
+
+  public void setPrefetchSize(int prefetchSize) {
+    this.prefetchSize = prefetchSize;
+  }
+
+  public int getPrefetchLowWaterMark() {
+    return prefetchLowWaterMark;
+  }
+
+  public void setPrefetchLowWaterMark(int prefetchLowWaterMark) {
+    this.prefetchLowWaterMark = prefetchLowWaterMark;
+  }
+
+  public long getPrefetchHitTimes() {
+    PrefetchService prefetchService = this.defaultUserClientImpl.getPrefetchService();
+    return prefetchService == null ? 0L : prefetchService.getHitTimes();
+  }
+
+  public long getPrefetchMissTimes() {
+    PrefetchService prefetchService = this.defaultUserClientImpl.getPrefetchService();
+    return prefetchService == null ? 0L : prefetchService.getMissTimes();
+  }
+
+  public long getPrefetchRefillTimes() {
+    PrefetchService prefetchService = this.defaultUserClientImpl.getPrefetchService();
+    return prefetchService == null ? 0L : prefetchService.getRefillTimes();
+  }
+
   @Override
   public String getClientGroup() {
     return clientGroup == null ? DefaultUserClient.class.getSimpleName() : clientGroup;
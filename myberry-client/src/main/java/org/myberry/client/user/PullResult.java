@@ -36,6 +36,7 @@
 package org.myberry.client.user;
 
 import java.lang.reflect.Field;
+import java.util.List;
 
 public class PullResult {
 
@@ -44,6 +45,9 @@ public class PullResult {
   private String remark;
 
   private String newId;
+  private List<String> newIds;
+  // only set on a CR batch pull, true if the ids carry a #time placeholder
+  private Boolean timeBased;
 
   private Integer start;
   private Integer end;
@@ -60,6 +64,12 @@ public class PullResult {
     this.newId = newId;
   }
 
+  public PullResult(PullStatus pullStatus, String key, List<String> newIds) {
+    this.pullStatus = pullStatus;
+    this.key = key;
+    this.newIds = newIds;
+  }
+
   public PullResult(
       PullStatus pullStatus, String key, Integer start, Integer end, Integer synergyId) {
     this.pullStatus = pullStatus;
@@ -101,6 +111,22 @@ public class PullResult {
     this.newId = newId;
   }
 
+  public List<String> getNewIds() {
+    return newIds;
+  }
+
+  public void setNewIds(List<String> newIds) {
+    this.newIds = newIds;
+  }
+
+  public Boolean getTimeBased() {
+    return timeBased;
+  }
+
+  public void setTimeBased(Boolean timeBased) {
+    this.timeBased = timeBased;
+  }
+
   public Integer getStart() {
     return start;
   }
@@ -160,4 +160,17 @@ public interface UserClient {
       int timesRetry)
       throws RemotingException, InterruptedException, MyberryServerException,
           MyberryClientException;
+
+  PullResult pullBatch(String key, int count)
+      throws RemotingException, InterruptedException, MyberryServerException,
+          MyberryClientException;
+
+  PullResult pullBatch(String key, HashMap<String, String> attachments, int count)
+      throws RemotingException, InterruptedException, MyberryServerException,
+          MyberryClientException;
+
+  PullResult pullBatch(
+      String key, HashMap<String, String> attachments, int count, long timeout, int timesRetry)
+      throws RemotingException, InterruptedException, MyberryServerException,
+          MyberryClientException;
 }
@@ -0,0 +1,263 @@
+/*
+* MIT License
+*
+* Copyright (c) 2021 MyBerry. All rights reserved.
+* https://myberry.org/
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+
+*   * Redistributions of source code must retain the above copyright notice, this
+* list of conditions and the following disclaimer.
+
+*   * Redistributions in binary form must reproduce the above copyright notice,
+* this list of conditions and the following disclaimer in the documentation
+* and/or other materials provided with the distribution.
+
+*   * Neither the name of MyBerry. nor the names of its contributors may be used
+* to endorse or promote products derived from this software without specific
+* prior written permission.
+
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+* SOFTWARE.
+*/
+package org.myberry.client.impl.user;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.myberry.client.user.PullResult;
+import org.myberry.client.user.PullStatus;
+
+public class PrefetchServiceTest {
+
+  private static ExecutorService executor;
+
+  @BeforeClass
+  public static void init() {
+    executor = Executors.newSingleThreadExecutor();
+  }
+
+  @Test
+  public void pullCR() throws Exception {
+    AtomicInteger incr = new AtomicInteger(0);
+    PrefetchService prefetchService =
+        new PrefetchService(
+            (key, count, timeout, timesRetry) -> {
+              List<String> newIds = new ArrayList<>(count);
+              for (int i = 0; i < count; i++) {
+                newIds.add(String.valueOf(incr.incrementAndGet()));
+              }
+              return new PullResult(PullStatus.PULL_OK, key, newIds);
+            },
+            executor,
+            10,
+            5);
+
+    for (int i = 1; i <= 30; i++) {
+      PullResult pullResult = prefetchService.pull("key1", 3000, 0);
+      Assert.assertEquals(PullStatus.PULL_OK, pullResult.getPullStatus());
+      Assert.assertNotNull(pullResult.getNewId());
+      executor.submit(() -> {}).get(3, TimeUnit.SECONDS);
+    }
+    Assert.assertEquals(1, prefetchService.getMissTimes());
+    Assert.assertEquals(29, prefetchService.getHitTimes());
+    Assert.assertTrue(prefetchService.getRefillTimes() > 0);
+  }
+
+  @Test
+  public void pullNS() throws Exception {
+    PrefetchService prefetchService =
+        new PrefetchService(
+            (key, count, timeout, timesRetry) ->
+                new PullResult(PullStatus.PULL_OK, key, 100, 100 + 5 * count - 1, 0),
+            executor,
+            4,
+            0);
+
+    PullResult pullResult = prefetchService.pull("key2", 3000, 0);
+    Assert.assertEquals(100, pullResult.getStart().intValue());
+    Assert.assertEquals(104, pullResult.getEnd().intValue());
+    pullResult = prefetchService.pull("key2", 3000, 0);
+    Assert.assertEquals(105, pullResult.getStart().intValue());
+    Assert.assertEquals(109, pullResult.getEnd().intValue());
+  }
+
+  @Test
+  public void pullTimeBasedCR() throws Exception {
+    AtomicInteger incr = new AtomicInteger(0);
+    List<Integer> counts = new ArrayList<>();
+    PrefetchService prefetchService =
+        new PrefetchService(
+            (key, count, timeout, timesRetry) -> {
+              counts.add(count);
+              List<String> newIds = new ArrayList<>(count);
+              for (int i = 0; i < count; i++) {
+                newIds.add(String.valueOf(incr.incrementAndGet()));
+              }
+              PullResult pullResult = new PullResult(PullStatus.PULL_OK, key, newIds);
+              pullResult.setTimeBased(true);
+              return pullResult;
+            },
+            executor,
+            10,
+            5);
+
+    Assert.assertEquals("1", prefetchService.pull("key4", 3000, 0).getNewId());
+    Assert.assertEquals("11", prefetchService.pull("key4", 3000, 0).getNewId());
+    Assert.assertEquals("12", prefetchService.pull("key4", 3000, 0).getNewId());
+    Assert.assertEquals(0, prefetchService.getHitTimes());
+    Assert.assertEquals(3, prefetchService.getMissTimes());
+    Assert.assertEquals(Arrays.asList(10, 1, 1), counts);
+  }
+
+  @Test
+  public void pullTimeBasedNS() throws Exception {
+    AtomicInteger current = new AtomicInteger(100);
+    List<Integer> counts = new ArrayList<>();
+    PrefetchService prefetchService =
+        new PrefetchService(
+            (key, count, timeout, timesRetry) -> {
+              counts.add(count);
+              int start = current.getAndAdd(5 * count);
+              PullResult pullResult =
+                  new PullResult(PullStatus.PULL_OK, key, start, start + 5 * count - 1, 0);
+              pullResult.setTimeBased(true);
+              return pullResult;
+            },
+            executor,
+            4,
+            0);
+
+    Assert.assertEquals(100, prefetchService.pull("key6", 3000, 0).getStart().intValue());
+    PullResult pullResult = prefetchService.pull("key6", 3000, 0);
+    Assert.assertEquals(120, pullResult.getStart().intValue());
+    Assert.assertEquals(124, pullResult.getEnd().intValue());
+    Assert.assertEquals(0, prefetchService.getHitTimes());
+    Assert.assertEquals(Arrays.asList(4, 1), counts);
+  }
+
+  @Test
+  public void pullEmptyConcurrently() throws Exception {
+    AtomicInteger incr = new AtomicInteger(0);
+    AtomicInteger loadTimes = new AtomicInteger(0);
+    PrefetchService prefetchService =
+        new PrefetchService(
+            (key, count, timeout, timesRetry) -> {
+              loadTimes.incrementAndGet();
+              Thread.sleep(100);
+              List<String> newIds = new ArrayList<>(count);
+              for (int i = 0; i < count; i++) {
+                newIds.add(String.valueOf(incr.incrementAndGet()));
+              }
+              return new PullResult(PullStatus.PULL_OK, key, newIds);
+            },
+            executor,
+            10,
+            0);
+
+    ExecutorService pullers = Executors.newFixedThreadPool(8);
+    List<Future<String>> futures = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      futures.add(pullers.submit(() -> prefetchService.pull("key7", 3000, 0).getNewId()));
+    }
+    Set<String> newIds = new HashSet<>();
+    for (Future<String> future : futures) {
+      newIds.add(future.get(3, TimeUnit.SECONDS));
+    }
+    pullers.shutdown();
+
+    Assert.assertEquals(8, newIds.size());
+    Assert.assertEquals(1, loadTimes.get());
+  }
+
+  @Test
+  public void refillFailed() throws Exception {
+    AtomicInteger incr = new AtomicInteger(0);
+    AtomicInteger loadTimes = new AtomicInteger(0);
+    PrefetchService prefetchService =
+        new PrefetchService(
+            (key, count, timeout, timesRetry) -> {
+              if (loadTimes.incrementAndGet() > 1) {
+                return new PullResult(PullStatus.KEY_NOT_EXISTED, key);
+              }
+              List<String> newIds = new ArrayList<>(count);
+              for (int i = 0; i < count; i++) {
+                newIds.add(String.valueOf(incr.incrementAndGet()));
+              }
+              return new PullResult(PullStatus.PULL_OK, key, newIds);
+            },
+            executor,
+            10,
+            5);
+
+    for (int i = 1; i <= 10; i++) {
+      Assert.assertEquals(String.valueOf(i), prefetchService.pull("key8", 3000, 0).getNewId());
+      executor.submit(() -> {}).get(3, TimeUnit.SECONDS);
+    }
+    Assert.assertTrue(loadTimes.get() > 1);
+    Assert.assertEquals(
+        PullStatus.KEY_NOT_EXISTED, prefetchService.pull("key8", 3000, 0).getPullStatus());
+  }
+
+  @Test
+  public void splitNSRemainder() {
+    List<PullResult> pullResults =
+        PrefetchService.split(new PullResult(PullStatus.PULL_OK, "key5", 100, 109, 0), 4);
+    Assert.assertEquals(4, pullResults.size());
+    int[][] ranges = {{100, 102}, {103, 105}, {106, 107}, {108, 109}};
+    for (int i = 0; i < ranges.length; i++) {
+      Assert.assertEquals(ranges[i][0], pullResults.get(i).getStart().intValue());
+      Assert.assertEquals(ranges[i][1], pullResults.get(i).getEnd().intValue());
+    }
+
+    pullResults =
+        PrefetchService.split(new PullResult(PullStatus.PULL_OK, "key5", 100, 101, 0), 4);
+    Assert.assertEquals(2, pullResults.size());
+    Assert.assertEquals(101, pullResults.get(1).getEnd().intValue());
+  }
+
+  @Test
+  public void pullKeyNotExisted() throws Exception {
+    PrefetchService prefetchService =
+        new PrefetchService(
+            (key, count, timeout, timesRetry) -> new PullResult(PullStatus.KEY_NOT_EXISTED, key),
+            executor,
+            10,
+            5);
+
+    PullResult pullResult = prefetchService.pull("key3", 3000, 0);
+    Assert.assertEquals(PullStatus.KEY_NOT_EXISTED, pullResult.getPullStatus());
+    pullResult = prefetchService.pull("key3", 3000, 0);
+    Assert.assertEquals(PullStatus.KEY_NOT_EXISTED, pullResult.getPullStatus());
+    Assert.assertEquals(2, prefetchService.getMissTimes());
+  }
+
+  @AfterClass
+  public static void destroy() {
+    executor.shutdown();
+  }
+}
@@ -0,0 +1,555 @@
+/*
+* MIT License
+*
+* Copyright (c) 2021 MyBerry. All rights reserved.
+* https://myberry.org/
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+
+*   * Redistributions of source code must retain the above copyright notice, this
+* list of conditions and the following disclaimer.
+
+*   * Redistributions in binary form must reproduce the above copyright notice,
+* this list of conditions and the following disclaimer in the documentation
+* and/or other materials provided with the distribution.
+
+*   * Neither the name of MyBerry. nor the names of its contributors may be used
+* to endorse or promote products derived from this software without specific
+* prior written permission.
+
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+* SOFTWARE.
+*/
+package org.myberry.common.codec.asm;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.myberry.remoting.CommandCustomHeader;
+import org.myberry.remoting.annotation.CFNotNull;
+import org.myberry.remoting.exception.RemotingCommandException;
+import org.myberry.remoting.protocol.CompactHeaderReader;
+import org.myberry.remoting.protocol.CompactHeaderWriter;
+import org.myberry.remoting.protocol.CustomHeaderCodec;
+import org.myberry.remoting.protocol.CustomHeaderCodecFactory;
+import org.myberry.remoting.protocol.RemotingCommand;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Generates a {@link CustomHeaderCodec} per {@link CommandCustomHeader} class which moves the
+ * header fields in and out of the ext fields, or the compact header, through the getters and
+ * setters, replacing the reflective path of {@link org.myberry.remoting.protocol.RemotingCommand}.
+ * Header classes that cannot be generated (non public, missing accessors, unsupported field types)
+ * get no codec and stay on the reflective path.
+ */
+public class ASMCustomHeaderCodecFactory implements CustomHeaderCodecFactory, Opcodes {
+
+  private static final Logger log = LoggerFactory.getLogger(ASMCustomHeaderCodecFactory.class);
+
+  private static final ASMClassLoader amsClassLoader = new ASMClassLoader();
+
+  private static final Map<Class<?>, Optional<CustomHeaderCodec>> customHeaderCodecMap =
+      new ConcurrentHashMap<>();
+
+  private static final AtomicInteger classIndex = new AtomicInteger(0);
+
+  private static final String ASM_CLASS_CODEC_PRE = "ASMCustomHeaderCodec";
+  private static final String ASM_DEFAULT_CONSTRUCTOR_NAME = "<init>";
+  private static final String CLASS_CUSTOMHEADERCODEC_METHOD_NAME_CREATEINSTANCE =
+      "createInstance";
+  private static final String CLASS_CUSTOMHEADERCODEC_METHOD_NAME_WRITEEXTFIELDS =
+      "writeExtFields";
+  private static final String CLASS_CUSTOMHEADERCODEC_METHOD_NAME_READEXTFIELDS = "readExtFields";
+  private static final String CLASS_CUSTOMHEADERCODEC_METHOD_NAME_WRITECOMPACT = "writeCompact";
+  private static final String CLASS_CUSTOMHEADERCODEC_METHOD_NAME_READCOMPACT = "readCompact";
+
+  private static final String HASHMAP_INTERNAL_NAME = Type.getInternalName(HashMap.class);
+  private static final String WRITER_INTERNAL_NAME =
+      Type.getInternalName(CompactHeaderWriter.class);
+  private static final String READER_INTERNAL_NAME =
+      Type.getInternalName(CompactHeaderReader.class);
+  private static final String STRING_INTERNAL_NAME = Type.getInternalName(String.class);
+  private static final String OBJECT_DESCRIPTOR = Type.getDescriptor(Object.class);
+  private static final String STRING_DESCRIPTOR = Type.getDescriptor(String.class);
+
+  private static final Map<Class<?>, HeaderFieldType> supportedTypeMap = new HashMap<>(10);
+
+  static {
+    supportedTypeMap.put(String.class, new HeaderFieldType(String.class, String.class, "String"));
+    supportedTypeMap.put(int.class, new HeaderFieldType(int.class, Integer.class, "Int"));
+    supportedTypeMap.put(Integer.class, supportedTypeMap.get(int.class));
+    supportedTypeMap.put(long.class, new HeaderFieldType(long.class, Long.class, "Long"));
+    supportedTypeMap.put(Long.class, supportedTypeMap.get(long.class));
+    supportedTypeMap.put(
+        boolean.class, new HeaderFieldType(boolean.class, Boolean.class, "Boolean"));
+    supportedTypeMap.put(Boolean.class, supportedTypeMap.get(boolean.class));
+    supportedTypeMap.put(double.class, new HeaderFieldType(double.class, Double.class, "Double"));
+    supportedTypeMap.put(Double.class, supportedTypeMap.get(double.class));
+  }
+
+  @Override
+  public CustomHeaderCodec getCodec(Class<? extends CommandCustomHeader> classHeader) {
+    Optional<CustomHeaderCodec> customHeaderCodec = customHeaderCodecMap.get(classHeader);
+    if (null == customHeaderCodec) {
+      customHeaderCodec =
+          customHeaderCodecMap.computeIfAbsent(
+              classHeader, clazz -> Optional.ofNullable(createCodec(clazz)));
+    }
+    return customHeaderCodec.orElse(null);
+  }
+
+  private CustomHeaderCodec createCodec(Class<?> clazz) {
+    try {
+      List<Field> fields = getHeaderFields(clazz);
+      if (null == fields) {
+        return null;
+      }
+      return factoryASMCodec(clazz, fields);
+    } catch (Throwable e) {
+      log.warn("Failed to generate custom header codec for {}", clazz.getName(), e);
+      return null;
+    }
+  }
+
+  private List<Field> getHeaderFields(Class<?> clazz) throws Exception {
+    if (!Modifier.isPublic(clazz.getModifiers())
+        || Modifier.isAbstract(clazz.getModifiers())
+        || !Modifier.isPublic(clazz.getConstructor().getModifiers())
+        || Class.forName(clazz.getName(), false, amsClassLoader) != clazz) {
+      return null;
+    }
+
+    // sorted by ordinal, the compact header must not depend on the order of getDeclaredFields()
+    Field[] compactFields = RemotingCommand.getCompactFields(clazz);
+    if (null == compactFields) {
+      return null;
+    }
+
+    List<Field> fields = new ArrayList<>();
+    for (Field field : compactFields) {
+      if (!supportedTypeMap.containsKey(field.getType())) {
+        return null;
+      }
+
+      Method getter = clazz.getMethod(ASMUtils.getFieldGetterMethodName(field));
+      Method setter = clazz.getMethod(ASMUtils.getFieldSetterMethodName(field), field.getType());
+      if (getter.getReturnType() != field.getType()
+          || Modifier.isStatic(getter.getModifiers())
+          || Modifier.isStatic(setter.getModifiers())) {
+        return null;
+      }
+      fields.add(field);
+    }
+    return fields;
+  }
+
+  private CustomHeaderCodec factoryASMCodec(Class<?> clazz, List<Field> fields)
+      throws Exception {
+    String headerInternalName = Type.getInternalName(clazz);
+
+    // define AMS class
+    ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+
+    ASMType asmClazzType =
+        ASMUtils.generateASMClassTypeName(
+            ASMCustomHeaderCodecFactory.class.getPackage().getName(),
+            ASM_CLASS_CODEC_PRE + clazz.getSimpleName() + classIndex.incrementAndGet());
+    cw.visit(
+        V1_5,
+        ACC_PUBLIC + ACC_SUPER,
+        asmClazzType.getNameType(),
+        null,
+        Type.getInternalName(Object.class),
+        new String[] {Type.getInternalName(CustomHeaderCodec.class)});
+
+    // define default constructor
+    MethodVisitor mv =
+        cw.visitMethod(
+            ACC_PUBLIC, ASM_DEFAULT_CONSTRUCTOR_NAME, ASMUtils.getMethodDescriptor(), null, null);
+    mv.visitCode();
+    mv.visitVarInsn(ALOAD, 0);
+    mv.visitMethodInsn(
+        INVOKESPECIAL,
+        Type.getInternalName(Object.class),
+        ASM_DEFAULT_CONSTRUCTOR_NAME,
+        ASMUtils.getMethodDescriptor(),
+        false);
+    mv.visitInsn(RETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+
+    // define
+    // org.myberry.remoting.protocol.CustomHeaderCodec.createInstance()
+    mv =
+        cw.visitMethod(
+            ACC_PUBLIC,
+            CLASS_CUSTOMHEADERCODEC_METHOD_NAME_CREATEINSTANCE,
+            ASMUtils.getMethodDescriptor(Type.getType(CommandCustomHeader.class)),
+            null,
+            null);
+    mv.visitCode();
+    mv.visitTypeInsn(NEW, headerInternalName);
+    mv.visitInsn(DUP);
+    mv.visitMethodInsn(
+        INVOKESPECIAL,
+        headerInternalName,
+        ASM_DEFAULT_CONSTRUCTOR_NAME,
+        ASMUtils.getMethodDescriptor(),
+        false);
+    mv.visitInsn(ARETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+
+    // define
+    // org.myberry.remoting.protocol.CustomHeaderCodec.writeExtFields(CommandCustomHeader, HashMap)
+    mv =
+        cw.visitMethod(
+            ACC_PUBLIC,
+            CLASS_CUSTOMHEADERCODEC_METHOD_NAME_WRITEEXTFIELDS,
+            ASMUtils.getMethodDescriptor(
+                Type.getDescriptor(CommandCustomHeader.class), Type.getDescriptor(HashMap.class)),
+            null,
+            null);
+    mv.visitCode();
+    mv.visitVarInsn(ALOAD, 1);
+    mv.visitTypeInsn(CHECKCAST, headerInternalName);
+    mv.visitVarInsn(ASTORE, 3);
+    for (Field field : fields) {
+      writeExtField(mv, headerInternalName, field);
+    }
+    mv.visitInsn(RETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+
+    // define
+    // org.myberry.remoting.protocol.CustomHeaderCodec.readExtFields(CommandCustomHeader, HashMap)
+    mv =
+        cw.visitMethod(
+            ACC_PUBLIC,
+            CLASS_CUSTOMHEADERCODEC_METHOD_NAME_READEXTFIELDS,
+            ASMUtils.getMethodDescriptor(
+                Type.getDescriptor(CommandCustomHeader.class), Type.getDescriptor(HashMap.class)),
+            null,
+            new String[] {Type.getInternalName(RemotingCommandException.class)});
+    mv.visitCode();
+    mv.visitVarInsn(ALOAD, 1);
+    mv.visitTypeInsn(CHECKCAST, headerInternalName);
+    mv.visitVarInsn(ASTORE, 3);
+    for (Field field : fields) {
+      readExtField(mv, headerInternalName, field);
+    }
+    mv.visitInsn(RETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+
+    // define
+    // org.myberry.remoting.protocol.CustomHeaderCodec.writeCompact(CommandCustomHeader,
+    // CompactHeaderWriter)
+    mv =
+        cw.visitMethod(
+            ACC_PUBLIC,
+            CLASS_CUSTOMHEADERCODEC_METHOD_NAME_WRITECOMPACT,
+            ASMUtils.getMethodDescriptor(
+                Type.getDescriptor(CommandCustomHeader.class),
+                Type.getDescriptor(CompactHeaderWriter.class)),
+            null,
+            null);
+    mv.visitCode();
+    mv.visitVarInsn(ALOAD, 1);
+    mv.visitTypeInsn(CHECKCAST, headerInternalName);
+    mv.visitVarInsn(ASTORE, 3);
+    for (Field field : fields) {
+      writeCompactField(mv, headerInternalName, field, RemotingCommand.getOrdinal(field));
+    }
+    mv.visitInsn(RETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+
+    // define
+    // org.myberry.remoting.protocol.CustomHeaderCodec.readCompact(CommandCustomHeader,
+    // CompactHeaderReader)
+    mv =
+        cw.visitMethod(
+            ACC_PUBLIC,
+            CLASS_CUSTOMHEADERCODEC_METHOD_NAME_READCOMPACT,
+            ASMUtils.getMethodDescriptor(
+                Type.getDescriptor(CommandCustomHeader.class),
+                Type.getDescriptor(CompactHeaderReader.class)),
+            null,
+            new String[] {Type.getInternalName(RemotingCommandException.class)});
+    mv.visitCode();
+    mv.visitVarInsn(ALOAD, 1);
+    mv.visitTypeInsn(CHECKCAST, headerInternalName);
+    mv.visitVarInsn(ASTORE, 3);
+    for (Field field : fields) {
+      readCompactField(mv, headerInternalName, field, RemotingCommand.getOrdinal(field));
+    }
+    mv.visitInsn(RETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+
+    cw.visitEnd();
+
+    byte[] code = cw.toByteArray();
+
+    Class<?> codecClass =
+        amsClassLoader.defineClassByASM(asmClazzType.getName(), code, 0, code.length);
+    return (CustomHeaderCodec) codecClass.getConstructor().newInstance();
+  }
+
+  /** extFields.put(name, String.valueOf(header.getXxx())), skipping null references. */
+  private void writeExtField(MethodVisitor mv, String headerInternalName, Field field) {
+    Class<?> type = field.getType();
+    Label endLabel = new Label();
+
+    mv.visitVarInsn(ALOAD, 3);
+    mv.visitMethodInsn(
+        INVOKEVIRTUAL,
+        headerInternalName,
+        ASMUtils.getFieldGetterMethodName(field),
+        ASMUtils.getMethodDescriptor(Type.getType(type)),
+        false);
+    if (type.isPrimitive()) {
+      Class<?> boxedType = supportedTypeMap.get(type).boxedType;
+      mv.visitMethodInsn(
+          INVOKESTATIC,
+          Type.getInternalName(boxedType),
+          "toString",
+          ASMUtils.getMethodDescriptor(Type.getType(String.class), Type.getDescriptor(type)),
+          false);
+      mv.visitVarInsn(ASTORE, 4);
+    } else {
+      mv.visitVarInsn(ASTORE, 4);
+      mv.visitVarInsn(ALOAD, 4);
+      mv.visitJumpInsn(IFNULL, endLabel);
+      if (type != String.class) {
+        mv.visitVarInsn(ALOAD, 4);
+        mv.visitMethodInsn(
+            INVOKEVIRTUAL,
+            Type.getInternalName(Object.class),
+            "toString",
+            ASMUtils.getMethodDescriptor(Type.getType(String.class)),
+            false);
+        mv.visitVarInsn(ASTORE, 4);
+      }
+    }
+
+    mv.visitVarInsn(ALOAD, 2);
+    mv.visitLdcInsn(field.getName());
+    mv.visitVarInsn(ALOAD, 4);
+    mv.visitMethodInsn(
+        INVOKEVIRTUAL,
+        HASHMAP_INTERNAL_NAME,
+        "put",
+        ASMUtils.getMethodDescriptor(
+            Type.getType(Object.class), OBJECT_DESCRIPTOR, OBJECT_DESCRIPTOR),
+        false);
+    mv.visitInsn(POP);
+    mv.visitLabel(endLabel);
+  }
+
+  /**
+   * header.setXxx(parse(extFields.get(name))), throwing for an absent {@link CFNotNull} field like
+   * the reflective path does.
+   */
+  private void readExtField(MethodVisitor mv, String headerInternalName, Field field) {
+    Class<?> type = field.getType();
+    Label setLabel = new Label();
+    Label endLabel = new Label();
+
+    mv.visitVarInsn(ALOAD, 2);
+    mv.visitLdcInsn(field.getName());
+    mv.visitMethodInsn(
+        INVOKEVIRTUAL,
+        HASHMAP_INTERNAL_NAME,
+        "get",
+        ASMUtils.getMethodDescriptor(Type.getType(Object.class), OBJECT_DESCRIPTOR),
+        false);
+    mv.visitTypeInsn(CHECKCAST, STRING_INTERNAL_NAME);
+    mv.visitVarInsn(ASTORE, 4);
+    mv.visitVarInsn(ALOAD, 4);
+    mv.visitJumpInsn(IFNONNULL, setLabel);
+    absentField(mv, field, endLabel);
+
+    mv.visitLabel(setLabel);
+    mv.visitVarInsn(ALOAD, 3);
+    mv.visitVarInsn(ALOAD, 4);
+    if (type != String.class) {
+      Class<?> boxedType = supportedTypeMap.get(type).boxedType;
+      mv.visitMethodInsn(
+          INVOKESTATIC,
+          Type.getInternalName(boxedType),
+          type.isPrimitive() ? parseMethodName(type) : "valueOf",
+          ASMUtils.getMethodDescriptor(Type.getType(type), STRING_DESCRIPTOR),
+          false);
+    }
+    mv.visitMethodInsn(
+        INVOKEVIRTUAL,
+        headerInternalName,
+        ASMUtils.getFieldSetterMethodName(field),
+        ASMUtils.getMethodDescriptor(Type.getDescriptor(type)),
+        false);
+    mv.visitLabel(endLabel);
+  }
+
+  /** writer.writeXxx(ordinal, header.getXxx()), skipping null references. */
+  private void writeCompactField(
+      MethodVisitor mv, String headerInternalName, Field field, int ordinal) {
+    Class<?> type = field.getType();
+    HeaderFieldType headerFieldType = supportedTypeMap.get(type);
+    Label endLabel = new Label();
+
+    if (type.isPrimitive()) {
+      mv.visitVarInsn(ALOAD, 2);
+      mv.visitLdcInsn(ordinal);
+      mv.visitVarInsn(ALOAD, 3);
+      mv.visitMethodInsn(
+          INVOKEVIRTUAL,
+          headerInternalName,
+          ASMUtils.getFieldGetterMethodName(field),
+          ASMUtils.getMethodDescriptor(Type.getType(type)),
+          false);
+    } else {
+      mv.visitVarInsn(ALOAD, 3);
+      mv.visitMethodInsn(
+          INVOKEVIRTUAL,
+          headerInternalName,
+          ASMUtils.getFieldGetterMethodName(field),
+          ASMUtils.getMethodDescriptor(Type.getType(type)),
+          false);
+      mv.visitVarInsn(ASTORE, 4);
+      mv.visitVarInsn(ALOAD, 4);
+      mv.visitJumpInsn(IFNULL, endLabel);
+      mv.visitVarInsn(ALOAD, 2);
+      mv.visitLdcInsn(ordinal);
+      mv.visitVarInsn(ALOAD, 4);
+      if (type != String.class) {
+        mv.visitMethodInsn(
+            INVOKEVIRTUAL,
+            Type.getInternalName(type),
+            headerFieldType.type.getName() + "Value",
+            ASMUtils.getMethodDescriptor(Type.getType(headerFieldType.type)),
+            false);
+      }
+    }
+    mv.visitMethodInsn(
+        INVOKEVIRTUAL,
+        WRITER_INTERNAL_NAME,
+        "write" + headerFieldType.suffix,
+        ASMUtils.getMethodDescriptor(
+            Type.getDescriptor(int.class), Type.getDescriptor(headerFieldType.type)),
+        false);
+    mv.visitLabel(endLabel);
+  }
+
+  /** if (reader.nextField(ordinal)) header.setXxx(reader.readXxx()). */
+  private void readCompactField(
+      MethodVisitor mv, String headerInternalName, Field field, int ordinal) {
+    Class<?> type = field.getType();
+    HeaderFieldType headerFieldType = supportedTypeMap.get(type);
+    Label setLabel = new Label();
+    Label endLabel = new Label();
+
+    mv.visitVarInsn(ALOAD, 2);
+    mv.visitLdcInsn(ordinal);
+    mv.visitMethodInsn(
+        INVOKEVIRTUAL,
+        READER_INTERNAL_NAME,
+        "nextField",
+        ASMUtils.getMethodDescriptor(Type.BOOLEAN_TYPE, Type.getDescriptor(int.class)),
+        false);
+    mv.visitJumpInsn(IFNE, setLabel);
+    absentField(mv, field, endLabel);
+
+    mv.visitLabel(setLabel);
+    mv.visitVarInsn(ALOAD, 3);
+    mv.visitVarInsn(ALOAD, 2);
+    mv.visitMethodInsn(
+        INVOKEVIRTUAL,
+        READER_INTERNAL_NAME,
+        "read" + headerFieldType.suffix,
+        ASMUtils.getMethodDescriptor(Type.getType(headerFieldType.type)),
+        false);
+    if (!type.isPrimitive() && type != String.class) {
+      mv.visitMethodInsn(
+          INVOKESTATIC,
+          Type.getInternalName(type),
+          "valueOf",
+          ASMUtils.getMethodDescriptor(
+              Type.getType(type), Type.getDescriptor(headerFieldType.type)),
+          false);
+    }
+    mv.visitMethodInsn(
+        INVOKEVIRTUAL,
+        headerInternalName,
+        ASMUtils.getFieldSetterMethodName(field),
+        ASMUtils.getMethodDescriptor(Type.getDescriptor(type)),
+        false);
+    mv.visitLabel(endLabel);
+  }
+
+  /** Throws for an absent {@link CFNotNull} field, otherwise jumps to {@code endLabel}. */
+  private void absentField(MethodVisitor mv, Field field, Label endLabel) {
+    if (field.getAnnotation(CFNotNull.class) != null) {
+      String exceptionInternalName = Type.getInternalName(RemotingCommandException.class);
+      mv.visitTypeInsn(NEW, exceptionInternalName);
+      mv.visitInsn(DUP);
+      mv.visitLdcInsn("the custom field <" + field.getName() + "> is null");
+      mv.visitMethodInsn(
+          INVOKESPECIAL,
+          exceptionInternalName,
+          ASM_DEFAULT_CONSTRUCTOR_NAME,
+          ASMUtils.getMethodDescriptor(STRING_DESCRIPTOR),
+          false);
+      mv.visitInsn(ATHROW);
+    } else {
+      mv.visitJumpInsn(GOTO, endLabel);
+    }
+  }
+
+  private String parseMethodName(Class<?> primitiveType) {
+    String name = primitiveType.getName();
+    return "parse" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+  }
+
+  private static class HeaderFieldType {
+
+    /** The primitive type, or String, the compact writer and reader work with. */
+    private final Class<?> type;
+
+    private final Class<?> boxedType;
+    private final String suffix;
+
+    HeaderFieldType(Class<?> type, Class<?> boxedType, String suffix) {
+      this.type = type;
+      this.boxedType = boxedType;
+      this.suffix = suffix;
+    }
+  }
+}
@@ -39,6 +39,8 @@ public class RequestCode {
 
   public static final int PULL_ID = 10;
 
+  public static final int PULL_ID_BATCH = 11;
+
   public static final int HEART_BEAT = 20;
 
   public static final int CREATE_COMPONENT = 100;
@@ -50,4 +50,6 @@ public class ResponseCode extends RemotingSysResponseCode {
   public static final int PARAMETER_LENGTH_TOO_LONG = 14;
 
   public static final int INVALID_EXPRESSION = 15;
+
+  public static final int INVALID_PARAMETER = 16;
 }
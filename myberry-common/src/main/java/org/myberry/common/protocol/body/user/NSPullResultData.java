@@ -49,6 +49,9 @@ public class NSPullResultData implements MessageLite {
   @SerialField(ordinal = 2)
   private int synergyId;
 
+  @SerialField(ordinal = 3)
+  private boolean timeBased;
+
   public int getStart() {
     return start;
   }
@@ -72,4 +75,12 @@ public class NSPullResultData implements MessageLite {
   public void setSynergyId(int synergyId) {
     this.synergyId = synergyId;
   }
+
+  public boolean isTimeBased() {
+    return timeBased;
+  }
+
+  public void setTimeBased(boolean timeBased) {
+    this.timeBased = timeBased;
+  }
 }
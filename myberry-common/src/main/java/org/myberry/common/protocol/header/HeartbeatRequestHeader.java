@@ -37,12 +37,15 @@ package org.myberry.common.protocol.header;
 
 import org.myberry.remoting.CommandCustomHeader;
 import org.myberry.remoting.annotation.CFNotNull;
+import org.myberry.remoting.annotation.CFOrdinal;
 import org.myberry.remoting.exception.RemotingCommandException;
 
 public class HeartbeatRequestHeader implements CommandCustomHeader {
 
+  @CFOrdinal(1)
   @CFNotNull private String clientId;
 
+  @CFOrdinal(2)
   private String password;
 
   @Override
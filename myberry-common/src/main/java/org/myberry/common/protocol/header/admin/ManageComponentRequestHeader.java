@@ -37,11 +37,14 @@ package org.myberry.common.protocol.header.admin;
 
 import org.myberry.remoting.CommandCustomHeader;
 import org.myberry.remoting.annotation.CFNotNull;
+import org.myberry.remoting.annotation.CFOrdinal;
 import org.myberry.remoting.exception.RemotingCommandException;
 
 public class ManageComponentRequestHeader implements CommandCustomHeader {
 
+  @CFOrdinal(1)
   @CFNotNull private String password;
+  @CFOrdinal(2)
   @CFNotNull private int structure;
 
   @Override
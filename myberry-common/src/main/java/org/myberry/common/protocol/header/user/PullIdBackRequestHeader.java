@@ -37,12 +37,18 @@ package org.myberry.common.protocol.header.user;
 
 import org.myberry.remoting.CommandCustomHeader;
 import org.myberry.remoting.annotation.CFNotNull;
+import org.myberry.remoting.annotation.CFNullable;
+import org.myberry.remoting.annotation.CFOrdinal;
 import org.myberry.remoting.exception.RemotingCommandException;
 
 public class PullIdBackRequestHeader implements CommandCustomHeader {
 
+  @CFOrdinal(1)
   @CFNotNull private String key;
 
+  @CFOrdinal(2)
+  @CFNullable private Integer count;
+
   @Override
   public void checkFields() throws RemotingCommandException {}
 
@@ -53,4 +59,12 @@ public class PullIdBackRequestHeader implements CommandCustomHeader {
   public void setKey(String key) {
     this.key = key;
   }
+
+  public Integer getCount() {
+    return count;
+  }
+
+  public void setCount(Integer count) {
+    this.count = count;
+  }
 }
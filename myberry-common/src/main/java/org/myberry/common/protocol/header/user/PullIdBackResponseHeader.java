@@ -37,12 +37,15 @@ package org.myberry.common.protocol.header.user;
 
 import org.myberry.remoting.CommandCustomHeader;
 import org.myberry.remoting.annotation.CFNullable;
+import org.myberry.remoting.annotation.CFOrdinal;
 import org.myberry.remoting.exception.RemotingCommandException;
 
 public class PullIdBackResponseHeader implements CommandCustomHeader {
 
+  @CFOrdinal(1)
   private String key;
 
+  @CFOrdinal(2)
   @CFNullable private Integer structure;
 
   @Override
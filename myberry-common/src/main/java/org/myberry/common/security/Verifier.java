@@ -39,6 +39,8 @@ import java.nio.charset.StandardCharsets;
 
 public class Verifier {
 
+  public static final int MAX_BATCH_COUNT = 10000;
+
   public static boolean nsCheck(String key) {
     if (key.getBytes(StandardCharsets.UTF_8).length < 1024) {
       return true;
@@ -56,4 +58,12 @@ public class Verifier {
       return false;
     }
   }
+
+  public static boolean batchCheck(int count) {
+    if (count > 0 && count <= MAX_BATCH_COUNT) {
+      return true;
+    } else {
+      return false;
+    }
+  }
 }
@@ -0,0 +1,145 @@
+/*
+* MIT License
+*
+* Copyright (c) 2021 MyBerry. All rights reserved.
+* https://myberry.org/
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+
+*   * Redistributions of source code must retain the above copyright notice, this
+* list of conditions and the following disclaimer.
+
+*   * Redistributions in binary form must reproduce the above copyright notice,
+* this list of conditions and the following disclaimer in the documentation
+* and/or other materials provided with the distribution.
+
+*   * Neither the name of MyBerry. nor the names of its contributors may be used
+* to endorse or promote products derived from this software without specific
+* prior written permission.
+
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+* SOFTWARE.
+*/
+package org.myberry.common.codec;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import org.junit.Assert;
+import org.junit.Test;
+import org.myberry.common.codec.asm.ASMCustomHeaderCodecFactory;
+import org.myberry.common.protocol.RequestCode;
+import org.myberry.common.protocol.header.admin.ManageComponentRequestHeader;
+import org.myberry.common.protocol.header.user.PullIdBackRequestHeader;
+import org.myberry.remoting.exception.RemotingCommandException;
+import org.myberry.remoting.protocol.CustomHeaderCodec;
+import org.myberry.remoting.protocol.ProtocolVersion;
+import org.myberry.remoting.protocol.RemotingCommand;
+
+public class CustomHeaderCodecTest {
+
+  private final ASMCustomHeaderCodecFactory factory = new ASMCustomHeaderCodecFactory();
+
+  @Test
+  public void testWriteExtFields() {
+    CustomHeaderCodec codec = factory.getCodec(PullIdBackRequestHeader.class);
+    Assert.assertNotNull(codec);
+    Assert.assertSame(codec, factory.getCodec(PullIdBackRequestHeader.class));
+
+    PullIdBackRequestHeader header = new PullIdBackRequestHeader();
+    header.setKey("key1");
+    HashMap<String, String> extFields = new HashMap<>();
+    codec.writeExtFields(header, extFields);
+    Assert.assertEquals(1, extFields.size());
+    Assert.assertEquals("key1", extFields.get("key"));
+
+    header.setCount(20);
+    codec.writeExtFields(header, extFields);
+    Assert.assertEquals("20", extFields.get("count"));
+  }
+
+  @Test
+  public void testReadExtFields() throws Exception {
+    CustomHeaderCodec codec = factory.getCodec(ManageComponentRequestHeader.class);
+    Assert.assertNotNull(codec);
+
+    HashMap<String, String> extFields = new HashMap<>();
+    extFields.put("password", "foobared");
+    extFields.put("structure", "2");
+    ManageComponentRequestHeader header =
+        (ManageComponentRequestHeader) codec.createInstance();
+    codec.readExtFields(header, extFields);
+    Assert.assertEquals("foobared", header.getPassword());
+    Assert.assertEquals(2, header.getStructure());
+
+    extFields.remove("structure");
+    try {
+      codec.readExtFields(codec.createInstance(), extFields);
+      Assert.fail();
+    } catch (RemotingCommandException e) {
+      Assert.assertEquals("the custom field <structure> is null", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testRemotingCommandRoundTrip() throws Exception {
+    PullIdBackRequestHeader requestHeader = new PullIdBackRequestHeader();
+    requestHeader.setKey("key1");
+    requestHeader.setCount(10);
+
+    for (ProtocolVersion protocolVersion : ProtocolVersion.values()) {
+      RemotingCommand request =
+          RemotingCommand.createRequestCommand(RequestCode.PULL_ID_BATCH, requestHeader);
+      request.setProtocolVersion(protocolVersion.get());
+      ByteBuffer encoded = request.encode();
+      encoded.getInt();
+
+      PullIdBackRequestHeader decoded =
+          (PullIdBackRequestHeader)
+              RemotingCommand.decode(encoded.slice())
+                  .decodeCommandCustomHeader(PullIdBackRequestHeader.class);
+      Assert.assertEquals("key1", decoded.getKey());
+      Assert.assertEquals(Integer.valueOf(10), decoded.getCount());
+    }
+  }
+
+  @Test
+  public void testCompactNotNull() throws Exception {
+    RemotingCommand request =
+        RemotingCommand.createRequestCommand(RequestCode.PULL_ID, new PullIdBackRequestHeader());
+    request.setRemark("no key");
+    request.setProtocolVersion(ProtocolVersion.V_2_0.get());
+    ByteBuffer encoded = request.encode();
+    encoded.getInt();
+
+    RemotingCommand command = RemotingCommand.decode(encoded.slice());
+    Assert.assertEquals(ProtocolVersion.V_2_0.get(), command.getProtocolVersion());
+    Assert.assertNotNull(command.decodeCommandCustomHeader(PullIdBackRequestHeader.class));
+
+    ManageComponentRequestHeader header = new ManageComponentRequestHeader();
+    header.setStructure(1);
+    request = RemotingCommand.createRequestCommand(RequestCode.PULL_ID, header);
+    request.setProtocolVersion(ProtocolVersion.V_2_0.get());
+    encoded = request.encode();
+    encoded.getInt();
+    try {
+      RemotingCommand.decode(encoded.slice())
+          .decodeCommandCustomHeader(ManageComponentRequestHeader.class);
+      Assert.fail();
+    } catch (RemotingCommandException e) {
+      Assert.assertEquals("the custom field <password> is null", e.getMessage());
+    }
+  }
+}
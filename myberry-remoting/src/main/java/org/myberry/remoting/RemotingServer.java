@@ -35,6 +35,18 @@ public interface RemotingServer extends RemotingService {
   void registerProcessor(
       final int requestCode, final NettyRequestProcessor processor, final ExecutorService executor);
 
+  /**
+   * Same to {@link #registerProcessor(int, NettyRequestProcessor, ExecutorService)}. With inline
+   * set, the processor must be an {@link org.myberry.remoting.netty.InlineRequestProcessor}, and
+   * the requests it accepts run on the event loop rather than the executor. {@link #shutdown()}
+   * then waits for the event loops to terminate, so those requests are done when it returns.
+   */
+  void registerProcessor(
+      final int requestCode,
+      final NettyRequestProcessor processor,
+      final ExecutorService executor,
+      final boolean inline);
+
   void registerDefaultProcessor(
       final NettyRequestProcessor processor, final ExecutorService executor);
 
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2021 MyBerry. All rights reserved.
+ * https://myberry.org/
+ *
+ * Modified by Apache RocketMQ.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.myberry.remoting.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * The position of a custom header field in the {@link
+ * org.myberry.remoting.protocol.ProtocolVersion#V_2_0} header. Ordinals start at 1 and are unique
+ * within a header; a released ordinal must not change, a new field takes a new one. A header with
+ * a field lacking an ordinal is always sent as ext fields.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface CFOrdinal {
+
+  int value();
+}
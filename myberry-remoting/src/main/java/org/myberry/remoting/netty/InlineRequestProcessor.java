@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2021 MyBerry. All rights reserved.
+ * https://myberry.org/
+ *
+ * Modified by Apache RocketMQ.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.myberry.remoting.netty;
+
+import io.netty.channel.ChannelHandlerContext;
+import org.myberry.remoting.protocol.RemotingCommand;
+
+/**
+ * A processor that may run a request directly on the channel's event loop, skipping the executor
+ * and the thread hop back for the response. It must only accept requests it can answer without
+ * blocking, the others still go to the executor it is registered with.
+ */
+public interface InlineRequestProcessor extends NettyRequestProcessor {
+
+  /**
+   * Called on the event loop for each request of an inline request code.
+   *
+   * @param ctx channel handler context.
+   * @param request request command.
+   * @return true to process the request inline; false to submit it to the executor.
+   */
+  boolean acceptInline(ChannelHandlerContext ctx, RemotingCommand request);
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2021 MyBerry. All rights reserved.
+ * https://myberry.org/
+ *
+ * Modified by Apache RocketMQ.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.myberry.remoting.netty;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import org.myberry.remoting.protocol.RemotingCommand;
+
+/**
+ * Runs the requests of the same key on the same thread. Every lane is a single consumer thread
+ * draining a lock-free queue, a request goes to the lane its key hashes to, so requests for one key
+ * never contend with each other and the state they touch stays in the cache of one core.
+ *
+ * <p>Requests without a key are spread round-robin. A lane holds at most laneCapacity requests,
+ * beyond that the request is rejected like by a full {@link
+ * java.util.concurrent.ThreadPoolExecutor}.
+ */
+public class KeyAffinityExecutor extends AbstractExecutorService {
+
+  private final Function<RemotingCommand, String> keyExtractor;
+  private final Lane[] lanes;
+  private final AtomicInteger roundRobin = new AtomicInteger(0);
+  private volatile boolean shutdown = false;
+
+  public KeyAffinityExecutor(
+      final int laneNums,
+      final int laneCapacity,
+      final ThreadFactory threadFactory,
+      final Function<RemotingCommand, String> keyExtractor) {
+    this.keyExtractor = keyExtractor;
+    this.lanes = new Lane[laneNums];
+    for (int i = 0; i < laneNums; i++) {
+      lanes[i] = new Lane(laneCapacity);
+      lanes[i].thread = threadFactory.newThread(lanes[i]);
+    }
+    for (Lane lane : lanes) {
+      lane.thread.start();
+    }
+  }
+
+  @Override
+  protected <T> FutureTask<T> newTaskFor(Runnable runnable, T value) {
+    return new LaneTask<>(runnable, value, laneOf(runnable));
+  }
+
+  private int laneOf(Runnable runnable) {
+    String key = null;
+    if (runnable instanceof RequestTask) {
+      key = keyExtractor.apply(((RequestTask) runnable).getRequest());
+    }
+
+    if (null == key) {
+      return (roundRobin.getAndIncrement() & Integer.MAX_VALUE) % lanes.length;
+    }
+    int h = key.hashCode();
+    return ((h ^ (h >>> 16)) & Integer.MAX_VALUE) % lanes.length;
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    int lane = command instanceof LaneTask ? ((LaneTask<?>) command).lane : laneOf(command);
+    if (shutdown || !lanes[lane].offer(command)) {
+      throw new RejectedExecutionException(
+          "Task " + command + " rejected from lane " + lane + " of " + this);
+    }
+  }
+
+  @Override
+  public void shutdown() {
+    shutdown = true;
+    for (Lane lane : lanes) {
+      LockSupport.unpark(lane.thread);
+    }
+  }
+
+  @Override
+  public List<Runnable> shutdownNow() {
+    this.shutdown();
+    List<Runnable> remaining = new ArrayList<>();
+    for (Lane lane : lanes) {
+      Runnable task;
+      while ((task = lane.poll()) != null) {
+        remaining.add(task);
+      }
+      lane.thread.interrupt();
+    }
+    return remaining;
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return shutdown;
+  }
+
+  @Override
+  public boolean isTerminated() {
+    if (!shutdown) {
+      return false;
+    }
+    for (Lane lane : lanes) {
+      if (lane.thread.isAlive()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    for (Lane lane : lanes) {
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        return isTerminated();
+      }
+      TimeUnit.NANOSECONDS.timedJoin(lane.thread, remaining);
+    }
+    return isTerminated();
+  }
+
+  public int getQueueSize() {
+    int size = 0;
+    for (Lane lane : lanes) {
+      size += lane.size.get();
+    }
+    return size;
+  }
+
+  @Override
+  public String toString() {
+    return super.toString() + "[lanes = " + lanes.length + ", queued = " + getQueueSize() + "]";
+  }
+
+  private static class LaneTask<T> extends FutureTask<T> {
+    private final int lane;
+
+    LaneTask(Runnable runnable, T value, int lane) {
+      super(runnable, value);
+      this.lane = lane;
+    }
+  }
+
+  private class Lane implements Runnable {
+    private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger(0);
+    private final int capacity;
+    private Thread thread;
+    // set by the consumer before it parks, producers only unpark when it is set
+    private volatile boolean waiting = false;
+
+    Lane(int capacity) {
+      this.capacity = capacity;
+    }
+
+    boolean offer(Runnable task) {
+      if (size.incrementAndGet() > capacity) {
+        size.decrementAndGet();
+        return false;
+      }
+      queue.offer(task);
+      if (waiting) {
+        LockSupport.unpark(thread);
+      }
+      return true;
+    }
+
+    Runnable poll() {
+      Runnable task = queue.poll();
+      if (task != null) {
+        size.decrementAndGet();
+      }
+      return task;
+    }
+
+    @Override
+    public void run() {
+      while (true) {
+        Runnable task = poll();
+        if (null == task) {
+          if (shutdown || Thread.currentThread().isInterrupted()) {
+            return;
+          }
+
+          waiting = true;
+          task = poll();
+          if (null == task) {
+            LockSupport.park(this);
+            waiting = false;
+            continue;
+          }
+          waiting = false;
+        }
+
+        try {
+          task.run();
+        } catch (Throwable ignored) {
+          // FutureTask keeps the failure, a plain runnable must not kill the lane
+        }
+      }
+    }
+  }
+}
@@ -21,8 +21,6 @@
  */
 package org.myberry.remoting.netty;
 
-import java.nio.ByteBuffer;
-
 import org.myberry.remoting.common.LoggerName;
 import org.myberry.remoting.common.RemotingHelper;
 import org.myberry.remoting.common.RemotingUtil;
@@ -53,9 +51,7 @@ public class NettyDecoder extends LengthFieldBasedFrameDecoder {
         return null;
       }
 
-      ByteBuffer byteBuffer = frame.nioBuffer();
-
-      return RemotingCommand.decode(byteBuffer);
+      return RemotingCommand.decode(frame);
     } catch (Exception e) {
       log.error("decode exception, " + RemotingHelper.parseChannelRemoteAddr(ctx.channel()), e);
       RemotingUtil.closeChannel(ctx.channel());
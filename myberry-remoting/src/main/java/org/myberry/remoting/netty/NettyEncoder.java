@@ -21,8 +21,6 @@
  */
 package org.myberry.remoting.netty;
 
-import java.nio.ByteBuffer;
-
 import org.myberry.remoting.common.LoggerName;
 import org.myberry.remoting.common.RemotingHelper;
 import org.myberry.remoting.common.RemotingUtil;
@@ -42,12 +40,7 @@ public class NettyEncoder extends MessageToByteEncoder<RemotingCommand> {
   protected void encode(ChannelHandlerContext ctx, RemotingCommand remotingCommand, ByteBuf out)
       throws Exception {
     try {
-      ByteBuffer header = remotingCommand.encodeHeader();
-      out.writeBytes(header);
-      byte[] body = remotingCommand.getBody();
-      if (body != null) {
-        out.writeBytes(body);
-      }
+      remotingCommand.encode(out);
     } catch (Exception e) {
       log.error("encode exception, " + RemotingHelper.parseChannelRemoteAddr(ctx.channel()), e);
       if (remotingCommand != null) {
@@ -25,8 +25,10 @@ import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.AttributeKey;
 import java.net.SocketAddress;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -45,6 +47,7 @@ import org.myberry.remoting.common.SemaphoreReleaseOnlyOnce;
 import org.myberry.remoting.exception.RemotingSendRequestException;
 import org.myberry.remoting.exception.RemotingTimeoutException;
 import org.myberry.remoting.exception.RemotingTooMuchRequestException;
+import org.myberry.remoting.protocol.ProtocolVersion;
 import org.myberry.remoting.protocol.RemotingCommand;
 import org.myberry.remoting.protocol.RemotingSysResponseCode;
 import org.slf4j.Logger;
@@ -55,6 +58,10 @@ public abstract class NettyRemotingAbstract {
   /** Remoting logger instance. */
   private static final Logger log = LoggerFactory.getLogger(LoggerName.REMOTING_LOGGER_NAME);
 
+  /** Set on a channel once the peer has answered with {@link RemotingCommand#isCompactAccepted}. */
+  private static final AttributeKey<Boolean> COMPACT_ACCEPTED =
+      AttributeKey.valueOf("myberry.remoting.compactAccepted");
+
   /**
    * Semaphore to limit maximum number of on-going one-way requests, which protects system memory
    * footprint.
@@ -84,6 +91,12 @@ public abstract class NettyRemotingAbstract {
    */
   protected Pair<NettyRequestProcessor, ExecutorService> defaultRequestProcessor;
 
+  /**
+   * Request codes whose {@link InlineRequestProcessor} in {@link #processorTable} may run a request
+   * on the event loop.
+   */
+  protected final HashSet<Integer /* request code */> inlineRequestCodes = new HashSet<Integer>(16);
+
   /**
    * Constructor, specifying capacity of one-way and asynchronous semaphores.
    *
@@ -150,6 +163,7 @@ public abstract class NettyRemotingAbstract {
                 if (!cmd.isOnewayRPC()) {
                   if (response != null) {
                     response.setOpaque(opaque);
+                    response.setProtocolVersion(cmd.getProtocolVersion());
                     response.markResponseType();
                     try {
                       ctx.writeAndFlush(response);
@@ -172,6 +186,7 @@ public abstract class NettyRemotingAbstract {
                           RemotingSysResponseCode.SYSTEM_ERROR,
                           RemotingHelper.exceptionSimpleDesc(e));
                   response.setOpaque(opaque);
+                  response.setProtocolVersion(cmd.getProtocolVersion());
                   ctx.writeAndFlush(response);
                 }
               }
@@ -184,10 +199,19 @@ public abstract class NettyRemotingAbstract {
                 RemotingSysResponseCode.SYSTEM_BUSY,
                 "[REJECTREQUEST]system busy, start flow control for a while");
         response.setOpaque(opaque);
+        response.setProtocolVersion(cmd.getProtocolVersion());
         ctx.writeAndFlush(response);
         return;
       }
 
+      if (matched != null
+          && this.inlineRequestCodes.contains(cmd.getCode())
+          && ((InlineRequestProcessor) matched.getObject1()).acceptInline(ctx, cmd)) {
+        // already on the channel's event loop, so the response is written without a thread hop
+        run.run();
+        return;
+      }
+
       try {
         final RequestTask requestTask = new RequestTask(run, ctx.channel(), cmd);
         pair.getObject2().submit(requestTask);
@@ -207,6 +231,7 @@ public abstract class NettyRemotingAbstract {
                   RemotingSysResponseCode.SYSTEM_BUSY,
                   "[OVERLOAD]system busy, start flow control for a while");
           response.setOpaque(opaque);
+          response.setProtocolVersion(cmd.getProtocolVersion());
           ctx.writeAndFlush(response);
         }
       }
@@ -216,6 +241,7 @@ public abstract class NettyRemotingAbstract {
           RemotingCommand.createResponseCommand(
               RemotingSysResponseCode.REQUEST_CODE_NOT_SUPPORTED, error);
       response.setOpaque(opaque);
+      response.setProtocolVersion(cmd.getProtocolVersion());
       ctx.writeAndFlush(response);
       log.error(RemotingHelper.parseChannelRemoteAddr(ctx.channel()) + error);
     }
@@ -228,6 +254,10 @@ public abstract class NettyRemotingAbstract {
    * @param cmd response command instance.
    */
   public void processResponseCommand(ChannelHandlerContext ctx, RemotingCommand cmd) {
+    if (cmd.isCompactAccepted() && null == ctx.channel().attr(COMPACT_ACCEPTED).get()) {
+      ctx.channel().attr(COMPACT_ACCEPTED).set(Boolean.TRUE);
+    }
+
     final int opaque = cmd.getOpaque();
     final ResponseFuture responseFuture = responseTable.get(opaque);
     if (responseFuture != null) {
@@ -322,9 +352,18 @@ public abstract class NettyRemotingAbstract {
     }
   }
 
+  /** Switches a request to the compact header once the peer has shown that it reads it. */
+  private static void negotiateProtocolVersion(Channel channel, RemotingCommand request) {
+    if (request.isProtocolNegotiable()
+        && Boolean.TRUE.equals(channel.attr(COMPACT_ACCEPTED).get())) {
+      request.setProtocolVersion(ProtocolVersion.V_2_0.get());
+    }
+  }
+
   public RemotingCommand invokeSyncImpl(
       final Channel channel, final RemotingCommand request, final long timeoutMillis)
       throws InterruptedException, RemotingSendRequestException, RemotingTimeoutException {
+    negotiateProtocolVersion(channel, request);
     final int opaque = request.getOpaque();
 
     try {
@@ -378,6 +417,7 @@ public abstract class NettyRemotingAbstract {
       final InvokeCallback invokeCallback)
       throws InterruptedException, RemotingTooMuchRequestException, RemotingTimeoutException,
           RemotingSendRequestException {
+    negotiateProtocolVersion(channel, request);
     long beginStartTime = System.currentTimeMillis();
     final int opaque = request.getOpaque();
     boolean acquired = this.semaphoreAsync.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
@@ -473,6 +513,7 @@ public abstract class NettyRemotingAbstract {
       final Channel channel, final RemotingCommand request, final long timeoutMillis)
       throws InterruptedException, RemotingTooMuchRequestException, RemotingTimeoutException,
           RemotingSendRequestException {
+    negotiateProtocolVersion(channel, request);
     boolean acquired = this.semaphoreOneway.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
     if (acquired) {
       final SemaphoreReleaseOnlyOnce once = new SemaphoreReleaseOnlyOnce(this.semaphoreOneway);
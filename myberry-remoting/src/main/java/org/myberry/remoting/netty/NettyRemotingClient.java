@@ -44,6 +44,7 @@ import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
@@ -356,7 +357,7 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
 
     if (cw != null) {
       ChannelFuture channelFuture = cw.getChannelFuture();
-      if (channelFuture.awaitUninterruptibly(this.nettyClientConfig.getConnectTimeoutMillis())) {
+      if (awaitUninterruptibly(channelFuture, this.nettyClientConfig.getConnectTimeoutMillis())) {
         if (cw.isOK()) {
           log.info(
               "createChannel: connect remote host[{}] success, {}", addr, channelFuture.toString());
@@ -381,6 +382,34 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
     return null;
   }
 
+  /**
+   * Same as {@link ChannelFuture#awaitUninterruptibly(long)}, but waits on a latch released by a
+   * listener, the future itself waits on its monitor and would pin a virtual thread.
+   */
+  private static boolean awaitUninterruptibly(ChannelFuture channelFuture, long timeoutMillis) {
+    if (channelFuture.isDone()) {
+      return true;
+    }
+
+    CountDownLatch done = new CountDownLatch(1);
+    channelFuture.addListener(future -> done.countDown());
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          return done.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
   @Override
   public RemotingCommand invokeSync(String addr, RemotingCommand request, long timeoutMillis)
       throws InterruptedException, RemotingConnectException, RemotingSendRequestException,
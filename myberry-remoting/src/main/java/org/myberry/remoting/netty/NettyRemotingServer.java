@@ -306,6 +306,14 @@ public class NettyRemotingServer extends NettyRemotingAbstract implements Remoti
       if (this.defaultEventExecutorGroup != null) {
         this.defaultEventExecutorGroup.shutdownGracefully();
       }
+
+      if (!this.inlineRequestCodes.isEmpty()) {
+        // inline requests run on these threads, whatever they use must outlive them
+        this.eventLoopGroupSelector.terminationFuture().awaitUninterruptibly();
+        if (this.defaultEventExecutorGroup != null) {
+          this.defaultEventExecutorGroup.terminationFuture().awaitUninterruptibly();
+        }
+      }
     } catch (Exception e) {
       log.error("NettyRemotingServer shutdown exception, ", e);
     }
@@ -364,6 +372,22 @@ public class NettyRemotingServer extends NettyRemotingAbstract implements Remoti
     this.processorTable.put(requestCode, pair);
   }
 
+  @Override
+  public void registerProcessor(
+      int requestCode, NettyRequestProcessor processor, ExecutorService executor, boolean inline) {
+    if (inline && !(processor instanceof InlineRequestProcessor)) {
+      throw new IllegalArgumentException(
+          "request code " + requestCode + " can not run inline on " + processor);
+    }
+
+    this.registerProcessor(requestCode, processor, executor);
+    if (inline) {
+      this.inlineRequestCodes.add(requestCode);
+    } else {
+      this.inlineRequestCodes.remove(requestCode);
+    }
+  }
+
   @Override
   public void registerDefaultProcessor(NettyRequestProcessor processor, ExecutorService executor) {
     this.defaultRequestProcessor =
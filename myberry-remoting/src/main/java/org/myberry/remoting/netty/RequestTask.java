@@ -66,6 +66,10 @@ public class RequestTask implements Runnable {
     return createTimestamp;
   }
 
+  public RemotingCommand getRequest() {
+    return request;
+  }
+
   public boolean isStopRun() {
     return stopRun;
   }
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2021 MyBerry. All rights reserved.
+ * https://myberry.org/
+ *
+ * Modified by Apache RocketMQ.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.myberry.remoting.protocol;
+
+import io.netty.buffer.ByteBuf;
+import java.nio.charset.StandardCharsets;
+
+/** Reads what {@link CompactHeaderWriter} wrote. */
+public class CompactHeaderReader {
+
+  private final ByteBuf in;
+
+  public CompactHeaderReader(final ByteBuf in) {
+    this.in = in;
+  }
+
+  /**
+   * Consumes the ordinal of the next custom header field if it is {@code ordinal}. Fields are
+   * written in ordinal order, so a field the sender left out (null) or does not know yet is simply
+   * not there, and trailing fields unknown to this side are ignored.
+   */
+  public boolean nextField(int ordinal) {
+    if (!in.isReadable()) {
+      return false;
+    }
+    int readerIndex = in.readerIndex();
+    if (readVarint() == ordinal) {
+      return true;
+    }
+    in.readerIndex(readerIndex);
+    return false;
+  }
+
+  public String readString() {
+    int length = readVarint();
+    if (length == 0) {
+      return null;
+    }
+    String value = in.toString(in.readerIndex(), length, StandardCharsets.UTF_8);
+    in.skipBytes(length);
+    return value;
+  }
+
+  public int readInt() {
+    int value = readVarint();
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  public long readLong() {
+    long value = readVarint64();
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  public boolean readBoolean() {
+    return in.readByte() != 0;
+  }
+
+  public double readDouble() {
+    return Double.longBitsToDouble(in.readLong());
+  }
+
+  int readVarint() {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      byte b = in.readByte();
+      value |= (b & 0x7F) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+    throw new IllegalStateException("malformed varint");
+  }
+
+  long readVarint64() {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      byte b = in.readByte();
+      value |= (long) (b & 0x7F) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+    throw new IllegalStateException("malformed varint");
+  }
+}
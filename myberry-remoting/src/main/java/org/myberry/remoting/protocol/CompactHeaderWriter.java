@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2021 MyBerry. All rights reserved.
+ * https://myberry.org/
+ *
+ * Modified by Apache RocketMQ.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.myberry.remoting.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+
+/**
+ * Writes the {@link ProtocolVersion#V_2_0} header: unsigned varints for ints, zigzag varints for
+ * signed custom header fields and varint length prefixed UTF-8 strings. Custom header fields are
+ * written as {@code ordinal value} pairs, null fields are omitted.
+ */
+public class CompactHeaderWriter {
+
+  private final ByteBuf out;
+
+  public CompactHeaderWriter(final ByteBuf out) {
+    this.out = out;
+  }
+
+  public void writeString(int ordinal, String value) {
+    if (value != null) {
+      writeVarint(ordinal);
+      writeString(value);
+    }
+  }
+
+  public void writeInt(int ordinal, int value) {
+    writeVarint(ordinal);
+    writeVarint((value << 1) ^ (value >> 31));
+  }
+
+  public void writeLong(int ordinal, long value) {
+    writeVarint(ordinal);
+    writeVarint64((value << 1) ^ (value >> 63));
+  }
+
+  public void writeBoolean(int ordinal, boolean value) {
+    writeVarint(ordinal);
+    out.writeByte(value ? 1 : 0);
+  }
+
+  public void writeDouble(int ordinal, double value) {
+    writeVarint(ordinal);
+    out.writeLong(Double.doubleToRawLongBits(value));
+  }
+
+  void writeString(String value) {
+    if (value == null || value.isEmpty()) {
+      writeVarint(0);
+      return;
+    }
+    int length = ByteBufUtil.utf8Bytes(value);
+    writeVarint(length);
+    ByteBufUtil.reserveAndWriteUtf8(out, value, length);
+  }
+
+  void writeVarint(int value) {
+    while ((value & ~0x7F) != 0) {
+      out.writeByte((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+
+  void writeVarint64(long value) {
+    while ((value & ~0x7FL) != 0) {
+      out.writeByte((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.writeByte((int) value);
+  }
+}
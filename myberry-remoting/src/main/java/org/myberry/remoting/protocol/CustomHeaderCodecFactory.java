@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2021 MyBerry. All rights reserved.
+ * https://myberry.org/
+ *
+ * Modified by Apache RocketMQ.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.myberry.remoting.protocol;
+
+import org.myberry.remoting.CommandCustomHeader;
+
+/**
+ * Supplies {@link CustomHeaderCodec}s to {@link RemotingCommand}. Implementations are discovered
+ * with {@link java.util.ServiceLoader}; when none is found, or a factory returns null for a header
+ * class, the header is handled reflectively.
+ */
+public interface CustomHeaderCodecFactory {
+
+  CustomHeaderCodec getCodec(Class<? extends CommandCustomHeader> classHeader);
+}
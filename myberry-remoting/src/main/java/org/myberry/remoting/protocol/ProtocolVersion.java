@@ -22,7 +22,9 @@
 package org.myberry.remoting.protocol;
 
 public enum ProtocolVersion {
-  V_1_0((byte) 1);
+  V_1_0((byte) 1),
+  /** Ordinals and varints instead of named string ext fields, see {@link CompactHeaderWriter}. */
+  V_2_0((byte) 2);
 
   private byte version;
 
@@ -34,6 +36,10 @@ public enum ProtocolVersion {
     return version;
   }
 
+  public static boolean isCompact(byte version) {
+    return version == V_2_0.version;
+  }
+
   public static byte getLatest() {
     ProtocolVersion[] values = ProtocolVersion.values();
     return values[values.length - 1].version;
@@ -21,16 +21,28 @@
  */
 package org.myberry.remoting.protocol;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Modifier;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.myberry.remoting.CommandCustomHeader;
 import org.myberry.remoting.annotation.CFNotNull;
+import org.myberry.remoting.annotation.CFOrdinal;
 import org.myberry.remoting.common.LoggerName;
 import org.myberry.remoting.exception.RemotingCommandException;
 import org.slf4j.Logger;
@@ -40,14 +52,18 @@ public class RemotingCommand {
   private static final Logger log = LoggerFactory.getLogger(LoggerName.REMOTING_LOGGER_NAME);
 
   public static final String REMOTING_VERSION_KEY = "myberry.remoting.version";
+  public static final String PROTOCOL_VERSION_KEY = "myberry.remoting.protocolVersion";
 
   private static final int RPC_TYPE = 0; // 0, REQUEST_COMMAND
   private static final int RPC_ONEWAY = 1; // 0, RPC
+  private static final int RPC_COMPACT = 2; // 1, the sender reads ProtocolVersion.V_2_0
   private static final Map<Class<? extends CommandCustomHeader>, Field[]> CLASS_HASH_MAP =
       new HashMap<Class<? extends CommandCustomHeader>, Field[]>();
   private static final Map<Class<?>, String> CANONICAL_NAME_CACHE = new HashMap<>();
   private static final Map<Field, Annotation> NOT_NULL_ANNOTATION_CACHE =
       new HashMap<Field, Annotation>();
+  private static final ConcurrentMap<Class<?>, Optional<Field[]>> COMPACT_FIELDS_CACHE =
+      new ConcurrentHashMap<>();
   private static final String STRING_CANONICAL_NAME = String.class.getCanonicalName();
   private static final String DOUBLE_CANONICAL_NAME_1 = Double.class.getCanonicalName();
   private static final String DOUBLE_CANONICAL_NAME_2 = double.class.getCanonicalName();
@@ -57,7 +73,10 @@ public class RemotingCommand {
   private static final String LONG_CANONICAL_NAME_2 = long.class.getCanonicalName();
   private static final String BOOLEAN_CANONICAL_NAME_1 = Boolean.class.getCanonicalName();
   private static final String BOOLEAN_CANONICAL_NAME_2 = boolean.class.getCanonicalName();
+  private static final CustomHeaderCodecFactory CUSTOM_HEADER_CODEC_FACTORY =
+      loadCustomHeaderCodecFactory();
   private static volatile int configVersion = -1;
+  private static volatile byte configProtocolVersion = -1;
   private static AtomicInteger requestId = new AtomicInteger(0);
 
   private int code;
@@ -68,6 +87,10 @@ public class RemotingCommand {
   private HashMap<String, String> extFields;
   private transient CommandCustomHeader customHeader;
   private transient byte[] body;
+  private transient byte protocolVersion = ProtocolVersion.V_1_0.get();
+  // false if the protocol version is pinned by PROTOCOL_VERSION_KEY
+  private transient boolean protocolNegotiable = false;
+  private transient byte[] compactFields;
 
   protected RemotingCommand() {}
 
@@ -76,6 +99,7 @@ public class RemotingCommand {
     cmd.setCode(code);
     cmd.customHeader = customHeader;
     setCmdVersion(cmd);
+    setCmdProtocolVersion(cmd);
     return cmd;
   }
 
@@ -92,6 +116,31 @@ public class RemotingCommand {
     }
   }
 
+  /**
+   * Requests start with {@link ProtocolVersion#V_1_0}, which every peer reads, and are switched to
+   * {@link ProtocolVersion#V_2_0} per channel once the peer has answered with {@link
+   * #isCompactAccepted()}. {@link #PROTOCOL_VERSION_KEY} pins a version instead. Responses use the
+   * protocol version of their request.
+   */
+  private static void setCmdProtocolVersion(RemotingCommand cmd) {
+    byte pinned = getPinnedProtocolVersion();
+    if (pinned > 0) {
+      cmd.setProtocolVersion(pinned);
+    } else {
+      cmd.setProtocolVersion(ProtocolVersion.V_1_0.get());
+      cmd.protocolNegotiable = true;
+    }
+  }
+
+  /** The version set by {@link #PROTOCOL_VERSION_KEY}, 0 if none. */
+  private static byte getPinnedProtocolVersion() {
+    if (configProtocolVersion < 0) {
+      String v = System.getProperty(PROTOCOL_VERSION_KEY);
+      configProtocolVersion = v != null ? Byte.parseByte(v) : 0;
+    }
+    return configProtocolVersion;
+  }
+
   public static RemotingCommand createResponseCommand(
       Class<? extends CommandCustomHeader> classHeader) {
     return createResponseCommand(
@@ -102,6 +151,10 @@ public class RemotingCommand {
       int code, String remark, Class<? extends CommandCustomHeader> classHeader) {
     RemotingCommand cmd = new RemotingCommand();
     cmd.markResponseType();
+    byte pinned = getPinnedProtocolVersion();
+    if (0 == pinned || ProtocolVersion.isCompact(pinned)) {
+      cmd.markCompactAccepted();
+    }
     cmd.setCode(code);
     cmd.setRemark(remark);
     setCmdVersion(cmd);
@@ -147,36 +200,52 @@ public class RemotingCommand {
    * | Header Length | Actual Header | Actual Body |
    * |      0x04     |       ?       |      ?      |
    * +-------------------------------+-------------+
+   *
+   * The high byte of Header Length is 0 for the ext fields header and
+   * ProtocolVersion.V_2_0 for the compact header.
    */
   public static RemotingCommand decode(final ByteBuffer byteBuffer) {
-    int length = byteBuffer.limit();
-    int oriHeaderLen = byteBuffer.getInt();
-    int headerLength = getHeaderLength(oriHeaderLen);
+    return decode(Unpooled.wrappedBuffer(byteBuffer));
+  }
 
-    byte[] headerData = new byte[headerLength];
-    byteBuffer.get(headerData);
+  /**
+   * Decodes the header in place from {@code frame}, only the body and the custom fields of a
+   * compact header are copied out, so the frame can be released as soon as this returns.
+   */
+  public static RemotingCommand decode(final ByteBuf frame) {
+    int length = frame.readableBytes();
+    int oriHeaderLen = frame.readInt();
+    int headerLength = getHeaderLength(oriHeaderLen);
 
-    RemotingCommand cmd = headerDecode(headerData);
+    ByteBuf headerData = frame.readSlice(headerLength);
+    RemotingCommand cmd =
+        ProtocolVersion.isCompact(getProtocolVersion(oriHeaderLen))
+            ? RemotingSerializable.compactDecode(headerData)
+            : RemotingSerializable.decode(headerData);
 
     int bodyLength = length - 4 - headerLength;
     byte[] bodyData = null;
     if (bodyLength > 0) {
       bodyData = new byte[bodyLength];
-      byteBuffer.get(bodyData);
+      frame.readBytes(bodyData);
     }
     cmd.body = bodyData;
 
     return cmd;
   }
 
-  private static RemotingCommand headerDecode(byte[] headerData) {
-    return RemotingSerializable.decode(headerData);
-  }
-
   public static int getHeaderLength(int length) {
     return length & 0xFFFFFF;
   }
 
+  public static byte getProtocolVersion(int length) {
+    return (byte) ((length >> 24) & 0xFF);
+  }
+
+  public static int markProtocolVersion(int headerLength, byte protocolVersion) {
+    return ((protocolVersion & 0xFF) << 24) | headerLength;
+  }
+
   /*
    * +--------------+---------------+---------------+-------------+
    * | Total Length | Header Length | Actual Header | Actual Body |
@@ -188,7 +257,8 @@ public class RemotingCommand {
     int length = 4;
 
     // 2> header data length
-    byte[] headerData = this.headerEncode();
+    boolean compact = this.isCompactHeader();
+    byte[] headerData = this.headerEncode(compact);
     length += headerData.length;
 
     // 3> body data length
@@ -202,7 +272,8 @@ public class RemotingCommand {
     result.putInt(length);
 
     // header length
-    result.putInt(headerData.length);
+    result.putInt(
+        compact ? markProtocolVersion(headerData.length, protocolVersion) : headerData.length);
 
     // header data
     result.put(headerData);
@@ -217,6 +288,31 @@ public class RemotingCommand {
     return result;
   }
 
+  /** Writes the whole frame, length prefix included, straight into {@code out}. */
+  public void encode(final ByteBuf out) {
+    int beginIndex = out.writerIndex();
+    // total length and header length, set once known
+    out.writeLong(0L);
+
+    boolean compact = this.isCompactHeader();
+    if (compact) {
+      RemotingSerializable.compactEncode(this, out);
+    } else {
+      this.makeCustomHeaderToNet();
+      RemotingSerializable.encode(this, out);
+    }
+    int headerLength = out.writerIndex() - beginIndex - 8;
+
+    if (this.body != null) {
+      out.writeBytes(this.body);
+    }
+
+    out.setInt(beginIndex, out.writerIndex() - beginIndex - 4);
+    out.setInt(
+        beginIndex + 4,
+        compact ? markProtocolVersion(headerLength, protocolVersion) : headerLength);
+  }
+
   public ByteBuffer encodeHeader() {
     return encodeHeader(this.body != null ? this.body.length : 0);
   }
@@ -232,8 +328,8 @@ public class RemotingCommand {
     int length = 4;
 
     // 2> header data length
-    byte[] headerData;
-    headerData = this.headerEncode();
+    boolean compact = this.isCompactHeader();
+    byte[] headerData = this.headerEncode(compact);
 
     length += headerData.length;
 
@@ -246,7 +342,8 @@ public class RemotingCommand {
     result.putInt(length);
 
     // header length
-    result.putInt(headerData.length);
+    result.putInt(
+        compact ? markProtocolVersion(headerData.length, protocolVersion) : headerData.length);
 
     // header data
     result.put(headerData);
@@ -256,18 +353,114 @@ public class RemotingCommand {
     return result;
   }
 
-  private byte[] headerEncode() {
+  private byte[] headerEncode(boolean compact) {
+    if (compact) {
+      return RemotingSerializable.compactEncode(this);
+    }
     this.makeCustomHeaderToNet();
     return RemotingSerializable.encode(this);
   }
 
+  /**
+   * Free-form ext fields and custom headers without {@link CFOrdinal}s have no ordinals, commands
+   * carrying them keep the ext fields header.
+   */
+  private boolean isCompactHeader() {
+    return ProtocolVersion.isCompact(protocolVersion)
+        && (this.extFields == null || this.extFields.isEmpty())
+        && (this.customHeader == null || getCompactFields(customHeader.getClass()) != null);
+  }
+
+  /**
+   * The instance fields of classHeader sorted by {@link CFOrdinal}, or null if one of them has no
+   * ordinal.
+   */
+  public static Field[] getCompactFields(Class<?> classHeader) {
+    return COMPACT_FIELDS_CACHE
+        .computeIfAbsent(classHeader, clazz -> Optional.ofNullable(resolveCompactFields(clazz)))
+        .orElse(null);
+  }
+
+  private static Field[] resolveCompactFields(Class<?> classHeader) {
+    List<Field> fields = new ArrayList<>();
+    for (Field field : classHeader.getDeclaredFields()) {
+      if (Modifier.isStatic(field.getModifiers()) || field.getName().startsWith("this")) {
+        continue;
+      }
+      CFOrdinal ordinal = field.getAnnotation(CFOrdinal.class);
+      if (null == ordinal) {
+        return null;
+      }
+      if (ordinal.value() < 1) {
+        throw new IllegalStateException("ordinal of " + field + " is not positive");
+      }
+      fields.add(field);
+    }
+
+    fields.sort(Comparator.comparingInt(RemotingCommand::getOrdinal));
+    for (int i = 1; i < fields.size(); i++) {
+      if (getOrdinal(fields.get(i - 1)) == getOrdinal(fields.get(i))) {
+        throw new IllegalStateException("duplicate ordinal on " + fields.get(i));
+      }
+    }
+    return fields.toArray(new Field[0]);
+  }
+
+  public static int getOrdinal(Field field) {
+    return field.getAnnotation(CFOrdinal.class).value();
+  }
+
+  void writeCompactFields(CompactHeaderWriter writer) {
+    if (this.customHeader == null) {
+      return;
+    }
+
+    CustomHeaderCodec codec = getCustomHeaderCodec(customHeader.getClass());
+    if (codec != null) {
+      codec.writeCompact(this.customHeader, writer);
+      return;
+    }
+
+    for (Field field : getCompactFields(customHeader.getClass())) {
+      int ordinal = getOrdinal(field);
+      Object value = null;
+      try {
+        field.setAccessible(true);
+        value = field.get(this.customHeader);
+      } catch (Exception e) {
+        log.error("Failed to access field [{}]", field.getName(), e);
+      }
+
+      if (value instanceof String) {
+        writer.writeString(ordinal, (String) value);
+      } else if (value instanceof Integer) {
+        writer.writeInt(ordinal, (Integer) value);
+      } else if (value instanceof Long) {
+        writer.writeLong(ordinal, (Long) value);
+      } else if (value instanceof Boolean) {
+        writer.writeBoolean(ordinal, (Boolean) value);
+      } else if (value instanceof Double) {
+        writer.writeDouble(ordinal, (Double) value);
+      } else if (value != null) {
+        log.error("the custom field <{}> type is not supported", field.getName());
+      }
+    }
+  }
+
   public void makeCustomHeaderToNet() {
     if (this.customHeader != null) {
-      Field[] fields = getClazzFields(customHeader.getClass());
       if (null == this.extFields) {
         this.extFields = new HashMap<String, String>();
       }
 
+      CustomHeaderCodec codec = getCustomHeaderCodec(customHeader.getClass());
+      if (codec != null) {
+        codec.writeExtFields(this.customHeader, this.extFields);
+        return;
+      }
+
+      Field[] fields = getClazzFields(customHeader.getClass());
+
       for (Field field : fields) {
         if (!Modifier.isStatic(field.getModifiers())) {
           String name = field.getName();
@@ -291,6 +484,11 @@ public class RemotingCommand {
 
   public CommandCustomHeader decodeCommandCustomHeader(
       Class<? extends CommandCustomHeader> classHeader) throws RemotingCommandException {
+    CustomHeaderCodec codec = getCustomHeaderCodec(classHeader);
+    if (codec != null) {
+      return decodeCommandCustomHeader(codec);
+    }
+
     CommandCustomHeader objectHeader;
     try {
       objectHeader = classHeader.getDeclaredConstructor().newInstance();
@@ -304,7 +502,15 @@ public class RemotingCommand {
       return null;
     }
 
-    if (this.extFields != null) {
+    if (this.compactFields != null) {
+      Field[] fields = getCompactFields(classHeader);
+      if (null == fields) {
+        throw new RemotingCommandException(
+            "the custom header <" + classHeader.getName() + "> has no ordinals");
+      }
+      readCompactFields(objectHeader, fields);
+      objectHeader.checkFields();
+    } else if (this.extFields != null) {
 
       Field[] fields = getClazzFields(classHeader);
       for (Field field : fields) {
@@ -360,6 +566,94 @@ public class RemotingCommand {
     return objectHeader;
   }
 
+  private CommandCustomHeader decodeCommandCustomHeader(CustomHeaderCodec codec)
+      throws RemotingCommandException {
+    CommandCustomHeader objectHeader = codec.createInstance();
+    if (this.compactFields != null) {
+      try {
+        codec.readCompact(objectHeader, newCompactHeaderReader());
+      } catch (RuntimeException e) {
+        throw new RemotingCommandException("the custom header decoding failed", e);
+      }
+
+      objectHeader.checkFields();
+    } else if (this.extFields != null) {
+      try {
+        codec.readExtFields(objectHeader, this.extFields);
+      } catch (RuntimeException e) {
+        throw new RemotingCommandException("the custom header decoding failed", e);
+      }
+
+      objectHeader.checkFields();
+    }
+
+    return objectHeader;
+  }
+
+  private CompactHeaderReader newCompactHeaderReader() {
+    return new CompactHeaderReader(Unpooled.wrappedBuffer(this.compactFields));
+  }
+
+  private void readCompactFields(CommandCustomHeader objectHeader, Field[] fields)
+      throws RemotingCommandException {
+    CompactHeaderReader reader = newCompactHeaderReader();
+    for (Field field : fields) {
+      int ordinal = getOrdinal(field);
+      String fieldName = field.getName();
+      if (!reader.nextField(ordinal)) {
+        if (getNotNullAnnotation(field) != null) {
+          throw new RemotingCommandException("the custom field <" + fieldName + "> is null");
+        }
+        continue;
+      }
+
+      Class<?> type = field.getType();
+      Object valueParsed;
+      if (type == String.class) {
+        valueParsed = reader.readString();
+      } else if (type == Integer.class || type == int.class) {
+        valueParsed = reader.readInt();
+      } else if (type == Long.class || type == long.class) {
+        valueParsed = reader.readLong();
+      } else if (type == Boolean.class || type == boolean.class) {
+        valueParsed = reader.readBoolean();
+      } else if (type == Double.class || type == double.class) {
+        valueParsed = reader.readDouble();
+      } else {
+        throw new RemotingCommandException(
+            "the custom field <" + fieldName + "> type is not supported");
+      }
+
+      try {
+        field.setAccessible(true);
+        field.set(objectHeader, valueParsed);
+      } catch (Throwable e) {
+        log.error("Failed field [{}] decoding", fieldName, e);
+      }
+    }
+  }
+
+  private static CustomHeaderCodecFactory loadCustomHeaderCodecFactory() {
+    try {
+      Iterator<CustomHeaderCodecFactory> it =
+          ServiceLoader.load(CustomHeaderCodecFactory.class, RemotingCommand.class.getClassLoader())
+              .iterator();
+      if (it.hasNext()) {
+        return it.next();
+      }
+    } catch (ServiceConfigurationError e) {
+      log.warn("Failed to load CustomHeaderCodecFactory, falling back to reflection", e);
+    }
+    return null;
+  }
+
+  private static CustomHeaderCodec getCustomHeaderCodec(
+      Class<? extends CommandCustomHeader> classHeader) {
+    return CUSTOM_HEADER_CODEC_FACTORY == null
+        ? null
+        : CUSTOM_HEADER_CODEC_FACTORY.getCodec(classHeader);
+  }
+
   private Field[] getClazzFields(Class<? extends CommandCustomHeader> classHeader) {
     Field[] field = CLASS_HASH_MAP.get(classHeader);
 
@@ -408,6 +702,22 @@ public class RemotingCommand {
     return requestId.incrementAndGet();
   }
 
+  public byte getProtocolVersion() {
+    return protocolVersion;
+  }
+
+  public void setProtocolVersion(byte protocolVersion) {
+    this.protocolVersion = protocolVersion;
+  }
+
+  public boolean isProtocolNegotiable() {
+    return protocolNegotiable;
+  }
+
+  void setCompactFields(byte[] compactFields) {
+    this.compactFields = compactFields;
+  }
+
   public RemotingCommandType getType() {
     if (this.isResponseType()) {
       return RemotingCommandType.RESPONSE_COMMAND;
@@ -436,6 +746,17 @@ public class RemotingCommand {
     return (this.flag & bits) == bits;
   }
 
+  public void markCompactAccepted() {
+    int bits = 1 << RPC_COMPACT;
+    this.flag |= bits;
+  }
+
+  /** Set on the responses of a peer that reads {@link ProtocolVersion#V_2_0} requests. */
+  public boolean isCompactAccepted() {
+    int bits = 1 << RPC_COMPACT;
+    return (this.flag & bits) == bits;
+  }
+
   public int getCode() {
     return code;
   }
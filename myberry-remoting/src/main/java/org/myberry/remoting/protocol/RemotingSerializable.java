@@ -21,6 +21,9 @@
  */
 package org.myberry.remoting.protocol;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.HashMap;
@@ -77,6 +80,85 @@ public class RemotingSerializable {
     return headerBuffer.array();
   }
 
+  /*
+   * +-------------+----------------+---------------+------------+----------------+---------------+
+   * | code varint | version varint | opaque varint | flag varint| remark varint+?| custom fields |
+   * +-------------+----------------+---------------+------------+----------------+---------------+
+   */
+  public static byte[] compactEncode(RemotingCommand cmd) {
+    ByteBuf headerBuffer = Unpooled.buffer(64);
+    compactEncode(cmd, headerBuffer);
+    byte[] headerData = new byte[headerBuffer.readableBytes()];
+    headerBuffer.readBytes(headerData);
+    return headerData;
+  }
+
+  public static void compactEncode(RemotingCommand cmd, ByteBuf out) {
+    CompactHeaderWriter writer = new CompactHeaderWriter(out);
+    writer.writeVarint(cmd.getCode());
+    writer.writeVarint(cmd.getVersion());
+    writer.writeVarint(cmd.getOpaque());
+    writer.writeVarint(cmd.getFlag());
+    writer.writeString(cmd.getRemark());
+    cmd.writeCompactFields(writer);
+  }
+
+  public static RemotingCommand compactDecode(final ByteBuf in) {
+    RemotingCommand cmd = new RemotingCommand();
+    CompactHeaderReader reader = new CompactHeaderReader(in);
+    cmd.setCode(reader.readVarint());
+    cmd.setVersion(reader.readVarint());
+    cmd.setOpaque(reader.readVarint());
+    cmd.setFlag(reader.readVarint());
+    cmd.setRemark(reader.readString());
+    cmd.setProtocolVersion(ProtocolVersion.V_2_0.get());
+    if (in.isReadable()) {
+      byte[] compactFields = new byte[in.readableBytes()];
+      in.readBytes(compactFields);
+      cmd.setCompactFields(compactFields);
+    }
+    return cmd;
+  }
+
+  /** Same layout as {@link #encode(RemotingCommand)}, written straight into {@code out}. */
+  public static void encode(RemotingCommand cmd, ByteBuf out) {
+    // int code(~32767)
+    out.writeShort((short) cmd.getCode());
+    // int version(~32767)
+    out.writeShort((short) cmd.getVersion());
+    // int opaque
+    out.writeInt(cmd.getOpaque());
+    // int flag
+    out.writeInt(cmd.getFlag());
+    // String remark
+    String remark = cmd.getRemark();
+    if (remark != null && remark.length() > 0) {
+      int remarkLen = ByteBufUtil.utf8Bytes(remark);
+      out.writeInt(remarkLen);
+      ByteBufUtil.reserveAndWriteUtf8(out, remark, remarkLen);
+    } else {
+      out.writeInt(0);
+    }
+    // HashMap<String, String> extFields
+    int extLenIndex = out.writerIndex();
+    out.writeInt(0);
+    HashMap<String, String> extFields = cmd.getExtFields();
+    if (extFields != null && !extFields.isEmpty()) {
+      for (Map.Entry<String, String> entry : extFields.entrySet()) {
+        if (entry.getKey() != null && entry.getValue() != null) {
+          int keyLen = ByteBufUtil.utf8Bytes(entry.getKey());
+          out.writeShort(keyLen);
+          ByteBufUtil.reserveAndWriteUtf8(out, entry.getKey(), keyLen);
+
+          int valLen = ByteBufUtil.utf8Bytes(entry.getValue());
+          out.writeInt(valLen);
+          ByteBufUtil.reserveAndWriteUtf8(out, entry.getValue(), valLen);
+        }
+      }
+      out.setInt(extLenIndex, out.writerIndex() - extLenIndex - 4);
+    }
+  }
+
   public static byte[] mapSerialize(HashMap<String, String> map) {
     // keySize+key+valSize+val
     if (null == map || map.isEmpty()) return null;
@@ -138,34 +220,49 @@ public class RemotingSerializable {
   }
 
   public static RemotingCommand decode(final byte[] headerArray) {
+    return decode(Unpooled.wrappedBuffer(headerArray));
+  }
+
+  public static RemotingCommand decode(final ByteBuf in) {
     RemotingCommand cmd = new RemotingCommand();
-    ByteBuffer headerBuffer = ByteBuffer.wrap(headerArray);
     // int code(~32767)
-    cmd.setCode(headerBuffer.getShort());
+    cmd.setCode(in.readShort());
     // int version(~32767)
-    cmd.setVersion(headerBuffer.getShort());
+    cmd.setVersion(in.readShort());
     // int opaque
-    cmd.setOpaque(headerBuffer.getInt());
+    cmd.setOpaque(in.readInt());
     // int flag
-    cmd.setFlag(headerBuffer.getInt());
+    cmd.setFlag(in.readInt());
     // String remark
-    int remarkLength = headerBuffer.getInt();
+    int remarkLength = in.readInt();
     if (remarkLength > 0) {
-      byte[] remarkContent = new byte[remarkLength];
-      headerBuffer.get(remarkContent);
-      cmd.setRemark(new String(remarkContent, CHARSET_UTF8));
+      cmd.setRemark(readUtf8(in, remarkLength));
     }
 
     // HashMap<String, String> extFields
-    int extFieldsLength = headerBuffer.getInt();
+    int extFieldsLength = in.readInt();
     if (extFieldsLength > 0) {
-      byte[] extFieldsBytes = new byte[extFieldsLength];
-      headerBuffer.get(extFieldsBytes);
-      cmd.setExtFields(mapDeserialize(extFieldsBytes));
+      cmd.setExtFields(mapDeserialize(in.readSlice(extFieldsLength)));
     }
     return cmd;
   }
 
+  public static HashMap<String, String> mapDeserialize(ByteBuf in) {
+    HashMap<String, String> map = new HashMap<String, String>();
+    while (in.isReadable()) {
+      String key = readUtf8(in, in.readShort());
+      String val = readUtf8(in, in.readInt());
+      map.put(key, val);
+    }
+    return map;
+  }
+
+  private static String readUtf8(ByteBuf in, int length) {
+    String value = in.toString(in.readerIndex(), length, CHARSET_UTF8);
+    in.skipBytes(length);
+    return value;
+  }
+
   public static HashMap<String, String> mapDeserialize(byte[] bytes) {
     if (bytes == null || bytes.length <= 0) return null;
 
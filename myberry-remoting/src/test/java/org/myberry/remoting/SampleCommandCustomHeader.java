@@ -21,12 +21,16 @@
  */
 package org.myberry.remoting;
 
+import org.myberry.remoting.annotation.CFOrdinal;
 import org.myberry.remoting.exception.RemotingCommandException;
 
 public class SampleCommandCustomHeader implements CommandCustomHeader {
 
+  @CFOrdinal(1)
   private int id;
+  @CFOrdinal(2)
   private String name;
+  @CFOrdinal(3)
   private boolean flag;
 
   @Override
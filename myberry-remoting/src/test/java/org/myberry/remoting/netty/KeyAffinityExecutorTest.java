@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2021 MyBerry. All rights reserved.
+ * https://myberry.org/
+ *
+ * Modified by Apache RocketMQ.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.myberry.remoting.netty;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.myberry.remoting.protocol.RemotingCommand;
+
+public class KeyAffinityExecutorTest {
+
+  @Test
+  public void testSameKeySameLane() throws Exception {
+    KeyAffinityExecutor executor = newExecutor(4, 1000);
+    Map<String, List<String>> threads = new ConcurrentHashMap<>();
+    Map<String, List<Integer>> orders = new ConcurrentHashMap<>();
+    String[] keys = {"key1", "key2", "key3", "key4", "key5"};
+    CountDownLatch done = new CountDownLatch(keys.length * 100);
+
+    for (int i = 0; i < 100; i++) {
+      for (String key : keys) {
+        int seq = i;
+        executor.submit(
+            newRequestTask(
+                key,
+                () -> {
+                  threads
+                      .computeIfAbsent(key, k -> new ArrayList<>())
+                      .add(Thread.currentThread().getName());
+                  orders.computeIfAbsent(key, k -> new ArrayList<>()).add(seq);
+                  done.countDown();
+                }));
+      }
+    }
+
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    for (String key : keys) {
+      assertEquals(1, threads.get(key).stream().distinct().count());
+      for (int i = 0; i < 100; i++) {
+        assertEquals(i, orders.get(key).get(i).intValue());
+      }
+    }
+
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(3, TimeUnit.SECONDS));
+    assertTrue(executor.isTerminated());
+  }
+
+  @Test
+  public void testRejectWhenLaneFull() throws Exception {
+    KeyAffinityExecutor executor = newExecutor(1, 2);
+    CountDownLatch blocked = new CountDownLatch(1);
+    CountDownLatch started = new CountDownLatch(1);
+    executor.submit(
+        newRequestTask(
+            "key",
+            () -> {
+              started.countDown();
+              try {
+                blocked.await();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            }));
+    assertTrue(started.await(3, TimeUnit.SECONDS));
+
+    executor.submit(newRequestTask("key", () -> {}));
+    executor.submit(newRequestTask("key", () -> {}));
+    try {
+      executor.submit(newRequestTask("key", () -> {}));
+      fail("the lane is full");
+    } catch (RejectedExecutionException expected) {
+    }
+
+    blocked.countDown();
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(3, TimeUnit.SECONDS));
+    try {
+      executor.submit(newRequestTask("key", () -> {}));
+      fail("the executor is shut down");
+    } catch (RejectedExecutionException expected) {
+    }
+  }
+
+  private static KeyAffinityExecutor newExecutor(int laneNums, int laneCapacity) {
+    return new KeyAffinityExecutor(
+        laneNums,
+        laneCapacity,
+        Thread::new,
+        request -> request.getExtFields() == null ? null : request.getExtFields().get("key"));
+  }
+
+  private static RequestTask newRequestTask(String key, Runnable runnable) {
+    RemotingCommand request = RemotingCommand.createRequestCommand(0, null);
+    HashMap<String, String> extFields = new HashMap<>();
+    extFields.put("key", key);
+    request.setExtFields(extFields);
+    return new RequestTask(runnable, null, request);
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2021 MyBerry. All rights reserved.
+ * https://myberry.org/
+ *
+ * Modified by Apache RocketMQ.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.myberry.remoting.netty;
+
+import static org.junit.Assert.*;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.myberry.remoting.protocol.ProtocolVersion;
+import org.myberry.remoting.protocol.RemotingCommand;
+
+public class NettyRemotingServerTest {
+
+  private static final int REQUEST_CODE = 1;
+
+  private NettyRemotingServer remotingServer;
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    remotingServer = new NettyRemotingServer(new NettyServerConfig());
+    executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "RequestThread"));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(3, TimeUnit.SECONDS));
+    remotingServer.shutdown();
+  }
+
+  @Test
+  public void testInlineRequest() throws Exception {
+    SampleInlineProcessor processor = new SampleInlineProcessor(true);
+    remotingServer.registerProcessor(REQUEST_CODE, processor, executor, true);
+    EmbeddedChannel channel = new EmbeddedChannel(remotingServer.new NettyServerHandler());
+
+    RemotingCommand request = RemotingCommand.createRequestCommand(REQUEST_CODE, null);
+    channel.writeInbound(request);
+
+    assertEquals(Thread.currentThread(), processor.processThread.get());
+    RemotingCommand response = channel.readOutbound();
+    assertNotNull(response);
+    assertTrue(response.isResponseType());
+    assertEquals(request.getOpaque(), response.getOpaque());
+    channel.finishAndReleaseAll();
+  }
+
+  @Test
+  public void testFallbackToExecutor() throws Exception {
+    SampleInlineProcessor processor = new SampleInlineProcessor(false);
+    remotingServer.registerProcessor(REQUEST_CODE, processor, executor, true);
+    EmbeddedChannel channel = new EmbeddedChannel(remotingServer.new NettyServerHandler());
+
+    channel.writeInbound(RemotingCommand.createRequestCommand(REQUEST_CODE, null));
+    executor.submit(() -> {}).get(3, TimeUnit.SECONDS);
+
+    assertEquals("RequestThread", processor.processThread.get().getName());
+    channel.finishAndReleaseAll();
+  }
+
+  @Test
+  public void testNotInlineRegistered() throws Exception {
+    SampleInlineProcessor processor = new SampleInlineProcessor(true);
+    remotingServer.registerProcessor(REQUEST_CODE, processor, executor, true);
+    remotingServer.registerProcessor(REQUEST_CODE, processor, executor, false);
+    EmbeddedChannel channel = new EmbeddedChannel(remotingServer.new NettyServerHandler());
+
+    channel.writeInbound(RemotingCommand.createRequestCommand(REQUEST_CODE, null));
+    executor.submit(() -> {}).get(3, TimeUnit.SECONDS);
+
+    assertEquals("RequestThread", processor.processThread.get().getName());
+    channel.finishAndReleaseAll();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInlineNeedsInlineProcessor() {
+    NettyRequestProcessor processor =
+        new NettyRequestProcessor() {
+          @Override
+          public RemotingCommand processRequest(ChannelHandlerContext ctx, RemotingCommand request) {
+            return null;
+          }
+
+          @Override
+          public boolean rejectRequest() {
+            return false;
+          }
+        };
+    remotingServer.registerProcessor(REQUEST_CODE, processor, executor, true);
+  }
+
+  @Test
+  public void testNegotiateProtocolVersion() throws Exception {
+    EmbeddedChannel channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+
+    RemotingCommand request = RemotingCommand.createRequestCommand(REQUEST_CODE, null);
+    remotingServer.invokeOnewayImpl(channel, request, 1000);
+    assertEquals(ProtocolVersion.V_1_0.get(), request.getProtocolVersion());
+
+    remotingServer.processResponseCommand(
+        channel.pipeline().firstContext(), RemotingCommand.createResponseCommand(0, null));
+    request = RemotingCommand.createRequestCommand(REQUEST_CODE, null);
+    remotingServer.invokeOnewayImpl(channel, request, 1000);
+    assertEquals(ProtocolVersion.V_2_0.get(), request.getProtocolVersion());
+    channel.finishAndReleaseAll();
+  }
+
+  static class SampleInlineProcessor implements InlineRequestProcessor {
+
+    private final boolean inline;
+    private final AtomicReference<Thread> processThread = new AtomicReference<>();
+
+    SampleInlineProcessor(boolean inline) {
+      this.inline = inline;
+    }
+
+    @Override
+    public boolean acceptInline(ChannelHandlerContext ctx, RemotingCommand request) {
+      return inline;
+    }
+
+    @Override
+    public RemotingCommand processRequest(ChannelHandlerContext ctx, RemotingCommand request) {
+      processThread.set(Thread.currentThread());
+      return RemotingCommand.createResponseCommand(0, null);
+    }
+
+    @Override
+    public boolean rejectRequest() {
+      return false;
+    }
+  }
+}
@@ -23,9 +23,13 @@ package org.myberry.remoting.protocol;
 
 import static org.junit.Assert.*;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
 import org.junit.Test;
 import org.myberry.remoting.CommandCustomHeader;
 import org.myberry.remoting.SampleCommandCustomHeader;
+import org.myberry.remoting.annotation.CFOrdinal;
+import org.myberry.remoting.exception.RemotingCommandException;
 
 public class RemotingCommandTest {
 
@@ -52,6 +56,92 @@ public class RemotingCommandTest {
     assertEquals(code, cmd.getCode());
     assertEquals(4753, cmd.getVersion());
     assertEquals(remark, cmd.getRemark());
-    assertEquals(1, cmd.getFlag());
+    assertTrue(cmd.isResponseType());
+    assertTrue(cmd.isCompactAccepted());
+  }
+
+  @Test
+  public void testCompactFieldsByOrdinal() throws Exception {
+    ReorderedHeader header = new ReorderedHeader();
+    header.name = "berry";
+    header.id = 9;
+
+    RemotingCommand cmd = RemotingCommand.createRequestCommand(256, header);
+    cmd.setProtocolVersion(ProtocolVersion.V_2_0.get());
+    RemotingCommand decoded = RemotingCommand.decode(cmd.encode().position(4));
+    assertEquals(ProtocolVersion.V_2_0.get(), decoded.getProtocolVersion());
+
+    // same ordinals, another declaration order
+    SampleCommandCustomHeader decodedHeader =
+        (SampleCommandCustomHeader)
+            decoded.decodeCommandCustomHeader(SampleCommandCustomHeader.class);
+    assertEquals(9, decodedHeader.getId());
+    assertEquals("berry", decodedHeader.getName());
+  }
+
+  @Test
+  public void testHeaderWithoutOrdinals() {
+    RemotingCommand cmd = RemotingCommand.createRequestCommand(256, new UnorderedHeader());
+    cmd.setProtocolVersion(ProtocolVersion.V_2_0.get());
+    assertNull(RemotingCommand.getCompactFields(UnorderedHeader.class));
+    assertEquals(0, RemotingCommand.getProtocolVersion(cmd.encode().getInt(4)));
+  }
+
+  public static class ReorderedHeader implements CommandCustomHeader {
+
+    @CFOrdinal(2)
+    private String name;
+
+    @CFOrdinal(1)
+    private int id;
+
+    @Override
+    public void checkFields() throws RemotingCommandException {}
+  }
+
+  public static class UnorderedHeader implements CommandCustomHeader {
+
+    private String name;
+
+    @Override
+    public void checkFields() throws RemotingCommandException {}
+  }
+
+  @Test
+  public void testEncodeDecodeByteBuf() throws Exception {
+    SampleCommandCustomHeader header = new SampleCommandCustomHeader();
+    header.setId(7);
+    header.setName("\u6843");
+    header.setFlag(true);
+
+    for (ProtocolVersion protocolVersion : ProtocolVersion.values()) {
+      RemotingCommand cmd = RemotingCommand.createRequestCommand(256, header);
+      cmd.setProtocolVersion(protocolVersion.get());
+      cmd.setRemark("remark");
+      cmd.setBody(new byte[] {1, 2, 3});
+
+      ByteBuf out = PooledByteBufAllocator.DEFAULT.directBuffer();
+      try {
+        cmd.encode(out);
+        assertEquals(cmd.encode(), out.nioBuffer());
+
+        out.skipBytes(4);
+        RemotingCommand decoded = RemotingCommand.decode(out);
+        assertFalse(out.isReadable());
+        assertEquals(256, decoded.getCode());
+        assertEquals(cmd.getOpaque(), decoded.getOpaque());
+        assertEquals("remark", decoded.getRemark());
+        assertArrayEquals(new byte[] {1, 2, 3}, decoded.getBody());
+
+        SampleCommandCustomHeader decodedHeader =
+            (SampleCommandCustomHeader)
+                decoded.decodeCommandCustomHeader(SampleCommandCustomHeader.class);
+        assertEquals(7, decodedHeader.getId());
+        assertEquals("\u6843", decodedHeader.getName());
+        assertTrue(decodedHeader.isFlag());
+      } finally {
+        out.release();
+      }
+    }
   }
 }
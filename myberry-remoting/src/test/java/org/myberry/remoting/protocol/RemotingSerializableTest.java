@@ -21,6 +21,8 @@
  */
 package org.myberry.remoting.protocol;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import java.nio.ByteBuffer;
 import org.junit.Assert;
 import org.junit.Test;
@@ -60,4 +62,75 @@ public class RemotingSerializableTest {
     Assert.assertEquals(name, commandHeader.getName());
     Assert.assertEquals(flag, commandHeader.isFlag());
   }
+
+  @Test
+  public void testCompactEncode2Decode() throws Exception {
+    SampleCommandCustomHeader header = new SampleCommandCustomHeader();
+    header.setId(-3);
+    header.setName("John");
+    header.setFlag(true);
+
+    RemotingCommand requestCommand = RemotingCommand.createRequestCommand(111, header);
+    requestCommand.setRemark("compact");
+    // V_1_0 until the peer has shown that it reads V_2_0
+    Assert.assertEquals(ProtocolVersion.V_1_0.get(), requestCommand.getProtocolVersion());
+    Assert.assertTrue(requestCommand.isProtocolNegotiable());
+    requestCommand.setProtocolVersion(ProtocolVersion.V_2_0.get());
+    byte[] compactBytes = frame(requestCommand.encode());
+
+    requestCommand.setProtocolVersion(ProtocolVersion.V_1_0.get());
+    byte[] legacyBytes = frame(requestCommand.encode());
+    Assert.assertTrue(compactBytes.length < legacyBytes.length);
+
+    for (byte[] bytes : new byte[][] {compactBytes, legacyBytes}) {
+      RemotingCommand command = RemotingCommand.decode(ByteBuffer.wrap(bytes));
+      Assert.assertEquals(111, command.getCode());
+      Assert.assertEquals(requestCommand.getOpaque(), command.getOpaque());
+      Assert.assertEquals("compact", command.getRemark());
+
+      SampleCommandCustomHeader commandHeader =
+          (SampleCommandCustomHeader)
+              command.decodeCommandCustomHeader(SampleCommandCustomHeader.class);
+      Assert.assertEquals(-3, commandHeader.getId());
+      Assert.assertEquals("John", commandHeader.getName());
+      Assert.assertTrue(commandHeader.isFlag());
+    }
+    Assert.assertEquals(
+        ProtocolVersion.V_2_0.get(),
+        RemotingCommand.decode(ByteBuffer.wrap(compactBytes)).getProtocolVersion());
+    Assert.assertEquals(
+        ProtocolVersion.V_1_0.get(),
+        RemotingCommand.decode(ByteBuffer.wrap(legacyBytes)).getProtocolVersion());
+  }
+
+  @Test
+  public void testCompactVarint() {
+    ByteBuf buf = Unpooled.buffer();
+    CompactHeaderWriter writer = new CompactHeaderWriter(buf);
+    writer.writeInt(1, Integer.MIN_VALUE);
+    writer.writeLong(2, Long.MAX_VALUE);
+    writer.writeString(3, null);
+    writer.writeDouble(4, 0.5D);
+    writer.writeString(5, "\u6843");
+
+    CompactHeaderReader reader = new CompactHeaderReader(buf);
+    Assert.assertTrue(reader.nextField(1));
+    Assert.assertEquals(Integer.MIN_VALUE, reader.readInt());
+    Assert.assertTrue(reader.nextField(2));
+    Assert.assertEquals(Long.MAX_VALUE, reader.readLong());
+    Assert.assertFalse(reader.nextField(3));
+    Assert.assertTrue(reader.nextField(4));
+    Assert.assertEquals(0.5D, reader.readDouble(), 0D);
+    Assert.assertTrue(reader.nextField(5));
+    Assert.assertEquals("\u6843", reader.readString());
+    Assert.assertFalse(reader.nextField(6));
+  }
+
+  private static byte[] frame(ByteBuffer byteBuffer) {
+    // offset 4 due to LengthFieldBasedFrameDecoder
+    byteBuffer.getInt();
+    byte[] bytes = new byte[byteBuffer.remaining()];
+    byteBuffer.get(bytes);
+    return bytes;
+  }
 }
@@ -41,10 +41,15 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import org.myberry.common.ThreadFactoryImpl;
+import org.myberry.common.VirtualThreads;
 import org.myberry.common.protocol.RequestCode;
 import org.myberry.remoting.RemotingServer;
+import org.myberry.remoting.exception.RemotingCommandException;
+import org.myberry.remoting.netty.KeyAffinityExecutor;
 import org.myberry.remoting.netty.NettyRemotingServer;
 import org.myberry.remoting.netty.NettyServerConfig;
+import org.myberry.remoting.protocol.RemotingCommand;
+import org.myberry.server.common.LoggerName;
 import org.myberry.server.config.ServerConfig;
 import org.myberry.server.converter.ConverterService;
 import org.myberry.server.ha.HANotifier;
@@ -56,9 +61,13 @@ import org.myberry.server.processor.UserRequestProcessor;
 import org.myberry.store.DefaultMyberryStore;
 import org.myberry.store.MyberryStore;
 import org.myberry.store.config.StoreConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class ServerController {
 
+  private static final Logger log = LoggerFactory.getLogger(LoggerName.SERVICE_LOGGER_NAME);
+
   private final ServerConfig serverConfig;
   private final NettyServerConfig nettyServerConfig;
   private final StoreConfig storeConfig;
@@ -119,25 +128,44 @@ public class ServerController {
 
     if (result) {
       this.remotingServer = new NettyRemotingServer(nettyServerConfig);
-      this.userManageExecutor =
-          new ThreadPoolExecutor( //
-              this.serverConfig.getUserManageThreadPoolNums(), //
-              this.serverConfig.getUserManageThreadPoolNums(), //
-              1000 * 60, //
-              TimeUnit.MILLISECONDS, //
-              userManagerThreadPoolQueue, //
-              new ThreadFactoryImpl("UserManageThread_") //
-              );
+      if (this.serverConfig.isUserRequestLaneEnable()) {
+        int laneCapacity =
+            this.serverConfig.getUserManagerThreadPoolQueueCapacity()
+                / this.serverConfig.getUserManageThreadPoolNums();
+        this.userManageExecutor =
+            new KeyAffinityExecutor( //
+                this.serverConfig.getUserManageThreadPoolNums(), //
+                Math.max(1, laneCapacity), //
+                new ThreadFactoryImpl("UserManageLane_"), //
+                ServerController::requestKey //
+                );
+      } else {
+        this.userManageExecutor = this.newVirtualThreadExecutor("UserManageVirtualThread_");
+      }
+      if (null == this.userManageExecutor) {
+        this.userManageExecutor =
+            new ThreadPoolExecutor( //
+                this.serverConfig.getUserManageThreadPoolNums(), //
+                this.serverConfig.getUserManageThreadPoolNums(), //
+                1000 * 60, //
+                TimeUnit.MILLISECONDS, //
+                userManagerThreadPoolQueue, //
+                new ThreadFactoryImpl("UserManageThread_") //
+                );
+      }
 
-      this.clientManageExecutor =
-          new ThreadPoolExecutor( //
-              this.serverConfig.getClientManageThreadPoolNums(), //
-              this.serverConfig.getClientManageThreadPoolNums(), //
-              1000 * 60, //
-              TimeUnit.MILLISECONDS, //
-              this.clientManagerThreadPoolQueue, //
-              new ThreadFactoryImpl("ClientManageThread_") //
-              );
+      this.clientManageExecutor = this.newVirtualThreadExecutor("ClientManageVirtualThread_");
+      if (null == this.clientManageExecutor) {
+        this.clientManageExecutor =
+            new ThreadPoolExecutor( //
+                this.serverConfig.getClientManageThreadPoolNums(), //
+                this.serverConfig.getClientManageThreadPoolNums(), //
+                1000 * 60, //
+                TimeUnit.MILLISECONDS, //
+                this.clientManagerThreadPoolQueue, //
+                new ThreadFactoryImpl("ClientManageThread_") //
+                );
+      }
 
       this.adminManageExecutor =
           new ThreadPoolExecutor( //
@@ -160,6 +188,12 @@ public class ServerController {
     this.remotingServer.registerProcessor( //
         RequestCode.PULL_ID, //
         userRequestProcessor, //
+        userManageExecutor, //
+        this.isUserRequestInline() //
+        );
+    this.remotingServer.registerProcessor( //
+        RequestCode.PULL_ID_BATCH, //
+        userRequestProcessor, //
         userManageExecutor //
         );
 
@@ -177,6 +211,44 @@ public class ServerController {
     this.remotingServer.registerDefaultProcessor(adminRequestProcessor, adminManageExecutor);
   }
 
+  /**
+   * An inline request would skip the lane of its key, and a combined pull may park the IO thread
+   * until the pull that advances the counter is done, so inline is refused with either of them.
+   */
+  private boolean isUserRequestInline() {
+    if (!this.serverConfig.isUserRequestInlineEnable()) {
+      return false;
+    }
+    if (this.serverConfig.isUserRequestLaneEnable() || this.storeConfig.isPullCombineEnable()) {
+      log.warn(
+          "userRequestInlineEnable is ignored together with userRequestLaneEnable"
+              + " or pullCombineEnable");
+      return false;
+    }
+    return true;
+  }
+
+  /** @return null if virtual threads are disabled or not supported by the JVM */
+  private ExecutorService newVirtualThreadExecutor(String threadNamePrefix) {
+    if (!this.serverConfig.isVirtualThreadEnable()) {
+      return null;
+    }
+    return VirtualThreads.newVirtualThreadPerTaskExecutor(threadNamePrefix);
+  }
+
+  /**
+   * The key of an id request, decoded once on the IO thread and kept on the command, so the
+   * processor does not decode it again.
+   */
+  private static String requestKey(RemotingCommand request) {
+    try {
+      return UserRequestProcessor.decodeRequestHeader(request).getKey();
+    } catch (RemotingCommandException e) {
+      // the processor fails it again and answers the error
+      return null;
+    }
+  }
+
   public void start() throws Exception {
     if (this.myberryStore != null) {
       this.myberryStore.start();
@@ -204,6 +276,11 @@ public class ServerController {
       this.remotingServer.shutdown();
     }
 
+    // the store takes no lock on counter writes, drain the request threads before it unmaps
+    this.shutdownExecutor(this.userManageExecutor);
+    this.shutdownExecutor(this.clientManageExecutor);
+    this.shutdownExecutor(this.adminManageExecutor);
+
     if (this.haService != null) {
       this.haService.shutdown();
     }
@@ -219,17 +296,18 @@ public class ServerController {
     if (this.myberryStore != null) {
       this.myberryStore.shutdown();
     }
+  }
 
-    if (this.userManageExecutor != null) {
-      this.userManageExecutor.shutdown();
-    }
-
-    if (this.clientManageExecutor != null) {
-      this.clientManageExecutor.shutdown();
-    }
-
-    if (this.adminManageExecutor != null) {
-      this.adminManageExecutor.shutdown();
+  private void shutdownExecutor(ExecutorService executorService) {
+    if (executorService != null) {
+      executorService.shutdown();
+      try {
+        if (!executorService.awaitTermination(3000, TimeUnit.MILLISECONDS)) {
+          log.warn("executor did not terminate in time");
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
     }
   }
 
@@ -58,6 +58,22 @@ public class ServerConfig {
   private int userManagerThreadPoolQueueCapacity = 100000;
   private int clientManagerThreadPoolQueueCapacity = 1000;
   private int adminManagerThreadPoolQueueCapacity = 10;
+  /**
+   * Run the id requests of the same key on the same one of userManageThreadPoolNums threads, each
+   * queueing at most its share of userManagerThreadPoolQueueCapacity, instead of sharing one pool.
+   */
+  private boolean userRequestLaneEnable = false;
+  /**
+   * Run the user and client requests on a virtual thread per request instead of the fixed pools,
+   * on Java 21+ only. The queue capacities do not apply then, and userRequestLaneEnable wins.
+   */
+  private boolean virtualThreadEnable = false;
+  /**
+   * Run a PULL_ID of an NS key or of a CR key without $dynamic placeholders on the IO thread that
+   * read it, as long as the store does not signal write back-pressure, so only ASYNC_FLUSH ever
+   * takes this path. Ignored with userRequestLaneEnable or pullCombineEnable.
+   */
+  private boolean userRequestInlineEnable = false;
 
   private int haHousekeepingInterval = 1000 * 60 * 3;
 
@@ -143,6 +159,30 @@ public class ServerConfig {
     this.adminManagerThreadPoolQueueCapacity = adminManagerThreadPoolQueueCapacity;
   }
 
+  public boolean isUserRequestLaneEnable() {
+    return userRequestLaneEnable;
+  }
+
+  public void setUserRequestLaneEnable(boolean userRequestLaneEnable) {
+    this.userRequestLaneEnable = userRequestLaneEnable;
+  }
+
+  public boolean isVirtualThreadEnable() {
+    return virtualThreadEnable;
+  }
+
+  public void setVirtualThreadEnable(boolean virtualThreadEnable) {
+    this.virtualThreadEnable = virtualThreadEnable;
+  }
+
+  public boolean isUserRequestInlineEnable() {
+    return userRequestInlineEnable;
+  }
+
+  public void setUserRequestInlineEnable(boolean userRequestInlineEnable) {
+    this.userRequestInlineEnable = userRequestInlineEnable;
+  }
+
   public int getHaHousekeepingInterval() {
     return haHousekeepingInterval;
   }
@@ -35,16 +35,13 @@
 */
 package org.myberry.server.converter;
 
-import java.util.Iterator;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import org.myberry.common.expression.impl.ExpressionParser;
 import org.myberry.server.expression.ConverterManager;
 import org.myberry.server.expression.ExpressionConverterFactory;
 import org.myberry.server.expression.impl.BufferStructObject;
-import org.myberry.store.AbstractComponent;
+import org.myberry.server.util.DateUtils;
 import org.myberry.store.CRComponent;
 import org.myberry.store.MyberryStore;
 
@@ -67,6 +64,7 @@ public class ConverterService {
     BufferStructObject bufferStructObject =
         expressionConverterFactory.doConvert(ExpressionParser.split(expression.trim()));
     bufferStructObject.setSid(myberryStore.getStoreConfig().getMySid());
+    bufferStructObject.setTimeType(DateUtils.isIncludeTime(expression));
     structMap.put(key, bufferStructObject);
   }
 
@@ -84,14 +82,10 @@ public class ConverterService {
   }
 
   private void initStructMap() {
-    Map<String, AbstractComponent> componentMap = myberryStore.getComponentMap();
-    Iterator<Entry<String, AbstractComponent>> iterator = componentMap.entrySet().iterator();
-    while (iterator.hasNext()) {
-      Entry<String, AbstractComponent> entry = iterator.next();
-      if (entry.getValue() instanceof CRComponent) {
-        CRComponent crc = (CRComponent) entry.getValue();
-        addStruct(crc.getKey(), crc.getExpression());
-      }
-    }
+    // Parsers and converters are stateless, so the expressions compile on the fork-join pool.
+    myberryStore.getComponentMap().values().parallelStream()
+        .filter(component -> component instanceof CRComponent)
+        .map(component -> (CRComponent) component)
+        .forEach(crc -> addStruct(crc.getKey(), crc.getExpression()));
   }
 }
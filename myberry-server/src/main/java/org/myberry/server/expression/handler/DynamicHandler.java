@@ -35,6 +35,7 @@
 */
 package org.myberry.server.expression.handler;
 
+import java.util.Map;
 import org.myberry.common.expression.parser.AbstractParser;
 
 public class DynamicHandler implements PlaceholderHandler {
@@ -55,4 +56,19 @@ public class DynamicHandler implements PlaceholderHandler {
   public String get(String value) {
     return dynamic;
   }
+
+  @Override
+  public void append(
+      StringBuilder result,
+      long incrNumber,
+      int period,
+      int sid,
+      Map<String, String> attachments) {
+    if (attachments != null) {
+      String value = attachments.get(dynamic);
+      if (value != null) {
+        result.append(value);
+      }
+    }
+  }
 }
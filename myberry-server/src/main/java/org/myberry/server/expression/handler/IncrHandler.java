@@ -35,6 +35,7 @@
 */
 package org.myberry.server.expression.handler;
 
+import java.util.Map;
 import org.myberry.common.expression.parser.AbstractParser;
 
 public class IncrHandler implements PlaceholderHandler {
@@ -61,4 +62,14 @@ public class IncrHandler implements PlaceholderHandler {
       return value.substring(value.length() - index - 1, value.length() - index);
     }
   }
+
+  @Override
+  public void append(
+      StringBuilder result,
+      long incrNumber,
+      int period,
+      int sid,
+      Map<String, String> attachments) {
+    result.append(PlaceholderHandler.digitAt(incrNumber, index));
+  }
 }
@@ -35,9 +35,54 @@
 */
 package org.myberry.server.expression.handler;
 
+import java.util.Map;
+
 public interface PlaceholderHandler {
 
+  long[] POW10 = {
+    1L,
+    10L,
+    100L,
+    1000L,
+    10000L,
+    100000L,
+    1000000L,
+    10000000L,
+    100000000L,
+    1000000000L,
+    10000000000L,
+    100000000000L,
+    1000000000000L,
+    10000000000000L,
+    100000000000000L,
+    1000000000000000L,
+    10000000000000000L,
+    100000000000000000L,
+    1000000000000000000L
+  };
+
   void handle(String placeholder);
 
   String get(String value);
+
+  /**
+   * Appends this placeholder of one id to result, without creating intermediate strings. period is
+   * the time period the incrNumber was advanced in, 0 if not known.
+   */
+  default void append(
+      StringBuilder result,
+      long incrNumber,
+      int period,
+      int sid,
+      Map<String, String> attachments) {
+    result.append(get(null));
+  }
+
+  /** The digit of value at index, counted from the lowest digit, '0' if value is shorter. */
+  static char digitAt(long value, int index) {
+    if (index >= POW10.length) {
+      return '0';
+    }
+    return (char) ('0' + (value / POW10[index]) % 10);
+  }
 }
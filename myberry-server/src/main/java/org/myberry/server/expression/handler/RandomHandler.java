@@ -35,6 +35,7 @@
 */
 package org.myberry.server.expression.handler;
 
+import java.util.Map;
 import java.util.concurrent.ThreadLocalRandom;
 
 public class RandomHandler implements PlaceholderHandler {
@@ -66,4 +67,17 @@ public class RandomHandler implements PlaceholderHandler {
       return stringBuilder.toString();
     }
   }
+
+  @Override
+  public void append(
+      StringBuilder result,
+      long incrNumber,
+      int period,
+      int sid,
+      Map<String, String> attachments) {
+    int nextInt = ThreadLocalRandom.current().nextInt(randMax);
+    for (int i = length - 1; i >= 0; i--) {
+      result.append(PlaceholderHandler.digitAt(nextInt, i));
+    }
+  }
 }
@@ -38,7 +38,10 @@ package org.myberry.server.expression.handler;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.Map;
 import org.myberry.common.expression.parser.TimeParser;
+import org.myberry.common.strategy.StrategyDate;
+import org.myberry.server.util.DateUtils;
 
 public class TimeHandler implements PlaceholderHandler {
 
@@ -47,34 +50,73 @@ public class TimeHandler implements PlaceholderHandler {
   public static final String YEAR_PATTERN = "yyyy";
 
   private DateTimeFormatter format;
+  private int type;
+  // the formatted time of the last period rendered
+  private volatile TimeSegment timeSegment;
 
   @Override
   public void handle(String placeholder) {
     switch (placeholder) {
       case TimeParser.TIME_DAY:
         this.format = DateTimeFormatter.ofPattern(DAY_PATTERN);
+        this.type = StrategyDate.TIME_DAY;
         break;
 
       case TimeParser.TIME_MONTH:
         this.format = DateTimeFormatter.ofPattern(MONTH_PATTERN);
+        this.type = StrategyDate.TIME_MONTH;
         break;
 
       case TimeParser.TIME_YEAR:
         this.format = DateTimeFormatter.ofPattern(YEAR_PATTERN);
+        this.type = StrategyDate.TIME_YEAR;
         break;
 
       default:
         this.format = DateTimeFormatter.ofPattern(DAY_PATTERN);
+        this.type = StrategyDate.TIME_DAY;
         break;
     }
   }
 
   @Override
   public String get(String value) {
-    long now = System.currentTimeMillis();
+    return format(System.currentTimeMillis());
+  }
+
+  private String format(long now) {
     return Instant.ofEpochMilli(now)
         .atZone(ZoneId.of(ZoneId.systemDefault().getId()))
         .toLocalDateTime()
         .format(format);
   }
+
+  @Override
+  public void append(
+      StringBuilder result,
+      long incrNumber,
+      int period,
+      int sid,
+      Map<String, String> attachments) {
+    if (0 == period) {
+      period = DateUtils.getPeriod(type, System.currentTimeMillis());
+    }
+    TimeSegment ts = this.timeSegment;
+    if (null == ts || ts.period != period) {
+      ts = new TimeSegment(format(DateUtils.getPeriodBeginMillis(type, period)), period);
+      this.timeSegment = ts;
+    }
+    result.append(ts.text);
+  }
+
+  private static final class TimeSegment {
+
+    private final String text;
+    private final int period;
+
+    private TimeSegment(final String text, final int period) {
+      this.text = text;
+      this.period = period;
+    }
+  }
 }
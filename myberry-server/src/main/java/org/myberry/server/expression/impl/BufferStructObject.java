@@ -36,15 +36,20 @@
 package org.myberry.server.expression.impl;
 
 import java.util.Map;
+import org.myberry.common.strategy.StrategyDate;
 import org.myberry.server.expression.handler.DynamicHandler;
-import org.myberry.server.expression.handler.IncrHandler;
-import org.myberry.server.expression.handler.SidHandler;
+import org.myberry.server.util.TimePeriod;
 import org.myberry.store.CRComponent;
 
 public class BufferStructObject {
 
+  // enough for most ids, a longer one grows the builder once
+  private static final int RESULT_BUILDER_CAPACITY = 64;
+
   private final PlaceholderObject[] placeholderObjects;
   private int sid;
+  private int timeType = StrategyDate.NON_TIME;
+  private volatile TimePeriod timePeriod;
 
   public BufferStructObject(int length) {
     this.placeholderObjects = new PlaceholderObject[length];
@@ -58,25 +63,69 @@ public class BufferStructObject {
     this.sid = sid;
   }
 
-  public String getResult(CRComponent crComponent, Map<String, String> attachments) {
-    StringBuilder result = new StringBuilder(placeholderObjects.length);
+  public int getTimeType() {
+    return timeType;
+  }
+
+  public void setTimeType(int timeType) {
+    this.timeType = timeType;
+  }
+
+  /** Only builds a new {@link TimePeriod} when the cached one has rolled over. */
+  public int getPeriod(long currentTimeMillis) {
+    if (StrategyDate.NON_TIME == timeType) {
+      return 0;
+    }
+
+    TimePeriod tp = this.timePeriod;
+    if (null == tp || !tp.contains(currentTimeMillis)) {
+      tp = TimePeriod.of(timeType, currentTimeMillis);
+      this.timePeriod = tp;
+    }
+    return tp.getPeriod();
+  }
+
+  /** Whether an id needs the request attachments, i.e. there is a $dynamic placeholder. */
+  public boolean isDynamic() {
     for (PlaceholderObject placeholderObject : placeholderObjects) {
-      if (placeholderObject.getPlaceholderHandler() instanceof IncrHandler) {
-        result.append(
-            placeholderObject
-                .getPlaceholderHandler()
-                .get(String.valueOf(crComponent.getIncrNumber())));
-      } else if (placeholderObject.getPlaceholderHandler() instanceof SidHandler) {
-        result.append(placeholderObject.getPlaceholderHandler().get(String.valueOf(sid)));
-      } else if (placeholderObject.getPlaceholderHandler() instanceof DynamicHandler) {
-        if (attachments != null
-            && attachments.get(placeholderObject.getPlaceholderHandler().get(null)) != null) {
-          result.append(attachments.get(placeholderObject.getPlaceholderHandler().get(null)));
-        }
-      } else {
-        result.append(placeholderObject.getPlaceholderHandler().get(null));
+      if (placeholderObject.getPlaceholderHandler() instanceof DynamicHandler) {
+        return true;
       }
     }
+    return false;
+  }
+
+  public String getResult(CRComponent crComponent, Map<String, String> attachments) {
+    return getResult(crComponent.getIncrNumber(), attachments);
+  }
+
+  /** Renders #time from the current period. */
+  public String getResult(long incrNumber, Map<String, String> attachments) {
+    return getResult(incrNumber, getPeriod(System.currentTimeMillis()), attachments);
+  }
+
+  /** Renders #time from period, the one incrNumber was advanced in. */
+  public String getResult(long incrNumber, int period, Map<String, String> attachments) {
+    return getResult(newResultBuilder(), incrNumber, period, attachments);
+  }
+
+  /**
+   * Renders into result, which the caller owns and reuses for the ids of a batch, so only the final
+   * String is allocated per id. Not a per-thread builder, with a virtual thread per request that
+   * would be a new one per id anyway.
+   */
+  public String getResult(
+      StringBuilder result, long incrNumber, int period, Map<String, String> attachments) {
+    result.setLength(0);
+    for (PlaceholderObject placeholderObject : placeholderObjects) {
+      placeholderObject
+          .getPlaceholderHandler()
+          .append(result, incrNumber, period, sid, attachments);
+    }
     return result.toString();
   }
+
+  public static StringBuilder newResultBuilder() {
+    return new StringBuilder(RESULT_BUILDER_CAPACITY);
+  }
 }
@@ -276,7 +276,7 @@ public class HAConnection {
               if (sendQueue != null) {
                 HAMessage haMessage = sendQueue.poll();
                 if (haMessage != null) {
-                  this.transferData(HATransfer.encode(haMessage));
+                  this.transferData(HATransfer.encodeGathering(haMessage));
                 }
               }
             }
@@ -312,11 +312,12 @@ public class HAConnection {
       HAConnection.log.debug("{} service end", this.getServiceName());
     }
 
-    private boolean transferData(ByteBuffer byteBuffer) throws Exception {
+    private boolean transferData(ByteBuffer... byteBuffers) throws Exception {
+      ByteBuffer last = byteBuffers[byteBuffers.length - 1];
       int writeSizeZeroTimes = 0;
-      // Write Header
-      while (byteBuffer.hasRemaining()) {
-        int writeSize = this.socketChannel.write(byteBuffer);
+      // Write Header, then data straight from its own buffer
+      while (last.hasRemaining()) {
+        long writeSize = this.socketChannel.write(byteBuffers);
         if (writeSize > 0) {
           writeSizeZeroTimes = 0;
         } else if (writeSize == 0) {
@@ -328,7 +329,7 @@ public class HAConnection {
         }
       }
 
-      return !byteBuffer.hasRemaining();
+      return !last.hasRemaining();
     }
 
     @Override
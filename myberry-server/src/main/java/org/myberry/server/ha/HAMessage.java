@@ -35,6 +35,7 @@
 */
 package org.myberry.server.ha;
 
+import java.nio.ByteBuffer;
 import org.myberry.common.codec.MessageLite;
 
 public class HAMessage {
@@ -43,6 +44,8 @@ public class HAMessage {
   private int connId;
   private MessageLite haMessage;
   private byte[] data;
+  // outgoing only, a shared read-only view that the encoder never consumes
+  private ByteBuffer dataBuffer;
 
   public HAMessage() {}
 
@@ -84,6 +87,14 @@ public class HAMessage {
     this.data = data;
   }
 
+  public ByteBuffer getDataBuffer() {
+    return dataBuffer;
+  }
+
+  public void setDataBuffer(ByteBuffer dataBuffer) {
+    this.dataBuffer = dataBuffer;
+  }
+
   @Override
   public String toString() {
     return new StringBuilder() //
@@ -35,6 +35,7 @@
 */
 package org.myberry.server.ha;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -84,7 +85,7 @@ public class HANotifier {
   }
 
   public void notifyDatabaseAppend(
-      int applyForBlockIndex, int applyForEndPhyOffset, byte[] syncData) {
+      int applyForBlockIndex, int applyForEndPhyOffset, ByteBuffer syncData) {
     ApplyForBlockAppend applyForBlockAppend = new ApplyForBlockAppend();
     applyForBlockAppend.setApplyForBlockIndex(applyForBlockIndex);
     applyForBlockAppend.setApplyForEndPhyOffset(applyForEndPhyOffset);
@@ -102,11 +103,11 @@ public class HANotifier {
     delivery(transferType, messageLite, null);
   }
 
-  private void delivery(int transferType, MessageLite messageLite, byte[] syncData) {
+  private void delivery(int transferType, MessageLite messageLite, ByteBuffer syncData) {
     Collection<NodeAddr> viewList = collectService.getViewMap().values();
     for (NodeAddr nodeAddr : viewList) {
       HAMessage haMessage = new HAMessage(transferType, nodeAddr.getSid(), messageLite);
-      haMessage.setData(syncData);
+      haMessage.setDataBuffer(syncData);
       haMessageDispatcher.haMessageDelivery(nodeAddr.getSid(), haMessage);
     }
   }
@@ -108,42 +108,64 @@ public class HATransfer {
 
   public static ByteBuffer encode(HAMessage haMessage) {
     byte[] bytes = LightCodec.toBytes(haMessage.getHaMessage());
-    int haMessageLength = bytes == null ? 0 : bytes.length;
-    int dataLength = haMessage.getData() == null ? 0 : haMessage.getData().length;
-    int bodyLength =
-        // sid
-        4
-            +
-            // haMessage length
-            4
-            +
-            // haMessage
-            haMessageLength
-            +
-            // data length
-            4
-            +
-            // data
-            dataLength;
-    byte[] body =
-        bodyEncode(
-            bodyLength,
-            haMessage.getConnId(),
-            haMessageLength,
-            bytes,
-            dataLength,
-            haMessage.getData());
+    int dataLength = getDataLength(haMessage);
+
+    ByteBuffer byteBuffer = ByteBuffer.allocate(getHaMessageLength(bytes, dataLength));
+    putFrame(byteBuffer, haMessage, bytes, dataLength);
+    if (haMessage.getDataBuffer() != null) {
+      byteBuffer.put(haMessage.getDataBuffer().duplicate());
+    } else if (dataLength > 0) {
+      byteBuffer.put(haMessage.getData());
+    }
+    byteBuffer.flip();
+    return byteBuffer;
+  }
+
+  /**
+   * Same frame as {@link #encode(HAMessage)}, but the data buffer is returned as is instead of
+   * being copied behind the header, for a gathering write.
+   */
+  public static ByteBuffer[] encodeGathering(HAMessage haMessage) {
+    if (haMessage.getDataBuffer() == null || !haMessage.getDataBuffer().hasRemaining()) {
+      return new ByteBuffer[] {encode(haMessage)};
+    }
+
+    byte[] bytes = LightCodec.toBytes(haMessage.getHaMessage());
+    int dataLength = getDataLength(haMessage);
+
+    ByteBuffer byteBuffer = ByteBuffer.allocate(getHaMessageLength(bytes, 0));
+    putFrame(byteBuffer, haMessage, bytes, dataLength);
+    byteBuffer.flip();
+    return new ByteBuffer[] {byteBuffer, haMessage.getDataBuffer().duplicate()};
+  }
 
+  private static int getDataLength(HAMessage haMessage) {
+    if (haMessage.getDataBuffer() != null) {
+      return haMessage.getDataBuffer().remaining();
+    }
+    return haMessage.getData() == null ? 0 : haMessage.getData().length;
+  }
+
+  private static int getHaMessageLength(byte[] haMessage, int dataLength) {
+    return getHaMessageLength(haMessage == null ? 0 : haMessage.length, dataLength);
+  }
+
+  /** Puts everything up to and including the data length. */
+  private static void putFrame(
+      ByteBuffer byteBuffer, HAMessage haMessage, byte[] bytes, int dataLength) {
+    int haMessageLength = bytes == null ? 0 : bytes.length;
+    int bodyLength = getHaMessageLength(haMessageLength, dataLength) - 4;
     int mt =
         getMessageTypeByClass(
             haMessage.getHaMessage() == null ? null : haMessage.getHaMessage().getClass());
-    int header = headerEncode(bodyLength, mt);
 
-    ByteBuffer byteBuffer = ByteBuffer.allocate(4 + bodyLength);
-    byteBuffer.putInt(header);
-    byteBuffer.put(body);
-    byteBuffer.flip();
-    return byteBuffer;
+    byteBuffer.putInt(headerEncode(bodyLength, mt));
+    byteBuffer.putInt(haMessage.getConnId());
+    byteBuffer.putInt(haMessageLength);
+    if (haMessageLength > 0) {
+      byteBuffer.put(bytes);
+    }
+    byteBuffer.putInt(dataLength);
   }
 
   public static int getHaMessageLength(int haMessageLength, int dataLength) {
@@ -184,21 +206,6 @@ public class HATransfer {
     return mt;
   }
 
-  private static byte[] bodyEncode(
-      int bodyLength, int sid, int haMessageLength, byte[] haMessage, int dataLength, byte[] data) {
-    ByteBuffer bodyBuffer = ByteBuffer.allocate(bodyLength);
-    bodyBuffer.putInt(sid);
-    bodyBuffer.putInt(haMessageLength);
-    if (haMessageLength > 0) {
-      bodyBuffer.put(haMessage);
-    }
-    bodyBuffer.putInt(dataLength);
-    if (dataLength > 0) {
-      bodyBuffer.put(data);
-    }
-    return bodyBuffer.array();
-  }
-
   /**
    * type max value is 7
    *
@@ -35,6 +35,7 @@
 */
 package org.myberry.server.ha.database;
 
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.concurrent.LinkedBlockingQueue;
 import org.myberry.common.ServiceThread;
@@ -150,13 +151,13 @@ public class LeaderDatabaseSynchronizer implements HASynchronizer {
                       remoteLastBlockHeader.getEndPhyOffset());
 
               Database database = createData(applyForBlockAppendResponse);
-              byte[] syncData =
+              ByteBuffer syncData =
                   getSyncData(
                       remoteLastBlockHeader.getBlockIndex(),
                       remoteLastBlockHeader.getEndPhyOffset(),
                       database);
 
-              if (syncData.length == 0) {
+              if (!syncData.hasRemaining()) {
                 notifyLearner(db.getSid(), database);
               } else {
                 notifyLearner(db.getSid(), database, syncData);
@@ -193,13 +194,13 @@ public class LeaderDatabaseSynchronizer implements HASynchronizer {
                       remoteLastBlockHeader.getApplyForEndPhyOffset());
 
               Database database = createData(applyForBlockAppendResponse);
-              byte[] syncData =
+              ByteBuffer syncData =
                   getSyncData(
                       remoteLastBlockHeader.getApplyForBlockIndex(),
                       remoteLastBlockHeader.getApplyForEndPhyOffset(),
                       database);
 
-              if (syncData.length == 0) {
+              if (!syncData.hasRemaining()) {
                 notifyLearner(db.getSid(), database);
               } else {
                 notifyLearner(db.getSid(), database, syncData);
@@ -254,9 +255,9 @@ public class LeaderDatabaseSynchronizer implements HASynchronizer {
       notifyLearner(connId, db, null);
     }
 
-    private void notifyLearner(int connId, Database db, byte[] syncData) {
+    private void notifyLearner(int connId, Database db, ByteBuffer syncData) {
       HAMessage haMessage = new HAMessage(HATransfer.DATABASE, connId, db);
-      haMessage.setData(syncData);
+      haMessage.setDataBuffer(syncData);
       getHaMessageDispatcher().haMessageDelivery(connId, haMessage);
     }
 
@@ -278,7 +279,7 @@ public class LeaderDatabaseSynchronizer implements HASynchronizer {
       return db;
     }
 
-    private byte[] getSyncData(
+    private ByteBuffer getSyncData(
         int applyForLastBlockIndex, int applyForLastBlockEndPhyOffset, Database db) {
       int dbFixedLength = LightCodec.toBytes(db).length;
 
@@ -300,10 +301,10 @@ public class LeaderDatabaseSynchronizer implements HASynchronizer {
         }
       }
 
-      return new byte[0];
+      return ByteBuffer.allocate(0);
     }
 
-    private byte[] getAppendData(
+    private ByteBuffer getAppendData(
         int applyForLastBlockIndex,
         int applyForLastBlockEndPhyOffset,
         int dbFixedLength,
@@ -322,7 +323,7 @@ public class LeaderDatabaseSynchronizer implements HASynchronizer {
                   applyForLastBlockIndex, applyForLastBlockEndPhyOffset, allowedSyncLength);
 
       return getMyberryStore()
-          .getSyncData(applyForLastBlockIndex, applyForLastBlockEndPhyOffset, readLength);
+          .getSyncDataBuffer(applyForLastBlockIndex, applyForLastBlockEndPhyOffset, readLength);
     }
 
     private int getHaMessageLength(int dbFixedLength, int syncDataLength) {
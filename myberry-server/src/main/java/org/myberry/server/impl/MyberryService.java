@@ -58,12 +58,27 @@ public class MyberryService {
   }
 
   public DefaultResponse getNewId(String key, byte[] attachments) {
+    return getNewId(key, attachments, null);
+  }
+
+  public DefaultResponse getNewId(String key, byte[] attachments, String clientId) {
     myberryStore.setBeginTimeInLock(System.currentTimeMillis());
-    DefaultResponse defaultResponse = myberryServiceAdapter.getNewId(key, attachments);
+    DefaultResponse defaultResponse = myberryServiceAdapter.getNewId(key, attachments, clientId);
     myberryStore.setBeginTimeInLock(0L);
     return defaultResponse;
   }
 
+  public DefaultResponse getNewIds(String key, byte[] attachments, int count) {
+    myberryStore.setBeginTimeInLock(System.currentTimeMillis());
+    DefaultResponse defaultResponse = myberryServiceAdapter.getNewIds(key, attachments, count);
+    myberryStore.setBeginTimeInLock(0L);
+    return defaultResponse;
+  }
+
+  public boolean isStaticKey(String key) {
+    return myberryServiceAdapter.isStaticKey(key);
+  }
+
   public DefaultResponse addComponent(int structure, byte[] component) {
     return myberryServiceAdapter.addComponent(structure, component);
   }
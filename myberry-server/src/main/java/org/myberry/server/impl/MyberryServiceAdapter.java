@@ -44,6 +44,7 @@ import org.myberry.common.protocol.body.admin.ComponentKeyData;
 import org.myberry.common.protocol.body.admin.NSComponentData;
 import org.myberry.common.structure.Structure;
 import org.myberry.server.converter.ConverterService;
+import org.myberry.server.expression.impl.BufferStructObject;
 import org.myberry.server.ha.HANotifier;
 import org.myberry.store.AbstractComponent;
 import org.myberry.store.CRComponent;
@@ -52,12 +53,16 @@ import org.myberry.store.NSComponent;
 
 public class MyberryServiceAdapter {
 
+  private static final byte NO_STRUCTURE = -1;
+
   private final MyberryStore myberryStore;
+  private final ConverterService converterService;
   private final MyberryServiceVerifier myberryServiceVerifier;
 
   public MyberryServiceAdapter(
       final MyberryStore myberryStore, final ConverterService converterService) {
     this.myberryStore = myberryStore;
+    this.converterService = converterService;
     this.myberryServiceVerifier = new MyberryServiceVerifier(myberryStore, converterService);
   }
 
@@ -70,22 +75,53 @@ public class MyberryServiceAdapter {
   }
 
   public DefaultResponse getNewId(String key, byte[] attachments) {
-    AbstractComponent abstractComponent = myberryStore.getComponentMap().get(key);
-    if (null != abstractComponent) {
+    return getNewId(key, attachments, null);
+  }
 
-      switch (abstractComponent.getStructure()) {
+  /** @param clientId tells the clients pulling key apart, null if they can not be */
+  public DefaultResponse getNewId(String key, byte[] attachments, String clientId) {
+    byte structure = getStructure(key);
+    if (NO_STRUCTURE != structure) {
+
+      switch (structure) {
         case Structure.CR:
           return myberryServiceVerifier.getNewId(key, Maps.deserialize(attachments));
         case Structure.NS:
-          return myberryServiceVerifier.getNewId(key);
+          return myberryServiceVerifier.getNewIdOfClient(key, clientId);
       }
 
       return new DefaultResponse(
           ResponseCode.UNKNOWN_STRUCTURE,
-          abstractComponent.getStructure(),
+          structure,
           String.format(
               "this %d structure is unknown, only support %d, %d",
-              abstractComponent.getStructure(), Structure.CR, Structure.NS));
+              structure, Structure.CR, Structure.NS));
+    } else {
+      DefaultResponse defaultResponse =
+          new DefaultResponse(
+              ResponseCode.KEY_NOT_EXISTED, String.format("this key: '%s' does not exist", key));
+      defaultResponse.setExt(key.getBytes(StandardCharsets.UTF_8));
+      return defaultResponse;
+    }
+  }
+
+  public DefaultResponse getNewIds(String key, byte[] attachments, int count) {
+    byte structure = getStructure(key);
+    if (NO_STRUCTURE != structure) {
+
+      switch (structure) {
+        case Structure.CR:
+          return myberryServiceVerifier.getNewIds(key, Maps.deserialize(attachments), count);
+        case Structure.NS:
+          return myberryServiceVerifier.getNewIds(key, count);
+      }
+
+      return new DefaultResponse(
+          ResponseCode.UNKNOWN_STRUCTURE,
+          structure,
+          String.format(
+              "this %d structure is unknown, only support %d, %d",
+              structure, Structure.CR, Structure.NS));
     } else {
       DefaultResponse defaultResponse =
           new DefaultResponse(
@@ -142,6 +178,33 @@ public class MyberryServiceAdapter {
     }
   }
 
+  /**
+   * An NS key, or a CR key whose expression has no $dynamic placeholder, renders its ids from the
+   * counter alone, with no attachments to deserialize.
+   */
+  public boolean isStaticKey(String key) {
+    switch (getStructure(key)) {
+      case Structure.NS:
+        return true;
+      case Structure.CR:
+        BufferStructObject bufferStructObject = converterService.getStruct(key);
+        return null != bufferStructObject && !bufferStructObject.isDynamic();
+      default:
+        return false;
+    }
+  }
+
+  /** Reads the structure from the record, so no component is materialized per request. */
+  private byte getStructure(String key) {
+    long position = myberryStore.getComponentPosition(key);
+    if (AbstractComponent.NO_POSITION == position) {
+      return NO_STRUCTURE;
+    }
+    return myberryStore.getBufferByte(
+        AbstractComponent.positionBlockIndex(position),
+        AbstractComponent.positionPhyOffset(position) + AbstractComponent.STRUCTURE_RELATIVE_OFFSET);
+  }
+
   public HANotifier getHaNotifier() {
     return myberryServiceVerifier.getHaNotifier();
   }
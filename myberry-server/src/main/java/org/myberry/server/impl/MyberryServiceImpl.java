@@ -35,22 +35,32 @@
 */
 package org.myberry.server.impl;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 import org.myberry.common.component.ComponentStatus;
 import org.myberry.common.protocol.body.admin.CRComponentData;
 import org.myberry.common.protocol.body.admin.ComponentSizeData;
 import org.myberry.common.protocol.body.admin.NSComponentData;
+import org.myberry.common.protocol.body.user.CRBatchPullResultData;
 import org.myberry.common.protocol.body.user.CRPullResultData;
 import org.myberry.common.protocol.body.user.NSPullResultData;
+import org.myberry.common.security.Verifier;
 import org.myberry.common.strategy.StrategyDate;
 import org.myberry.common.structure.Structure;
 import org.myberry.server.common.LoggerName;
 import org.myberry.server.converter.ConverterService;
+import org.myberry.server.expression.impl.BufferStructObject;
 import org.myberry.server.ha.HANotifier;
 import org.myberry.server.util.DateUtils;
+import org.myberry.store.AbstractComponent;
 import org.myberry.store.CRComponent;
 import org.myberry.store.MyberryStore;
 import org.myberry.store.NSComponent;
@@ -62,10 +72,25 @@ public class MyberryServiceImpl {
 
   private static final Logger log = LoggerFactory.getLogger(LoggerName.SERVICE_LOGGER_NAME);
 
+  private static final int RECORD_LOCK_COUNT = 256;
+  // writes a persisting thread makes for others before it leaves them to claim persisting
+  private static final int PERSIST_ROUNDS = 4;
+  private static final long PERSIST_PARK_NANOS = 10_000L;
+
   private final Lock lock = new ReentrantLock();
 
   private final MyberryStore myberryStore;
   private final ConverterService converterService;
+  /**
+   * Only with an off-heap index, there is no component object to hold a counter or a lock, so the
+   * counters are updated in the records under a lock striped by position.
+   */
+  private final Lock[] recordLocks;
+
+  /** Only with pullCombineEnable, a combiner per key that has been pulled. */
+  private final ConcurrentMap<String, PullCombiner> pullCombiners;
+  /** Only with adaptiveSegmentEnable, a sizer per NS key that has been pulled one at a time. */
+  private final ConcurrentMap<String, SegmentSizer> segmentSizers;
 
   private HANotifier haNotifier;
 
@@ -73,71 +98,389 @@ public class MyberryServiceImpl {
       final MyberryStore myberryStore, final ConverterService converterService) {
     this.myberryStore = myberryStore;
     this.converterService = converterService;
+    if (myberryStore.getStoreConfig().isOffHeapIndexEnable()) {
+      this.recordLocks = new Lock[RECORD_LOCK_COUNT];
+      for (int i = 0; i < recordLocks.length; i++) {
+        recordLocks[i] = new ReentrantLock();
+      }
+    } else {
+      this.recordLocks = null;
+    }
+    if (myberryStore.getStoreConfig().isPullCombineEnable()) {
+      this.pullCombiners = new ConcurrentHashMap<>();
+    } else {
+      this.pullCombiners = null;
+    }
+    if (myberryStore.getStoreConfig().isAdaptiveSegmentEnable()) {
+      this.segmentSizers = new ConcurrentHashMap<>();
+    } else {
+      this.segmentSizers = null;
+    }
   }
 
   public CRPullResultData getNewId(String key, Map<String, String> attachments) throws Exception {
-    CRComponent crc = (CRComponent) myberryStore.getComponentMap().get(key);
-    crc.getLock().lock();
     try {
-      if (isReset(crc)) {
-        crc.setIncrNumber(0);
-      }
-      crc.setUpdateTime(System.currentTimeMillis());
-      long incr = crc.getIncrNumber().incrementAndGet();
-
-      myberryStore.updateBufferLong(
-          crc.getBlockIndex(),
-          crc.getPhyOffset() + CRComponent.updateTimeRelativeOffset,
-          crc.getUpdateTime());
-      myberryStore.updateBufferLong(
-          crc.getBlockIndex(), crc.getPhyOffset() + CRComponent.incrNumberRelativeOffset, incr);
+      BufferStructObject bufferStructObject = converterService.getStruct(key);
+      PullCombiner.Pull pull = increment(key, bufferStructObject, 1);
+      myberryStore.commitBuffer();
 
       CRPullResultData crd = new CRPullResultData();
-      crd.setNewId(converterService.getStruct(key).getResult(crc, attachments));
+      crd.setNewId(bufferStructObject.getResult(pull.getLast(), pull.getPeriod(), attachments));
       return crd;
     } catch (Exception e) {
       log.error("getNewId() error: ", e);
       throw e;
-    } finally {
-      crc.getLock().unlock();
     }
   }
 
-  public NSPullResultData getNewId(String key) throws Exception {
-    NSComponent nsc = (NSComponent) myberryStore.getComponentMap().get(key);
-    nsc.getLock().lock();
+  public CRBatchPullResultData getNewIds(String key, Map<String, String> attachments, int count)
+      throws Exception {
     try {
-      if (isReset(nsc)) {
-        nsc.setCurrentNumber(nsc.getInitNumber());
+      BufferStructObject bufferStructObject = converterService.getStruct(key);
+      PullCombiner.Pull pull = increment(key, bufferStructObject, count);
+      myberryStore.commitBuffer();
+
+      List<String> newIds = new ArrayList<>(count);
+      StringBuilder result = BufferStructObject.newResultBuilder();
+      for (long incr = pull.getFirst(); incr <= pull.getLast(); incr++) {
+        newIds.add(bufferStructObject.getResult(result, incr, pull.getPeriod(), attachments));
       }
 
-      int start = nsc.getCurrentNumber().getAndAdd(nsc.getStepSize());
-      nsc.setUpdateTime(System.currentTimeMillis());
+      CRBatchPullResultData crbd = new CRBatchPullResultData();
+      crbd.setNewIds(newIds);
+      crbd.setTimeBased(StrategyDate.NON_TIME != bufferStructObject.getTimeType());
+      return crbd;
+    } catch (Exception e) {
+      log.error("getNewIds() error: ", e);
+      throw e;
+    }
+  }
+
+  /** The range of the pull is the incrNumbers of its ids, its period the one they belong to. */
+  private PullCombiner.Pull increment(
+      String key, BufferStructObject bufferStructObject, int count) throws Exception {
+    if (null != recordLocks) {
+      long position = getPosition(key);
+      return pull(
+          key,
+          count,
+          (batch, total) ->
+              setIncrRanges(batch, total, incrementRecord(position, bufferStructObject, total)));
+    }
 
-      int current = start + nsc.getStepSize();
+    CRComponent crc = (CRComponent) myberryStore.getComponentMap().get(key);
+    return pull(
+        key,
+        count,
+        (batch, total) -> {
+          long incrState = incrementAndGet(crc, bufferStructObject, total);
+          persistIncrState(crc, bufferStructObject.getTimeType(), incrState);
+          setIncrRanges(batch, total, incrState);
+        });
+  }
+
+  /** Hands out the total incrNumbers up to the one of incrState in batch order. */
+  private static void setIncrRanges(List<PullCombiner.Pull> batch, int total, long incrState) {
+    int period = CRComponent.incrPeriod(incrState);
+    long incr = CRComponent.incrNumber(incrState) - total;
+    for (PullCombiner.Pull pull : batch) {
+      pull.setRange(incr + 1, incr + pull.getCount());
+      pull.setPeriod(period);
+      incr += pull.getCount();
+    }
+  }
+
+  /** Serves a pull alone, or together with the concurrent pulls of the key if combining. */
+  private PullCombiner.Pull pull(String key, int count, PullCombiner.Counter counter)
+      throws Exception {
+    if (null == pullCombiners) {
+      PullCombiner.Pull pull = new PullCombiner.Pull(count);
+      counter.advance(Collections.singletonList(pull), count);
+      return pull;
+    }
+
+    PullCombiner pullCombiner = pullCombiners.get(key);
+    if (null == pullCombiner) {
+      pullCombiner = pullCombiners.computeIfAbsent(key, k -> new PullCombiner());
+    }
+    return pullCombiner.pull(count, counter);
+  }
+
+  /** The off-heap counterpart of incrementAndGet() and persistIncrState(). */
+  private long incrementRecord(long position, BufferStructObject bufferStructObject, int delta) {
+    int blockIndex = AbstractComponent.positionBlockIndex(position);
+    int phyOffset = AbstractComponent.positionPhyOffset(position);
+    long currentTimeMillis = System.currentTimeMillis();
+    int period = bufferStructObject.getPeriod(currentTimeMillis);
+
+    Lock recordLock = recordLock(position);
+    recordLock.lock();
+    try {
+      long updateTime =
+          myberryStore.getBufferLong(blockIndex, phyOffset + CRComponent.updateTimeRelativeOffset);
+      int incrPeriod = DateUtils.getPeriod(bufferStructObject.getTimeType(), updateTime);
+
+      long incrNumber;
+      if (period > incrPeriod) {
+        incrPeriod = period;
+        incrNumber = delta;
+        updateTime = currentTimeMillis;
+      } else {
+        // a thread that read the clock before the rollover keeps the newer updateTime
+        incrNumber =
+            myberryStore.getBufferLong(blockIndex, phyOffset + CRComponent.incrNumberRelativeOffset)
+                + delta;
+        updateTime = Math.max(updateTime, currentTimeMillis);
+      }
+      if (incrNumber > CRComponent.MAX_INCR_NUMBER) {
+        throw new IllegalStateException("incrNumber overflow: " + position);
+      }
 
       myberryStore.updateBufferLong(
-          nsc.getBlockIndex(),
-          nsc.getPhyOffset() + NSComponent.updateTimeRelativeOffset,
-          nsc.getUpdateTime());
-      myberryStore.updateBufferInt(
-          nsc.getBlockIndex(),
-          nsc.getPhyOffset() + NSComponent.currentNumberRelativeOffset,
-          current);
-
-      NSPullResultData nsd = new NSPullResultData();
-      nsd.setStart(start);
-      nsd.setEnd(current - 1);
-      nsd.setSynergyId(myberryStore.getStoreConfig().getMySid());
-      return nsd;
+          blockIndex, phyOffset + CRComponent.updateTimeRelativeOffset, updateTime);
+      myberryStore.updateBufferLong(
+          blockIndex, phyOffset + CRComponent.incrNumberRelativeOffset, incrNumber);
+      return CRComponent.incrState(incrPeriod, incrNumber);
+    } finally {
+      recordLock.unlock();
+    }
+  }
+
+  private long getPosition(String key) {
+    long position = myberryStore.getComponentPosition(key);
+    if (AbstractComponent.NO_POSITION == position) {
+      throw new IllegalArgumentException("key does not exist: " + key);
+    }
+    return position;
+  }
+
+  private Lock recordLock(long position) {
+    int h = Long.hashCode(position);
+    h ^= h >>> 16;
+    return recordLocks[h & (recordLocks.length - 1)];
+  }
+
+  private long incrementAndGet(CRComponent crc, BufferStructObject bufferStructObject, int delta) {
+    long currentTimeMillis = System.currentTimeMillis();
+    int period = bufferStructObject.getPeriod(currentTimeMillis);
+
+    for (; ; ) {
+      long incrState = crc.getIncrState().get();
+      int incrPeriod = CRComponent.incrPeriod(incrState);
+      if (0 == incrPeriod) {
+        incrPeriod = DateUtils.getPeriod(bufferStructObject.getTimeType(), crc.getUpdateTime());
+      }
+
+      long incrNumber;
+      if (period > incrPeriod) {
+        incrPeriod = period;
+        incrNumber = delta;
+      } else {
+        incrNumber = CRComponent.incrNumber(incrState) + delta;
+      }
+      if (incrNumber > CRComponent.MAX_INCR_NUMBER) {
+        throw new IllegalStateException("incrNumber overflow: " + crc.getKey());
+      }
+
+      long nextIncrState = CRComponent.incrState(incrPeriod, incrNumber);
+      if (crc.getIncrState().compareAndSet(incrState, nextIncrState)) {
+        crc.setUpdateTime(currentTimeMillis);
+        return nextIncrState;
+      }
+    }
+  }
+
+  /**
+   * incrState is published by the CAS in incrementAndGet(), the thread that claims persisting
+   * writes the latest one, and again while it moves on meanwhile, so an older incrNumber never
+   * overwrites a newer one and one write covers every pull that waits for it. The others park
+   * until the store holds their incrState, rather than spin, since the writer may itself wait in
+   * the store, for a checkpoint of the journal say, and a spinning virtual thread never gives its
+   * carrier back. The updateTime written always falls in the period of the incrNumber written, so
+   * that a restart neither resets nor carries over the counter.
+   */
+  private void persistIncrState(CRComponent crc, int timeType, long incrState) {
+    while (crc.getPersistedIncrState() < incrState) {
+      if (crc.getPersisting().compareAndSet(false, true)) {
+        try {
+          for (int round = 0;
+              round < PERSIST_ROUNDS && crc.getPersistedIncrState() < crc.getIncrState().get();
+              round++) {
+            long latestIncrState = reserve(crc.getIncrState().get());
+            myberryStore.updateCounterLong(
+                crc,
+                CRComponent.updateTimeRelativeOffset,
+                updateTimeOf(crc, timeType, CRComponent.incrPeriod(latestIncrState)));
+            myberryStore.updateCounterLong(
+                crc, CRComponent.incrNumberRelativeOffset, CRComponent.incrNumber(latestIncrState));
+            crc.setPersistedIncrState(latestIncrState);
+          }
+        } finally {
+          crc.getPersisting().set(false);
+        }
+      } else {
+        // a waiter left behind by the bounded rounds claims persisting itself
+        LockSupport.parkNanos(PERSIST_PARK_NANOS);
+      }
+    }
+  }
+
+  /** updateTime of crc, or the start of incrPeriod if the counter was advanced since. */
+  private static long updateTimeOf(CRComponent crc, int timeType, int incrPeriod) {
+    long updateTime = crc.getUpdateTime();
+    if (0 == incrPeriod || DateUtils.getPeriod(timeType, updateTime) == incrPeriod) {
+      return updateTime;
+    }
+    return DateUtils.getPeriodBeginMillis(timeType, incrPeriod);
+  }
+
+  private long reserve(long incrState) {
+    int incrReservation = myberryStore.getStoreConfig().getIncrReservation();
+    if (incrReservation <= 0) {
+      return incrState;
+    }
+
+    long incrNumber =
+        Math.min(CRComponent.incrNumber(incrState) + incrReservation, CRComponent.MAX_INCR_NUMBER);
+    return CRComponent.incrState(CRComponent.incrPeriod(incrState), incrNumber);
+  }
+
+  public NSPullResultData getNewId(String key) throws Exception {
+    return getNewIdOfClient(key, null);
+  }
+
+  /** @param clientId tells the clients pulling key apart, null if they can not be */
+  public NSPullResultData getNewIdOfClient(String key, String clientId) throws Exception {
+    return getNewId(key, segmentCount(key, clientId));
+  }
+
+  /** 1, or with adaptiveSegmentEnable a count sized to how fast the client pulls the key. */
+  private int segmentCount(String key, String clientId) {
+    if (null == segmentSizers) {
+      return 1;
+    }
+
+    SegmentSizer segmentSizer = segmentSizers.get(key);
+    if (null == segmentSizer) {
+      StoreConfig storeConfig = myberryStore.getStoreConfig();
+      segmentSizer =
+          segmentSizers.computeIfAbsent(
+              key,
+              k ->
+                  new SegmentSizer(
+                      storeConfig.getAdaptiveSegmentMinCount(),
+                      Math.min(storeConfig.getAdaptiveSegmentMaxCount(), Verifier.MAX_BATCH_COUNT),
+                      storeConfig.getAdaptiveSegmentRefreshIntervalMills()));
+    }
+    return segmentSizer.nextCount(clientId, System.currentTimeMillis());
+  }
+
+  public NSPullResultData getNewId(String key, int count) throws Exception {
+    PullCombiner.Pull pull;
+    byte resetType;
+    try {
+      if (null != recordLocks) {
+        long position = getPosition(key);
+        pull = pull(key, count, (batch, total) -> advanceRecord(position, batch, total));
+        int phyOffset = AbstractComponent.positionPhyOffset(position);
+        resetType =
+            myberryStore.getBufferByte(
+                AbstractComponent.positionBlockIndex(position),
+                phyOffset + NSComponent.resetTypeRelativeOffset);
+      } else {
+        NSComponent nsc = (NSComponent) myberryStore.getComponentMap().get(key);
+        pull = pull(key, count, (batch, total) -> advance(nsc, batch, total));
+        resetType = nsc.getResetType();
+      }
     } catch (Exception e) {
       log.error("getNewId() error: ", e);
       throw e;
+    }
+
+    myberryStore.commitBuffer();
+
+    NSPullResultData nsd = new NSPullResultData();
+    nsd.setStart(Math.toIntExact(pull.getFirst()));
+    nsd.setEnd(Math.toIntExact(pull.getLast()));
+    nsd.setSynergyId(myberryStore.getStoreConfig().getMySid());
+    // a reset hands the same numbers out again, so the client must not keep them past the period
+    nsd.setTimeBased(StrategyDate.NON_TIME != resetType);
+    return nsd;
+  }
+
+  private void advance(NSComponent nsc, List<PullCombiner.Pull> batch, int total) {
+    nsc.getLock().lock();
+    try {
+      int start = isReset(nsc) ? nsc.getInitNumber() : nsc.getCurrentNumber().get();
+      int stepSize = nsc.getStepSize();
+      int current = advanceExact(start, stepSize, total);
+      nsc.setCurrentNumber(current);
+      nsc.setUpdateTime(System.currentTimeMillis());
+
+      myberryStore.updateCounterLong(
+          nsc, NSComponent.updateTimeRelativeOffset, nsc.getUpdateTime());
+      myberryStore.updateCounterInt(nsc, NSComponent.currentNumberRelativeOffset, current);
+
+      setStepRanges(batch, start, stepSize);
     } finally {
       nsc.getLock().unlock();
     }
   }
 
+  /** The off-heap counterpart of advance(NSComponent, List, int). */
+  private void advanceRecord(long position, List<PullCombiner.Pull> batch, int total) {
+    int blockIndex = AbstractComponent.positionBlockIndex(position);
+    int phyOffset = AbstractComponent.positionPhyOffset(position);
+
+    Lock recordLock = recordLock(position);
+    recordLock.lock();
+    try {
+      byte resetType =
+          myberryStore.getBufferByte(blockIndex, phyOffset + NSComponent.resetTypeRelativeOffset);
+      long updateTime =
+          myberryStore.getBufferLong(blockIndex, phyOffset + NSComponent.updateTimeRelativeOffset);
+      int start;
+      if (isReset(resetType, updateTime)) {
+        start =
+            myberryStore.getBufferInt(blockIndex, phyOffset + NSComponent.initNumberRelativeOffset);
+      } else {
+        start =
+            myberryStore.getBufferInt(
+                blockIndex, phyOffset + NSComponent.currentNumberRelativeOffset);
+      }
+
+      int stepSize =
+          myberryStore.getBufferInt(blockIndex, phyOffset + NSComponent.stepSizeRelativeOffset);
+      int current = advanceExact(start, stepSize, total);
+
+      myberryStore.updateBufferLong(
+          blockIndex, phyOffset + NSComponent.updateTimeRelativeOffset, System.currentTimeMillis());
+      myberryStore.updateBufferInt(
+          blockIndex, phyOffset + NSComponent.currentNumberRelativeOffset, current);
+
+      setStepRanges(batch, start, stepSize);
+    } finally {
+      recordLock.unlock();
+    }
+  }
+
+  /**
+   * The current number after handing out total ids from start. Throws rather than let it wrap past
+   * Integer.MAX_VALUE, which would persist a counter that hands out numbers again.
+   */
+  private static int advanceExact(int start, int stepSize, int total) {
+    return Math.addExact(start, Math.multiplyExact(stepSize, total));
+  }
+
+  /** Hands out the numbers from start in batch order, stepSize of them per id. */
+  private static void setStepRanges(List<PullCombiner.Pull> batch, int start, int stepSize) {
+    for (PullCombiner.Pull pull : batch) {
+      int end = start + stepSize * pull.getCount();
+      pull.setRange(start, end - 1);
+      start = end;
+    }
+  }
+
   public boolean addComponent(CRComponentData crcd) throws Exception {
     lock.lock();
     try {
@@ -168,7 +511,7 @@ public class MyberryServiceImpl {
         haNotifier.notifyDatabaseAppend(
             crc.getBlockIndex(),
             crc.getPhyOffset(),
-            myberryStore.getSyncData(
+            myberryStore.getSyncDataBuffer(
                 crc.getBlockIndex(), crc.getPhyOffset(), crc.getComponentLength()));
       }
 
@@ -214,7 +557,7 @@ public class MyberryServiceImpl {
         haNotifier.notifyDatabaseAppend(
             nsc.getBlockIndex(),
             nsc.getPhyOffset(),
-            myberryStore.getSyncData(
+            myberryStore.getSyncDataBuffer(
                 nsc.getBlockIndex(), nsc.getPhyOffset(), nsc.getComponentLength()));
       }
 
@@ -262,34 +605,21 @@ public class MyberryServiceImpl {
     return nscd;
   }
 
-  private boolean isReset(CRComponent crComponent) {
-    int type = DateUtils.isIncludeTime(crComponent.getExpression());
-    if (type == StrategyDate.NON_TIME) {
-      return false;
-    }
-
-    long currentTimeMillis = System.currentTimeMillis();
-    long updateTime = crComponent.getUpdateTime();
-    if (currentTimeMillis > updateTime
-        && !DateUtils.convertTime(type, currentTimeMillis)
-            .equals(DateUtils.convertTime(type, updateTime))) {
-      return true;
-    } else {
-      return false;
-    }
+  private boolean isReset(NSComponent nsComponent) {
+    return isReset(nsComponent.getResetType(), nsComponent.getUpdateTime());
   }
 
-  private boolean isReset(NSComponent nsComponent) {
+  private boolean isReset(byte resetType, long updateTime) {
     long currentTimeMillis = System.currentTimeMillis();
 
-    if (StrategyDate.NON_TIME == nsComponent.getResetType()) {
+    if (StrategyDate.NON_TIME == resetType) {
       return false;
-    } else if (StrategyDate.TIME_DAY == nsComponent.getResetType()) {
-      return compare(currentTimeMillis, nsComponent.getUpdateTime(), StrategyDate.TIME_DAY);
-    } else if (StrategyDate.TIME_MONTH == nsComponent.getResetType()) {
-      return compare(currentTimeMillis, nsComponent.getUpdateTime(), StrategyDate.TIME_MONTH);
-    } else if (StrategyDate.TIME_YEAR == nsComponent.getResetType()) {
-      return compare(currentTimeMillis, nsComponent.getUpdateTime(), StrategyDate.TIME_YEAR);
+    } else if (StrategyDate.TIME_DAY == resetType) {
+      return compare(currentTimeMillis, updateTime, StrategyDate.TIME_DAY);
+    } else if (StrategyDate.TIME_MONTH == resetType) {
+      return compare(currentTimeMillis, updateTime, StrategyDate.TIME_MONTH);
+    } else if (StrategyDate.TIME_YEAR == resetType) {
+      return compare(currentTimeMillis, updateTime, StrategyDate.TIME_YEAR);
     } else {
       return false;
     }
@@ -44,6 +44,7 @@ import org.myberry.common.expression.impl.ParserManager;
 import org.myberry.common.protocol.ResponseCode;
 import org.myberry.common.protocol.body.admin.CRComponentData;
 import org.myberry.common.protocol.body.admin.NSComponentData;
+import org.myberry.common.protocol.body.user.CRBatchPullResultData;
 import org.myberry.common.protocol.body.user.CRPullResultData;
 import org.myberry.common.protocol.body.user.NSPullResultData;
 import org.myberry.common.security.Verifier;
@@ -94,8 +95,50 @@ public class MyberryServiceVerifier {
   }
 
   public DefaultResponse getNewId(String key) {
+    return getNewIdOfClient(key, null);
+  }
+
+  public DefaultResponse getNewIdOfClient(String key, String clientId) {
+    try {
+      NSPullResultData nsd = myberryServiceImpl.getNewIdOfClient(key, clientId);
+      DefaultResponse defaultResponse = new DefaultResponse(ResponseCode.SUCCESS, Structure.NS);
+      defaultResponse.setExt(key.getBytes(StandardCharsets.UTF_8));
+      defaultResponse.setBody(LightCodec.toBytes(nsd));
+      return defaultResponse;
+    } catch (Exception e) {
+      DefaultResponse defaultResponse =
+          new DefaultResponse(
+              RemotingSysResponseCode.SYSTEM_ERROR, RemotingHelper.exceptionSimpleDesc(e));
+      defaultResponse.setExt(key.getBytes(StandardCharsets.UTF_8));
+      return defaultResponse;
+    }
+  }
+
+  public DefaultResponse getNewIds(String key, Map<String, String> attachments, int count) {
+    if (!Verifier.batchCheck(count)) {
+      return rejectBatchCount(key, count, Structure.CR);
+    }
+    try {
+      CRBatchPullResultData crbd = myberryServiceImpl.getNewIds(key, attachments, count);
+      DefaultResponse defaultResponse = new DefaultResponse(ResponseCode.SUCCESS, Structure.CR);
+      defaultResponse.setExt(key.getBytes(StandardCharsets.UTF_8));
+      defaultResponse.setBody(LightCodec.toBytes(crbd));
+      return defaultResponse;
+    } catch (Exception e) {
+      DefaultResponse defaultResponse =
+          new DefaultResponse(
+              RemotingSysResponseCode.SYSTEM_ERROR, RemotingHelper.exceptionSimpleDesc(e));
+      defaultResponse.setExt(key.getBytes(StandardCharsets.UTF_8));
+      return defaultResponse;
+    }
+  }
+
+  public DefaultResponse getNewIds(String key, int count) {
+    if (!Verifier.batchCheck(count)) {
+      return rejectBatchCount(key, count, Structure.NS);
+    }
     try {
-      NSPullResultData nsd = myberryServiceImpl.getNewId(key);
+      NSPullResultData nsd = myberryServiceImpl.getNewId(key, count);
       DefaultResponse defaultResponse = new DefaultResponse(ResponseCode.SUCCESS, Structure.NS);
       defaultResponse.setExt(key.getBytes(StandardCharsets.UTF_8));
       defaultResponse.setBody(LightCodec.toBytes(nsd));
@@ -109,6 +152,26 @@ public class MyberryServiceVerifier {
     }
   }
 
+  /** A count above the batch limit is too long, any count below 1 is invalid. */
+  private static DefaultResponse rejectBatchCount(String key, int count, int structure) {
+    DefaultResponse defaultResponse;
+    if (count > Verifier.MAX_BATCH_COUNT) {
+      defaultResponse =
+          new DefaultResponse(
+              ResponseCode.PARAMETER_LENGTH_TOO_LONG,
+              structure,
+              String.format("count %d exceeds %d", count, Verifier.MAX_BATCH_COUNT));
+    } else {
+      defaultResponse =
+          new DefaultResponse(
+              ResponseCode.INVALID_PARAMETER,
+              structure,
+              String.format("count %d is not positive", count));
+    }
+    defaultResponse.setExt(key.getBytes(StandardCharsets.UTF_8));
+    return defaultResponse;
+  }
+
   public DefaultResponse addComponent(CRComponentData crcd) {
     if (myberryStore.getComponentMap().containsKey(crcd.getKey())) {
       DefaultResponse defaultResponse = new DefaultResponse(ResponseCode.KEY_EXISTED, Structure.CR);
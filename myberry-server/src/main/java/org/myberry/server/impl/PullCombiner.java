@@ -0,0 +1,210 @@
+/*
+* MIT License
+*
+* Copyright (c) 2021 MyBerry. All rights reserved.
+* https://myberry.org/
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+
+*   * Redistributions of source code must retain the above copyright notice, this
+* list of conditions and the following disclaimer.
+
+*   * Redistributions in binary form must reproduce the above copyright notice,
+* this list of conditions and the following disclaimer in the documentation
+* and/or other materials provided with the distribution.
+
+*   * Neither the name of MyBerry. nor the names of its contributors may be used
+* to endorse or promote products derived from this software without specific
+* prior written permission.
+
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+* SOFTWARE.
+*/
+package org.myberry.server.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import org.myberry.common.security.Verifier;
+
+/**
+ * Flat combining for the pulls of one key. A pulling thread publishes its pull, then either becomes
+ * the combiner, which drains the published pulls, advances the counter once for all of them and
+ * completes them, or parks until a combiner has completed its pull. So a hot key takes its lock and
+ * writes its record once per batch rather than once per pull.
+ */
+class PullCombiner {
+
+  /** A batch never asks for more ids than a single batch pull may. */
+  private static final int MAX_COMBINED_COUNT = Verifier.MAX_BATCH_COUNT;
+  // a combine takes well under a microsecond, so a waiter spins a while before parking, unless
+  // spinning would hold the only processor the combiner needs
+  private static final int SPIN_TRIES =
+      Runtime.getRuntime().availableProcessors() > 1 ? 1 << 10 : 0;
+  // bounds the wait if a hand-over is missed
+  private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final ConcurrentLinkedQueue<Pull> pending = new ConcurrentLinkedQueue<>();
+  private final ReentrantLock combineLock = new ReentrantLock();
+  // guarded by combineLock
+  private final List<Pull> batch = new ArrayList<>();
+
+  /** Advances the counter once for a whole batch. */
+  interface Counter {
+
+    /**
+     * Advances the counter by total and sets the range of every pull, in order, as if they had
+     * been served one after another.
+     */
+    void advance(List<Pull> batch, int total) throws Exception;
+  }
+
+  static class Pull {
+
+    private final int count;
+    private final Thread waiter;
+    private long first;
+    private long last;
+    // the time period of a CR range, 0 for NS
+    private int period;
+    private Throwable error;
+    private volatile boolean done = false;
+
+    Pull(int count) {
+      this.count = count;
+      this.waiter = Thread.currentThread();
+    }
+
+    int getCount() {
+      return count;
+    }
+
+    long getFirst() {
+      return first;
+    }
+
+    long getLast() {
+      return last;
+    }
+
+    void setRange(long first, long last) {
+      this.first = first;
+      this.last = last;
+    }
+
+    int getPeriod() {
+      return period;
+    }
+
+    void setPeriod(int period) {
+      this.period = period;
+    }
+  }
+
+  /**
+   * Pulls count ids. Every pull of the same key must pass an equivalent counter, as whichever
+   * thread combines uses its own.
+   */
+  Pull pull(int count, Counter counter) throws Exception {
+    Pull pull = new Pull(count);
+    if (combineLock.tryLock()) {
+      // uncontended, the pull joins the batch without being published
+      try {
+        this.combine(pull, counter);
+      } finally {
+        combineLock.unlock();
+      }
+      this.handOver();
+    } else {
+      pending.offer(pull);
+      this.await(pull, counter);
+    }
+
+    if (pull.error instanceof Exception) {
+      throw (Exception) pull.error;
+    }
+    if (pull.error instanceof Error) {
+      throw (Error) pull.error;
+    }
+    return pull;
+  }
+
+  private void await(Pull pull, Counter counter) {
+    int spins = 0;
+    while (!pull.done) {
+      if (combineLock.tryLock()) {
+        try {
+          this.combine(null, counter);
+        } finally {
+          combineLock.unlock();
+        }
+        this.handOver();
+      } else if (spins < SPIN_TRIES) {
+        spins++;
+        Thread.onSpinWait();
+      } else {
+        LockSupport.parkNanos(this, PARK_NANOS);
+      }
+    }
+  }
+
+  /** A pull published after the drain may have found the lock taken. */
+  private void handOver() {
+    Pull next = pending.peek();
+    if (null != next) {
+      LockSupport.unpark(next.waiter);
+    }
+  }
+
+  private void combine(Pull own, Counter counter) {
+    int total = 0;
+    if (null != own) {
+      batch.add(own);
+      total += own.count;
+    }
+    for (Pull next = pending.peek(); null != next; next = pending.peek()) {
+      if (!batch.isEmpty() && total + next.count > MAX_COMBINED_COUNT) {
+        break;
+      }
+      // only the combiner removes, so the head is still next
+      pending.poll();
+      batch.add(next);
+      total += next.count;
+    }
+    if (batch.isEmpty()) {
+      return;
+    }
+
+    Throwable error = null;
+    try {
+      counter.advance(batch, total);
+    } catch (Throwable e) {
+      error = e;
+    }
+
+    for (Pull completed : batch) {
+      completed.error = error;
+      completed.done = true;
+      if (completed.waiter != Thread.currentThread()) {
+        LockSupport.unpark(completed.waiter);
+      }
+    }
+    batch.clear();
+  }
+}
@@ -0,0 +1,126 @@
+/*
+* MIT License
+*
+* Copyright (c) 2021 MyBerry. All rights reserved.
+* https://myberry.org/
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+
+*   * Redistributions of source code must retain the above copyright notice, this
+* list of conditions and the following disclaimer.
+
+*   * Redistributions in binary form must reproduce the above copyright notice,
+* this list of conditions and the following disclaimer in the documentation
+* and/or other materials provided with the distribution.
+
+*   * Neither the name of MyBerry. nor the names of its contributors may be used
+* to endorse or promote products derived from this software without specific
+* prior written permission.
+
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+* SOFTWARE.
+*/
+package org.myberry.server.impl;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Sizes the NS segments of one key so they last about refreshIntervalMills each. The ids of the
+ * last segment of a client lasted until its next pull, so its next count is the last one scaled by
+ * refresh interval over pull interval. Oversized segments waste ids, so a count shrinks at once but
+ * at most doubles per pull.
+ *
+ * <p>Each client is sized on its own intervals, the pulls of several clients interleaved would
+ * otherwise look like one client pulling that much faster. A client that has not pulled for
+ * {@link #EXPIRE_REFRESH_INTERVALS} refresh intervals is forgotten and starts over at minCount.
+ */
+class SegmentSizer {
+
+  static final int EXPIRE_REFRESH_INTERVALS = 10;
+
+  private final int minCount;
+  private final int maxCount;
+  private final long refreshIntervalMills;
+  private final long expireMills;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  // guarded by lock
+  private final Map<String /* client id */, Client> clients = new HashMap<>();
+  private long lastExpireTimestamp = 0;
+
+  private static class Client {
+    private long lastPullTimestamp;
+    private int count;
+  }
+
+  SegmentSizer(int minCount, int maxCount, long refreshIntervalMills) {
+    this.minCount = minCount;
+    this.maxCount = Math.max(minCount, maxCount);
+    this.refreshIntervalMills = refreshIntervalMills;
+    this.expireMills = Math.max(1L, refreshIntervalMills * EXPIRE_REFRESH_INTERVALS);
+  }
+
+  /**
+   * @param clientId identifies the client pulling, null for a client that can not be told apart
+   * @return the count of stepSize ranges to hand out on a pull at currentTimeMillis
+   */
+  int nextCount(String clientId, long currentTimeMillis) {
+    lock.lock();
+    try {
+      if (currentTimeMillis - lastExpireTimestamp >= expireMills) {
+        this.expire(currentTimeMillis);
+      }
+
+      Client client = clients.get(clientId);
+      if (null == client) {
+        client = new Client();
+        client.count = minCount;
+        clients.put(clientId, client);
+      } else {
+        long interval = Math.max(1L, currentTimeMillis - client.lastPullTimestamp);
+        long target = client.count * refreshIntervalMills / interval;
+        target = Math.min(target, 2L * client.count);
+        client.count = (int) Math.max(minCount, Math.min(maxCount, target));
+      }
+      client.lastPullTimestamp = currentTimeMillis;
+      return client.count;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  int getClientCount() {
+    lock.lock();
+    try {
+      return clients.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void expire(long currentTimeMillis) {
+    Iterator<Client> it = clients.values().iterator();
+    while (it.hasNext()) {
+      if (currentTimeMillis - it.next().lastPullTimestamp > expireMills) {
+        it.remove();
+      }
+    }
+    lastExpireTimestamp = currentTimeMillis;
+  }
+}
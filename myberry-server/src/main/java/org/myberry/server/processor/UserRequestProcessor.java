@@ -37,16 +37,19 @@ package org.myberry.server.processor;
 
 import io.netty.channel.ChannelHandlerContext;
 import org.myberry.common.constant.LoggerName;
+import org.myberry.common.protocol.RequestCode;
 import org.myberry.common.protocol.header.user.PullIdBackRequestHeader;
 import org.myberry.common.protocol.header.user.PullIdBackResponseHeader;
-import org.myberry.remoting.netty.NettyRequestProcessor;
+import org.myberry.remoting.common.RemotingHelper;
+import org.myberry.remoting.exception.RemotingCommandException;
+import org.myberry.remoting.netty.InlineRequestProcessor;
 import org.myberry.remoting.protocol.RemotingCommand;
 import org.myberry.server.ServerController;
 import org.myberry.server.impl.DefaultResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class UserRequestProcessor implements NettyRequestProcessor {
+public class UserRequestProcessor implements InlineRequestProcessor {
 
   private static final Logger log = LoggerFactory.getLogger(LoggerName.SERVER_LOGGER_NAME);
   private final ServerController serverController;
@@ -58,11 +61,27 @@ public class UserRequestProcessor implements NettyRequestProcessor {
   @Override
   public RemotingCommand processRequest(ChannelHandlerContext ctx, RemotingCommand request)
       throws Exception {
-    PullIdBackRequestHeader requestHeader =
-        (PullIdBackRequestHeader) request.decodeCommandCustomHeader(PullIdBackRequestHeader.class);
-
-    DefaultResponse defaultResponse =
-        serverController.getMyberryService().getNewId(requestHeader.getKey(), request.getBody());
+    PullIdBackRequestHeader requestHeader = decodeRequestHeader(request);
+
+    DefaultResponse defaultResponse;
+    if (RequestCode.PULL_ID_BATCH == request.getCode()) {
+      defaultResponse =
+          serverController
+              .getMyberryService()
+              .getNewIds(
+                  requestHeader.getKey(),
+                  request.getBody(),
+                  null == requestHeader.getCount() ? 1 : requestHeader.getCount());
+    } else {
+      // a connection is a client, the segments of an NS key are sized for each one
+      defaultResponse =
+          serverController
+              .getMyberryService()
+              .getNewId(
+                  requestHeader.getKey(),
+                  request.getBody(),
+                  RemotingHelper.parseChannelRemoteAddr(ctx.channel()));
+    }
 
     RemotingCommand response =
         RemotingCommand.createResponseCommand(PullIdBackResponseHeader.class);
@@ -73,7 +92,7 @@ public class UserRequestProcessor implements NettyRequestProcessor {
     responseHeader.setStructure(defaultResponse.getStructure());
 
     response.setCode(defaultResponse.getRespCode());
-    response.setRemark(response.getRemark());
+    response.setRemark(defaultResponse.getRemark());
     response.setBody(defaultResponse.getBody());
 
     return response;
@@ -83,4 +102,40 @@ public class UserRequestProcessor implements NettyRequestProcessor {
   public boolean rejectRequest() {
     return this.serverController.getMyberryStore().isOSPageCacheBusy();
   }
+
+  /**
+   * Only a single id whose write can not wait on the disk, and whose key needs no attachments to
+   * render, is cheap enough for the IO thread.
+   */
+  @Override
+  public boolean acceptInline(ChannelHandlerContext ctx, RemotingCommand request) {
+    if (RequestCode.PULL_ID != request.getCode()
+        || this.serverController.getMyberryStore().isWriteBackPressure()) {
+      return false;
+    }
+
+    try {
+      String key = decodeRequestHeader(request).getKey();
+      return this.serverController.getMyberryService().isStaticKey(key);
+    } catch (RemotingCommandException e) {
+      // the executor fails it again and answers the error
+      return false;
+    }
+  }
+
+  /**
+   * Decodes the header once and keeps it on the command, the IO thread may already have decoded it
+   * to pick a request lane or to run the request inline.
+   */
+  public static PullIdBackRequestHeader decodeRequestHeader(RemotingCommand request)
+      throws RemotingCommandException {
+    if (request.readCustomHeader() instanceof PullIdBackRequestHeader) {
+      return (PullIdBackRequestHeader) request.readCustomHeader();
+    }
+
+    PullIdBackRequestHeader requestHeader =
+        (PullIdBackRequestHeader) request.decodeCommandCustomHeader(PullIdBackRequestHeader.class);
+    request.writeCustomHeader(requestHeader);
+    return requestHeader;
+  }
 }
@@ -36,6 +36,7 @@
 package org.myberry.server.util;
 
 import java.time.Instant;
+import java.time.LocalDate;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import org.myberry.common.expression.parser.TimeParser;
@@ -63,6 +64,43 @@ public class DateUtils {
     return StrategyDate.NON_TIME;
   }
 
+  public static int getPeriod(int type, long time) {
+    if (StrategyDate.NON_TIME == type) {
+      return 0;
+    }
+
+    LocalDate date = Instant.ofEpochMilli(time).atZone(ZoneId.systemDefault()).toLocalDate();
+    switch (type) {
+      case StrategyDate.TIME_DAY:
+        return (int) date.toEpochDay();
+      case StrategyDate.TIME_MONTH:
+        return date.getYear() * 12 + date.getMonthValue();
+      case StrategyDate.TIME_YEAR:
+        return date.getYear();
+      default:
+        return 0;
+    }
+  }
+
+  /** The inverse of getPeriod(): the first millisecond of period. */
+  public static long getPeriodBeginMillis(int type, int period) {
+    LocalDate begin;
+    switch (type) {
+      case StrategyDate.TIME_DAY:
+        begin = LocalDate.ofEpochDay(period);
+        break;
+      case StrategyDate.TIME_MONTH:
+        begin = LocalDate.of((period - 1) / 12, (period - 1) % 12 + 1, 1);
+        break;
+      case StrategyDate.TIME_YEAR:
+        begin = LocalDate.of(period, 1, 1);
+        break;
+      default:
+        return 0;
+    }
+    return begin.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+  }
+
   public static String convertTime(int type, long time) {
 
     DateTimeFormatter format;
@@ -0,0 +1,99 @@
+/*
+* MIT License
+*
+* Copyright (c) 2021 MyBerry. All rights reserved.
+* https://myberry.org/
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+
+*   * Redistributions of source code must retain the above copyright notice, this
+* list of conditions and the following disclaimer.
+
+*   * Redistributions in binary form must reproduce the above copyright notice,
+* this list of conditions and the following disclaimer in the documentation
+* and/or other materials provided with the distribution.
+
+*   * Neither the name of MyBerry. nor the names of its contributors may be used
+* to endorse or promote products derived from this software without specific
+* prior written permission.
+
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+* SOFTWARE.
+*/
+package org.myberry.server.util;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import org.myberry.common.strategy.StrategyDate;
+
+/** A day, month or year in the system time zone, as [beginMillis, endMillis). */
+public final class TimePeriod {
+
+  private final int period;
+  private final long beginMillis;
+  private final long endMillis;
+
+  private TimePeriod(int period, long beginMillis, long endMillis) {
+    this.period = period;
+    this.beginMillis = beginMillis;
+    this.endMillis = endMillis;
+  }
+
+  public static TimePeriod of(int type, long time) {
+    ZoneId zoneId = ZoneId.systemDefault();
+    LocalDate date = Instant.ofEpochMilli(time).atZone(zoneId).toLocalDate();
+    LocalDate begin;
+    LocalDate end;
+    switch (type) {
+      case StrategyDate.TIME_DAY:
+        begin = date;
+        end = date.plusDays(1);
+        break;
+      case StrategyDate.TIME_MONTH:
+        begin = date.withDayOfMonth(1);
+        end = begin.plusMonths(1);
+        break;
+      case StrategyDate.TIME_YEAR:
+        begin = date.withDayOfYear(1);
+        end = begin.plusYears(1);
+        break;
+      default:
+        return new TimePeriod(0, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    return new TimePeriod(
+        DateUtils.getPeriod(type, time),
+        begin.atStartOfDay(zoneId).toInstant().toEpochMilli(),
+        end.atStartOfDay(zoneId).toInstant().toEpochMilli());
+  }
+
+  public boolean contains(long time) {
+    return time >= beginMillis && time < endMillis;
+  }
+
+  public int getPeriod() {
+    return period;
+  }
+
+  public long getBeginMillis() {
+    return beginMillis;
+  }
+
+  public long getEndMillis() {
+    return endMillis;
+  }
+}
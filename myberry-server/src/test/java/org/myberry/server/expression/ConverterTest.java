@@ -35,6 +35,10 @@
 */
 package org.myberry.server.expression;
 
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
 import org.junit.Assert;
 import org.junit.Test;
 import org.myberry.common.expression.impl.ExpressionObject;
@@ -44,6 +48,7 @@ import org.myberry.common.expression.impl.ParserManager;
 import org.myberry.server.expression.handler.DynamicHandler;
 import org.myberry.server.expression.handler.IncrHandler;
 import org.myberry.server.expression.handler.SidHandler;
+import org.myberry.server.expression.handler.TimeHandler;
 import org.myberry.server.expression.impl.BufferStructObject;
 import org.myberry.server.expression.impl.PlaceholderObject;
 
@@ -98,4 +103,65 @@ public class ConverterTest {
       Assert.assertNotNull(sb.toString());
     }
   }
+
+  @Test
+  public void getResult() {
+    ConverterManager cm = ConverterManager.getInstance();
+    cm.registerDefaultConverter();
+
+    BufferStructObject bufferStructObject =
+        cm.getExpressionConverterFactory()
+            .doConvert(
+                ExpressionParser.split(
+                    "[#time(day) 5 #sid(1) #sid(0) #incr(2) #incr(1) #incr(0) #rand(2) m $dynamic(Hi_)]"));
+    bufferStructObject.setSid(3);
+
+    Map<String, String> attachments = new HashMap<>();
+    attachments.put("Hi_", "abc");
+    String day = DateTimeFormatter.ofPattern(TimeHandler.DAY_PATTERN).format(LocalDate.now());
+
+    String newId = bufferStructObject.getResult(1234L, attachments);
+    Assert.assertEquals(day.length() + 12, newId.length());
+    Assert.assertTrue(newId.startsWith(day + "503234"));
+    Assert.assertTrue(newId.endsWith("mabc"));
+
+    newId = bufferStructObject.getResult(5L, null);
+    Assert.assertTrue(newId.startsWith(day + "503005"));
+    Assert.assertTrue(newId.endsWith("m"));
+
+    // rendered from the period the counter was advanced in, not from the clock
+    int yesterday = (int) LocalDate.now().minusDays(1).toEpochDay();
+    newId = bufferStructObject.getResult(5L, yesterday, null);
+    Assert.assertTrue(
+        newId.startsWith(
+            DateTimeFormatter.ofPattern(TimeHandler.DAY_PATTERN)
+                    .format(LocalDate.ofEpochDay(yesterday))
+                + "503005"));
+
+    // a builder reused for a batch starts over for every id
+    StringBuilder result = BufferStructObject.newResultBuilder();
+    String prefix =
+        DateTimeFormatter.ofPattern(TimeHandler.DAY_PATTERN).format(LocalDate.ofEpochDay(yesterday))
+            + "50300";
+    String first = bufferStructObject.getResult(result, 5L, yesterday, null);
+    Assert.assertTrue(first.startsWith(prefix + "5"));
+    String second = bufferStructObject.getResult(result, 6L, yesterday, null);
+    Assert.assertTrue(second.startsWith(prefix + "6"));
+    Assert.assertEquals(first.length(), second.length());
+  }
+
+  @Test
+  public void isDynamic() {
+    ConverterManager cm = ConverterManager.getInstance();
+    cm.registerDefaultConverter();
+
+    Assert.assertTrue(
+        cm.getExpressionConverterFactory()
+            .doConvert(ExpressionParser.split("[#sid(0) #incr(0) $dynamic(Hi_)]"))
+            .isDynamic());
+    Assert.assertFalse(
+        cm.getExpressionConverterFactory()
+            .doConvert(ExpressionParser.split("[#time(day) #sid(0) #incr(0) m]"))
+            .isDynamic());
+  }
 }
@@ -72,4 +72,35 @@ public class HATransferTest {
     Assert.assertEquals(v.getSid(), ((Vote) decode.getHaMessage()).getSid());
     Assert.assertEquals(haMessage.getConnId(), decode.getConnId());
   }
+
+  @Test
+  public void dataBufferTest() {
+    byte[] data = new byte[] {1, 2, 3, 4, 5, 6, 7, 8};
+    ByteBuffer dataBuffer = ByteBuffer.wrap(data, 2, 5).slice().asReadOnlyBuffer();
+
+    Vote v = new Vote();
+    v.setSid(1267);
+
+    HAMessage haMessage = new HAMessage();
+    haMessage.setHaMessage(v);
+    haMessage.setConnId(1267);
+    haMessage.setDataBuffer(dataBuffer);
+
+    HAMessage decode = HATransfer.decode(HATransfer.encode(haMessage), 0);
+    Assert.assertArrayEquals(new byte[] {3, 4, 5, 6, 7}, decode.getData());
+    Assert.assertEquals(5, dataBuffer.remaining());
+
+    ByteBuffer[] byteBuffers = HATransfer.encodeGathering(haMessage);
+    Assert.assertEquals(2, byteBuffers.length);
+    ByteBuffer frame =
+        ByteBuffer.allocate(byteBuffers[0].remaining() + byteBuffers[1].remaining());
+    frame.put(byteBuffers[0]).put(byteBuffers[1]).flip();
+    Assert.assertEquals(HATransfer.headerDecode(frame, 0), frame.remaining());
+
+    decode = HATransfer.decode(frame, 0);
+    Assert.assertEquals(v.getSid(), ((Vote) decode.getHaMessage()).getSid());
+    Assert.assertEquals(haMessage.getConnId(), decode.getConnId());
+    Assert.assertArrayEquals(new byte[] {3, 4, 5, 6, 7}, decode.getData());
+    Assert.assertEquals(5, dataBuffer.remaining());
+  }
 }
@@ -143,6 +143,13 @@ public class MyberryServiceAdapterTest {
     Assert.assertEquals(ResponseCode.KEY_NOT_EXISTED, resp3.getRespCode());
   }
 
+  @Test
+  public void test_e() {
+    Assert.assertTrue(myberryServiceAdapter.isStaticKey("key1"));
+    Assert.assertTrue(myberryServiceAdapter.isStaticKey("key2"));
+    Assert.assertFalse(myberryServiceAdapter.isStaticKey("keyx"));
+  }
+
   @AfterClass
   public static void destroy() {
     myberryServiceAdapter.shutdown();
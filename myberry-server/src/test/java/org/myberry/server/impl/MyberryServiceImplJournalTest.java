@@ -0,0 +1,139 @@
+/*
+* MIT License
+*
+* Copyright (c) 2021 MyBerry. All rights reserved.
+* https://myberry.org/
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+
+*   * Redistributions of source code must retain the above copyright notice, this
+* list of conditions and the following disclaimer.
+
+*   * Redistributions in binary form must reproduce the above copyright notice,
+* this list of conditions and the following disclaimer in the documentation
+* and/or other materials provided with the distribution.
+
+*   * Neither the name of MyBerry. nor the names of its contributors may be used
+* to endorse or promote products derived from this software without specific
+* prior written permission.
+
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+* SOFTWARE.
+*/
+package org.myberry.server.impl;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.myberry.common.protocol.body.admin.CRComponentData;
+import org.myberry.server.converter.ConverterService;
+import org.myberry.store.CRComponent;
+import org.myberry.store.DefaultMyberryStore;
+import org.myberry.store.MyberryStore;
+import org.myberry.store.config.FlushDiskType;
+import org.myberry.store.config.StoreConfig;
+import org.myberry.store.impl.CounterJournal;
+
+/** CR pulls contending on one key while the journal keeps both of its halves in use. */
+public class MyberryServiceImplJournalTest {
+
+  private static final String BASE_DIR =
+      new File("").getAbsolutePath() + File.separator + "journal";
+
+  private static StoreConfig storeConfig;
+  private static MyberryStore myberryStore;
+  private static ConverterService converterService;
+  private static MyberryServiceImpl myberryServiceImpl;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    storeConfig = new StoreConfig();
+    storeConfig.setStorePath(BASE_DIR);
+    storeConfig.setFlushDiskType(FlushDiskType.GROUP_FLUSH.name());
+    storeConfig.setCounterJournalEnable(true);
+    // two records per half, so the writer keeps waiting for checkpoints in the store
+    storeConfig.setCounterJournalFileSize(
+        CounterJournal.HEADER_SIZE + 4 * CounterJournal.RECORD_SIZE);
+    start();
+
+    CRComponentData crcd = new CRComponentData();
+    crcd.setKey("key1");
+    crcd.setExpression("[m z #incr(4) #incr(3) #incr(2) #incr(1) #incr(0)]");
+    Assert.assertTrue(myberryServiceImpl.addComponent(crcd));
+  }
+
+  @Test
+  public void testContendedPersist() throws Exception {
+    int threads = 16;
+    int pulls = 200;
+    Set<String> newIds = ConcurrentHashMap.newKeySet();
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < threads; i++) {
+      futures.add(
+          executor.submit(
+              () -> {
+                for (int j = 0; j < pulls; j++) {
+                  newIds.add(myberryServiceImpl.getNewId("key1", null).getNewId());
+                }
+                return null;
+              }));
+    }
+    for (Future<?> future : futures) {
+      future.get(60, TimeUnit.SECONDS);
+    }
+    executor.shutdown();
+
+    Assert.assertEquals(threads * pulls, newIds.size());
+    CRComponent crc = (CRComponent) myberryStore.getComponentMap().get("key1");
+    Assert.assertEquals(threads * pulls, CRComponent.incrNumber(crc.getPersistedIncrState()));
+
+    // the journal and the block files agree on the last id after a restart
+    stop();
+    start();
+    Assert.assertEquals(
+        "mz0" + (threads * pulls + 1), myberryServiceImpl.getNewId("key1", null).getNewId());
+  }
+
+  private static void start() throws Exception {
+    myberryStore = new DefaultMyberryStore(storeConfig);
+    myberryStore.start();
+    converterService = new ConverterService(myberryStore);
+    converterService.start();
+    myberryServiceImpl = new MyberryServiceImpl(myberryStore, converterService);
+  }
+
+  private static void stop() {
+    converterService.shutdown();
+    myberryStore.shutdown();
+  }
+
+  @AfterClass
+  public static void destroy() {
+    stop();
+    MyberryServiceImplTest.delFile(new File(BASE_DIR));
+  }
+}
@@ -0,0 +1,204 @@
+/*
+* MIT License
+*
+* Copyright (c) 2021 MyBerry. All rights reserved.
+* https://myberry.org/
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+
+*   * Redistributions of source code must retain the above copyright notice, this
+* list of conditions and the following disclaimer.
+
+*   * Redistributions in binary form must reproduce the above copyright notice,
+* this list of conditions and the following disclaimer in the documentation
+* and/or other materials provided with the distribution.
+
+*   * Neither the name of MyBerry. nor the names of its contributors may be used
+* to endorse or promote products derived from this software without specific
+* prior written permission.
+
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+* SOFTWARE.
+*/
+package org.myberry.server.impl;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import org.myberry.common.protocol.body.admin.CRComponentData;
+import org.myberry.common.protocol.body.admin.NSComponentData;
+import org.myberry.common.protocol.body.user.CRBatchPullResultData;
+import org.myberry.common.protocol.body.user.CRPullResultData;
+import org.myberry.common.protocol.body.user.NSPullResultData;
+import org.myberry.server.converter.ConverterService;
+import org.myberry.store.CRComponent;
+import org.myberry.store.DefaultMyberryStore;
+import org.myberry.store.MyberryStore;
+import org.myberry.store.NSComponent;
+import org.myberry.store.config.StoreConfig;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class MyberryServiceImplOffHeapTest {
+
+  private static StoreConfig storeConfig;
+  private static MyberryStore myberryStore;
+  private static ConverterService converterService;
+  private static MyberryServiceImpl myberryServiceImpl;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    storeConfig = new StoreConfig();
+    storeConfig.setStorePath(new File("").getAbsolutePath());
+    storeConfig.setBlockFileSize(200);
+    storeConfig.setOffHeapIndexEnable(true);
+    start();
+  }
+
+  private static void start() throws Exception {
+    myberryStore = new DefaultMyberryStore(storeConfig);
+    myberryStore.start();
+
+    converterService = new ConverterService(myberryStore);
+    converterService.start();
+
+    myberryServiceImpl = new MyberryServiceImpl(myberryStore, converterService);
+  }
+
+  private static void stop() {
+    converterService.shutdown();
+    myberryStore.shutdown();
+  }
+
+  @Test
+  public void test_a() throws Exception {
+    CRComponentData crcd = new CRComponentData();
+    crcd.setKey("key1");
+    crcd.setExpression("[2 3 J #sid(0) #sid(1) m z #incr(1) #incr(0)]");
+    Assert.assertTrue(myberryServiceImpl.addComponent(crcd));
+
+    NSComponentData nscd = new NSComponentData();
+    nscd.setKey("key2");
+    nscd.setInitNumber(100);
+    nscd.setStepSize(5);
+    nscd.setResetType(1);
+    Assert.assertTrue(myberryServiceImpl.addComponent(nscd));
+
+    Assert.assertTrue(myberryStore.getComponentMap().containsKey("key1"));
+    Assert.assertFalse(myberryStore.getComponentMap().containsKey("key3"));
+    Assert.assertEquals(2, myberryServiceImpl.queryComponentSize().getSize());
+  }
+
+  @Test
+  public void test_b() throws Exception {
+    CRPullResultData crd1 = myberryServiceImpl.getNewId("key1", null);
+    Assert.assertEquals("23J00mz01", crd1.getNewId());
+    CRBatchPullResultData crbd = myberryServiceImpl.getNewIds("key1", null, 3);
+    Assert.assertEquals("23J00mz02", crbd.getNewIds().get(0));
+    Assert.assertEquals("23J00mz04", crbd.getNewIds().get(2));
+
+    NSPullResultData nsd1 = myberryServiceImpl.getNewId("key2");
+    Assert.assertEquals(100, nsd1.getStart());
+    Assert.assertEquals(104, nsd1.getEnd());
+    Assert.assertTrue(nsd1.isTimeBased());
+    NSPullResultData nsd2 = myberryServiceImpl.getNewId("key2", 3);
+    Assert.assertEquals(105, nsd2.getStart());
+    Assert.assertEquals(119, nsd2.getEnd());
+  }
+
+  @Test
+  public void test_c() throws Exception {
+    Set<String> newIds = ConcurrentHashMap.newKeySet();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      futures.add(
+          executor.submit(
+              () -> {
+                for (int j = 0; j < 12; j++) {
+                  newIds.add(myberryServiceImpl.getNewId("key1", null).getNewId());
+                }
+                return null;
+              }));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+
+    Assert.assertEquals(96, newIds.size());
+    // a snapshot decoded from the record
+    CRComponent crc = (CRComponent) myberryStore.getComponentMap().get("key1");
+    Assert.assertEquals(100, crc.getIncrNumber());
+  }
+
+  @Test
+  public void test_d() throws Exception {
+    stop();
+    start();
+
+    // two digits of #incr
+    Assert.assertEquals("23J00mz01", myberryServiceImpl.getNewId("key1", null).getNewId());
+    CRComponent crc = (CRComponent) myberryStore.getComponentMap().get("key1");
+    Assert.assertEquals(101, crc.getIncrNumber());
+    NSComponent nsc = (NSComponent) myberryStore.getComponentMap().get("key2");
+    Assert.assertEquals(120, nsc.getCurrentNumber().get());
+    Assert.assertEquals(120, myberryServiceImpl.getNewId("key2").getStart());
+  }
+
+  @Test
+  public void test_e() throws Exception {
+    NSComponentData nscd = new NSComponentData();
+    nscd.setKey("key3");
+    nscd.setInitNumber(Integer.MAX_VALUE - 9);
+    nscd.setStepSize(5);
+    Assert.assertTrue(myberryServiceImpl.addComponent(nscd));
+
+    NSPullResultData nsd = myberryServiceImpl.getNewId("key3");
+    Assert.assertEquals(Integer.MAX_VALUE - 9, nsd.getStart());
+    Assert.assertEquals(Integer.MAX_VALUE - 5, nsd.getEnd());
+    // the next segment would end past Integer.MAX_VALUE, it is refused and nothing moves
+    for (int i = 0; i < 2; i++) {
+      try {
+        myberryServiceImpl.getNewId("key3");
+        Assert.fail();
+      } catch (ArithmeticException expected) {
+      }
+    }
+    NSComponent nsc = (NSComponent) myberryStore.getComponentMap().get("key3");
+    Assert.assertEquals(Integer.MAX_VALUE - 4, nsc.getCurrentNumber().get());
+  }
+
+  @AfterClass
+  public static void destroy() {
+    stop();
+    delFile(new File(storeConfig.getStoreRootDir()));
+  }
+
+  public static void delFile(File file) {
+    MyberryServiceImplTest.delFile(file);
+  }
+}
@@ -37,6 +37,13 @@ package org.myberry.server.impl;
 
 import java.io.File;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.junit.AfterClass;
 import org.junit.Assert;
 import org.junit.BeforeClass;
@@ -46,6 +53,7 @@ import org.junit.runners.MethodSorters;
 import org.myberry.common.protocol.body.admin.CRComponentData;
 import org.myberry.common.protocol.body.admin.ComponentSizeData;
 import org.myberry.common.protocol.body.admin.NSComponentData;
+import org.myberry.common.protocol.body.user.CRBatchPullResultData;
 import org.myberry.common.protocol.body.user.CRPullResultData;
 import org.myberry.common.protocol.body.user.NSPullResultData;
 import org.myberry.server.converter.ConverterService;
@@ -119,6 +127,7 @@ public class MyberryServiceImplTest {
     Assert.assertEquals(100, nsd1.getStart());
     Assert.assertEquals(104, nsd1.getEnd());
     Assert.assertEquals(0, nsd1.getSynergyId());
+    Assert.assertTrue(nsd1.isTimeBased());
     NSPullResultData nsd2 = myberryServiceImpl.getNewId("key2");
     Assert.assertEquals(105, nsd2.getStart());
     Assert.assertEquals(109, nsd2.getEnd());
@@ -152,6 +161,75 @@ public class MyberryServiceImplTest {
     Assert.assertEquals(1, nscd.getResetType());
   }
 
+  @Test
+  public void test_h() throws Exception {
+    CRBatchPullResultData crbd = myberryServiceImpl.getNewIds("key1", null, 3);
+    Assert.assertEquals(3, crbd.getNewIds().size());
+    Assert.assertEquals("23J00mz03", crbd.getNewIds().get(0));
+    Assert.assertEquals("23J00mz05", crbd.getNewIds().get(2));
+    CRPullResultData crd = myberryServiceImpl.getNewId("key1", null);
+    Assert.assertEquals("23J00mz06", crd.getNewId());
+  }
+
+  @Test
+  public void test_i() throws Exception {
+    NSPullResultData nsd1 = myberryServiceImpl.getNewId("key2", 3);
+    Assert.assertEquals(110, nsd1.getStart());
+    Assert.assertEquals(124, nsd1.getEnd());
+    NSPullResultData nsd2 = myberryServiceImpl.getNewId("key2");
+    Assert.assertEquals(125, nsd2.getStart());
+    Assert.assertEquals(129, nsd2.getEnd());
+  }
+
+  @Test
+  public void test_j() throws Exception {
+    Set<String> newIds = ConcurrentHashMap.newKeySet();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      futures.add(
+          executor.submit(
+              () -> {
+                for (int j = 0; j < 12; j++) {
+                  newIds.add(myberryServiceImpl.getNewId("key1", null).getNewId());
+                }
+                return null;
+              }));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+
+    Assert.assertEquals(96, newIds.size());
+    CRComponent crc = (CRComponent) myberryStore.getComponentMap().get("key1");
+    Assert.assertEquals(102, crc.getIncrNumber());
+    Assert.assertEquals(102, CRComponent.incrNumber(crc.getPersistedIncrState()));
+  }
+
+  @Test
+  public void test_k() throws Exception {
+    NSComponentData nscd = new NSComponentData();
+    nscd.setKey("key3");
+    nscd.setInitNumber(Integer.MAX_VALUE - 9);
+    nscd.setStepSize(5);
+    Assert.assertTrue(myberryServiceImpl.addComponent(nscd));
+
+    NSPullResultData nsd = myberryServiceImpl.getNewId("key3");
+    Assert.assertEquals(Integer.MAX_VALUE - 9, nsd.getStart());
+    Assert.assertEquals(Integer.MAX_VALUE - 5, nsd.getEnd());
+    // the next segment would end past Integer.MAX_VALUE, it is refused and nothing moves
+    for (int i = 0; i < 2; i++) {
+      try {
+        myberryServiceImpl.getNewId("key3");
+        Assert.fail();
+      } catch (ArithmeticException expected) {
+      }
+    }
+    NSComponent nsc = (NSComponent) myberryStore.getComponentMap().get("key3");
+    Assert.assertEquals(Integer.MAX_VALUE - 4, nsc.getCurrentNumber().get());
+  }
+
   @AfterClass
   public static void destroy() {
     converterService.shutdown();
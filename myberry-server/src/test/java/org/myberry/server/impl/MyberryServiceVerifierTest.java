@@ -51,6 +51,7 @@ import org.myberry.common.protocol.body.admin.ComponentSizeData;
 import org.myberry.common.protocol.body.admin.NSComponentData;
 import org.myberry.common.protocol.body.user.CRPullResultData;
 import org.myberry.common.protocol.body.user.NSPullResultData;
+import org.myberry.common.security.Verifier;
 import org.myberry.common.structure.Structure;
 import org.myberry.server.converter.ConverterService;
 import org.myberry.store.CRComponent;
@@ -193,6 +194,18 @@ public class MyberryServiceVerifierTest {
     Assert.assertEquals(5, nsComponentData.getStepSize());
     Assert.assertEquals(1, nsComponentData.getResetType());
   }
+  @Test
+  public void test_g() {
+    Assert.assertEquals(
+        ResponseCode.INVALID_PARAMETER,
+        myberryServiceVerifier.getNewIds("key1", null, 0).getRespCode());
+    Assert.assertEquals(
+        ResponseCode.INVALID_PARAMETER, myberryServiceVerifier.getNewIds("key2", -1).getRespCode());
+    Assert.assertEquals(
+        ResponseCode.PARAMETER_LENGTH_TOO_LONG,
+        myberryServiceVerifier.getNewIds("key2", Verifier.MAX_BATCH_COUNT + 1).getRespCode());
+  }
+
 
   @AfterClass
   public static void destroy() {
@@ -0,0 +1,104 @@
+/*
+* MIT License
+*
+* Copyright (c) 2021 MyBerry. All rights reserved.
+* https://myberry.org/
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+
+*   * Redistributions of source code must retain the above copyright notice, this
+* list of conditions and the following disclaimer.
+
+*   * Redistributions in binary form must reproduce the above copyright notice,
+* this list of conditions and the following disclaimer in the documentation
+* and/or other materials provided with the distribution.
+
+*   * Neither the name of MyBerry. nor the names of its contributors may be used
+* to endorse or promote products derived from this software without specific
+* prior written permission.
+
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+* SOFTWARE.
+*/
+package org.myberry.server.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PullCombinerTest {
+
+  private long counter = 0;
+
+  @Test
+  public void testRangesCoverCounter() throws Exception {
+    PullCombiner pullCombiner = new PullCombiner();
+    AtomicInteger advances = new AtomicInteger();
+    PullCombiner.Counter advance =
+        (batch, total) -> {
+          advances.incrementAndGet();
+          for (PullCombiner.Pull pull : batch) {
+            pull.setRange(counter + 1, counter + pull.getCount());
+            counter += pull.getCount();
+          }
+        };
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    List<Future<List<long[]>>> futures = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      futures.add(
+          executor.submit(
+              () -> {
+                List<long[]> ranges = new ArrayList<>();
+                for (int j = 0; j < 1000; j++) {
+                  PullCombiner.Pull pull = pullCombiner.pull(j % 3 + 1, advance);
+                  Assert.assertEquals(j % 3, pull.getLast() - pull.getFirst());
+                  ranges.add(new long[] {pull.getFirst(), pull.getLast()});
+                }
+                return ranges;
+              }));
+    }
+    List<long[]> ranges = new ArrayList<>();
+    for (Future<List<long[]>> future : futures) {
+      ranges.addAll(future.get());
+    }
+    executor.shutdown();
+
+    ranges.sort((a, b) -> Long.compare(a[0], b[0]));
+    long next = 1;
+    for (long[] range : ranges) {
+      Assert.assertEquals(next, range[0]);
+      next = range[1] + 1;
+    }
+    Assert.assertEquals(counter + 1, next);
+    Assert.assertTrue(advances.get() <= 8000);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testCounterFailure() throws Exception {
+    new PullCombiner()
+        .pull(
+            1,
+            (batch, total) -> {
+              throw new IllegalStateException("overflow");
+            });
+  }
+}
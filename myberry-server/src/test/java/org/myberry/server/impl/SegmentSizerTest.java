@@ -0,0 +1,121 @@
+/*
+* MIT License
+*
+* Copyright (c) 2021 MyBerry. All rights reserved.
+* https://myberry.org/
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+
+*   * Redistributions of source code must retain the above copyright notice, this
+* list of conditions and the following disclaimer.
+
+*   * Redistributions in binary form must reproduce the above copyright notice,
+* this list of conditions and the following disclaimer in the documentation
+* and/or other materials provided with the distribution.
+
+*   * Neither the name of MyBerry. nor the names of its contributors may be used
+* to endorse or promote products derived from this software without specific
+* prior written permission.
+
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+* SOFTWARE.
+*/
+package org.myberry.server.impl;
+
+import java.util.Arrays;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SegmentSizerTest {
+
+  @Test
+  public void testGrowAtMostDouble() {
+    SegmentSizer segmentSizer = new SegmentSizer(1, 100, 1000);
+    long now = 1000000L;
+    Assert.assertEquals(1, segmentSizer.nextCount(null, now));
+    // a segment every 10ms asks for 100x, capped at 2x per pull
+    Assert.assertEquals(2, segmentSizer.nextCount(null, now += 10));
+    Assert.assertEquals(4, segmentSizer.nextCount(null, now += 10));
+    Assert.assertEquals(8, segmentSizer.nextCount(null, now += 10));
+    for (int i = 0; i < 10; i++) {
+      segmentSizer.nextCount(null, now += 10);
+    }
+    Assert.assertEquals(100, segmentSizer.nextCount(null, now += 10));
+  }
+
+  @Test
+  public void testSteadyRate() {
+    SegmentSizer segmentSizer = new SegmentSizer(1, 1000, 1000);
+    long now = 1000000L;
+    int count = segmentSizer.nextCount(null, now);
+    // consume 50 ranges per second, the count settles at a second's worth
+    for (int i = 0; i < 50; i++) {
+      now += count * 20L;
+      count = segmentSizer.nextCount(null, now);
+    }
+    Assert.assertEquals(50, count);
+  }
+
+  @Test
+  public void testShrinkAtOnce() {
+    SegmentSizer segmentSizer = new SegmentSizer(2, 100, 1000);
+    long now = 1000000L;
+    segmentSizer.nextCount(null, now);
+    for (int i = 0; i < 20; i++) {
+      segmentSizer.nextCount(null, now += 1);
+    }
+    Assert.assertEquals(100, segmentSizer.nextCount(null, now += 1));
+    // the last 100 lasted 10s, a tenth is enough for 1s
+    Assert.assertEquals(10, segmentSizer.nextCount(null, now += 10000));
+    Assert.assertEquals(2, segmentSizer.nextCount(null, now += 60000));
+  }
+
+  @Test
+  public void testSizePerClient() {
+    SegmentSizer segmentSizer = new SegmentSizer(1, 1000, 1000);
+    long now = 1000000L;
+    int[] counts = new int[4];
+    for (int c = 0; c < counts.length; c++) {
+      counts[c] = segmentSizer.nextCount("client" + c, now);
+    }
+    // each client consumes 50 ranges per second, 200 together
+    long[] nextPulls = new long[counts.length];
+    for (int c = 0; c < counts.length; c++) {
+      nextPulls[c] = now + counts[c] * 20L + c;
+    }
+    for (int i = 0; i < 400; i++) {
+      int c = 0;
+      for (int j = 1; j < nextPulls.length; j++) {
+        if (nextPulls[j] < nextPulls[c]) {
+          c = j;
+        }
+      }
+      counts[c] = segmentSizer.nextCount("client" + c, nextPulls[c]);
+      nextPulls[c] += counts[c] * 20L;
+    }
+    for (int count : counts) {
+      Assert.assertEquals(50, count);
+    }
+    Assert.assertEquals(4, segmentSizer.getClientCount());
+
+    // the clients that stopped pulling are forgotten
+    now =
+        Arrays.stream(nextPulls).max().getAsLong()
+            + 1000L * SegmentSizer.EXPIRE_REFRESH_INTERVALS;
+    Assert.assertEquals(1, segmentSizer.nextCount("client0", now));
+    Assert.assertEquals(1, segmentSizer.getClientCount());
+  }
+}
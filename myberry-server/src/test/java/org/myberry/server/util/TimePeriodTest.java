@@ -0,0 +1,105 @@
+/*
+* MIT License
+*
+* Copyright (c) 2021 MyBerry. All rights reserved.
+* https://myberry.org/
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+
+*   * Redistributions of source code must retain the above copyright notice, this
+* list of conditions and the following disclaimer.
+
+*   * Redistributions in binary form must reproduce the above copyright notice,
+* this list of conditions and the following disclaimer in the documentation
+* and/or other materials provided with the distribution.
+
+*   * Neither the name of MyBerry. nor the names of its contributors may be used
+* to endorse or promote products derived from this software without specific
+* prior written permission.
+
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+* SOFTWARE.
+*/
+package org.myberry.server.util;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import org.junit.Assert;
+import org.junit.Test;
+import org.myberry.common.strategy.StrategyDate;
+
+public class TimePeriodTest {
+
+  private static long toMillis(LocalDateTime dateTime) {
+    return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+  }
+
+  @Test
+  public void day() {
+    long time = toMillis(LocalDateTime.of(2021, 3, 31, 23, 59, 59));
+    TimePeriod timePeriod = TimePeriod.of(StrategyDate.TIME_DAY, time);
+
+    Assert.assertTrue(timePeriod.contains(time));
+    Assert.assertEquals(toMillis(LocalDateTime.of(2021, 3, 31, 0, 0)), timePeriod.getBeginMillis());
+    Assert.assertEquals(toMillis(LocalDateTime.of(2021, 4, 1, 0, 0)), timePeriod.getEndMillis());
+    Assert.assertFalse(timePeriod.contains(timePeriod.getEndMillis()));
+    Assert.assertEquals(
+        timePeriod.getPeriod() + 1,
+        TimePeriod.of(StrategyDate.TIME_DAY, timePeriod.getEndMillis()).getPeriod());
+  }
+
+  @Test
+  public void month() {
+    long time = toMillis(LocalDateTime.of(2021, 12, 15, 12, 0));
+    TimePeriod timePeriod = TimePeriod.of(StrategyDate.TIME_MONTH, time);
+
+    Assert.assertEquals(toMillis(LocalDateTime.of(2021, 12, 1, 0, 0)), timePeriod.getBeginMillis());
+    Assert.assertEquals(toMillis(LocalDateTime.of(2022, 1, 1, 0, 0)), timePeriod.getEndMillis());
+    Assert.assertEquals(
+        timePeriod.getPeriod() + 1,
+        TimePeriod.of(StrategyDate.TIME_MONTH, timePeriod.getEndMillis()).getPeriod());
+  }
+
+  @Test
+  public void year() {
+    long time = toMillis(LocalDateTime.of(2021, 6, 1, 0, 0));
+    TimePeriod timePeriod = TimePeriod.of(StrategyDate.TIME_YEAR, time);
+
+    Assert.assertEquals(2021, timePeriod.getPeriod());
+    Assert.assertEquals(toMillis(LocalDateTime.of(2021, 1, 1, 0, 0)), timePeriod.getBeginMillis());
+    Assert.assertEquals(toMillis(LocalDateTime.of(2022, 1, 1, 0, 0)), timePeriod.getEndMillis());
+  }
+
+  @Test
+  public void periodBeginMillis() {
+    long time = toMillis(LocalDateTime.of(2021, 12, 31, 18, 30));
+    for (int type :
+        new int[] {StrategyDate.TIME_DAY, StrategyDate.TIME_MONTH, StrategyDate.TIME_YEAR}) {
+      TimePeriod timePeriod = TimePeriod.of(type, time);
+      Assert.assertEquals(
+          timePeriod.getBeginMillis(),
+          DateUtils.getPeriodBeginMillis(type, timePeriod.getPeriod()));
+    }
+  }
+
+  @Test
+  public void nonTime() {
+    TimePeriod timePeriod = TimePeriod.of(StrategyDate.NON_TIME, System.currentTimeMillis());
+
+    Assert.assertEquals(0, timePeriod.getPeriod());
+    Assert.assertTrue(timePeriod.contains(System.currentTimeMillis()));
+  }
+}
@@ -40,7 +40,16 @@ public abstract class AbstractComponent {
   public static int COMPONENT_LENGTH_RELATIVE_OFFSET = 0;
   public static int STRUCTURE_RELATIVE_OFFSET = 2;
 
+  /** Position of a component in the store, blockIndex (high 32 bits) | phyOffset (low 32 bits). */
+  public static final long NO_POSITION = -1L;
+
+  /** The component has no slot in a counter table. */
+  public static final int NO_COUNTER_SLOT = -1;
+
   protected transient int blockIndex;
+  // the slot of its counters in the counter table of its block file, resolved once when the
+  // component is loaded or added
+  protected transient int counterSlot = NO_COUNTER_SLOT;
 
   public abstract short getComponentLength();
 
@@ -59,4 +68,28 @@ public abstract class AbstractComponent {
   public void setBlockIndex(int blockIndex) {
     this.blockIndex = blockIndex;
   }
+
+  public int getCounterSlot() {
+    return counterSlot;
+  }
+
+  public void setCounterSlot(int counterSlot) {
+    this.counterSlot = counterSlot;
+  }
+
+  public long getPosition() {
+    return position(blockIndex, getPhyOffset());
+  }
+
+  public static long position(int blockIndex, int phyOffset) {
+    return ((long) blockIndex << 32) | (phyOffset & 0xFFFFFFFFL);
+  }
+
+  public static int positionBlockIndex(long position) {
+    return (int) (position >>> 32);
+  }
+
+  public static int positionPhyOffset(long position) {
+    return (int) position;
+  }
 }
@@ -35,9 +35,8 @@
 */
 package org.myberry.store;
 
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 import org.myberry.common.structure.Structure;
 
 public class CRComponent extends AbstractComponent {
@@ -56,6 +55,13 @@ public class CRComponent extends AbstractComponent {
   public static int createTimeRelativeOffset = 8;
   public static int updateTimeRelativeOffset = 16;
   public static int incrNumberRelativeOffset = 24;
+  public static int keyLengthRelativeOffset = 32;
+  public static int keyRelativeOffset = 34;
+
+  // incrState = incrPeriod (high 22 bits) | incrNumber (low 42 bits), so that a period reset and an
+  // increment are a single CAS. incrPeriod 0 means the period is not known yet.
+  public static final int INCR_NUMBER_BITS = 42;
+  public static final long MAX_INCR_NUMBER = (1L << INCR_NUMBER_BITS) - 1;
 
   private short componentLength;
 
@@ -67,9 +73,10 @@ public class CRComponent extends AbstractComponent {
 
   private long createTime;
 
-  private long updateTime;
+  private volatile long updateTime;
 
-  private AtomicLong incrNumber = new AtomicLong(0);
+  // the incrNumber last written to the store, the live one is held by incrState
+  private volatile long incrNumber;
 
   private short keyLength;
 
@@ -79,7 +86,11 @@ public class CRComponent extends AbstractComponent {
 
   private String expression;
 
-  private final Lock lock = new ReentrantLock();
+  private final AtomicLong incrState = new AtomicLong(0);
+
+  private final AtomicLong persistedIncrState = new AtomicLong(0);
+
+  private final AtomicBoolean persisting = new AtomicBoolean(false);
 
   public CRComponent() {}
 
@@ -137,12 +148,43 @@ public class CRComponent extends AbstractComponent {
     this.updateTime = updateTime;
   }
 
-  public AtomicLong getIncrNumber() {
-    return incrNumber;
+  public long getIncrNumber() {
+    return incrNumber(incrState.get());
   }
 
   public void setIncrNumber(long incrNumber) {
-    this.incrNumber.set(incrNumber);
+    this.incrNumber = incrNumber;
+    this.incrState.set(incrNumber);
+    this.persistedIncrState.set(incrNumber);
+  }
+
+  public AtomicLong getIncrState() {
+    return incrState;
+  }
+
+  public long getPersistedIncrState() {
+    return persistedIncrState.get();
+  }
+
+  public void setPersistedIncrState(long persistedIncrState) {
+    this.incrNumber = incrNumber(persistedIncrState);
+    this.persistedIncrState.set(persistedIncrState);
+  }
+
+  public AtomicBoolean getPersisting() {
+    return persisting;
+  }
+
+  public static long incrState(int incrPeriod, long incrNumber) {
+    return ((long) incrPeriod << INCR_NUMBER_BITS) | incrNumber;
+  }
+
+  public static int incrPeriod(long incrState) {
+    return (int) (incrState >>> INCR_NUMBER_BITS);
+  }
+
+  public static long incrNumber(long incrState) {
+    return incrState & MAX_INCR_NUMBER;
   }
 
   public short getKeyLength() {
@@ -178,10 +220,6 @@ public class CRComponent extends AbstractComponent {
     this.expression = expression;
   }
 
-  public Lock getLock() {
-    return lock;
-  }
-
   @Override
   public String toString() {
     return new StringBuilder() //
@@ -199,7 +237,7 @@ public class CRComponent extends AbstractComponent {
         .append(", updateTime=") //
         .append(updateTime) //
         .append(", incrNumber=") //
-        .append(incrNumber.get()) //
+        .append(getIncrNumber()) //
         .append(", keyLength=") //
         .append(keyLength) //
         .append(", key='") //
@@ -43,9 +43,14 @@ import java.nio.channels.FileLock;
 import java.util.List;
 import java.util.concurrent.ConcurrentMap;
 import org.myberry.store.common.LoggerName;
+import org.myberry.store.config.FlushDiskType;
 import org.myberry.store.config.StoreConfig;
 import org.myberry.store.config.StorePathConfigHelper;
+import org.myberry.store.impl.AllocateBlockFileService;
+import org.myberry.store.impl.CheckpointService;
+import org.myberry.store.impl.CounterJournal;
 import org.myberry.store.impl.FileService;
+import org.myberry.store.impl.FlushService;
 import org.myberry.store.impl.MappedFile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -57,7 +62,12 @@ public class DefaultMyberryStore implements MyberryStore {
   private volatile boolean shutdown = false;
 
   private final StoreConfig storeConfig;
+  private final boolean asyncFlush;
   private final FileService fileService;
+  private final AllocateBlockFileService allocateBlockFileService;
+  private final FlushService flushService;
+  private final CheckpointService checkpointService;
+  private final CounterJournal counterJournal;
   private RandomAccessFile lockFile;
 
   private FileLock lock;
@@ -66,7 +76,21 @@ public class DefaultMyberryStore implements MyberryStore {
 
   public DefaultMyberryStore(final StoreConfig storeConfig) throws IOException {
     this.storeConfig = storeConfig;
-    this.fileService = new FileService(storeConfig);
+    this.asyncFlush =
+        FlushDiskType.ASYNC_FLUSH == FlushDiskType.valueOf(storeConfig.getFlushDiskType());
+    if (storeConfig.getAllocateBlockFileThreshold() > 0) {
+      this.allocateBlockFileService = new AllocateBlockFileService(storeConfig);
+    } else {
+      this.allocateBlockFileService = null;
+    }
+    this.fileService = new FileService(storeConfig, allocateBlockFileService);
+    this.flushService = new FlushService(fileService, storeConfig);
+    this.checkpointService = new CheckpointService(fileService, storeConfig);
+    if (storeConfig.isCounterJournalEnable()) {
+      this.counterJournal = new CounterJournal(fileService, storeConfig);
+    } else {
+      this.counterJournal = null;
+    }
     this.initProcessLock();
   }
 
@@ -78,6 +102,10 @@ public class DefaultMyberryStore implements MyberryStore {
   @Override
   public void modifyComponent(NSComponent nsc) {
     fileService.modifyComponent(nsc);
+    if (counterJournal != null) {
+      // the modification is not journaled, older records must not be replayed over it
+      counterJournal.checkpoint();
+    }
   }
 
   @Override
@@ -100,6 +128,11 @@ public class DefaultMyberryStore implements MyberryStore {
     return fileService.getComponentMap();
   }
 
+  @Override
+  public long getComponentPosition(String key) {
+    return fileService.getComponentPosition(key);
+  }
+
   @Override
   public List<BlockHeader> getBlockHeaderList() {
     return fileService.getBlockHeaderList();
@@ -125,6 +158,11 @@ public class DefaultMyberryStore implements MyberryStore {
     return fileService.getSyncData(blockIndex, markOffset, length);
   }
 
+  @Override
+  public ByteBuffer getSyncDataBuffer(int blockIndex, int markOffset, int length) {
+    return fileService.getSyncDataBuffer(blockIndex, markOffset, length);
+  }
+
   @Override
   public int getLastPosition() {
     return fileService.getBlockFileLastPosition();
@@ -137,24 +175,98 @@ public class DefaultMyberryStore implements MyberryStore {
 
   @Override
   public void updateBufferLong(int blockIndex, int index, long value) {
+    if (counterJournal != null) {
+      counterJournal.updateBufferLong(blockIndex, index, value);
+      return;
+    }
     fileService.updateBufferLong(blockIndex, index, value);
+    flushService.onWrite();
   }
 
   @Override
   public void updateBufferInt(int blockIndex, int index, int value) {
+    if (counterJournal != null) {
+      counterJournal.updateBufferInt(blockIndex, index, value);
+      return;
+    }
     fileService.updateBufferInt(blockIndex, index, value);
+    flushService.onWrite();
+  }
+
+  @Override
+  public void updateCounterLong(
+      AbstractComponent abstractComponent, int relativeOffset, long value) {
+    if (counterJournal != null) {
+      counterJournal.updateCounterLong(abstractComponent, relativeOffset, value);
+      return;
+    }
+    fileService.updateCounterLong(abstractComponent, relativeOffset, value);
+    flushService.onWrite();
+  }
+
+  @Override
+  public void updateCounterInt(AbstractComponent abstractComponent, int relativeOffset, int value) {
+    if (counterJournal != null) {
+      counterJournal.updateCounterInt(abstractComponent, relativeOffset, value);
+      return;
+    }
+    fileService.updateCounterInt(abstractComponent, relativeOffset, value);
+    flushService.onWrite();
+  }
+
+  @Override
+  public byte getBufferByte(int blockIndex, int index) {
+    return fileService.getBufferByte(blockIndex, index);
+  }
+
+  @Override
+  public int getBufferInt(int blockIndex, int index) {
+    return fileService.getBufferInt(blockIndex, index);
+  }
+
+  @Override
+  public long getBufferLong(int blockIndex, int index) {
+    return fileService.getBufferLong(blockIndex, index);
+  }
+
+  @Override
+  public void commitBuffer() {
+    if (counterJournal != null) {
+      counterJournal.commit();
+      return;
+    }
+    flushService.commit();
   }
 
   @Override
   public void start() throws Exception {
     this.startProcessLock();
-    this.fileService.load();
+    if (!this.fileService.load(counterJournal)) {
+      throw new IllegalStateException("load store files error, see the log");
+    }
+    if (allocateBlockFileService != null) {
+      this.allocateBlockFileService.start();
+    }
+    this.flushService.start();
+    if (counterJournal != null) {
+      this.counterJournal.start();
+    }
+    this.checkpointService.start();
   }
 
   @Override
   public void shutdown() {
     if (!this.shutdown) {
       this.shutdown = true;
+      if (allocateBlockFileService != null) {
+        this.allocateBlockFileService.shutdown();
+      }
+      this.flushService.shutdown();
+      if (counterJournal != null) {
+        this.counterJournal.shutdown();
+        this.counterJournal.unload();
+      }
+      this.checkpointService.shutdown();
       this.fileService.unload();
     }
 
@@ -168,6 +280,17 @@ public class DefaultMyberryStore implements MyberryStore {
     return diff < 10000000 && diff > this.storeConfig.getOsPageCacheBusyTimeOutMills();
   }
 
+  @Override
+  public boolean isWriteBackPressure() {
+    if (!asyncFlush) {
+      return true;
+    }
+    if (counterJournal != null && counterJournal.isCheckpointing()) {
+      return true;
+    }
+    return this.isOSPageCacheBusy();
+  }
+
   private void initProcessLock() throws IOException {
     File file = new File(StorePathConfigHelper.getLockFile(storeConfig.getStoreRootDir()));
     MappedFile.ensureDirOK(file.getParent());
@@ -35,6 +35,7 @@
 */
 package org.myberry.store;
 
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.concurrent.ConcurrentMap;
 import org.myberry.store.config.StoreConfig;
@@ -77,6 +78,15 @@ public interface MyberryStore {
    */
   ConcurrentMap<String, AbstractComponent> getComponentMap();
 
+  /**
+   * Got the position of a component without materializing it.
+   *
+   * @param key
+   * @return blockIndex and phyOffset, see {@link AbstractComponent#position(int, int)}, or {@link
+   *     AbstractComponent#NO_POSITION} if the key does not exist
+   */
+  long getComponentPosition(String key);
+
   /**
    * Got synchronize block header list.
    *
@@ -120,6 +130,16 @@ public interface MyberryStore {
    */
   byte[] getSyncData(int blockIndex, int markOffset, int length);
 
+  /**
+   * Got synchronize data as a read-only view of the block file, without copying.
+   *
+   * @param blockIndex
+   * @param markOffset
+   * @param length
+   * @return
+   */
+  ByteBuffer getSyncDataBuffer(int blockIndex, int markOffset, int length);
+
   /**
    * Got byteBuffer last position in the last block file.
    *
@@ -151,6 +171,56 @@ public interface MyberryStore {
    */
   void updateBufferInt(int blockIndex, int index, int value);
 
+  /**
+   * Update the long counter at relativeOffset of the record of a registered component, like
+   * {@link #updateBufferLong(int, int, long)} but through the counter slot cached on it.
+   *
+   * @param abstractComponent
+   * @param relativeOffset
+   * @param value
+   */
+  void updateCounterLong(AbstractComponent abstractComponent, int relativeOffset, long value);
+
+  /**
+   * Update the int counter at relativeOffset of the record of a registered component, like {@link
+   * #updateBufferInt(int, int, int)} but through the counter slot cached on it.
+   *
+   * @param abstractComponent
+   * @param relativeOffset
+   * @param value
+   */
+  void updateCounterInt(AbstractComponent abstractComponent, int relativeOffset, int value);
+
+  /**
+   * Got byte buffer
+   *
+   * @param index
+   * @return
+   */
+  byte getBufferByte(int blockIndex, int index);
+
+  /**
+   * Got int buffer
+   *
+   * @param index
+   * @return
+   */
+  int getBufferInt(int blockIndex, int index);
+
+  /**
+   * Got long buffer
+   *
+   * @param index
+   * @return
+   */
+  long getBufferLong(int blockIndex, int index);
+
+  /**
+   * Wait until the buffers updated by the calling thread are flushed, according to the configured
+   * flush disk type. Returns at once for ASYNC_FLUSH.
+   */
+  void commitBuffer();
+
   /**
    * Check if the operation system page cache is busy or not.
    *
@@ -158,6 +228,15 @@ public interface MyberryStore {
    */
   boolean isOSPageCacheBusy();
 
+  /**
+   * Check if updating the buffers and {@link #commitBuffer()} may wait on the disk now: the flush
+   * disk type is not ASYNC_FLUSH, the counter journal is checkpointing, or the OS page cache is
+   * busy. A caller that must not block hands the write to another thread while this is true.
+   *
+   * @return true if a write may block; false otherwise.
+   */
+  boolean isWriteBackPressure();
+
   /**
    * Set flush disk begin time.
    *
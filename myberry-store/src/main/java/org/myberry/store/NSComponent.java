@@ -60,6 +60,7 @@ public class NSComponent extends AbstractComponent {
   public static int stepSizeRelativeOffset = 32;
   public static int resetTypeRelativeOffset = 36;
   public static int keyLengthRelativeOffset = 37;
+  public static int keyRelativeOffset = 39;
 
   private short componentLength;
 
@@ -51,6 +51,84 @@ public class StoreConfig {
   @ImportantField private int blockFileSize = 1024 * 1024 * 8;
   private int maxSyncDataSize = 1024 * 1024 * 1;
 
+  /** SYNC_FLUSH, GROUP_FLUSH or ASYNC_FLUSH, see {@link FlushDiskType}. */
+  private String flushDiskType = FlushDiskType.ASYNC_FLUSH.name();
+
+  private int flushIntervalMills = 500;
+  private int groupFlushIntervalMills = 10;
+  /**
+   * If greater than 0, a CR incrNumber is persisted this far ahead of the issued one, so the store
+   * is only written once per incrReservation ids and a crash skips ids instead of re-issuing them.
+   */
+  private int incrReservation = 0;
+  /**
+   * How often the component index checkpoint is rewritten while components are being added. It is
+   * always written on shutdown; 0 disables the periodic write.
+   */
+  private int checkpointIntervalMills = 1000 * 60;
+  /**
+   * Index the components off-heap instead of keeping an object per component, the counters are
+   * then read and updated in the mapped records directly and incrReservation does not apply.
+   */
+  private boolean offHeapIndexEnable = false;
+  /**
+   * Combine the concurrent pulls of a key, one thread advances the counter and writes the record
+   * once for all of them, so a hot key is not served one pull at a time under its lock.
+   */
+  private boolean pullCombineEnable = false;
+  /**
+   * Size the range of a single NS pull to how fast the client pulls its key, stepSize times a
+   * count between adaptiveSegmentMinCount and adaptiveSegmentMaxCount, so a consumer comes back
+   * about every adaptiveSegmentRefreshIntervalMills. currentNumber advances by what is handed out.
+   */
+  private boolean adaptiveSegmentEnable = false;
+  private int adaptiveSegmentMinCount = 1;
+  private int adaptiveSegmentMaxCount = 1000;
+  private int adaptiveSegmentRefreshIntervalMills = 1000 * 5;
+  /**
+   * Once the last block file is filled past this percentage, the next one is created and its pages
+   * are touched in background, so the rollover does not stall the write path. 0 disables it.
+   */
+  private int allocateBlockFileThreshold = 75;
+  /**
+   * Fault in the pages holding the components of every block file while loading, so the first
+   * updates after a restart do not take the page faults one by one.
+   */
+  private boolean warmupBlockFileEnable = false;
+  /**
+   * Lock the pages holding the components in memory, so the counters are not paged out under
+   * memory pressure. Best effort: it needs the JVM option {@code
+   * --enable-native-access=ALL-UNNAMED}, plus {@code --enable-preview} on JDK 21 or {@code
+   * --add-modules jdk.incubator.foreign} on JDK 17, and enough RLIMIT_MEMLOCK. Otherwise a warning
+   * is logged and the store runs without it.
+   */
+  private boolean mlockBlockFileEnable = false;
+  /**
+   * Keep the counters of the components in a fixed-width table file per block file instead of the
+   * records, so counter updates and their flushes touch a small contiguous region. Existing records
+   * are moved into the table on load, and moved back when it is disabled again.
+   */
+  private boolean counterTableEnable = false;
+  /**
+   * Rebuild a counter table that is missing from the counters in the records of its store file.
+   * Those are only current if the table was never used for the store file, so by default the store
+   * refuses to start instead of handing out ids again.
+   */
+  private boolean counterTableRebuildEnable = false;
+  /**
+   * Persist counter updates by appending them to a sequential journal file with group fsync,
+   * instead of forcing the dirty ranges of the block files. The block files are forced by a
+   * periodic checkpoint that truncates the journal, and the journal is replayed on startup.
+   */
+  private boolean counterJournalEnable = false;
+
+  private int counterJournalFileSize = 1024 * 1024 * 16;
+  /**
+   * How often the journal is folded into the block files, it is also folded once half full. 0
+   * leaves only the latter.
+   */
+  private int counterJournalCheckpointIntervalMills = 1000 * 10;
+
   @ImportantField private String storePath = System.getProperty("user.home");
 
   public int getMySid() {
@@ -89,6 +167,158 @@ public class StoreConfig {
     this.maxSyncDataSize = maxSyncDataSize;
   }
 
+  public String getFlushDiskType() {
+    return flushDiskType;
+  }
+
+  public void setFlushDiskType(String flushDiskType) {
+    this.flushDiskType = flushDiskType;
+  }
+
+  public int getFlushIntervalMills() {
+    return flushIntervalMills;
+  }
+
+  public void setFlushIntervalMills(int flushIntervalMills) {
+    this.flushIntervalMills = flushIntervalMills;
+  }
+
+  public int getGroupFlushIntervalMills() {
+    return groupFlushIntervalMills;
+  }
+
+  public void setGroupFlushIntervalMills(int groupFlushIntervalMills) {
+    this.groupFlushIntervalMills = groupFlushIntervalMills;
+  }
+
+  public int getIncrReservation() {
+    return incrReservation;
+  }
+
+  public void setIncrReservation(int incrReservation) {
+    this.incrReservation = incrReservation;
+  }
+
+  public int getCheckpointIntervalMills() {
+    return checkpointIntervalMills;
+  }
+
+  public void setCheckpointIntervalMills(int checkpointIntervalMills) {
+    this.checkpointIntervalMills = checkpointIntervalMills;
+  }
+
+  public boolean isOffHeapIndexEnable() {
+    return offHeapIndexEnable;
+  }
+
+  public void setOffHeapIndexEnable(boolean offHeapIndexEnable) {
+    this.offHeapIndexEnable = offHeapIndexEnable;
+  }
+
+  public boolean isPullCombineEnable() {
+    return pullCombineEnable;
+  }
+
+  public void setPullCombineEnable(boolean pullCombineEnable) {
+    this.pullCombineEnable = pullCombineEnable;
+  }
+
+  public boolean isAdaptiveSegmentEnable() {
+    return adaptiveSegmentEnable;
+  }
+
+  public void setAdaptiveSegmentEnable(boolean adaptiveSegmentEnable) {
+    this.adaptiveSegmentEnable = adaptiveSegmentEnable;
+  }
+
+  public int getAdaptiveSegmentMinCount() {
+    return adaptiveSegmentMinCount;
+  }
+
+  public void setAdaptiveSegmentMinCount(int adaptiveSegmentMinCount) {
+    this.adaptiveSegmentMinCount = adaptiveSegmentMinCount;
+  }
+
+  public int getAdaptiveSegmentMaxCount() {
+    return adaptiveSegmentMaxCount;
+  }
+
+  public void setAdaptiveSegmentMaxCount(int adaptiveSegmentMaxCount) {
+    this.adaptiveSegmentMaxCount = adaptiveSegmentMaxCount;
+  }
+
+  public int getAdaptiveSegmentRefreshIntervalMills() {
+    return adaptiveSegmentRefreshIntervalMills;
+  }
+
+  public void setAdaptiveSegmentRefreshIntervalMills(int adaptiveSegmentRefreshIntervalMills) {
+    this.adaptiveSegmentRefreshIntervalMills = adaptiveSegmentRefreshIntervalMills;
+  }
+
+  public int getAllocateBlockFileThreshold() {
+    return allocateBlockFileThreshold;
+  }
+
+  public void setAllocateBlockFileThreshold(int allocateBlockFileThreshold) {
+    this.allocateBlockFileThreshold = allocateBlockFileThreshold;
+  }
+
+  public boolean isWarmupBlockFileEnable() {
+    return warmupBlockFileEnable;
+  }
+
+  public void setWarmupBlockFileEnable(boolean warmupBlockFileEnable) {
+    this.warmupBlockFileEnable = warmupBlockFileEnable;
+  }
+
+  public boolean isMlockBlockFileEnable() {
+    return mlockBlockFileEnable;
+  }
+
+  public void setMlockBlockFileEnable(boolean mlockBlockFileEnable) {
+    this.mlockBlockFileEnable = mlockBlockFileEnable;
+  }
+
+  public boolean isCounterTableEnable() {
+    return counterTableEnable;
+  }
+
+  public void setCounterTableEnable(boolean counterTableEnable) {
+    this.counterTableEnable = counterTableEnable;
+  }
+
+  public boolean isCounterTableRebuildEnable() {
+    return counterTableRebuildEnable;
+  }
+
+  public void setCounterTableRebuildEnable(boolean counterTableRebuildEnable) {
+    this.counterTableRebuildEnable = counterTableRebuildEnable;
+  }
+
+  public boolean isCounterJournalEnable() {
+    return counterJournalEnable;
+  }
+
+  public void setCounterJournalEnable(boolean counterJournalEnable) {
+    this.counterJournalEnable = counterJournalEnable;
+  }
+
+  public int getCounterJournalFileSize() {
+    return counterJournalFileSize;
+  }
+
+  public void setCounterJournalFileSize(int counterJournalFileSize) {
+    this.counterJournalFileSize = counterJournalFileSize;
+  }
+
+  public int getCounterJournalCheckpointIntervalMills() {
+    return counterJournalCheckpointIntervalMills;
+  }
+
+  public void setCounterJournalCheckpointIntervalMills(int counterJournalCheckpointIntervalMills) {
+    this.counterJournalCheckpointIntervalMills = counterJournalCheckpointIntervalMills;
+  }
+
   public void setStorePath(String storePath) {
     this.storePath = storePath;
   }
@@ -46,4 +46,25 @@ public class StorePathConfigHelper {
   public static String getStoreFilePath(final String rootDir) {
     return rootDir + File.separator + "store";
   }
+
+  public static String getCheckpointFile(final String rootDir) {
+    return rootDir + File.separator + "checkpoint";
+  }
+
+  public static String getCounterFilePath(final String rootDir) {
+    return rootDir + File.separator + "counter";
+  }
+
+  /** Present while the counters live in the counter tables rather than the store files. */
+  public static String getCounterTableMarkFile(final String rootDir) {
+    return rootDir + File.separator + "countertable";
+  }
+
+  public static String getAllocateFile(final String rootDir) {
+    return rootDir + File.separator + "allocate";
+  }
+
+  public static String getCounterJournalFile(final String rootDir) {
+    return rootDir + File.separator + "journal";
+  }
 }
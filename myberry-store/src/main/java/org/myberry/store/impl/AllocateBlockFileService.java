@@ -0,0 +1,151 @@
+/*
+* MIT License
+*
+* Copyright (c) 2021 MyBerry. All rights reserved.
+* https://myberry.org/
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+
+*   * Redistributions of source code must retain the above copyright notice, this
+* list of conditions and the following disclaimer.
+
+*   * Redistributions in binary form must reproduce the above copyright notice,
+* this list of conditions and the following disclaimer in the documentation
+* and/or other materials provided with the distribution.
+
+*   * Neither the name of MyBerry. nor the names of its contributors may be used
+* to endorse or promote products derived from this software without specific
+* prior written permission.
+
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+* SOFTWARE.
+*/
+package org.myberry.store.impl;
+
+import java.io.File;
+import java.io.IOException;
+import org.myberry.common.ServiceThread;
+import org.myberry.store.common.LoggerName;
+import org.myberry.store.config.StoreConfig;
+import org.myberry.store.config.StorePathConfigHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates the next block file and faults its pages in ahead of time, so the rollover in {@link
+ * FileService} only has to move it into place. At most one file is kept ready.
+ */
+public class AllocateBlockFileService extends ServiceThread {
+
+  private static final Logger log = LoggerFactory.getLogger(LoggerName.STORE_LOGGER_NAME);
+
+  private final String allocateFileName;
+  private final int fileSize;
+
+  private final Object allocateLock = new Object();
+  // set from the request until the file is taken, so requests in between are no-ops
+  private volatile boolean requested = false;
+  // guarded by allocateLock
+  private MappedFile allocated;
+
+  public AllocateBlockFileService(final StoreConfig storeConfig) {
+    this.allocateFileName = StorePathConfigHelper.getAllocateFile(storeConfig.getStoreRootDir());
+    this.fileSize = storeConfig.getBlockFileSize();
+  }
+
+  /** Asks for the next block file without waiting for it. */
+  public void request() {
+    if (!requested) {
+      requested = true;
+      this.wakeup();
+    }
+  }
+
+  /**
+   * Moves the prepared file to storeFileName and hands it over, waiting for an allocation in
+   * progress. Returns null if no file is ready, then the caller creates it itself.
+   */
+  public MappedFile take(final String storeFileName) {
+    synchronized (allocateLock) {
+      MappedFile mappedFile = allocated;
+      allocated = null;
+      requested = false;
+      if (mappedFile == null) {
+        return null;
+      }
+
+      if (!mappedFile.renameTo(storeFileName)) {
+        destroy(mappedFile);
+        return null;
+      }
+      return mappedFile;
+    }
+  }
+
+  @Override
+  public void run() {
+    log.info("{} service started", this.getServiceName());
+
+    while (!this.isStopped()) {
+      try {
+        this.waitForRunning();
+        if (requested && !this.isStopped()) {
+          this.allocate();
+        }
+      } catch (Exception e) {
+        log.warn("{} service has exception. ", this.getServiceName(), e);
+      }
+    }
+
+    synchronized (allocateLock) {
+      if (allocated != null) {
+        destroy(allocated);
+        allocated = null;
+      }
+    }
+    log.info("{} service end", this.getServiceName());
+  }
+
+  private void allocate() throws IOException {
+    synchronized (allocateLock) {
+      if (allocated == null) {
+        long beginTime = System.currentTimeMillis();
+        File file = new File(allocateFileName);
+        if (file.exists() && !file.delete()) {
+          log.warn("delete stale file [{}] Failed.", allocateFileName);
+        }
+
+        MappedFile mappedFile = new MappedFile(allocateFileName, fileSize);
+        mappedFile.warmup(fileSize);
+        allocated = mappedFile;
+        log.info(
+            "allocate block file OK, eclipse time(ms) {}", System.currentTimeMillis() - beginTime);
+      }
+    }
+  }
+
+  private void destroy(MappedFile mappedFile) {
+    mappedFile.destroy();
+    if (!mappedFile.getFile().delete()) {
+      log.warn("delete file [{}] Failed.", mappedFile.getFile());
+    }
+  }
+
+  @Override
+  public String getServiceName() {
+    return AllocateBlockFileService.class.getSimpleName();
+  }
+}
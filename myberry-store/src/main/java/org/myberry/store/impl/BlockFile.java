@@ -35,13 +35,15 @@
 */
 package org.myberry.store.impl;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.IntStream;
 import org.myberry.common.structure.Structure;
 import org.myberry.store.AbstractComponent;
 import org.myberry.store.CRComponent;
@@ -60,7 +62,12 @@ public class BlockFile {
   private final StoreComponent storeComponent;
   private final int blockIndex;
   private final ConcurrentMap<String, AbstractComponent> componentMap;
-  private final ConcurrentMap<Integer, CopyOnWriteArrayList<String>> syncDataMap;
+  private final ComponentOffsetIndex componentOffsetIndex = new ComponentOffsetIndex();
+  // null unless StoreConfig#counterTableEnable, then the counters of the records live there
+  private volatile CounterTable counterTable;
+
+  // the pages updated since the last flushDirty()
+  private final DirtyPages dirtyPages;
 
   public BlockFile(
       final String storeFileName,
@@ -68,14 +75,22 @@ public class BlockFile {
       final boolean isCreate,
       final int mySid,
       final int blockIndex,
-      final ConcurrentMap<String, AbstractComponent> componentMap,
-      final ConcurrentMap<Integer, CopyOnWriteArrayList<String>> syncDataMap)
+      final ConcurrentMap<String, AbstractComponent> componentMap)
       throws IOException {
+    this(new MappedFile(storeFileName, fileSize), isCreate, mySid, blockIndex, componentMap);
+  }
+
+  public BlockFile(
+      final MappedFile mappedFile,
+      final boolean isCreate,
+      final int mySid,
+      final int blockIndex,
+      final ConcurrentMap<String, AbstractComponent> componentMap) {
     this.blockIndex = blockIndex;
     this.componentMap = componentMap;
-    this.syncDataMap = syncDataMap;
-    this.mappedFile = new MappedFile(storeFileName, fileSize);
+    this.mappedFile = mappedFile;
     this.mappedByteBuffer = this.mappedFile.getMappedByteBuffer();
+    this.dirtyPages = new DirtyPages(mappedByteBuffer.capacity());
 
     ByteBuffer byteBuffer = mappedByteBuffer.slice();
     this.storeHeader = new StoreHeader(byteBuffer);
@@ -104,27 +119,105 @@ public class BlockFile {
   }
 
   public void loadComponent() {
-    int componentLengthOffset =
-        mappedByteBuffer.position() + AbstractComponent.COMPONENT_LENGTH_RELATIVE_OFFSET;
-    if (mappedByteBuffer.getShort(componentLengthOffset) > 0) {
-      int structureOffset =
-          mappedByteBuffer.position() + AbstractComponent.STRUCTURE_RELATIVE_OFFSET;
+    registerComponent(scanComponent());
+  }
+
+  /**
+   * Reads the components between the current position and the end offset of the header, without
+   * publishing them, so block files can be scanned concurrently and registered in block order.
+   */
+  public List<AbstractComponent> scanComponent() {
+    List<AbstractComponent> list = new ArrayList<>(storeHeader.getComponentCount());
+    while (true) {
+      int offset = mappedByteBuffer.position();
+      if (mappedByteBuffer.getShort(offset + AbstractComponent.COMPONENT_LENGTH_RELATIVE_OFFSET)
+          <= 0) {
+        break;
+      }
+
       AbstractComponent abstractComponent =
-          getComponentMapping(mappedByteBuffer.get(structureOffset));
+          getComponentMapping(
+              mappedByteBuffer.get(offset + AbstractComponent.STRUCTURE_RELATIVE_OFFSET));
       abstractComponent.setBlockIndex(blockIndex);
 
       try {
         storeComponent.load(abstractComponent);
-        componentMap.put(abstractComponent.getKey(), abstractComponent);
-        addSyncDataIndex(abstractComponent.getBlockIndex(), abstractComponent.getKey());
-        log.debug("add cache success: key = {}", abstractComponent.getKey());
+        list.add(abstractComponent);
       } catch (Exception e) {
         log.error("loadComponent error: ", e);
       }
       log.debug("load: {}", abstractComponent);
-      if (mappedByteBuffer.position() < storeHeader.getEndPhyOffset()) {
-        loadComponent();
+      if (mappedByteBuffer.position() <= offset
+          || mappedByteBuffer.position() >= storeHeader.getEndPhyOffset()) {
+        break;
+      }
+    }
+    return list;
+  }
+
+  /**
+   * Decodes the components recorded in the checkpoint at their offsets, in parallel, then scans
+   * whatever was appended after the checkpoint was taken.
+   *
+   * @return null if the checkpoint does not match this block file, which is then left unscanned
+   */
+  public List<AbstractComponent> loadComponent(final StoreCheckpoint.Block block) {
+    if (block.getBeginTimestamp() != storeHeader.getBeginTimestamp()
+        || block.getEndPhyOffset() > storeHeader.getEndPhyOffset()
+        || block.getComponentCount() > storeHeader.getComponentCount()) {
+      return null;
+    }
+
+    AbstractComponent[] components = new AbstractComponent[block.getComponentCount()];
+    boolean matched =
+        IntStream.range(0, components.length)
+            .parallel()
+            .allMatch(i -> (components[i] = loadComponentAt(block, i)) != null);
+    if (!matched) {
+      return null;
+    }
+
+    List<AbstractComponent> list = new ArrayList<>(storeHeader.getComponentCount());
+    Collections.addAll(list, components);
+    mappedByteBuffer.position(block.getEndPhyOffset());
+    if (block.getEndPhyOffset() < storeHeader.getEndPhyOffset()) {
+      list.addAll(scanComponent());
+    }
+    return list;
+  }
+
+  private AbstractComponent loadComponentAt(final StoreCheckpoint.Block block, int i) {
+    int offset = block.getPhyOffset(i);
+    if (offset < StoreHeader.STORE_HEADER_SIZE
+        || offset >= block.getEndPhyOffset()
+        || mappedByteBuffer.get(offset + AbstractComponent.STRUCTURE_RELATIVE_OFFSET)
+            != block.getStructure(i)) {
+      return null;
+    }
+
+    try {
+      AbstractComponent abstractComponent = getComponentMapping(block.getStructure(i));
+      abstractComponent.setBlockIndex(blockIndex);
+      ByteBuffer byteBuffer = mappedByteBuffer.duplicate();
+      byteBuffer.position(offset);
+      StoreComponent.load(abstractComponent, byteBuffer);
+      if (abstractComponent.getPhyOffset() != offset
+          || !block.getKey(i).equals(abstractComponent.getKey())) {
+        return null;
       }
+      return abstractComponent;
+    } catch (Exception e) {
+      log.warn("load component at {} of block {} error: ", offset, blockIndex, e);
+      return null;
+    }
+  }
+
+  public void registerComponent(final List<AbstractComponent> components) {
+    for (AbstractComponent abstractComponent : components) {
+      componentMap.put(abstractComponent.getKey(), abstractComponent);
+      componentOffsetIndex.add(
+          abstractComponent.getPhyOffset(), abstractComponent.getComponentLength());
+      log.debug("add cache success: key = {}", abstractComponent.getKey());
     }
   }
 
@@ -163,29 +256,28 @@ public class BlockFile {
     abstractComponent.setBlockIndex(blockIndex);
     abstractComponent.setPhyOffset(mappedByteBuffer.position());
     storeComponent.write(abstractComponent);
-    componentMap.put(abstractComponent.getKey(), abstractComponent);
 
     storeHeader.setEndTimestamp(System.currentTimeMillis());
     storeHeader.setEndPhyOffset(mappedByteBuffer.position());
     storeHeader.incrComponentCount();
 
-    addSyncDataIndex(abstractComponent.getBlockIndex(), abstractComponent.getKey());
+    componentOffsetIndex.add(
+        abstractComponent.getPhyOffset(), abstractComponent.getComponentLength());
+    // the slot has to exist before the component is visible to counter updates
+    CounterTable table = this.counterTable;
+    if (null != table) {
+      addSlot(table, abstractComponent);
+    }
+    componentMap.put(abstractComponent.getKey(), abstractComponent);
 
     mappedFile.flush();
-  }
-
-  private void addSyncDataIndex(int blockIndex, String key) {
-    CopyOnWriteArrayList<String> keys = syncDataMap.get(blockIndex);
-    if (null == keys) {
-      keys = new CopyOnWriteArrayList<>();
-      syncDataMap.putIfAbsent(blockIndex, keys);
+    if (null != table) {
+      table.flushDirty();
     }
-    keys.add(key);
   }
 
   public void modifyComponent(final NSComponent nsc) {
-    mappedByteBuffer.putLong(
-        nsc.getPhyOffset() + NSComponent.updateTimeRelativeOffset, nsc.getUpdateTime());
+    updateCounterLong(nsc, NSComponent.updateTimeRelativeOffset, nsc.getUpdateTime());
     mappedByteBuffer.putInt(
         nsc.getPhyOffset() + NSComponent.initNumberRelativeOffset, nsc.getInitNumber());
     mappedByteBuffer.putInt(
@@ -194,14 +286,218 @@ public class BlockFile {
         nsc.getPhyOffset() + NSComponent.resetTypeRelativeOffset, nsc.getResetType());
 
     mappedFile.flush();
+    CounterTable table = this.counterTable;
+    if (null != table) {
+      table.flushDirty();
+    }
   }
 
   public void flush() {
     mappedFile.flush();
+    CounterTable table = this.counterTable;
+    if (null != table) {
+      table.flush();
+    }
+  }
+
+  /** Faults in the pages holding the components, see {@link MappedFile#warmup(int)}. */
+  public void warmup() {
+    mappedFile.warmup(getLastPosition());
+    CounterTable table = this.counterTable;
+    if (null != table) {
+      table.warmup();
+    }
+  }
+
+  /** Locks the pages holding the components in memory, best effort. */
+  public boolean mlock() {
+    boolean locked = mappedFile.mlock(getLastPosition());
+    CounterTable table = this.counterTable;
+    if (null != table) {
+      locked = table.mlock() && locked;
+    }
+    return locked;
   }
 
   public void unload() {
     mappedFile.destroy();
+    CounterTable table = this.counterTable;
+    if (null != table) {
+      table.unload();
+    }
+  }
+
+  /**
+   * Moves the counters out of the records into the counter table at fileName. components are the
+   * ones loaded from the records in record order, their counters are replaced by the slots already
+   * in the table, and the components without a slot yet get one.
+   */
+  public void openCounterTable(
+      final String fileName, final int blockFileSize, final List<AbstractComponent> components)
+      throws IOException {
+    CounterTable table = new CounterTable(fileName, blockFileSize, getBeginTimestamp());
+    int slotCount = table.getSlotCount();
+    for (int i = 0; i < components.size(); i++) {
+      if (i < slotCount) {
+        loadCounters(table, i, components.get(i));
+      } else {
+        addSlot(table, components.get(i));
+      }
+    }
+    table.flushDirty();
+    this.counterTable = table;
+  }
+
+  /**
+   * Writes the counters of the counter table at fileName, if there is one, back into the records
+   * and components, then deletes it. Used when the counter table is disabled again.
+   */
+  public void restoreCounterTable(
+      final String fileName, final int blockFileSize, final List<AbstractComponent> components)
+      throws IOException {
+    if (!new File(fileName).exists()) {
+      return;
+    }
+
+    CounterTable table = new CounterTable(fileName, blockFileSize, getBeginTimestamp());
+    int slotCount = Math.min(table.getSlotCount(), components.size());
+    for (int i = 0; i < slotCount; i++) {
+      AbstractComponent abstractComponent = components.get(i);
+      loadCounters(table, i, abstractComponent);
+      int phyOffset = abstractComponent.getPhyOffset();
+      switch (abstractComponent.getStructure()) {
+        case Structure.CR:
+          CRComponent crc = (CRComponent) abstractComponent;
+          mappedByteBuffer.putLong(
+              phyOffset + CRComponent.updateTimeRelativeOffset, crc.getUpdateTime());
+          mappedByteBuffer.putLong(
+              phyOffset + CRComponent.incrNumberRelativeOffset, crc.getIncrNumber());
+          break;
+        case Structure.NS:
+          NSComponent nsc = (NSComponent) abstractComponent;
+          mappedByteBuffer.putLong(
+              phyOffset + NSComponent.updateTimeRelativeOffset, nsc.getUpdateTime());
+          mappedByteBuffer.putInt(
+              phyOffset + NSComponent.currentNumberRelativeOffset, nsc.getCurrentNumber().get());
+          break;
+        default:
+          throw new RuntimeException("unknown structure: " + abstractComponent.getStructure());
+      }
+      abstractComponent.setCounterSlot(AbstractComponent.NO_COUNTER_SLOT);
+    }
+    mappedFile.flush();
+    table.destroy();
+    log.info("restore {} counters into block file {}", slotCount, blockIndex);
+  }
+
+  /** Reads the counters of the registered components again, after they were updated in place. */
+  public void reloadCounters(final List<AbstractComponent> components) {
+    for (AbstractComponent abstractComponent : components) {
+      int phyOffset = abstractComponent.getPhyOffset();
+      switch (abstractComponent.getStructure()) {
+        case Structure.CR:
+          CRComponent crc = (CRComponent) abstractComponent;
+          crc.setUpdateTime(getBufferLong(phyOffset + CRComponent.updateTimeRelativeOffset));
+          crc.setIncrNumber(getBufferLong(phyOffset + CRComponent.incrNumberRelativeOffset));
+          break;
+        case Structure.NS:
+          NSComponent nsc = (NSComponent) abstractComponent;
+          nsc.setUpdateTime(getBufferLong(phyOffset + NSComponent.updateTimeRelativeOffset));
+          nsc.setCurrentNumber(getBufferInt(phyOffset + NSComponent.currentNumberRelativeOffset));
+          break;
+        default:
+          throw new RuntimeException("unknown structure: " + abstractComponent.getStructure());
+      }
+    }
+  }
+
+  private static void addSlot(final CounterTable table, final AbstractComponent abstractComponent) {
+    switch (abstractComponent.getStructure()) {
+      case Structure.CR:
+        CRComponent crc = (CRComponent) abstractComponent;
+        crc.setCounterSlot(table.addSlot(crc.getUpdateTime(), crc.getIncrNumber(), false));
+        break;
+      case Structure.NS:
+        NSComponent nsc = (NSComponent) abstractComponent;
+        nsc.setCounterSlot(table.addSlot(nsc.getUpdateTime(), nsc.getCurrentNumber().get(), true));
+        break;
+      default:
+        throw new RuntimeException("unknown structure: " + abstractComponent.getStructure());
+    }
+  }
+
+  private static void loadCounters(
+      final CounterTable table, final int slot, final AbstractComponent abstractComponent) {
+    long updateTime =
+        table.getLong(CounterTable.offsetOf(slot, CounterTable.UPDATE_TIME_SLOT_OFFSET));
+    int numberOffset = CounterTable.offsetOf(slot, CounterTable.NUMBER_SLOT_OFFSET);
+    switch (abstractComponent.getStructure()) {
+      case Structure.CR:
+        CRComponent crc = (CRComponent) abstractComponent;
+        crc.setUpdateTime(updateTime);
+        crc.setIncrNumber(table.getLong(numberOffset));
+        break;
+      case Structure.NS:
+        NSComponent nsc = (NSComponent) abstractComponent;
+        nsc.setUpdateTime(updateTime);
+        nsc.setCurrentNumber(table.getInt(numberOffset));
+        break;
+      default:
+        throw new RuntimeException("unknown structure: " + abstractComponent.getStructure());
+    }
+    abstractComponent.setCounterSlot(slot);
+  }
+
+  /**
+   * @return the offset in the counter table of the record field of length bytes at index, or -1
+   *     if the field is not a counter or has no slot
+   */
+  private int counterOffset(final CounterTable table, int index, int length) {
+    if (null == table) {
+      return -1;
+    }
+    int i = componentOffsetIndex.indexOf(index);
+    if (i < 0 || i >= table.getSlotCount()) {
+      return -1;
+    }
+
+    int phyOffset = componentOffsetIndex.getOffset(i);
+    return slotOffset(
+        i,
+        mappedByteBuffer.get(phyOffset + AbstractComponent.STRUCTURE_RELATIVE_OFFSET),
+        index - phyOffset,
+        length);
+  }
+
+  /** counterOffset(CounterTable, int, int) through the slot cached on a registered component. */
+  private static int counterOffset(
+      final CounterTable table,
+      final AbstractComponent abstractComponent,
+      int relativeOffset,
+      int length) {
+    int slot = abstractComponent.getCounterSlot();
+    if (null == table || slot < 0) {
+      return -1;
+    }
+    return slotOffset(slot, abstractComponent.getStructure(), relativeOffset, length);
+  }
+
+  private static int slotOffset(int slot, byte structure, int relativeOffset, int length) {
+    if (Structure.CR == structure) {
+      if (relativeOffset == CRComponent.updateTimeRelativeOffset && length == Long.BYTES) {
+        return CounterTable.offsetOf(slot, CounterTable.UPDATE_TIME_SLOT_OFFSET);
+      } else if (relativeOffset == CRComponent.incrNumberRelativeOffset && length == Long.BYTES) {
+        return CounterTable.offsetOf(slot, CounterTable.NUMBER_SLOT_OFFSET);
+      }
+    } else {
+      if (relativeOffset == NSComponent.updateTimeRelativeOffset && length == Long.BYTES) {
+        return CounterTable.offsetOf(slot, CounterTable.UPDATE_TIME_SLOT_OFFSET);
+      } else if (relativeOffset == NSComponent.currentNumberRelativeOffset
+          && length == Integer.BYTES) {
+        return CounterTable.offsetOf(slot, CounterTable.NUMBER_SLOT_OFFSET);
+      }
+    }
+    return -1;
   }
 
   public boolean isWriteFull(int size) {
@@ -212,12 +508,149 @@ public class BlockFile {
     }
   }
 
+  /** Decodes a snapshot of the component stored at phyOffset. */
+  public AbstractComponent readComponent(int phyOffset) {
+    AbstractComponent abstractComponent =
+        getComponentMapping(
+            mappedByteBuffer.get(phyOffset + AbstractComponent.STRUCTURE_RELATIVE_OFFSET));
+    abstractComponent.setBlockIndex(blockIndex);
+    ByteBuffer byteBuffer = mappedByteBuffer.duplicate();
+    byteBuffer.position(phyOffset);
+    try {
+      StoreComponent.load(abstractComponent, byteBuffer);
+    } catch (Exception e) {
+      throw new IllegalStateException(
+          "read component at " + phyOffset + " of block " + blockIndex + " error", e);
+    }
+
+    CounterTable table = this.counterTable;
+    if (null != table) {
+      int slot = componentOffsetIndex.indexOf(phyOffset);
+      if (slot >= 0 && slot < table.getSlotCount()) {
+        loadCounters(table, slot, abstractComponent);
+      }
+    }
+    return abstractComponent;
+  }
+
+  /** Compares the key of the component stored at phyOffset without decoding it. */
+  public boolean keyEquals(int phyOffset, byte[] key) {
+    int keyOffset = keyOffset(phyOffset);
+    if (mappedByteBuffer.getShort(keyOffset - Short.BYTES) != key.length) {
+      return false;
+    }
+    for (int i = 0; i < key.length; i++) {
+      if (mappedByteBuffer.get(keyOffset + i) != key[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public byte[] getKeyBytes(int phyOffset) {
+    int keyOffset = keyOffset(phyOffset);
+    byte[] key = new byte[mappedByteBuffer.getShort(keyOffset - Short.BYTES)];
+    return StoreComponent.get(mappedByteBuffer, keyOffset, key);
+  }
+
+  // the key length is stored in the 2 bytes before the key
+  private int keyOffset(int phyOffset) {
+    if (Structure.CR
+        == mappedByteBuffer.get(phyOffset + AbstractComponent.STRUCTURE_RELATIVE_OFFSET)) {
+      return phyOffset + CRComponent.keyRelativeOffset;
+    } else {
+      return phyOffset + NSComponent.keyRelativeOffset;
+    }
+  }
+
+  public ComponentOffsetIndex getComponentOffsetIndex() {
+    return componentOffsetIndex;
+  }
+
+  public byte getBufferByte(int index) {
+    return mappedByteBuffer.get(index);
+  }
+
+  public int getBufferInt(int index) {
+    CounterTable table = this.counterTable;
+    int counterOffset = counterOffset(table, index, Integer.BYTES);
+    if (counterOffset >= 0) {
+      return table.getInt(counterOffset);
+    }
+    return mappedByteBuffer.getInt(index);
+  }
+
+  public long getBufferLong(int index) {
+    CounterTable table = this.counterTable;
+    int counterOffset = counterOffset(table, index, Long.BYTES);
+    if (counterOffset >= 0) {
+      return table.getLong(counterOffset);
+    }
+    return mappedByteBuffer.getLong(index);
+  }
+
   public void updateBufferLong(int index, long value) {
+    CounterTable table = this.counterTable;
+    int counterOffset = counterOffset(table, index, Long.BYTES);
+    if (counterOffset >= 0) {
+      table.putLong(counterOffset, value);
+      return;
+    }
     mappedByteBuffer.putLong(index, value);
+    markDirty(index, Long.BYTES);
   }
 
   public void updateBufferInt(int index, int value) {
+    CounterTable table = this.counterTable;
+    int counterOffset = counterOffset(table, index, Integer.BYTES);
+    if (counterOffset >= 0) {
+      table.putInt(counterOffset, value);
+      return;
+    }
     mappedByteBuffer.putInt(index, value);
+    markDirty(index, Integer.BYTES);
+  }
+
+  /** updateBufferLong(int, long) at relativeOffset of the record of a registered component. */
+  public void updateCounterLong(
+      final AbstractComponent abstractComponent, int relativeOffset, long value) {
+    CounterTable table = this.counterTable;
+    int counterOffset = counterOffset(table, abstractComponent, relativeOffset, Long.BYTES);
+    if (counterOffset >= 0) {
+      table.putLong(counterOffset, value);
+      return;
+    }
+    int index = abstractComponent.getPhyOffset() + relativeOffset;
+    mappedByteBuffer.putLong(index, value);
+    markDirty(index, Long.BYTES);
+  }
+
+  /** updateBufferInt(int, int) at relativeOffset of the record of a registered component. */
+  public void updateCounterInt(
+      final AbstractComponent abstractComponent, int relativeOffset, int value) {
+    CounterTable table = this.counterTable;
+    int counterOffset = counterOffset(table, abstractComponent, relativeOffset, Integer.BYTES);
+    if (counterOffset >= 0) {
+      table.putInt(counterOffset, value);
+      return;
+    }
+    int index = abstractComponent.getPhyOffset() + relativeOffset;
+    mappedByteBuffer.putInt(index, value);
+    markDirty(index, Integer.BYTES);
+  }
+
+  private void markDirty(int index, int length) {
+    dirtyPages.mark(index, length);
+  }
+
+  /** Forces only the pages updated since the last call. */
+  public void flushDirty() {
+    dirtyPages.force(mappedByteBuffer);
+
+    CounterTable table = this.counterTable;
+    if (null != table) {
+      table.flushDirty();
+    }
   }
 
   public int getLastPosition() {
@@ -274,9 +707,18 @@ public class BlockFile {
       offset = StoreHeader.STORE_HEADER_SIZE;
     }
     byte[] bytes = new byte[length];
-    for (int i = 0; i < length; i++) {
-      bytes[i] = mappedByteBuffer.get(offset + i);
-    }
+    mappedByteBuffer.get(offset, bytes);
     return bytes;
   }
+
+  /**
+   * Read-only view of the mapped region, the bytes are not copied. Only valid while this block
+   * file stays mapped.
+   */
+  public ByteBuffer getSyncDataBuffer(int offset, int length) {
+    if (offset <= 0) {
+      offset = StoreHeader.STORE_HEADER_SIZE;
+    }
+    return mappedByteBuffer.slice(offset, length).asReadOnlyBuffer();
+  }
 }
@@ -0,0 +1,99 @@
+/*
+* MIT License
+*
+* Copyright (c) 2021 MyBerry. All rights reserved.
+* https://myberry.org/
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+
+*   * Redistributions of source code must retain the above copyright notice, this
+* list of conditions and the following disclaimer.
+
+*   * Redistributions in binary form must reproduce the above copyright notice,
+* this list of conditions and the following disclaimer in the documentation
+* and/or other materials provided with the distribution.
+
+*   * Neither the name of MyBerry. nor the names of its contributors may be used
+* to endorse or promote products derived from this software without specific
+* prior written permission.
+
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+* SOFTWARE.
+*/
+package org.myberry.store.impl;
+
+import org.myberry.common.ServiceThread;
+import org.myberry.store.common.LoggerName;
+import org.myberry.store.config.StoreConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the checkpoint of {@link FileService} periodically while components are being added, and
+ * once more when stopped.
+ */
+public class CheckpointService extends ServiceThread {
+
+  private static final Logger log = LoggerFactory.getLogger(LoggerName.STORE_LOGGER_NAME);
+
+  private final FileService fileService;
+  private final long checkpointIntervalMills;
+
+  private long checkpointedLogicOffset = -1L;
+
+  public CheckpointService(final FileService fileService, final StoreConfig storeConfig) {
+    this.fileService = fileService;
+    this.checkpointIntervalMills = storeConfig.getCheckpointIntervalMills();
+  }
+
+  @Override
+  public void run() {
+    log.info("{} service started", this.getServiceName());
+
+    while (!this.isStopped()) {
+      try {
+        if (checkpointIntervalMills > 0) {
+          this.waitForRunning(checkpointIntervalMills);
+          this.doCheckpoint();
+        } else {
+          this.waitForRunning();
+        }
+      } catch (Exception e) {
+        log.warn("{} service has exception. ", this.getServiceName(), e);
+      }
+    }
+
+    this.doCheckpoint();
+    log.info("{} service end", this.getServiceName());
+  }
+
+  private void doCheckpoint() {
+    // the index only changes when a component is added, which always moves the logic offset
+    long logicOffset = fileService.getLogicOffset();
+    if (logicOffset == checkpointedLogicOffset) {
+      return;
+    }
+
+    if (fileService.checkpoint()) {
+      checkpointedLogicOffset = logicOffset;
+    }
+  }
+
+  @Override
+  public String getServiceName() {
+    return CheckpointService.class.getSimpleName();
+  }
+}
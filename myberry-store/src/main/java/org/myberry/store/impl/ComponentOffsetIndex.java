@@ -0,0 +1,127 @@
+/*
+* MIT License
+*
+* Copyright (c) 2021 MyBerry. All rights reserved.
+* https://myberry.org/
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+
+*   * Redistributions of source code must retain the above copyright notice, this
+* list of conditions and the following disclaimer.
+
+*   * Redistributions in binary form must reproduce the above copyright notice,
+* this list of conditions and the following disclaimer in the documentation
+* and/or other materials provided with the distribution.
+
+*   * Neither the name of MyBerry. nor the names of its contributors may be used
+* to endorse or promote products derived from this software without specific
+* prior written permission.
+
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+* SOFTWARE.
+*/
+package org.myberry.store.impl;
+
+import java.util.Arrays;
+
+/**
+ * Begin offsets and lengths of the components of one block file. Components are appended back to
+ * back, so the entries are sorted by offset and each component ends where the next one begins.
+ *
+ * <p>Appends are serialized, readers take no lock: an entry is written before the size that covers
+ * it is published, and a grown array is published before the size.
+ */
+public class ComponentOffsetIndex {
+
+  // offset0, length0, offset1, length1, ...
+  private volatile int[] entries = new int[32];
+  private volatile int size = 0;
+
+  public synchronized void add(int offset, int length) {
+    int[] e = this.entries;
+    if (size * 2 + 2 > e.length) {
+      e = Arrays.copyOf(e, e.length * 2);
+      this.entries = e;
+    }
+    e[size * 2] = offset;
+    e[size * 2 + 1] = length;
+    size = size + 1;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int getOffset(int i) {
+    return entries[i * 2];
+  }
+
+  public int getLength(int i) {
+    return entries[i * 2 + 1];
+  }
+
+  /** @return the index of the component holding offset, or -1 */
+  public int indexOf(int offset) {
+    int n = this.size;
+    int[] e = this.entries;
+    int i = indexOfFirstEndAfter(e, n, offset);
+    return i < n && e[i * 2] <= offset ? i : -1;
+  }
+
+  /** @return whether a component ends exactly at endOffset */
+  public boolean containsEnd(int endOffset) {
+    int n = this.size;
+    int[] e = this.entries;
+    int i = indexOfFirstEndAfter(e, n, endOffset - 1);
+    return i < n && end(e, i) == endOffset;
+  }
+
+  /**
+   * @return the length of the whole components following markOffset, as many as fit in
+   *     allowedLength
+   */
+  public int getSyncLength(int markOffset, int allowedLength) {
+    int n = this.size;
+    int[] e = this.entries;
+    int first = indexOfFirstEndAfter(e, n, markOffset);
+    if (first >= n) {
+      return 0;
+    }
+
+    // the last component that still fits, components are contiguous so the sum is end - begin
+    int begin = e[first * 2];
+    int last = indexOfFirstEndAfter(e, n, begin + allowedLength) - 1;
+    return last < first ? 0 : end(e, last) - begin;
+  }
+
+  private static int indexOfFirstEndAfter(int[] e, int n, int offset) {
+    int low = 0;
+    int high = n;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (end(e, mid) > offset) {
+        high = mid;
+      } else {
+        low = mid + 1;
+      }
+    }
+    return low;
+  }
+
+  private static int end(int[] e, int i) {
+    return e[i * 2] + e[i * 2 + 1];
+  }
+}
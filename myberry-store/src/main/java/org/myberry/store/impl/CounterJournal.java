@@ -0,0 +1,468 @@
+/*
+* MIT License
+*
+* Copyright (c) 2021 MyBerry. All rights reserved.
+* https://myberry.org/
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+
+*   * Redistributions of source code must retain the above copyright notice, this
+* list of conditions and the following disclaimer.
+
+*   * Redistributions in binary form must reproduce the above copyright notice,
+* this list of conditions and the following disclaimer in the documentation
+* and/or other materials provided with the distribution.
+
+*   * Neither the name of MyBerry. nor the names of its contributors may be used
+* to endorse or promote products derived from this software without specific
+* prior written permission.
+
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+* SOFTWARE.
+*/
+package org.myberry.store.impl;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+import org.myberry.common.ServiceThread;
+import org.myberry.store.AbstractComponent;
+import org.myberry.store.common.LoggerName;
+import org.myberry.store.config.FlushDiskType;
+import org.myberry.store.config.StoreConfig;
+import org.myberry.store.config.StorePathConfigHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persists counter updates by appending them to a pre-allocated log instead of forcing the block
+ * files, so the flush path only does sequential writes. The block files are still updated in
+ * memory, and a checkpoint periodically forces them and truncates the log.
+ *
+ * <pre>
+ * magic(4) generation(4) ... up to 64
+ * {generation(4) blockIndex(4) index(4) width(4) value(8) crc32c(4) reserved(4)} * n
+ * </pre>
+ *
+ * The log is split in two halves, generation g appends to half g % 2. Writers reserve their slot
+ * with a CAS on the write position, so they do not serialize on a lock. A full half is sealed and
+ * appending goes on in the other one, while the journal thread forces the block files for the
+ * sealed half and truncates it by storing the next generation in the header. Only once both halves
+ * are in use a writer waits for that checkpoint.
+ *
+ * <p>A record carries the absolute value written at index, so replaying it twice is harmless. The
+ * replay applies the records of the header generation and the next one that have a good crc, in
+ * position order; a record torn by a crash is skipped, since the ones reserved after it may have
+ * been acknowledged.
+ */
+public class CounterJournal extends ServiceThread {
+
+  private static final Logger log = LoggerFactory.getLogger(LoggerName.STORE_LOGGER_NAME);
+
+  public static final int HEADER_SIZE = 64;
+  public static final int RECORD_SIZE = 32;
+
+  private static final int MAGIC = 0x4D594A4E;
+  private static final int MAGIC_OFFSET = 0;
+  private static final int GENERATION_OFFSET = 4;
+  // the crc covers the record up to itself
+  private static final int CRC_RELATIVE_OFFSET = 24;
+
+  private final FileService fileService;
+  private final FlushDiskType flushDiskType;
+  private final long flushIntervalMills;
+  private final long checkpointIntervalMills;
+  private final MappedFile mappedFile;
+  private final MappedByteBuffer mappedByteBuffer;
+  private final int fileSize;
+  private final int halfSize;
+
+  // generation(32) position(32) of the next record
+  private final AtomicLong state = new AtomicLong();
+  // bytes of complete records per half, a checkpoint waits for all of the half it truncates
+  private final AtomicIntegerArray completed = new AtomicIntegerArray(2);
+  // bytes reserved per half when it was sealed, published by the state CAS of the seal
+  private final int[] sealedLength = new int[2];
+  // counts complete records, see FlushService for why a sum is enough to order the flushes
+  private final LongAdder writeCount = new LongAdder();
+  // the half of the generation after it is free again
+  private volatile int checkpointedGeneration;
+
+  // locks rather than monitors, a virtual thread blocked on them must not pin its carrier
+  private final ReentrantLock sealLock = new ReentrantLock();
+  private final ReentrantLock checkpointLock = new ReentrantLock();
+
+  private final ReentrantLock flushedLock = new ReentrantLock();
+  private final Condition flushedCondition = flushedLock.newCondition();
+  private volatile long flushedSeq = 0;
+  private volatile long lastCheckpointTimestamp = System.currentTimeMillis();
+
+  public CounterJournal(final FileService fileService, final StoreConfig storeConfig)
+      throws IOException {
+    this.fileService = fileService;
+    this.flushDiskType = FlushDiskType.valueOf(storeConfig.getFlushDiskType());
+    this.flushIntervalMills =
+        FlushDiskType.ASYNC_FLUSH == flushDiskType
+            ? storeConfig.getFlushIntervalMills()
+            : storeConfig.getGroupFlushIntervalMills();
+    this.checkpointIntervalMills = storeConfig.getCounterJournalCheckpointIntervalMills();
+    this.halfSize =
+        Math.max(1, (storeConfig.getCounterJournalFileSize() - HEADER_SIZE) / RECORD_SIZE / 2)
+            * RECORD_SIZE;
+    this.fileSize = HEADER_SIZE + halfSize * 2;
+    this.mappedFile =
+        new MappedFile(
+            StorePathConfigHelper.getCounterJournalFile(storeConfig.getStoreRootDir()), fileSize);
+    this.mappedByteBuffer = mappedFile.getMappedByteBuffer();
+
+    if (mappedByteBuffer.getInt(MAGIC_OFFSET) != MAGIC) {
+      // a zero filled file, generation 0 never matches a record
+      mappedByteBuffer.putInt(GENERATION_OFFSET, 1);
+      mappedByteBuffer.putInt(MAGIC_OFFSET, MAGIC);
+      mappedFile.flush();
+    }
+    int generation = mappedByteBuffer.getInt(GENERATION_OFFSET);
+    this.state.set(state(generation, halfStart(generation)));
+    this.checkpointedGeneration = generation - 1;
+  }
+
+  /**
+   * Replays the records of the header generation and the next one into the block files, forces
+   * them and starts over two generations later, past any record left in the log. Called once the
+   * block files are mapped, before the components are handed out.
+   *
+   * @return the number of records replayed
+   */
+  public int recover() {
+    checkpointLock.lock();
+    try {
+      mappedFile.warmup(fileSize);
+
+      int generation = mappedByteBuffer.getInt(GENERATION_OFFSET);
+      int count = this.replay(generation) + this.replay(generation + 1);
+      if (count > 0) {
+        log.info("replayed {} journal records", count);
+      }
+
+      fileService.flushDirty();
+      int next = generation + 2;
+      this.writeGeneration(next);
+      completed.set(0, 0);
+      completed.set(1, 0);
+      state.set(state(next, halfStart(next)));
+      checkpointedGeneration = next - 1;
+      lastCheckpointTimestamp = System.currentTimeMillis();
+      return count;
+    } finally {
+      checkpointLock.unlock();
+    }
+  }
+
+  private int replay(int generation) {
+    int count = 0;
+    int maxBlockIndex = fileService.getMaxBlockIndex();
+    int begin = halfStart(generation);
+    for (int position = begin; position < begin + halfSize; position += RECORD_SIZE) {
+      if (mappedByteBuffer.getInt(position) != generation
+          || mappedByteBuffer.getInt(position + CRC_RELATIVE_OFFSET) != crc(position)) {
+        continue;
+      }
+
+      int blockIndex = mappedByteBuffer.getInt(position + 4);
+      int index = mappedByteBuffer.getInt(position + 8);
+      int width = mappedByteBuffer.getInt(position + 12);
+      long value = mappedByteBuffer.getLong(position + 16);
+      if (blockIndex > maxBlockIndex) {
+        log.warn("journal record of missing block file {} at {}, ignored", blockIndex, position);
+        continue;
+      }
+
+      if (Integer.BYTES == width) {
+        fileService.updateBufferInt(blockIndex, index, (int) value);
+      } else {
+        fileService.updateBufferLong(blockIndex, index, value);
+      }
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Updates of one index have to be serialized by the caller, as for the block files, since their
+   * records are replayed in position order.
+   */
+  public void updateBufferLong(int blockIndex, int index, long value) {
+    fileService.updateBufferLong(blockIndex, index, value);
+    this.append(blockIndex, index, Long.BYTES, value);
+  }
+
+  public void updateBufferInt(int blockIndex, int index, int value) {
+    fileService.updateBufferInt(blockIndex, index, value);
+    this.append(blockIndex, index, Integer.BYTES, value);
+  }
+
+  public void updateCounterLong(
+      AbstractComponent abstractComponent, int relativeOffset, long value) {
+    fileService.updateCounterLong(abstractComponent, relativeOffset, value);
+    this.append(
+        abstractComponent.getBlockIndex(),
+        abstractComponent.getPhyOffset() + relativeOffset,
+        Long.BYTES,
+        value);
+  }
+
+  public void updateCounterInt(AbstractComponent abstractComponent, int relativeOffset, int value) {
+    fileService.updateCounterInt(abstractComponent, relativeOffset, value);
+    this.append(
+        abstractComponent.getBlockIndex(),
+        abstractComponent.getPhyOffset() + relativeOffset,
+        Integer.BYTES,
+        value);
+  }
+
+  /** The block file is updated before, so a checkpoint that waited for the record forces it. */
+  private void append(int blockIndex, int index, int width, long value) {
+    long s = this.reserve();
+    int generation = (int) (s >>> 32);
+    int position = (int) s;
+    try {
+      mappedByteBuffer.putInt(position, generation);
+      mappedByteBuffer.putInt(position + 4, blockIndex);
+      mappedByteBuffer.putInt(position + 8, index);
+      mappedByteBuffer.putInt(position + 12, width);
+      mappedByteBuffer.putLong(position + 16, value);
+      mappedByteBuffer.putInt(position + CRC_RELATIVE_OFFSET, crc(position));
+    } finally {
+      completed.addAndGet(half(generation), RECORD_SIZE);
+      writeCount.increment();
+    }
+  }
+
+  private long reserve() {
+    for (; ; ) {
+      long s = state.get();
+      if ((int) s < halfStart((int) (s >>> 32)) + halfSize) {
+        if (state.compareAndSet(s, s + RECORD_SIZE)) {
+          return s;
+        }
+      } else if (!this.seal(s)) {
+        // both halves are in use, wait for the checkpoint of the sealed one or run it
+        this.wakeup();
+        checkpointLock.lock();
+        try {
+          this.checkpointSealed();
+        } finally {
+          checkpointLock.unlock();
+        }
+      }
+    }
+  }
+
+  /**
+   * Moves appending to the other half, unless the state moved on meanwhile.
+   *
+   * @return false if the other half still holds records that are not checkpointed
+   */
+  private boolean seal(long s) {
+    int generation = (int) (s >>> 32);
+    sealLock.lock();
+    try {
+      if ((int) (state.get() >>> 32) != generation) {
+        return true;
+      }
+      if (checkpointedGeneration < generation - 1) {
+        return false;
+      }
+
+      int next = generation + 1;
+      completed.set(half(next), 0);
+      sealedLength[half(generation)] = (int) s - halfStart(generation);
+      if (state.compareAndSet(s, state(next, halfStart(next)))) {
+        this.wakeup();
+      }
+      return true;
+    } finally {
+      sealLock.unlock();
+    }
+  }
+
+  /** Checkpoints the sealed generation, if it is not yet. Called under checkpointLock. */
+  private void checkpointSealed() {
+    int generation = (int) (state.get() >>> 32) - 1;
+    if (checkpointedGeneration >= generation) {
+      return;
+    }
+
+    // only a few puts are left between a reservation and its completion
+    int half = half(generation);
+    while (completed.get(half) < sealedLength[half]) {
+      Thread.onSpinWait();
+    }
+
+    fileService.flushDirty();
+    this.writeGeneration(generation + 1);
+    lastCheckpointTimestamp = System.currentTimeMillis();
+    checkpointedGeneration = generation;
+  }
+
+  /**
+   * Forces the block files for every update so far and truncates the log. Updates go on
+   * meanwhile, into the other half.
+   */
+  public void checkpoint() {
+    checkpointLock.lock();
+    try {
+      this.checkpointSealed();
+      int generation = (int) (state.get() >>> 32);
+      while ((int) (state.get() >>> 32) == generation) {
+        this.seal(state.get());
+      }
+      this.checkpointSealed();
+    } finally {
+      checkpointLock.unlock();
+    }
+  }
+
+  /** Whether updates may soon wait for a checkpoint, the sealed half is not truncated yet. */
+  public boolean isCheckpointing() {
+    return checkpointedGeneration < (int) (state.get() >>> 32) - 1;
+  }
+
+  /** Waits until every update made by the calling thread so far is in the forced log. */
+  public void commit() {
+    if (FlushDiskType.ASYNC_FLUSH == flushDiskType) {
+      return;
+    }
+
+    long seq = writeCount.sum();
+    if (flushedSeq >= seq) {
+      return;
+    }
+
+    if (FlushDiskType.SYNC_FLUSH == flushDiskType) {
+      this.wakeup();
+    }
+
+    flushedLock.lock();
+    try {
+      while (flushedSeq < seq && !this.isStopped()) {
+        flushedCondition.await(flushIntervalMills, TimeUnit.MILLISECONDS);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      flushedLock.unlock();
+    }
+  }
+
+  @Override
+  public void run() {
+    log.info("{} service started", this.getServiceName());
+
+    while (!this.isStopped()) {
+      try {
+        this.waitForRunning(flushIntervalMills);
+        this.doFlush();
+      } catch (Exception e) {
+        log.warn("{} service has exception. ", this.getServiceName(), e);
+      }
+    }
+
+    // every record counted was reserved before the seal of the checkpoint
+    long seq = writeCount.sum();
+    this.checkpoint();
+    this.publishFlushedSeq(seq);
+    log.info("{} service end", this.getServiceName());
+  }
+
+  private void doFlush() {
+    long seq = writeCount.sum();
+    if (flushedSeq < seq) {
+      // both halves, the records counted may be in either; only dirty pages are written back
+      mappedByteBuffer.force(HEADER_SIZE, fileSize - HEADER_SIZE);
+      this.publishFlushedSeq(seq);
+    }
+
+    long s = state.get();
+    int generation = (int) (s >>> 32);
+    if (checkpointIntervalMills > 0
+        && (int) s > halfStart(generation)
+        && System.currentTimeMillis() - lastCheckpointTimestamp >= checkpointIntervalMills) {
+      this.checkpoint();
+    } else if (checkpointedGeneration < generation - 1) {
+      checkpointLock.lock();
+      try {
+        this.checkpointSealed();
+      } finally {
+        checkpointLock.unlock();
+      }
+    }
+  }
+
+  private void publishFlushedSeq(long seq) {
+    flushedLock.lock();
+    try {
+      if (seq > flushedSeq) {
+        flushedSeq = seq;
+      }
+      flushedCondition.signalAll();
+    } finally {
+      flushedLock.unlock();
+    }
+  }
+
+  private void writeGeneration(int generation) {
+    mappedByteBuffer.putInt(GENERATION_OFFSET, generation);
+    mappedByteBuffer.force(0, HEADER_SIZE);
+  }
+
+  private int crc(int position) {
+    CRC32C crc = new CRC32C();
+    crc.update(mappedByteBuffer.slice(position, CRC_RELATIVE_OFFSET));
+    return (int) crc.getValue();
+  }
+
+  private int halfStart(int generation) {
+    return HEADER_SIZE + half(generation) * halfSize;
+  }
+
+  private static int half(int generation) {
+    return generation & 1;
+  }
+
+  private static long state(int generation, int position) {
+    return (long) generation << 32 | position;
+  }
+
+  public long getFlushedSeq() {
+    return flushedSeq;
+  }
+
+  public void unload() {
+    mappedFile.destroy();
+  }
+
+  @Override
+  public String getServiceName() {
+    return CounterJournal.class.getSimpleName();
+  }
+}
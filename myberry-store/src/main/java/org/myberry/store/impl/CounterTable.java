@@ -0,0 +1,183 @@
+/*
+* MIT License
+*
+* Copyright (c) 2021 MyBerry. All rights reserved.
+* https://myberry.org/
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+
+*   * Redistributions of source code must retain the above copyright notice, this
+* list of conditions and the following disclaimer.
+
+*   * Redistributions in binary form must reproduce the above copyright notice,
+* this list of conditions and the following disclaimer in the documentation
+* and/or other materials provided with the distribution.
+
+*   * Neither the name of MyBerry. nor the names of its contributors may be used
+* to endorse or promote products derived from this software without specific
+* prior written permission.
+
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+* SOFTWARE.
+*/
+package org.myberry.store.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import org.myberry.store.CRComponent;
+import org.myberry.store.NSComponent;
+import org.myberry.store.common.LoggerName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Counters of the components of one block file, kept out of the variable-length records: one
+ * fixed-width slot per component in append order, so counter updates and their flushes stay in a
+ * small contiguous region instead of dirtying pages all over the block file.
+ *
+ * <pre>
+ * magic(4) slotCount(4) beginTimestamp(8) ... up to 64
+ * {updateTime(8) number(8)} * slotCount
+ * </pre>
+ *
+ * number is the incrNumber of a CR component and the currentNumber of a NS component. Slots are
+ * initialized in order and slotCount is published after the slot, so components past slotCount
+ * still have their counters in the record only. beginTimestamp ties the table to its block file.
+ */
+public class CounterTable {
+
+  private static final Logger log = LoggerFactory.getLogger(LoggerName.STORE_LOGGER_NAME);
+
+  public static final int HEADER_SIZE = 64;
+  public static final int SLOT_SIZE = 16;
+  public static final int UPDATE_TIME_SLOT_OFFSET = 0;
+  public static final int NUMBER_SLOT_OFFSET = 8;
+
+  private static final int MAGIC = 0x4D59434E;
+  private static final int MAGIC_OFFSET = 0;
+  private static final int SLOT_COUNT_OFFSET = 4;
+  private static final int BEGIN_TIMESTAMP_OFFSET = 8;
+
+  private final MappedFile mappedFile;
+  private final MappedByteBuffer mappedByteBuffer;
+
+  // the pages updated since the last flushDirty()
+  private final DirtyPages dirtyPages;
+
+  public CounterTable(final String fileName, final int blockFileSize, final long beginTimestamp)
+      throws IOException {
+    this.mappedFile = new MappedFile(fileName, fileSize(blockFileSize));
+    this.mappedByteBuffer = mappedFile.getMappedByteBuffer();
+    this.dirtyPages = new DirtyPages(mappedByteBuffer.capacity());
+
+    if (mappedByteBuffer.getInt(MAGIC_OFFSET) != MAGIC
+        || mappedByteBuffer.getLong(BEGIN_TIMESTAMP_OFFSET) != beginTimestamp) {
+      if (mappedByteBuffer.getInt(MAGIC_OFFSET) == MAGIC) {
+        log.warn("counter table {} belongs to another block file, reset it", fileName);
+      }
+      mappedByteBuffer.putInt(SLOT_COUNT_OFFSET, 0);
+      mappedByteBuffer.putLong(BEGIN_TIMESTAMP_OFFSET, beginTimestamp);
+      mappedByteBuffer.putInt(MAGIC_OFFSET, MAGIC);
+      mappedFile.flush();
+    }
+  }
+
+  /** Enough slots for a block file filled with the smallest possible components. */
+  private static int fileSize(int blockFileSize) {
+    int minComponentLength =
+        Math.min(
+            CRComponent.COMPONENT_FIXED_FIELD_LENGTH, NSComponent.COMPONENT_FIXED_FIELD_LENGTH);
+    int maxSlotCount = (blockFileSize - StoreHeader.STORE_HEADER_SIZE) / minComponentLength + 1;
+    return HEADER_SIZE + maxSlotCount * SLOT_SIZE;
+  }
+
+  public int getSlotCount() {
+    return mappedByteBuffer.getInt(SLOT_COUNT_OFFSET);
+  }
+
+  /** Writes the slot of the next component, and returns it. */
+  public synchronized int addSlot(long updateTime, long number, boolean intNumber) {
+    int slot = getSlotCount();
+    int offset = offsetOf(slot, UPDATE_TIME_SLOT_OFFSET);
+    mappedByteBuffer.putLong(offset, updateTime);
+    if (intNumber) {
+      mappedByteBuffer.putInt(offsetOf(slot, NUMBER_SLOT_OFFSET), (int) number);
+    } else {
+      mappedByteBuffer.putLong(offsetOf(slot, NUMBER_SLOT_OFFSET), number);
+    }
+    mappedByteBuffer.putInt(SLOT_COUNT_OFFSET, slot + 1);
+    markDirty(offset, SLOT_SIZE);
+    markDirty(SLOT_COUNT_OFFSET, Integer.BYTES);
+    return slot;
+  }
+
+  public static int offsetOf(int slot, int slotOffset) {
+    return HEADER_SIZE + slot * SLOT_SIZE + slotOffset;
+  }
+
+  public int getInt(int offset) {
+    return mappedByteBuffer.getInt(offset);
+  }
+
+  public long getLong(int offset) {
+    return mappedByteBuffer.getLong(offset);
+  }
+
+  public void putInt(int offset, int value) {
+    mappedByteBuffer.putInt(offset, value);
+    markDirty(offset, Integer.BYTES);
+  }
+
+  public void putLong(int offset, long value) {
+    mappedByteBuffer.putLong(offset, value);
+    markDirty(offset, Long.BYTES);
+  }
+
+  private void markDirty(int index, int length) {
+    dirtyPages.mark(index, length);
+  }
+
+  /** Forces only the pages updated since the last call. */
+  public void flushDirty() {
+    dirtyPages.force(mappedByteBuffer);
+  }
+
+  public void flush() {
+    mappedFile.flush();
+  }
+
+  public void warmup() {
+    mappedFile.warmup(offsetOf(getSlotCount(), 0));
+  }
+
+  public boolean mlock() {
+    return mappedFile.mlock(offsetOf(getSlotCount(), 0));
+  }
+
+  public void unload() {
+    mappedFile.destroy();
+  }
+
+  /** Unmaps and deletes the file, once its counters are back in the records. */
+  public void destroy() {
+    File file = mappedFile.getFile();
+    mappedFile.destroy();
+    if (!file.delete()) {
+      log.warn("delete counter table {} Failed.", file);
+    }
+  }
+}
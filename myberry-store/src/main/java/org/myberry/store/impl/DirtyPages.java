@@ -0,0 +1,105 @@
+/*
+* MIT License
+*
+* Copyright (c) 2021 MyBerry. All rights reserved.
+* https://myberry.org/
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+
+*   * Redistributions of source code must retain the above copyright notice, this
+* list of conditions and the following disclaimer.
+
+*   * Redistributions in binary form must reproduce the above copyright notice,
+* this list of conditions and the following disclaimer in the documentation
+* and/or other materials provided with the distribution.
+
+*   * Neither the name of MyBerry. nor the names of its contributors may be used
+* to endorse or promote products derived from this software without specific
+* prior written permission.
+
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+* SOFTWARE.
+*/
+package org.myberry.store.impl;
+
+import java.lang.invoke.VarHandle;
+import java.nio.MappedByteBuffer;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The pages of a mapped buffer updated since the last {@link #force(MappedByteBuffer)}, one bit
+ * per page. Marking a page that is already marked is a read, so writers updating the same pages
+ * neither take a lock nor bounce a cache line between them.
+ */
+public class DirtyPages {
+
+  public static final int PAGE_SHIFT = 12;
+
+  private final AtomicLongArray words;
+
+  public DirtyPages(final int capacity) {
+    int pageCount = ((capacity - 1) >>> PAGE_SHIFT) + 1;
+    this.words = new AtomicLongArray(((pageCount - 1) >>> 6) + 1);
+  }
+
+  /** Called after [index, index + length) has been written. */
+  public void mark(int index, int length) {
+    // the write must be visible before the bit is found set, or a force in between may miss it
+    VarHandle.fullFence();
+    int lastPage = (index + length - 1) >>> PAGE_SHIFT;
+    for (int page = index >>> PAGE_SHIFT; page <= lastPage; page++) {
+      int word = page >>> 6;
+      long bit = 1L << page;
+      long current = words.get(word);
+      while ((current & bit) == 0 && !words.compareAndSet(word, current, current | bit)) {
+        current = words.get(word);
+      }
+    }
+  }
+
+  /** Clears the marks and forces every run of marked pages. */
+  public void force(MappedByteBuffer buffer) {
+    int runBegin = -1;
+    for (int word = 0; word < words.length(); word++) {
+      long marks = 0 == words.get(word) ? 0 : words.getAndSet(word, 0);
+      if (0 == marks && runBegin < 0) {
+        continue;
+      }
+      for (int bit = 0; bit < Long.SIZE; bit++) {
+        int page = (word << 6) + bit;
+        if ((marks & (1L << bit)) != 0) {
+          if (runBegin < 0) {
+            runBegin = page;
+          }
+        } else if (runBegin >= 0) {
+          force(buffer, runBegin, page);
+          runBegin = -1;
+        }
+      }
+    }
+    if (runBegin >= 0) {
+      force(buffer, runBegin, words.length() << 6);
+    }
+  }
+
+  private static void force(MappedByteBuffer buffer, int beginPage, int endPage) {
+    int begin = beginPage << PAGE_SHIFT;
+    int end = Math.min(endPage << PAGE_SHIFT, buffer.capacity());
+    if (begin < end) {
+      buffer.force(begin, end - begin);
+    }
+  }
+}
@@ -37,16 +37,21 @@ package org.myberry.store.impl;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.IllegalFormatFlagsException;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.IntStream;
 import org.myberry.store.AbstractComponent;
 import org.myberry.store.BlockHeader;
 import org.myberry.store.NSComponent;
@@ -60,61 +65,208 @@ public class FileService {
 
   private static final Logger log = LoggerFactory.getLogger(LoggerName.STORE_LOGGER_NAME);
 
-  private final ConcurrentMap<String /* key */, AbstractComponent> componentMap =
-      new ConcurrentHashMap<>();
+  private final ConcurrentMap<String /* key */, AbstractComponent> componentMap;
+  // null unless StoreConfig#offHeapIndexEnable, then the same object as componentMap
+  private final OffHeapComponentMap offHeapComponentMap;
   private final AtomicInteger blockFileIndex = new AtomicInteger(0);
 
-  private final ConcurrentMap<Integer /* blockIndex */, CopyOnWriteArrayList<String /* key */>>
-      syncDataMap = new ConcurrentHashMap<>();
+  private static final BlockFile[] EMPTY_BLOCK_FILES = new BlockFile[0];
+  private static final long UNLOAD_AWAIT_MILLIS = 10000;
+  private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0).asReadOnlyBuffer();
 
   private final StoreConfig storeConfig;
-  private ArrayList<BlockFile> blockFileList = new ArrayList<>();
-  private final ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
+  /**
+   * Copy-on-append snapshot, so the per-ID counter writes and other readers take no lock. Only
+   * appending a block file and unloading, which are rare, take {@link #blockFileLock}.
+   */
+  private volatile BlockFile[] blockFiles = EMPTY_BLOCK_FILES;
+
+  private final ReentrantLock blockFileLock = new ReentrantLock();
+  // counter reads and writes, and component writes, in flight, drained by unload()
+  private final UnloadGuard unloadGuard = new UnloadGuard();
+
+  // null when block files are created on the rollover itself
+  private final AllocateBlockFileService allocateBlockFileService;
+  private final int allocateThresholdPosition;
+  // rolled over block files, forced by the next flushDirty()
+  private final ConcurrentLinkedQueue<BlockFile> rolledBlockFiles = new ConcurrentLinkedQueue<>();
+  private final Object flushLock = new Object();
 
   public FileService(final StoreConfig storeConfig) {
+    this(storeConfig, null);
+  }
+
+  public FileService(
+      final StoreConfig storeConfig, final AllocateBlockFileService allocateBlockFileService) {
     this.storeConfig = storeConfig;
+    this.allocateBlockFileService = allocateBlockFileService;
+    this.allocateThresholdPosition =
+        (int)
+            ((long) storeConfig.getBlockFileSize()
+                * storeConfig.getAllocateBlockFileThreshold()
+                / 100);
+    if (storeConfig.isOffHeapIndexEnable()) {
+      this.offHeapComponentMap = new OffHeapComponentMap(this);
+      this.componentMap = offHeapComponentMap;
+    } else {
+      this.offHeapComponentMap = null;
+      this.componentMap = new ConcurrentHashMap<>();
+    }
   }
 
   public boolean load() {
+    return load(null);
+  }
+
+  /**
+   * @param counterJournal if not null, its records are replayed once the block files are mapped
+   *     and registered, and the counters of the components are read again
+   */
+  public boolean load(final CounterJournal counterJournal) {
     String storeFilePath = StorePathConfigHelper.getStoreFilePath(storeConfig.getStoreRootDir());
+    File counterTableMark =
+        new File(StorePathConfigHelper.getCounterTableMarkFile(storeConfig.getStoreRootDir()));
+    boolean counterTableInUse = counterTableMark.exists();
     File dir = new File(storeFilePath);
     File[] files = dir.listFiles();
     if (files != null) {
       FileBlock[] fileBlocks = sort(files);
       for (FileBlock fileBlock : fileBlocks) {
-        try {
-          BlockFile f =
-              new BlockFile(
-                  storeFilePath + File.separator + fileBlock.getFile().getName(),
-                  storeConfig.getBlockFileSize(),
-                  false,
-                  storeConfig.getMySid(),
-                  fileBlock.getIndex(),
-                  componentMap,
-                  syncDataMap);
-          f.load();
-
-          int blockIndex = blockFileIndex.getAndIncrement();
-          if (blockIndex != fileBlock.getIndex()) {
-            throw new IllegalFormatFlagsException(
-                "blockIndex is not continuous, fileBlockIndex="
-                    + fileBlock.getIndex()
-                    + ", blockIndex="
-                    + blockIndex);
+        int blockIndex = blockFileIndex.getAndIncrement();
+        if (blockIndex != fileBlock.getIndex()) {
+          throw new IllegalFormatFlagsException(
+              "blockIndex is not continuous, fileBlockIndex="
+                  + fileBlock.getIndex()
+                  + ", blockIndex="
+                  + blockIndex);
+        }
+      }
+
+      StoreCheckpoint checkpoint =
+          StoreCheckpoint.load(
+              StorePathConfigHelper.getCheckpointFile(storeConfig.getStoreRootDir()));
+
+      // Map and scan every block file on the fork-join pool, then publish in block order.
+      LoadedBlockFile[] loadedBlockFiles = new LoadedBlockFile[fileBlocks.length];
+      try {
+        IntStream.range(0, fileBlocks.length)
+            .parallel()
+            .forEach(
+                i ->
+                    loadedBlockFiles[i] =
+                        loadBlockFile(
+                            storeFilePath, fileBlocks[i], checkpoint, counterTableInUse));
+      } catch (UncheckedIOException e) {
+        log.error("load block files error", e.getCause());
+        for (LoadedBlockFile loadedBlockFile : loadedBlockFiles) {
+          if (loadedBlockFile != null) {
+            loadedBlockFile.blockFile.unload();
           }
+        }
+        return false;
+      }
+
+      for (LoadedBlockFile loadedBlockFile : loadedBlockFiles) {
+        // appended first, the off-heap index resolves keys through the block file table
+        this.appendBlockFile(loadedBlockFile.blockFile);
+        loadedBlockFile.blockFile.registerComponent(loadedBlockFile.components);
+      }
 
-          log.info("load block file OK, " + fileBlock.getFile().getName());
-          this.blockFileList.add(f);
-        } catch (IOException e) {
-          log.error("load file {} error", fileBlock.getFile(), e);
-          return false;
+      if (counterJournal != null && counterJournal.recover() > 0) {
+        for (LoadedBlockFile loadedBlockFile : loadedBlockFiles) {
+          loadedBlockFile.blockFile.reloadCounters(loadedBlockFile.components);
         }
       }
+    } else if (counterJournal != null) {
+      // no block file to replay into, but the generations have to move past the old records
+      counterJournal.recover();
+    }
+
+    // marked before any counter goes to a table, unmarked once all of them are back in the records
+    try {
+      if (storeConfig.isCounterTableEnable()) {
+        counterTableMark.getParentFile().mkdirs();
+        counterTableMark.createNewFile();
+      } else {
+        Files.deleteIfExists(counterTableMark.toPath());
+      }
+    } catch (IOException e) {
+      log.error("mark counter table error", e);
+      return false;
     }
 
     return true;
   }
 
+  private LoadedBlockFile loadBlockFile(
+      String storeFilePath,
+      FileBlock fileBlock,
+      StoreCheckpoint checkpoint,
+      boolean counterTableInUse) {
+    try {
+      BlockFile f =
+          new BlockFile(
+              storeFilePath + File.separator + fileBlock.getFile().getName(),
+              storeConfig.getBlockFileSize(),
+              false,
+              storeConfig.getMySid(),
+              fileBlock.getIndex(),
+              componentMap);
+      f.loadHeader();
+
+      List<AbstractComponent> components = null;
+      StoreCheckpoint.Block block =
+          checkpoint == null ? null : checkpoint.getBlock(fileBlock.getIndex());
+      if (block != null) {
+        components = f.loadComponent(block);
+        if (components == null) {
+          log.warn("checkpoint mismatch, scan block file {}", fileBlock.getFile().getName());
+          f.loadHeader();
+        }
+      }
+      if (components == null) {
+        components = f.scanComponent();
+      }
+
+      String counterFileName = getCounterFileName(fileBlock.getIndex());
+      if (storeConfig.isCounterTableEnable()) {
+        if (counterTableInUse && !components.isEmpty() && !new File(counterFileName).exists()) {
+          if (!storeConfig.isCounterTableRebuildEnable()) {
+            throw new IOException(
+                "counter table "
+                    + counterFileName
+                    + " is missing, the counters in the store file are stale, set"
+                    + " counterTableRebuildEnable=true to rebuild it from them anyway");
+          }
+          log.warn("counter table {} is missing, rebuild it from the store file", counterFileName);
+        }
+        f.openCounterTable(counterFileName, storeConfig.getBlockFileSize(), components);
+      } else {
+        f.restoreCounterTable(counterFileName, storeConfig.getBlockFileSize(), components);
+      }
+
+      if (storeConfig.isWarmupBlockFileEnable()) {
+        f.warmup();
+      }
+      if (storeConfig.isMlockBlockFileEnable()) {
+        f.mlock();
+      }
+
+      log.info("load block file OK, " + fileBlock.getFile().getName());
+      return new LoadedBlockFile(f, components);
+    } catch (IOException e) {
+      throw new UncheckedIOException("load file " + fileBlock.getFile() + " error", e);
+    }
+  }
+
+  private String getCounterFileName(int blockIndex) {
+    return StorePathConfigHelper.getCounterFilePath(storeConfig.getStoreRootDir())
+        + File.separator
+        + StoreConfig.MYBERRY_STORE_FILE_NAME
+        + StoreConfig.MYBERRY_STORE_FILE_NAME_DELIMITER
+        + blockIndex;
+  }
+
   private FileBlock[] sort(File[] files) {
     List<FileBlock> fileBlock = new ArrayList<>(files.length);
 
@@ -164,56 +316,158 @@ public class FileService {
     }
   }
 
+  private static class LoadedBlockFile {
+    private final BlockFile blockFile;
+    private final List<AbstractComponent> components;
+
+    public LoadedBlockFile(BlockFile blockFile, List<AbstractComponent> components) {
+      this.blockFile = blockFile;
+      this.components = components;
+    }
+  }
+
+  private void appendBlockFile(BlockFile blockFile) {
+    this.blockFileLock.lock();
+    try {
+      BlockFile[] files = this.blockFiles;
+      BlockFile[] newFiles = Arrays.copyOf(files, files.length + 1);
+      newFiles[files.length] = blockFile;
+      this.blockFiles = newFiles;
+    } finally {
+      this.blockFileLock.unlock();
+    }
+  }
+
+  /**
+   * Counter reads and writes take no lock, so they are refused from here on, and those in flight
+   * are waited for before the block files get unmapped.
+   */
   public void unload() {
-    this.readWriteLock.writeLock().lock();
+    if (!unloadGuard.closeAndAwait(UNLOAD_AWAIT_MILLIS)) {
+      log.error("accesses still in flight after {}ms, unload anyway", UNLOAD_AWAIT_MILLIS);
+    }
+
+    this.blockFileLock.lock();
     try {
-      for (BlockFile f : blockFileList) {
+      BlockFile[] files = this.blockFiles;
+      this.blockFiles = EMPTY_BLOCK_FILES;
+      rolledBlockFiles.clear();
+      for (BlockFile f : files) {
         f.unload();
       }
-      this.blockFileList.clear();
     } catch (Exception e) {
       log.error("unload exception", e);
     } finally {
-      this.readWriteLock.writeLock().unlock();
+      this.blockFileLock.unlock();
+    }
+  }
+
+  /** Writes the component index of all block files, see {@link StoreCheckpoint}. */
+  public boolean checkpoint() {
+    try {
+      BlockFile[] files = this.blockFiles;
+      List<StoreCheckpoint.Block> blocks = new ArrayList<>(files.length);
+      for (BlockFile f : files) {
+        ComponentOffsetIndex index = f.getComponentOffsetIndex();
+        int count = index.size();
+
+        int endPhyOffset = StoreHeader.STORE_HEADER_SIZE;
+        if (count > 0) {
+          endPhyOffset = index.getOffset(count - 1) + index.getLength(count - 1);
+        }
+
+        StoreCheckpoint.Block block =
+            new StoreCheckpoint.Block(
+                f.getBlockIndex(), f.getBeginTimestamp(), endPhyOffset, count);
+        for (int i = 0; i < count; i++) {
+          int phyOffset = index.getOffset(i);
+          block.setComponent(
+              i,
+              phyOffset,
+              f.getBufferByte(phyOffset + AbstractComponent.STRUCTURE_RELATIVE_OFFSET),
+              f.getKeyBytes(phyOffset));
+        }
+        blocks.add(block);
+      }
+
+      StoreCheckpoint.write(
+          StorePathConfigHelper.getCheckpointFile(storeConfig.getStoreRootDir()), blocks);
+      return true;
+    } catch (Exception e) {
+      log.error("checkpoint exception", e);
+      return false;
     }
   }
 
+  /** Throws IllegalStateException once unloaded, a counter write must not be dropped silently. */
   public void updateBufferLong(int blockIndex, int index, long value) {
-    this.readWriteLock.readLock().lock();
+    int stripe = unloadGuard.enter();
     try {
-      BlockFile blockFile = blockFileList.get(blockIndex);
-      blockFile.updateBufferLong(index, value);
+      blockFiles[blockIndex].updateBufferLong(index, value);
     } catch (Exception e) {
       log.error("updateBufferLong exception", e);
     } finally {
-      this.readWriteLock.readLock().unlock();
+      unloadGuard.exit(stripe);
     }
   }
 
   public void updateBufferInt(int blockIndex, int index, int value) {
-    this.readWriteLock.readLock().lock();
+    int stripe = unloadGuard.enter();
     try {
-      BlockFile blockFile = blockFileList.get(blockIndex);
-      blockFile.updateBufferInt(index, value);
+      blockFiles[blockIndex].updateBufferInt(index, value);
     } catch (Exception e) {
       log.error("updateBufferInt exception", e);
     } finally {
-      this.readWriteLock.readLock().unlock();
+      unloadGuard.exit(stripe);
+    }
+  }
+
+  /** updateBufferLong(int, int, long) through the counter slot cached on abstractComponent. */
+  public void updateCounterLong(
+      AbstractComponent abstractComponent, int relativeOffset, long value) {
+    int stripe = unloadGuard.enter();
+    try {
+      blockFiles[abstractComponent.getBlockIndex()].updateCounterLong(
+          abstractComponent, relativeOffset, value);
+    } catch (Exception e) {
+      log.error("updateCounterLong exception", e);
+    } finally {
+      unloadGuard.exit(stripe);
+    }
+  }
+
+  public void updateCounterInt(AbstractComponent abstractComponent, int relativeOffset, int value) {
+    int stripe = unloadGuard.enter();
+    try {
+      blockFiles[abstractComponent.getBlockIndex()].updateCounterInt(
+          abstractComponent, relativeOffset, value);
+    } catch (Exception e) {
+      log.error("updateCounterInt exception", e);
+    } finally {
+      unloadGuard.exit(stripe);
     }
   }
 
   public void addComponent(AbstractComponent abstractComponent) {
+    int stripe = unloadGuard.enter();
     try {
       BlockFile blockFile = getAndCreateLastBlockFile(abstractComponent.getComponentLength());
       if (null != blockFile) {
         blockFile.addComponent(abstractComponent);
+        if (null != allocateBlockFileService
+            && blockFile.getLastPosition() >= allocateThresholdPosition) {
+          allocateBlockFileService.request();
+        }
       }
     } catch (Exception e) {
       log.error("addComponent exception", e);
+    } finally {
+      unloadGuard.exit(stripe);
     }
   }
 
   public void modifyComponent(NSComponent nsc) {
+    int stripe = unloadGuard.enter();
     try {
       BlockFile blockFile = getBlockFile(nsc.getBlockIndex());
       if (null != blockFile) {
@@ -221,18 +475,20 @@ public class FileService {
       }
     } catch (Exception e) {
       log.error("modifyComponent exception", e);
+    } finally {
+      unloadGuard.exit(stripe);
     }
   }
 
   public BlockFile getAndCreateLastBlockFile(int size) {
     BlockFile blockFile = null;
     BlockFile preBlockFile = null;
-    boolean needToFlush = false;
 
-    this.readWriteLock.writeLock().lock();
+    this.blockFileLock.lock();
     try {
-      if (!blockFileList.isEmpty()) {
-        BlockFile tmp = blockFileList.get(blockFileList.size() - 1);
+      BlockFile[] files = this.blockFiles;
+      if (files.length > 0) {
+        BlockFile tmp = files[files.length - 1];
         if (!tmp.isWriteFull(size)) {
           blockFile = tmp;
         } else {
@@ -248,39 +504,36 @@ public class FileService {
                 + StoreConfig.MYBERRY_STORE_FILE_NAME
                 + StoreConfig.MYBERRY_STORE_FILE_NAME_DELIMITER
                 + blockIndex;
+        MappedFile mappedFile = null;
+        if (null != allocateBlockFileService) {
+          mappedFile = allocateBlockFileService.take(storeFileName);
+        }
+        if (null == mappedFile) {
+          mappedFile = new MappedFile(storeFileName, storeConfig.getBlockFileSize());
+        }
         blockFile =
-            new BlockFile(
-                storeFileName,
-                storeConfig.getBlockFileSize(),
-                true,
-                storeConfig.getMySid(),
-                blockIndex,
-                componentMap,
-                syncDataMap);
-        this.blockFileList.add(blockFile);
-
-        needToFlush = true;
+            new BlockFile(mappedFile, true, storeConfig.getMySid(), blockIndex, componentMap);
+        if (storeConfig.isCounterTableEnable()) {
+          blockFile.openCounterTable(
+              getCounterFileName(blockIndex),
+              storeConfig.getBlockFileSize(),
+              Collections.emptyList());
+        }
+        this.appendBlockFile(blockFile);
+
+        if (null != preBlockFile) {
+          rolledBlockFiles.offer(preBlockFile);
+        }
       }
     } catch (Exception e) {
       log.error("getAndCreateLastBlockFile exception ", e);
     } finally {
-      this.readWriteLock.writeLock().unlock();
+      this.blockFileLock.unlock();
     }
 
-    if (needToFlush) {
-      final BlockFile flushThisFile = preBlockFile;
-      Thread flushThread =
-          new Thread(
-              new Runnable() {
-                @Override
-                public void run() {
-                  FileService.this.flush(flushThisFile);
-                }
-              },
-              "FlushBlockFileThread");
-
-      flushThread.setDaemon(true);
-      flushThread.start();
+    // it is full now, so lock what the rollover left behind
+    if (null != preBlockFile && null != blockFile && storeConfig.isMlockBlockFileEnable()) {
+      preBlockFile.mlock();
     }
 
     return blockFile;
@@ -292,19 +545,12 @@ public class FileService {
    * @return
    */
   public int getBlockFileLastPosition() {
-    this.readWriteLock.readLock().lock();
-    try {
-      if (blockFileList.isEmpty()) {
-        return StoreHeader.STORE_HEADER_SIZE;
-      } else {
-        return getBlockFileLastPosition(blockFileList.size() - 1);
-      }
-    } catch (Exception e) {
-      log.error("getBlockFileLastPosition exception ", e);
-    } finally {
-      this.readWriteLock.readLock().unlock();
+    BlockFile[] files = this.blockFiles;
+    if (files.length == 0) {
+      return StoreHeader.STORE_HEADER_SIZE;
+    } else {
+      return files[files.length - 1].getLastPosition();
     }
-    return 0;
   }
 
   public int getBlockFileLastPosition(int index) {
@@ -319,15 +565,13 @@ public class FileService {
   public BlockFile getBlockFile(int index) {
     BlockFile blockFile = null;
 
-    this.readWriteLock.readLock().lock();
     try {
-      if (!blockFileList.isEmpty()) {
-        blockFile = blockFileList.get(index);
+      BlockFile[] files = this.blockFiles;
+      if (files.length > 0) {
+        blockFile = files[index];
       }
     } catch (Exception e) {
       log.error("getBlockFile exception ", e);
-    } finally {
-      this.readWriteLock.readLock().unlock();
     }
 
     return blockFile;
@@ -339,20 +583,43 @@ public class FileService {
     }
   }
 
+  /**
+   * Concurrent callers are serialized, so when it returns every update made before the call has
+   * been forced, also the ranges taken by another caller.
+   */
+  public void flushDirty() {
+    synchronized (flushLock) {
+      this.doFlushDirty();
+    }
+  }
+
+  private void doFlushDirty() {
+    try {
+      BlockFile rolled;
+      while ((rolled = rolledBlockFiles.poll()) != null) {
+        rolled.flush();
+      }
+      for (BlockFile f : blockFiles) {
+        f.flushDirty();
+      }
+    } catch (Exception e) {
+      log.error("flushDirty exception ", e);
+    }
+  }
+
+  public boolean hasRolledBlockFile() {
+    return !rolledBlockFiles.isEmpty();
+  }
+
   public long getLogicOffset() {
     long logicOffset = 0L;
 
-    this.readWriteLock.readLock().lock();
     try {
-      if (!blockFileList.isEmpty()) {
-        for (BlockFile blockFile : blockFileList) {
-          logicOffset += blockFile.getEndPhyOffset();
-        }
+      for (BlockFile blockFile : blockFiles) {
+        logicOffset += blockFile.getEndPhyOffset();
       }
     } catch (Exception e) {
       log.error("getLogicOffset exception ", e);
-    } finally {
-      this.readWriteLock.readLock().unlock();
     }
     return logicOffset;
   }
@@ -370,11 +637,65 @@ public class FileService {
     return componentMap;
   }
 
+  public long getComponentPosition(String key) {
+    if (null != offHeapComponentMap) {
+      return offHeapComponentMap.getPosition(key);
+    }
+
+    AbstractComponent abstractComponent = componentMap.get(key);
+    return null == abstractComponent
+        ? AbstractComponent.NO_POSITION
+        : abstractComponent.getPosition();
+  }
+
+  public AbstractComponent readComponent(long position) {
+    BlockFile blockFile = getBlockFile(AbstractComponent.positionBlockIndex(position));
+    if (null == blockFile) {
+      return null;
+    }
+    return blockFile.readComponent(AbstractComponent.positionPhyOffset(position));
+  }
+
+  public byte getBufferByte(int blockIndex, int index) {
+    int stripe = unloadGuard.enter();
+    try {
+      return getExistingBlockFile(blockIndex).getBufferByte(index);
+    } finally {
+      unloadGuard.exit(stripe);
+    }
+  }
+
+  public int getBufferInt(int blockIndex, int index) {
+    int stripe = unloadGuard.enter();
+    try {
+      return getExistingBlockFile(blockIndex).getBufferInt(index);
+    } finally {
+      unloadGuard.exit(stripe);
+    }
+  }
+
+  public long getBufferLong(int blockIndex, int index) {
+    int stripe = unloadGuard.enter();
+    try {
+      return getExistingBlockFile(blockIndex).getBufferLong(index);
+    } finally {
+      unloadGuard.exit(stripe);
+    }
+  }
+
+  private BlockFile getExistingBlockFile(int blockIndex) {
+    BlockFile blockFile = getBlockFile(blockIndex);
+    if (null == blockFile) {
+      throw new IllegalArgumentException("no block file: " + blockIndex);
+    }
+    return blockFile;
+  }
+
   public List<BlockHeader> getBlockHeaderList() {
-    this.readWriteLock.readLock().lock();
     try {
-      List<BlockHeader> list = new ArrayList<>(blockFileList.size() > 0 ? blockFileList.size() : 1);
-      if (blockFileList.isEmpty()) {
+      BlockFile[] files = this.blockFiles;
+      List<BlockHeader> list = new ArrayList<>(files.length > 0 ? files.length : 1);
+      if (files.length == 0) {
         BlockHeader blockHeader = new BlockHeader();
         blockHeader.setBlockIndex(0);
         blockHeader.setComponentCount(0);
@@ -385,7 +706,7 @@ public class FileService {
 
         list.add(blockHeader);
       } else {
-        for (BlockFile f : blockFileList) {
+        for (BlockFile f : files) {
           BlockHeader blockHeader = new BlockHeader();
           blockHeader.setBlockIndex(f.getBlockIndex());
           blockHeader.setComponentCount(f.getComponentCount());
@@ -401,30 +722,18 @@ public class FileService {
     } catch (Exception e) {
       log.error("getBlockHeaderList exception", e);
       return null;
-    } finally {
-      this.readWriteLock.readLock().unlock();
     }
   }
 
   public boolean verifyOffset(int blockIndex, int expectedEndPhyOffset) {
     if (blockIndex >= 0 && expectedEndPhyOffset == StoreHeader.STORE_HEADER_SIZE) {
       return true;
-    } else {
-      CopyOnWriteArrayList<String> keys = syncDataMap.get(blockIndex);
-      if (null != keys) {
-        for (String key : keys) {
-          int currentComponentBeginPhyOffset = componentMap.get(key).getPhyOffset();
-          int currentComponentEndPhyOffset =
-              currentComponentBeginPhyOffset
-                  + getComponentLengthByComponentOffset(blockIndex, currentComponentBeginPhyOffset);
-          if (currentComponentEndPhyOffset == expectedEndPhyOffset) {
-            return true;
-          }
-        }
-      }
     }
 
-    return false;
+    BlockFile[] files = this.blockFiles;
+    return blockIndex >= 0
+        && blockIndex < files.length
+        && files[blockIndex].getComponentOffsetIndex().containsEnd(expectedEndPhyOffset);
   }
 
   public int getMaxBlockIndex() {
@@ -436,46 +745,32 @@ public class FileService {
   }
 
   public int getSyncLength(int blockIndex, int markOffset, int allowedSyncLength) {
-    CopyOnWriteArrayList<String> keys = syncDataMap.get(blockIndex);
-    if (null == keys) {
+    // verifyOffset() is executed before getSyncLength(), so there is no need to verify the
+    // validity of markOffset
+    BlockFile[] files = this.blockFiles;
+    if (blockIndex < 0 || blockIndex >= files.length) {
       return 0;
     }
-
-    int total = 0;
-    for (int i = 0; i < keys.size(); i++) {
-      AbstractComponent component = componentMap.get(keys.get(i));
-      int componentLength =
-          getComponentLengthByComponentOffset(blockIndex, component.getPhyOffset());
-      int currentComponentEndPhyOffset = component.getPhyOffset() + componentLength;
-      // verifyOffset() is executed before getSyncLength(), so there is no need to verify the
-      // validity of markOffset
-      if (currentComponentEndPhyOffset > markOffset) {
-        if (total + componentLength > allowedSyncLength) {
-          break;
-        } else {
-          total += componentLength;
-        }
-      }
-    }
-
-    return total;
+    return files[blockIndex]
+        .getComponentOffsetIndex()
+        .getSyncLength(markOffset, allowedSyncLength);
   }
 
-  private int getComponentLengthByComponentOffset(int blockIndex, int componentOffset) {
+  public byte[] getSyncData(int blockIndex, int markOffset, int length) {
     BlockFile blockFile = getBlockFile(blockIndex);
     if (null == blockFile) {
-      return 0;
+      return new byte[0];
     } else {
-      return blockFile.getComponentLengthByOffset(componentOffset);
+      return blockFile.getSyncData(markOffset, length);
     }
   }
 
-  public byte[] getSyncData(int blockIndex, int markOffset, int length) {
+  public ByteBuffer getSyncDataBuffer(int blockIndex, int markOffset, int length) {
     BlockFile blockFile = getBlockFile(blockIndex);
     if (null == blockFile) {
-      return new byte[0];
+      return EMPTY_BUFFER;
     } else {
-      return blockFile.getSyncData(markOffset, length);
+      return blockFile.getSyncDataBuffer(markOffset, length);
     }
   }
 
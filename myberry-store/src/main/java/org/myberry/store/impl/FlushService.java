@@ -0,0 +1,152 @@
+/*
+* MIT License
+*
+* Copyright (c) 2021 MyBerry. All rights reserved.
+* https://myberry.org/
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+
+*   * Redistributions of source code must retain the above copyright notice, this
+* list of conditions and the following disclaimer.
+
+*   * Redistributions in binary form must reproduce the above copyright notice,
+* this list of conditions and the following disclaimer in the documentation
+* and/or other materials provided with the distribution.
+
+*   * Neither the name of MyBerry. nor the names of its contributors may be used
+* to endorse or promote products derived from this software without specific
+* prior written permission.
+
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+* SOFTWARE.
+*/
+package org.myberry.store.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.myberry.common.ServiceThread;
+import org.myberry.store.common.LoggerName;
+import org.myberry.store.config.FlushDiskType;
+import org.myberry.store.config.StoreConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Forces the dirty ranges of all block files once per batch, and the block files that have been
+ * rolled over. Every buffer update is counted on a striped counter, and {@link #commit()} waits
+ * until a force that started after the caller's last update has completed: the count summed before
+ * a force covers every update counted before the sum was taken, so no writer ever touches a shared
+ * sequence.
+ */
+public class FlushService extends ServiceThread {
+
+  private static final Logger log = LoggerFactory.getLogger(LoggerName.STORE_LOGGER_NAME);
+
+  private final FileService fileService;
+  private final FlushDiskType flushDiskType;
+  private final long flushIntervalMills;
+
+  private final LongAdder writeCount = new LongAdder();
+  // not a monitor, a virtual thread waiting in commit() must not pin its carrier
+  private final ReentrantLock flushedLock = new ReentrantLock();
+  private final Condition flushedCondition = flushedLock.newCondition();
+  private volatile long flushedSeq = 0;
+
+  public FlushService(final FileService fileService, final StoreConfig storeConfig) {
+    this.fileService = fileService;
+    this.flushDiskType = FlushDiskType.valueOf(storeConfig.getFlushDiskType());
+    this.flushIntervalMills =
+        FlushDiskType.ASYNC_FLUSH == flushDiskType
+            ? storeConfig.getFlushIntervalMills()
+            : storeConfig.getGroupFlushIntervalMills();
+  }
+
+  /** Called after a buffer update has been written into the mapped buffer. */
+  public void onWrite() {
+    writeCount.increment();
+  }
+
+  /** Waits until every update made by the calling thread so far has been forced. */
+  public void commit() {
+    if (FlushDiskType.ASYNC_FLUSH == flushDiskType) {
+      return;
+    }
+
+    long seq = writeCount.sum();
+    if (flushedSeq >= seq) {
+      return;
+    }
+
+    if (FlushDiskType.SYNC_FLUSH == flushDiskType) {
+      this.wakeup();
+    }
+
+    flushedLock.lock();
+    try {
+      while (flushedSeq < seq && !this.isStopped()) {
+        flushedCondition.await(flushIntervalMills, TimeUnit.MILLISECONDS);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      flushedLock.unlock();
+    }
+  }
+
+  @Override
+  public void run() {
+    log.info("{} service started", this.getServiceName());
+
+    while (!this.isStopped()) {
+      try {
+        this.waitForRunning(flushIntervalMills);
+        this.doFlush();
+      } catch (Exception e) {
+        log.warn("{} service has exception. ", this.getServiceName(), e);
+      }
+    }
+
+    this.doFlush();
+    log.info("{} service end", this.getServiceName());
+  }
+
+  private void doFlush() {
+    long seq = writeCount.sum();
+    if (flushedSeq >= seq && !fileService.hasRolledBlockFile()) {
+      return;
+    }
+
+    fileService.flushDirty();
+    flushedSeq = seq;
+    flushedLock.lock();
+    try {
+      flushedCondition.signalAll();
+    } finally {
+      flushedLock.unlock();
+    }
+  }
+
+  public long getFlushedSeq() {
+    return flushedSeq;
+  }
+
+  @Override
+  public String getServiceName() {
+    return FlushService.class.getSimpleName();
+  }
+}
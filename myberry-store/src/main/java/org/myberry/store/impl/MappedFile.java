@@ -43,6 +43,8 @@ import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import jdk.internal.ref.Cleaner;
 import org.myberry.store.common.LoggerName;
 import org.slf4j.Logger;
@@ -53,6 +55,10 @@ public class MappedFile {
 
   private static final Logger log = LoggerFactory.getLogger(LoggerName.STORE_LOGGER_NAME);
 
+  public static final int OS_PAGE_SIZE = 1024 * 4;
+
+  private File file;
+
   protected RandomAccessFile raf;
 
   protected FileChannel fileChannel;
@@ -67,6 +73,7 @@ public class MappedFile {
 
   private void init(final String fileName, final int fileSize) throws IOException {
     File file = new File(fileName);
+    this.file = file;
     ensureDirOK(file.getParent());
     isCreatedFile(file);
 
@@ -94,6 +101,37 @@ public class MappedFile {
     this.mappedByteBuffer.force();
   }
 
+  /**
+   * Writes back one byte per page of [0, length), so the pages are faulted in writable before they
+   * are used. Unlike {@link MappedByteBuffer#load()} this also saves the write fault of the first
+   * update, but the pages are dirty and get written back once.
+   */
+  public void warmup(final int length) {
+    int end = Math.min(length, mappedByteBuffer.capacity());
+    for (int i = 0; i < end; i += OS_PAGE_SIZE) {
+      mappedByteBuffer.put(i, mappedByteBuffer.get(i));
+    }
+  }
+
+  /** Locks [0, length) in memory, best effort, see {@link NativeMemory}. */
+  public boolean mlock(final int length) {
+    return NativeMemory.mlock(mappedByteBuffer, Math.min(length, mappedByteBuffer.capacity()));
+  }
+
+  /** Moves the file while it stays mapped, the mapping follows the file and not its name. */
+  public boolean renameTo(final String fileName) {
+    File dest = new File(fileName);
+    try {
+      ensureDirOK(dest.getParent());
+      Files.move(file.toPath(), dest.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      this.file = dest;
+      return true;
+    } catch (IOException e) {
+      log.error("rename file [{}] to [{}] Failed. ", file.getAbsoluteFile(), fileName, e);
+      return false;
+    }
+  }
+
   public static void ensureDirOK(final String dirName) {
     if (dirName != null) {
       File f = new File(dirName);
@@ -148,6 +186,10 @@ public class MappedFile {
     }
   }
 
+  public File getFile() {
+    return file;
+  }
+
   public FileChannel getFileChannel() {
     return fileChannel;
   }
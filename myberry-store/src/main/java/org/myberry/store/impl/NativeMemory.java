@@ -0,0 +1,203 @@
+/*
+* MIT License
+*
+* Copyright (c) 2021 MyBerry. All rights reserved.
+* https://myberry.org/
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+
+*   * Redistributions of source code must retain the above copyright notice, this
+* list of conditions and the following disclaimer.
+
+*   * Redistributions in binary form must reproduce the above copyright notice,
+* this list of conditions and the following disclaimer in the documentation
+* and/or other materials provided with the distribution.
+
+*   * Neither the name of MyBerry. nor the names of its contributors may be used
+* to endorse or promote products derived from this software without specific
+* prior written permission.
+
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+* SOFTWARE.
+*/
+package org.myberry.store.impl;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Optional;
+import org.myberry.store.common.LoggerName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Calls mlock(2) through the foreign linker, looked up reflectively so nothing is needed at
+ * compile time: {@code java.lang.foreign} on Java 21+, else the incubating {@code
+ * jdk.incubator.foreign} of JDK 17. It needs {@code --enable-native-access=ALL-UNNAMED}, plus
+ * {@code --enable-preview} on JDK 21 where the API is still a preview, or {@code --add-modules
+ * jdk.incubator.foreign} on JDK 17. Otherwise every call returns false.
+ */
+final class NativeMemory {
+
+  private static final Logger log = LoggerFactory.getLogger(LoggerName.STORE_LOGGER_NAME);
+
+  private static final String FOREIGN_PACKAGE = "java.lang.foreign.";
+  private static final String INCUBATOR_FOREIGN_PACKAGE = "jdk.incubator.foreign.";
+
+  // (ByteBuffer buffer, long length) -> int, null if the linker is not available
+  private static final MethodHandle MLOCK = lookupMlock();
+
+  private NativeMemory() {}
+
+  /** Locks [0, length) of a direct buffer, best effort: a failure is logged and ignored. */
+  static boolean mlock(ByteBuffer buffer, long length) {
+    if (MLOCK == null || length <= 0) {
+      return false;
+    }
+
+    try {
+      int result = (int) MLOCK.invoke(buffer, length);
+      if (result != 0) {
+        log.warn("mlock {} bytes failed, check RLIMIT_MEMLOCK", length);
+      }
+      return result == 0;
+    } catch (Throwable e) {
+      log.warn("mlock {} bytes error: ", length, e);
+      return false;
+    }
+  }
+
+  private static MethodHandle lookupMlock() {
+    try {
+      MethodHandle mlock;
+      try {
+        mlock = lookupForeignMlock(Class.forName(FOREIGN_PACKAGE + "Linker"));
+      } catch (ClassNotFoundException e) {
+        mlock = lookupIncubatorMlock();
+      }
+      if (mlock == null) {
+        log.warn("mlock is not found, mlockBlockFileEnable is ignored");
+        return null;
+      }
+      return mlock.asType(MethodType.methodType(int.class, ByteBuffer.class, long.class));
+    } catch (Throwable e) {
+      log.warn(
+          "mlock is not available, mlockBlockFileEnable is ignored. "
+              + "Run with --enable-native-access=ALL-UNNAMED, and on JDK 17 with "
+              + "--add-modules jdk.incubator.foreign",
+          e);
+      return null;
+    }
+  }
+
+  /** java.lang.foreign, Java 21+. */
+  private static MethodHandle lookupForeignMlock(Class<?> linkerClass) throws Throwable {
+    Class<?> segmentClass = Class.forName(FOREIGN_PACKAGE + "MemorySegment");
+    Class<?> layoutClass = Class.forName(FOREIGN_PACKAGE + "MemoryLayout");
+    Class<?> valueLayoutClass = Class.forName(FOREIGN_PACKAGE + "ValueLayout");
+    Class<?> descriptorClass = Class.forName(FOREIGN_PACKAGE + "FunctionDescriptor");
+    Class<?> optionClass = Class.forName(FOREIGN_PACKAGE + "Linker$Option");
+
+    Object linker = linkerClass.getMethod("nativeLinker").invoke(null);
+    Object lookup = linkerClass.getMethod("defaultLookup").invoke(linker);
+    Optional<?> symbol =
+        (Optional<?>)
+            Class.forName(FOREIGN_PACKAGE + "SymbolLookup")
+                .getMethod("find", String.class)
+                .invoke(lookup, "mlock");
+    if (!symbol.isPresent()) {
+      return null;
+    }
+
+    // int mlock(const void *addr, size_t len)
+    Object argLayouts = Array.newInstance(layoutClass, 2);
+    Array.set(argLayouts, 0, valueLayoutClass.getField("ADDRESS").get(null));
+    Array.set(argLayouts, 1, valueLayoutClass.getField("JAVA_LONG").get(null));
+    Object descriptor =
+        descriptorClass
+            .getMethod("of", layoutClass, argLayouts.getClass())
+            .invoke(null, valueLayoutClass.getField("JAVA_INT").get(null), argLayouts);
+    Object options = Array.newInstance(optionClass, 0);
+    MethodHandle mlock =
+        (MethodHandle)
+            linkerClass
+                .getMethod("downcallHandle", segmentClass, descriptorClass, options.getClass())
+                .invoke(linker, symbol.get(), descriptor, options);
+
+    MethodHandle ofBuffer =
+        MethodHandles.publicLookup()
+            .findStatic(
+                segmentClass, "ofBuffer", MethodType.methodType(segmentClass, Buffer.class));
+    // (Buffer buffer, long length) -> int
+    return MethodHandles.filterArguments(mlock, 0, ofBuffer);
+  }
+
+  /** jdk.incubator.foreign, JDK 17. */
+  private static MethodHandle lookupIncubatorMlock() throws Throwable {
+    Class<?> linkerClass = Class.forName(INCUBATOR_FOREIGN_PACKAGE + "CLinker");
+    Class<?> segmentClass = Class.forName(INCUBATOR_FOREIGN_PACKAGE + "MemorySegment");
+    Class<?> addressClass = Class.forName(INCUBATOR_FOREIGN_PACKAGE + "MemoryAddress");
+    Class<?> layoutClass = Class.forName(INCUBATOR_FOREIGN_PACKAGE + "MemoryLayout");
+    Class<?> descriptorClass = Class.forName(INCUBATOR_FOREIGN_PACKAGE + "FunctionDescriptor");
+
+    Object linker = linkerClass.getMethod("getInstance").invoke(null);
+    Object lookup = linkerClass.getMethod("systemLookup").invoke(null);
+    Optional<?> symbol =
+        (Optional<?>)
+            Class.forName(INCUBATOR_FOREIGN_PACKAGE + "SymbolLookup")
+                .getMethod("lookup", String.class)
+                .invoke(lookup, "mlock");
+    if (!symbol.isPresent()) {
+      return null;
+    }
+
+    // int mlock(const void *addr, size_t len)
+    Object argLayouts = Array.newInstance(layoutClass, 2);
+    Array.set(argLayouts, 0, linkerClass.getField("C_POINTER").get(null));
+    Array.set(argLayouts, 1, linkerClass.getField("C_LONG").get(null));
+    Object descriptor =
+        descriptorClass
+            .getMethod("of", layoutClass, argLayouts.getClass())
+            .invoke(null, linkerClass.getField("C_INT").get(null), argLayouts);
+    MethodHandle mlock =
+        (MethodHandle)
+            linkerClass
+                .getMethod(
+                    "downcallHandle",
+                    Class.forName(INCUBATOR_FOREIGN_PACKAGE + "Addressable"),
+                    MethodType.class,
+                    descriptorClass)
+                .invoke(
+                    linker,
+                    symbol.get(),
+                    MethodType.methodType(int.class, addressClass, long.class),
+                    descriptor);
+
+    MethodHandles.Lookup publicLookup = MethodHandles.publicLookup();
+    MethodHandle address =
+        MethodHandles.filterReturnValue(
+            publicLookup.findStatic(
+                segmentClass,
+                "ofByteBuffer",
+                MethodType.methodType(segmentClass, ByteBuffer.class)),
+            publicLookup.findVirtual(segmentClass, "address", MethodType.methodType(addressClass)));
+    // (ByteBuffer buffer, long length) -> int
+    return MethodHandles.filterArguments(mlock, 0, address);
+  }
+}
@@ -0,0 +1,186 @@
+/*
+* MIT License
+*
+* Copyright (c) 2021 MyBerry. All rights reserved.
+* https://myberry.org/
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+
+*   * Redistributions of source code must retain the above copyright notice, this
+* list of conditions and the following disclaimer.
+
+*   * Redistributions in binary form must reproduce the above copyright notice,
+* this list of conditions and the following disclaimer in the documentation
+* and/or other materials provided with the distribution.
+
+*   * Neither the name of MyBerry. nor the names of its contributors may be used
+* to endorse or promote products derived from this software without specific
+* prior written permission.
+
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+* SOFTWARE.
+*/
+package org.myberry.store.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import org.myberry.store.AbstractComponent;
+
+/**
+ * Component map backed by an {@link OffHeapKeyIndex}, so no component object is kept on the heap.
+ * {@link #get(Object)} and the iterators decode a snapshot of the record from its block file;
+ * counters must be read and updated in the record itself, see {@link
+ * org.myberry.store.MyberryStore#getComponentPosition(String)}.
+ *
+ * <p>Values are told apart by their position: {@link #remove(Object, Object)} and {@link
+ * #replace(String, AbstractComponent, AbstractComponent)} compare the position of the expected
+ * component with the one indexed, and the previous components returned are decoded from the
+ * positions they were indexed at.
+ */
+public class OffHeapComponentMap extends AbstractMap<String, AbstractComponent>
+    implements ConcurrentMap<String, AbstractComponent> {
+
+  private final FileService fileService;
+  private final OffHeapKeyIndex offHeapKeyIndex;
+
+  public OffHeapComponentMap(final FileService fileService) {
+    this.fileService = fileService;
+    this.offHeapKeyIndex =
+        new OffHeapKeyIndex(
+            (position, key) -> {
+              BlockFile blockFile =
+                  fileService.getBlockFile(AbstractComponent.positionBlockIndex(position));
+              return null != blockFile
+                  && blockFile.keyEquals(AbstractComponent.positionPhyOffset(position), key);
+            });
+  }
+
+  public long getPosition(String key) {
+    return offHeapKeyIndex.get(toBytes(key));
+  }
+
+  @Override
+  public AbstractComponent get(Object key) {
+    if (!(key instanceof String)) {
+      return null;
+    }
+
+    return readComponent(getPosition((String) key));
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return key instanceof String && AbstractComponent.NO_POSITION != getPosition((String) key);
+  }
+
+  @Override
+  public int size() {
+    return offHeapKeyIndex.size();
+  }
+
+  /** Only the position of value is kept. */
+  @Override
+  public AbstractComponent put(String key, AbstractComponent value) {
+    return readComponent(offHeapKeyIndex.put(toBytes(key), value.getPosition()));
+  }
+
+  @Override
+  public AbstractComponent putIfAbsent(String key, AbstractComponent value) {
+    return readComponent(offHeapKeyIndex.putIfAbsent(toBytes(key), value.getPosition()));
+  }
+
+  @Override
+  public AbstractComponent remove(Object key) {
+    if (!(key instanceof String)) {
+      return null;
+    }
+
+    return readComponent(offHeapKeyIndex.remove(toBytes((String) key)));
+  }
+
+  @Override
+  public boolean remove(Object key, Object value) {
+    return key instanceof String
+        && value instanceof AbstractComponent
+        && offHeapKeyIndex.remove(
+            toBytes((String) key), ((AbstractComponent) value).getPosition());
+  }
+
+  @Override
+  public boolean replace(String key, AbstractComponent oldValue, AbstractComponent newValue) {
+    return offHeapKeyIndex.replace(toBytes(key), oldValue.getPosition(), newValue.getPosition());
+  }
+
+  @Override
+  public AbstractComponent replace(String key, AbstractComponent value) {
+    return readComponent(offHeapKeyIndex.replace(toBytes(key), value.getPosition()));
+  }
+
+  @Override
+  public Set<Entry<String, AbstractComponent>> entrySet() {
+    return new AbstractSet<Entry<String, AbstractComponent>>() {
+      @Override
+      public Iterator<Entry<String, AbstractComponent>> iterator() {
+        final long[] positions = offHeapKeyIndex.positions();
+        return new Iterator<Entry<String, AbstractComponent>>() {
+          private int next = 0;
+          private AbstractComponent last;
+
+          @Override
+          public boolean hasNext() {
+            return next < positions.length;
+          }
+
+          @Override
+          public Entry<String, AbstractComponent> next() {
+            if (next >= positions.length) {
+              throw new NoSuchElementException();
+            }
+            last = fileService.readComponent(positions[next++]);
+            return new SimpleImmutableEntry<>(last.getKey(), last);
+          }
+
+          @Override
+          public void remove() {
+            if (null == last) {
+              throw new IllegalStateException();
+            }
+            OffHeapComponentMap.this.remove(last.getKey(), last);
+            last = null;
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return offHeapKeyIndex.size();
+      }
+    };
+  }
+
+  private AbstractComponent readComponent(long position) {
+    return AbstractComponent.NO_POSITION == position ? null : fileService.readComponent(position);
+  }
+
+  private static byte[] toBytes(String key) {
+    return key.getBytes(StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,292 @@
+/*
+* MIT License
+*
+* Copyright (c) 2021 MyBerry. All rights reserved.
+* https://myberry.org/
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+
+*   * Redistributions of source code must retain the above copyright notice, this
+* list of conditions and the following disclaimer.
+
+*   * Redistributions in binary form must reproduce the above copyright notice,
+* this list of conditions and the following disclaimer in the documentation
+* and/or other materials provided with the distribution.
+
+*   * Neither the name of MyBerry. nor the names of its contributors may be used
+* to endorse or promote products derived from this software without specific
+* prior written permission.
+
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+* SOFTWARE.
+*/
+package org.myberry.store.impl;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import org.myberry.store.AbstractComponent;
+
+/**
+ * Open addressing hash table in direct memory from the UTF-8 key of a component to its position,
+ * see {@link AbstractComponent#position(int, int)}. The keys are not copied, a probe compares the
+ * key stored in the component record the slot points at.
+ *
+ * <p>Writers are serialized, readers take no lock. A slot is published by writing its hash last,
+ * a removed key leaves a tombstone behind so that the probes of the keys after it still reach them.
+ */
+public class OffHeapKeyIndex {
+
+  // hash(4) reserved(4) position(8), so that the position is written atomically
+  private static final int SLOT_SIZE = 16;
+  private static final int HASH_RELATIVE_OFFSET = 0;
+  private static final int POSITION_RELATIVE_OFFSET = 8;
+  private static final int EMPTY = 0;
+  private static final int DELETED = -1;
+  private static final int MIN_CAPACITY = 1024;
+
+  private static final VarHandle INT =
+      MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+  private static final VarHandle LONG =
+      MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+  public interface KeyMatcher {
+
+    boolean matches(long position, byte[] key);
+  }
+
+  private final KeyMatcher keyMatcher;
+
+  private volatile ByteBuffer table;
+  private volatile int size = 0;
+  // live slots and tombstones, only accessed by writers
+  private int used = 0;
+
+  public OffHeapKeyIndex(final KeyMatcher keyMatcher) {
+    this.keyMatcher = keyMatcher;
+    this.table = allocate(MIN_CAPACITY);
+  }
+
+  /** @return the position of key, or {@link AbstractComponent#NO_POSITION} */
+  public long get(byte[] key) {
+    ByteBuffer t = this.table;
+    int hash = hash(key);
+    int mask = slots(t) - 1;
+    for (int i = hash & mask; ; i = (i + 1) & mask) {
+      int slotHash = (int) INT.getAcquire(t, i * SLOT_SIZE + HASH_RELATIVE_OFFSET);
+      if (EMPTY == slotHash) {
+        return AbstractComponent.NO_POSITION;
+      }
+      if (slotHash == hash) {
+        long position = (long) LONG.getAcquire(t, i * SLOT_SIZE + POSITION_RELATIVE_OFFSET);
+        if (keyMatcher.matches(position, key)) {
+          return position;
+        }
+      }
+    }
+  }
+
+  /**
+   * Adds key, or moves it to position if it is already indexed.
+   *
+   * @return the previous position of key, or {@link AbstractComponent#NO_POSITION}
+   */
+  public synchronized long put(byte[] key, long position) {
+    int hash = hash(key);
+    int slot = find(table, hash, key);
+    if (slot >= 0) {
+      return swapPosition(slot, position);
+    }
+
+    add(hash, position);
+    return AbstractComponent.NO_POSITION;
+  }
+
+  /** @return the position of key if it is already indexed, otherwise adds it */
+  public synchronized long putIfAbsent(byte[] key, long position) {
+    int hash = hash(key);
+    int slot = find(table, hash, key);
+    if (slot >= 0) {
+      return (long) LONG.get(table, slot * SLOT_SIZE + POSITION_RELATIVE_OFFSET);
+    }
+
+    add(hash, position);
+    return AbstractComponent.NO_POSITION;
+  }
+
+  /** @return the previous position of key, or {@link AbstractComponent#NO_POSITION} if absent */
+  public synchronized long replace(byte[] key, long position) {
+    int slot = find(table, hash(key), key);
+    return slot < 0 ? AbstractComponent.NO_POSITION : swapPosition(slot, position);
+  }
+
+  /** Moves key to position only if it is at expectedPosition. */
+  public synchronized boolean replace(byte[] key, long expectedPosition, long position) {
+    int slot = find(table, hash(key), key);
+    if (slot < 0
+        || expectedPosition
+            != (long) LONG.get(table, slot * SLOT_SIZE + POSITION_RELATIVE_OFFSET)) {
+      return false;
+    }
+
+    swapPosition(slot, position);
+    return true;
+  }
+
+  /** @return the position key was removed from, or {@link AbstractComponent#NO_POSITION} */
+  public synchronized long remove(byte[] key) {
+    int slot = find(table, hash(key), key);
+    return slot < 0 ? AbstractComponent.NO_POSITION : delete(slot);
+  }
+
+  /** Removes key only if it is at expectedPosition. */
+  public synchronized boolean remove(byte[] key, long expectedPosition) {
+    int slot = find(table, hash(key), key);
+    if (slot < 0
+        || expectedPosition
+            != (long) LONG.get(table, slot * SLOT_SIZE + POSITION_RELATIVE_OFFSET)) {
+      return false;
+    }
+
+    delete(slot);
+    return true;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /** @return a snapshot of the indexed positions, in no particular order */
+  public long[] positions() {
+    ByteBuffer t = this.table;
+    long[] positions = new long[size];
+    int n = 0;
+    for (int i = 0; i < slots(t) && n < positions.length; i++) {
+      int slotHash = (int) INT.getAcquire(t, i * SLOT_SIZE + HASH_RELATIVE_OFFSET);
+      if (EMPTY != slotHash && DELETED != slotHash) {
+        positions[n++] = (long) LONG.getAcquire(t, i * SLOT_SIZE + POSITION_RELATIVE_OFFSET);
+      }
+    }
+    return n == positions.length ? positions : Arrays.copyOf(positions, n);
+  }
+
+  public int capacity() {
+    return slots(table);
+  }
+
+  /** @return the slot of key, or -1 */
+  private int find(ByteBuffer t, int hash, byte[] key) {
+    int mask = slots(t) - 1;
+    for (int i = hash & mask; ; i = (i + 1) & mask) {
+      int slotHash = (int) INT.get(t, i * SLOT_SIZE + HASH_RELATIVE_OFFSET);
+      if (EMPTY == slotHash) {
+        return -1;
+      }
+      if (slotHash == hash
+          && keyMatcher.matches(
+              (long) LONG.get(t, i * SLOT_SIZE + POSITION_RELATIVE_OFFSET), key)) {
+        return i;
+      }
+    }
+  }
+
+  private void add(int hash, long position) {
+    ByteBuffer t = this.table;
+    if ((used + 1) * 4L > slots(t) * 3L) {
+      t = resize(t);
+    }
+
+    if (insert(t, hash, position)) {
+      used = used + 1;
+    }
+    size = size + 1;
+  }
+
+  private long swapPosition(int slot, long position) {
+    int offset = slot * SLOT_SIZE + POSITION_RELATIVE_OFFSET;
+    long previous = (long) LONG.get(table, offset);
+    LONG.setRelease(table, offset, position);
+    return previous;
+  }
+
+  private long delete(int slot) {
+    long previous = (long) LONG.get(table, slot * SLOT_SIZE + POSITION_RELATIVE_OFFSET);
+    INT.setRelease(table, slot * SLOT_SIZE + HASH_RELATIVE_OFFSET, DELETED);
+    size = size - 1;
+    return previous;
+  }
+
+  /**
+   * Puts a key known to be absent into the first free slot of its probe.
+   *
+   * @return whether an empty slot was taken rather than a tombstone
+   */
+  private static boolean insert(ByteBuffer t, int hash, long position) {
+    int mask = slots(t) - 1;
+    for (int i = hash & mask; ; i = (i + 1) & mask) {
+      int slotHash = (int) INT.get(t, i * SLOT_SIZE + HASH_RELATIVE_OFFSET);
+      if (EMPTY == slotHash || DELETED == slotHash) {
+        LONG.set(t, i * SLOT_SIZE + POSITION_RELATIVE_OFFSET, position);
+        INT.setRelease(t, i * SLOT_SIZE + HASH_RELATIVE_OFFSET, hash);
+        return EMPTY == slotHash;
+      }
+    }
+  }
+
+  /**
+   * Tombstones are dropped. The old table is left to the garbage collector rather than freed,
+   * since readers may still be probing it.
+   */
+  private ByteBuffer resize(ByteBuffer t) {
+    // grows only if the live keys alone would fill more than half of the table
+    int slots = size * 2L > slots(t) ? slots(t) * 2 : slots(t);
+    ByteBuffer newTable = allocate(slots);
+    for (int i = 0; i < slots(t); i++) {
+      int slotHash = (int) INT.get(t, i * SLOT_SIZE + HASH_RELATIVE_OFFSET);
+      if (EMPTY != slotHash && DELETED != slotHash) {
+        // keys are unique in the old table, so a rehash never needs to compare them
+        insert(newTable, slotHash, (long) LONG.get(t, i * SLOT_SIZE + POSITION_RELATIVE_OFFSET));
+      }
+    }
+    this.table = newTable;
+    this.used = size;
+    return newTable;
+  }
+
+  private static ByteBuffer allocate(int slots) {
+    // direct memory is zeroed, that is every slot is EMPTY
+    return ByteBuffer.allocateDirect(slots * SLOT_SIZE + Long.BYTES)
+        .alignedSlice(Long.BYTES)
+        .order(ByteOrder.nativeOrder());
+  }
+
+  private static int slots(ByteBuffer t) {
+    return Integer.highestOneBit(t.capacity() / SLOT_SIZE);
+  }
+
+  static int hash(byte[] key) {
+    int h = 1;
+    for (byte b : key) {
+      h = 31 * h + b;
+    }
+    h ^= h >>> 16;
+    h *= 0x85EBCA6B;
+    h ^= h >>> 13;
+    return EMPTY == h || DELETED == h ? 1 : h;
+  }
+}
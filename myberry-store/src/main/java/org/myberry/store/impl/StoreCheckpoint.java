@@ -0,0 +1,247 @@
+/*
+* MIT License
+*
+* Copyright (c) 2021 MyBerry. All rights reserved.
+* https://myberry.org/
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+
+*   * Redistributions of source code must retain the above copyright notice, this
+* list of conditions and the following disclaimer.
+
+*   * Redistributions in binary form must reproduce the above copyright notice,
+* this list of conditions and the following disclaimer in the documentation
+* and/or other materials provided with the distribution.
+
+*   * Neither the name of MyBerry. nor the names of its contributors may be used
+* to endorse or promote products derived from this software without specific
+* prior written permission.
+
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+* SOFTWARE.
+*/
+package org.myberry.store.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import org.myberry.store.common.LoggerName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Index of the components of every block file, so a restart can decode the records at known
+ * offsets instead of walking each block from its header.
+ *
+ * <pre>
+ * magic(4) crc32(8) blockCount(4)
+ * {blockIndex(4) beginTimestamp(8) endPhyOffset(4) componentCount(4)
+ *   {phyOffset(4) structure(1) keyLength(2) key(keyLength)} * componentCount} * blockCount
+ * </pre>
+ *
+ * The crc32 covers everything after itself.
+ */
+public class StoreCheckpoint {
+
+  private static final Logger log = LoggerFactory.getLogger(LoggerName.STORE_LOGGER_NAME);
+
+  private static final int MAGIC = 0x4D594350;
+  private static final int PREAMBLE_SIZE = 4 + 8;
+
+  private final Map<Integer /* blockIndex */, Block> blocks;
+
+  private StoreCheckpoint(final Map<Integer, Block> blocks) {
+    this.blocks = blocks;
+  }
+
+  public Block getBlock(int blockIndex) {
+    return blocks.get(blockIndex);
+  }
+
+  public int getBlockCount() {
+    return blocks.size();
+  }
+
+  /** Writes to a temporary file first and renames it, so a crash leaves the old checkpoint. */
+  public static void write(final String fileName, final List<Block> blocks) throws IOException {
+    int size = PREAMBLE_SIZE + 4;
+    for (Block block : blocks) {
+      size += 4 + 8 + 4 + 4;
+      for (int i = 0; i < block.getComponentCount(); i++) {
+        size += 4 + 1 + 2 + block.keys[i].length;
+      }
+    }
+
+    ByteBuffer byteBuffer = ByteBuffer.allocate(size);
+    byteBuffer.position(PREAMBLE_SIZE);
+    byteBuffer.putInt(blocks.size());
+    for (Block block : blocks) {
+      byteBuffer.putInt(block.blockIndex);
+      byteBuffer.putLong(block.beginTimestamp);
+      byteBuffer.putInt(block.endPhyOffset);
+      byteBuffer.putInt(block.getComponentCount());
+      for (int i = 0; i < block.getComponentCount(); i++) {
+        byteBuffer.putInt(block.phyOffsets[i]);
+        byteBuffer.put(block.structures[i]);
+        byteBuffer.putShort((short) block.keys[i].length);
+        byteBuffer.put(block.keys[i]);
+      }
+    }
+
+    CRC32 crc32 = new CRC32();
+    crc32.update(byteBuffer.array(), PREAMBLE_SIZE, size - PREAMBLE_SIZE);
+    byteBuffer.putInt(0, MAGIC);
+    byteBuffer.putLong(4, crc32.getValue());
+    byteBuffer.flip();
+
+    File file = new File(fileName);
+    MappedFile.ensureDirOK(file.getParent());
+    File tmpFile = new File(fileName + ".tmp");
+    try (RandomAccessFile raf = new RandomAccessFile(tmpFile, "rw")) {
+      raf.setLength(0);
+      FileChannel fileChannel = raf.getChannel();
+      while (byteBuffer.hasRemaining()) {
+        fileChannel.write(byteBuffer);
+      }
+      fileChannel.force(true);
+    }
+
+    try {
+      Files.move(
+          tmpFile.toPath(),
+          file.toPath(),
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /** @return null if there is no checkpoint or it is damaged */
+  public static StoreCheckpoint load(final String fileName) {
+    File file = new File(fileName);
+    if (!file.exists() || file.length() < PREAMBLE_SIZE + 4) {
+      return null;
+    }
+
+    MappedByteBuffer byteBuffer = null;
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      byteBuffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+      if (byteBuffer.getInt(0) != MAGIC) {
+        log.warn("checkpoint {} has a bad magic, ignored", fileName);
+        return null;
+      }
+
+      CRC32 crc32 = new CRC32();
+      ByteBuffer body = byteBuffer.duplicate();
+      body.position(PREAMBLE_SIZE);
+      crc32.update(body);
+      if (byteBuffer.getLong(4) != crc32.getValue()) {
+        log.warn("checkpoint {} fails the crc check, ignored", fileName);
+        return null;
+      }
+
+      byteBuffer.position(PREAMBLE_SIZE);
+      int blockCount = byteBuffer.getInt();
+      Map<Integer, Block> blocks = new HashMap<>(blockCount * 2);
+      for (int b = 0; b < blockCount; b++) {
+        int blockIndex = byteBuffer.getInt();
+        long beginTimestamp = byteBuffer.getLong();
+        int endPhyOffset = byteBuffer.getInt();
+        int componentCount = byteBuffer.getInt();
+
+        Block block = new Block(blockIndex, beginTimestamp, endPhyOffset, componentCount);
+        for (int i = 0; i < componentCount; i++) {
+          block.phyOffsets[i] = byteBuffer.getInt();
+          block.structures[i] = byteBuffer.get();
+          block.keys[i] = new byte[byteBuffer.getShort()];
+          byteBuffer.get(block.keys[i]);
+        }
+        blocks.put(blockIndex, block);
+      }
+
+      return new StoreCheckpoint(blocks);
+    } catch (Exception e) {
+      log.warn("load checkpoint {} error, ignored", fileName, e);
+      return null;
+    } finally {
+      MappedFile.unmap(byteBuffer);
+    }
+  }
+
+  public static class Block {
+    private final int blockIndex;
+    private final long beginTimestamp;
+    private final int endPhyOffset;
+    private final int[] phyOffsets;
+    private final byte[] structures;
+    private final byte[][] keys;
+
+    public Block(int blockIndex, long beginTimestamp, int endPhyOffset, int componentCount) {
+      this.blockIndex = blockIndex;
+      this.beginTimestamp = beginTimestamp;
+      this.endPhyOffset = endPhyOffset;
+      this.phyOffsets = new int[componentCount];
+      this.structures = new byte[componentCount];
+      this.keys = new byte[componentCount][];
+    }
+
+    public void setComponent(int i, int phyOffset, byte structure, byte[] key) {
+      phyOffsets[i] = phyOffset;
+      structures[i] = structure;
+      keys[i] = key;
+    }
+
+    public int getBlockIndex() {
+      return blockIndex;
+    }
+
+    public long getBeginTimestamp() {
+      return beginTimestamp;
+    }
+
+    public int getEndPhyOffset() {
+      return endPhyOffset;
+    }
+
+    public int getComponentCount() {
+      return phyOffsets.length;
+    }
+
+    public int getPhyOffset(int i) {
+      return phyOffsets[i];
+    }
+
+    public byte getStructure(int i) {
+      return structures[i];
+    }
+
+    public String getKey(int i) {
+      return new String(keys[i], StandardCharsets.UTF_8);
+    }
+  }
+}
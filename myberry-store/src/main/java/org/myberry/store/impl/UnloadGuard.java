@@ -0,0 +1,98 @@
+/*
+* MIT License
+*
+* Copyright (c) 2021 MyBerry. All rights reserved.
+* https://myberry.org/
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+
+*   * Redistributions of source code must retain the above copyright notice, this
+* list of conditions and the following disclaimer.
+
+*   * Redistributions in binary form must reproduce the above copyright notice,
+* this list of conditions and the following disclaimer in the documentation
+* and/or other materials provided with the distribution.
+
+*   * Neither the name of MyBerry. nor the names of its contributors may be used
+* to endorse or promote products derived from this software without specific
+* prior written permission.
+
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+* SOFTWARE.
+*/
+package org.myberry.store.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Keeps the mapped buffers from being unmapped under an access in flight. Accesses are counted on
+ * the stripe of their thread, so they do not contend on one counter, and a stripe never drops
+ * below the accesses in flight on it, so the sum taken by {@link #closeAndAwait(long)} is never
+ * falsely 0.
+ */
+public class UnloadGuard {
+
+  // one stripe per 64 bytes, so stripes do not share a cache line
+  private static final int STRIDE = 8;
+
+  private final AtomicLongArray stripes;
+  private final int mask;
+  private volatile boolean closed = false;
+
+  public UnloadGuard() {
+    int count = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 4);
+    this.stripes = new AtomicLongArray(count * STRIDE);
+    this.mask = count - 1;
+  }
+
+  /** Throws if unloaded, otherwise the caller must {@link #exit(int)} with the returned stripe. */
+  public int enter() {
+    int stripe = ((int) Thread.currentThread().getId() & mask) * STRIDE;
+    stripes.incrementAndGet(stripe);
+    if (closed) {
+      stripes.decrementAndGet(stripe);
+      throw new IllegalStateException("store is unloaded");
+    }
+    return stripe;
+  }
+
+  public void exit(int stripe) {
+    stripes.decrementAndGet(stripe);
+  }
+
+  /** Refuses new accesses and waits up to timeoutMillis for those in flight. */
+  public boolean closeAndAwait(long timeoutMillis) {
+    closed = true;
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    while (inFlight() > 0) {
+      if (System.nanoTime() - deadline >= 0) {
+        return false;
+      }
+      LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+    }
+    return true;
+  }
+
+  private long inFlight() {
+    long sum = 0;
+    for (int i = 0; i < stripes.length(); i += STRIDE) {
+      sum += stripes.get(i);
+    }
+    return sum;
+  }
+}
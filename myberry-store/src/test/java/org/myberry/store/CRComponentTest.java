@@ -74,8 +74,16 @@ public class CRComponentTest {
     Assert.assertEquals(Structure.CR, crComponent.getStructure());
     Assert.assertEquals(1, crComponent.getStatus());
     Assert.assertEquals(5, crComponent.getPhyOffset());
-    Assert.assertEquals(3L, crComponent.getIncrNumber().get());
+    Assert.assertEquals(3L, crComponent.getIncrNumber());
     Assert.assertEquals(key, crComponent.getKey());
     Assert.assertEquals(expression, crComponent.getExpression());
   }
+
+  @Test
+  public void incrState() {
+    long incrState = CRComponent.incrState(19000, 7L);
+    Assert.assertEquals(19000, CRComponent.incrPeriod(incrState));
+    Assert.assertEquals(7L, CRComponent.incrNumber(incrState));
+    Assert.assertTrue(incrState > CRComponent.incrState(18999, CRComponent.MAX_INCR_NUMBER));
+  }
 }
@@ -0,0 +1,144 @@
+/*
+* MIT License
+*
+* Copyright (c) 2021 MyBerry. All rights reserved.
+* https://myberry.org/
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+
+*   * Redistributions of source code must retain the above copyright notice, this
+* list of conditions and the following disclaimer.
+
+*   * Redistributions in binary form must reproduce the above copyright notice,
+* this list of conditions and the following disclaimer in the documentation
+* and/or other materials provided with the distribution.
+
+*   * Neither the name of MyBerry. nor the names of its contributors may be used
+* to endorse or promote products derived from this software without specific
+* prior written permission.
+
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+* SOFTWARE.
+*/
+package org.myberry.store.impl;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import org.myberry.store.NSComponent;
+import org.myberry.store.config.StoreConfig;
+import org.myberry.store.config.StorePathConfigHelper;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class AllocateBlockFileServiceTest {
+
+  private static String base_dir = new File("").getAbsolutePath() + File.separator + "allocate";
+
+  private static StoreConfig storeConfig;
+  private static AllocateBlockFileService allocateBlockFileService;
+  private static FileService fileService;
+
+  @BeforeClass
+  public static void init() {
+    storeConfig = new StoreConfig();
+    storeConfig.setStorePath(base_dir);
+    storeConfig.setBlockFileSize(200);
+    storeConfig.setAllocateBlockFileThreshold(50);
+
+    allocateBlockFileService = new AllocateBlockFileService(storeConfig);
+    allocateBlockFileService.start();
+    fileService = new FileService(storeConfig, allocateBlockFileService);
+  }
+
+  @Test
+  public void test_a() throws InterruptedException {
+    String storeFileName = storeConfig.getStoreRootDir() + File.separator + "taken";
+    MappedFile mappedFile = null;
+    for (int i = 0; i < 500 && mappedFile == null; i++) {
+      allocateBlockFileService.request();
+      Thread.sleep(10);
+      mappedFile = allocateBlockFileService.take(storeFileName);
+    }
+
+    Assert.assertNotNull(mappedFile);
+    Assert.assertEquals(200, mappedFile.getMappedByteBuffer().capacity());
+    Assert.assertEquals(storeFileName, mappedFile.getFile().getPath());
+    Assert.assertTrue(new File(storeFileName).exists());
+    Assert.assertFalse(allocateFile().exists());
+    Assert.assertNull(allocateBlockFileService.take(storeFileName));
+
+    mappedFile.destroy();
+    Assert.assertTrue(new File(storeFileName).delete());
+  }
+
+  @Test
+  public void test_b() throws InterruptedException {
+    // 32 + 60, below the threshold
+    fileService.addComponent(createNSComponent("key1-abcdefghijklmnop"));
+    Thread.sleep(100);
+    Assert.assertFalse(allocateFile().exists());
+
+    // 92 + 60, past it
+    fileService.addComponent(createNSComponent("key2-abcdefghijklmnop"));
+    for (int i = 0; i < 500 && !allocateFile().exists(); i++) {
+      Thread.sleep(10);
+    }
+    Assert.assertTrue(allocateFile().exists());
+
+    fileService.addComponent(createNSComponent("key3-abcdefghijklmnop"));
+    Assert.assertEquals(1, fileService.getMaxBlockIndex());
+    Assert.assertFalse(allocateFile().exists());
+    Assert.assertEquals(1, fileService.getComponentMap().get("key3-abcdefghijklmnop").getBlockIndex());
+    Assert.assertEquals(storeConfig.getMySid(), fileService.getMySid(1));
+
+    Assert.assertTrue(fileService.hasRolledBlockFile());
+    fileService.flushDirty();
+    Assert.assertFalse(fileService.hasRolledBlockFile());
+  }
+
+  private static NSComponent createNSComponent(String key) {
+    byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    NSComponent nsComponent = new NSComponent();
+    nsComponent.setComponentLength(
+        (short) (NSComponent.COMPONENT_FIXED_FIELD_LENGTH + keyBytes.length));
+    nsComponent.setStatus((byte) 1);
+    nsComponent.setCreateTime(1620061126000L);
+    nsComponent.setUpdateTime(1620061126000L);
+    nsComponent.setInitNumber(1);
+    nsComponent.setCurrentNumber(1);
+    nsComponent.setStepSize(1);
+    nsComponent.setResetType((byte) 0);
+    nsComponent.setKeyLength((short) keyBytes.length);
+    nsComponent.setKey(key);
+    return nsComponent;
+  }
+
+  private static File allocateFile() {
+    return new File(StorePathConfigHelper.getAllocateFile(storeConfig.getStoreRootDir()));
+  }
+
+  @AfterClass
+  public static void destroy() {
+    allocateBlockFileService.shutdown();
+    fileService.unload();
+    BlockFileTest.delFile(new File(base_dir));
+  }
+}
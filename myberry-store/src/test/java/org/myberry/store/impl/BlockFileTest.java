@@ -42,7 +42,6 @@ import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.CopyOnWriteArrayList;
 import org.junit.AfterClass;
 import org.junit.Assert;
 import org.junit.BeforeClass;
@@ -65,14 +64,12 @@ public class BlockFileTest {
 
   private static ConcurrentMap<String /* key */, AbstractComponent> componentMap =
       new ConcurrentHashMap<>();
-  private static ConcurrentMap<Integer /* blockIndex */, CopyOnWriteArrayList<String /* key */>>
-      syncDataMap = new ConcurrentHashMap<>();
 
   private static BlockFile blockFile;
 
   @BeforeClass
   public static void init() throws IOException {
-    blockFile = new BlockFile(defaultFileName, fileSize, true, 0, 0, componentMap, syncDataMap);
+    blockFile = new BlockFile(defaultFileName, fileSize, true, 0, 0, componentMap);
     blockFile.loadHeader();
   }
 
@@ -144,7 +141,7 @@ public class BlockFileTest {
     Assert.assertEquals(32, crc.getPhyOffset());
     Assert.assertEquals(1620061126000L, crc.getCreateTime());
     Assert.assertEquals(1620061126000L, crc.getUpdateTime());
-    Assert.assertEquals(3L, crc.getIncrNumber().get());
+    Assert.assertEquals(3L, crc.getIncrNumber());
     Assert.assertEquals((short) keyLength.length, crc.getKeyLength());
     Assert.assertEquals(key, crc.getKey());
     Assert.assertEquals((short) expressionLength.length, crc.getExpressionLength());
@@ -188,7 +185,7 @@ public class BlockFileTest {
     blockFile.loadComponent();
 
     CRComponent crc = (CRComponent) componentMap.get("key1");
-    Assert.assertEquals(3L, crc.getIncrNumber().get());
+    Assert.assertEquals(3L, crc.getIncrNumber());
     NSComponent nsc = (NSComponent) componentMap.get("key2");
     Assert.assertEquals(100, nsc.getInitNumber());
     Assert.assertEquals(100, nsc.getCurrentNumber().get());
@@ -230,6 +227,12 @@ public class BlockFileTest {
     syncData = blockFile.getSyncData(117, 43);
     abstractComponents = BlockFile.parseComponent(ByteBuffer.wrap(syncData));
     Assert.assertEquals(1, abstractComponents.size());
+
+    ByteBuffer syncDataBuffer = blockFile.getSyncDataBuffer(117, 43);
+    Assert.assertTrue(syncDataBuffer.isReadOnly());
+    Assert.assertEquals(ByteBuffer.wrap(syncData), syncDataBuffer);
+    abstractComponents = BlockFile.parseComponent(syncDataBuffer);
+    Assert.assertEquals(1, abstractComponents.size());
   }
 
   @AfterClass
@@ -0,0 +1,93 @@
+/*
+* MIT License
+*
+* Copyright (c) 2021 MyBerry. All rights reserved.
+* https://myberry.org/
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+
+*   * Redistributions of source code must retain the above copyright notice, this
+* list of conditions and the following disclaimer.
+
+*   * Redistributions in binary form must reproduce the above copyright notice,
+* this list of conditions and the following disclaimer in the documentation
+* and/or other materials provided with the distribution.
+
+*   * Neither the name of MyBerry. nor the names of its contributors may be used
+* to endorse or promote products derived from this software without specific
+* prior written permission.
+
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+* SOFTWARE.
+*/
+package org.myberry.store.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ComponentOffsetIndexTest {
+
+  @Test
+  public void testContainsEnd() {
+    ComponentOffsetIndex index = new ComponentOffsetIndex();
+    Assert.assertFalse(index.containsEnd(32));
+
+    int offset = StoreHeader.STORE_HEADER_SIZE;
+    for (int i = 0; i < 100; i++) {
+      index.add(offset, 40 + i % 3);
+      offset += 40 + i % 3;
+    }
+
+    Assert.assertEquals(100, index.size());
+    Assert.assertTrue(index.containsEnd(72));
+    Assert.assertTrue(index.containsEnd(offset));
+    Assert.assertFalse(index.containsEnd(73));
+    Assert.assertFalse(index.containsEnd(offset + 40));
+  }
+
+  @Test
+  public void testGetSyncLength() {
+    ComponentOffsetIndex index = new ComponentOffsetIndex();
+    Assert.assertEquals(0, index.getSyncLength(32, 1024));
+
+    index.add(32, 85);
+    index.add(117, 43);
+    index.add(160, 50);
+
+    Assert.assertEquals(178, index.getSyncLength(32, 1024));
+    Assert.assertEquals(128, index.getSyncLength(32, 177));
+    Assert.assertEquals(85, index.getSyncLength(32, 127));
+    Assert.assertEquals(0, index.getSyncLength(32, 84));
+    Assert.assertEquals(93, index.getSyncLength(117, 1024));
+    Assert.assertEquals(0, index.getSyncLength(210, 1024));
+  }
+
+  @Test
+  public void testIndexOf() {
+    ComponentOffsetIndex index = new ComponentOffsetIndex();
+    Assert.assertEquals(-1, index.indexOf(32));
+
+    index.add(32, 85);
+    index.add(117, 43);
+
+    Assert.assertEquals(-1, index.indexOf(31));
+    Assert.assertEquals(0, index.indexOf(32));
+    Assert.assertEquals(0, index.indexOf(116));
+    Assert.assertEquals(1, index.indexOf(117));
+    Assert.assertEquals(1, index.indexOf(159));
+    Assert.assertEquals(-1, index.indexOf(160));
+  }
+}
@@ -0,0 +1,188 @@
+/*
+* MIT License
+*
+* Copyright (c) 2021 MyBerry. All rights reserved.
+* https://myberry.org/
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+
+*   * Redistributions of source code must retain the above copyright notice, this
+* list of conditions and the following disclaimer.
+
+*   * Redistributions in binary form must reproduce the above copyright notice,
+* this list of conditions and the following disclaimer in the documentation
+* and/or other materials provided with the distribution.
+
+*   * Neither the name of MyBerry. nor the names of its contributors may be used
+* to endorse or promote products derived from this software without specific
+* prior written permission.
+
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+* SOFTWARE.
+*/
+package org.myberry.store.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import org.myberry.common.structure.Structure;
+import org.myberry.store.CRComponent;
+import org.myberry.store.config.StoreConfig;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class CounterJournalTest {
+
+  private static String base_dir = new File("").getAbsolutePath() + File.separator + "journal";
+
+  private static StoreConfig storeConfig;
+  private static FileService fileService;
+  private static CounterJournal counterJournal;
+
+  private static int incrIndex;
+
+  @BeforeClass
+  public static void init() throws IOException {
+    storeConfig = new StoreConfig();
+    storeConfig.setStorePath(base_dir);
+    storeConfig.setBlockFileSize(1024);
+    storeConfig.setCounterJournalEnable(true);
+    storeConfig.setCounterJournalFileSize(
+        CounterJournal.HEADER_SIZE + 4 * CounterJournal.RECORD_SIZE);
+
+    reload();
+    CRComponent crc = createCRComponent("cr", "[m z #incr(0)]");
+    fileService.addComponent(crc);
+    incrIndex = crc.getPhyOffset() + CRComponent.incrNumberRelativeOffset;
+  }
+
+  @Test
+  public void test_a() throws IOException {
+    counterJournal.updateBufferLong(0, incrIndex, 99L);
+    counterJournal.commit();
+    // the in-place write never made it to disk
+    fileService.updateBufferLong(0, incrIndex, 3L);
+    fileService.flushDirty();
+
+    reload();
+    Assert.assertEquals(99L, fileService.getBufferLong(0, incrIndex));
+    CRComponent crc = (CRComponent) fileService.getComponentMap().get("cr");
+    Assert.assertEquals(99L, crc.getIncrNumber());
+    // folded by the recovery
+    Assert.assertEquals(0, counterJournal.recover());
+  }
+
+  @Test
+  public void test_b() throws IOException {
+    counterJournal.updateBufferLong(0, incrIndex, 100L);
+    counterJournal.checkpoint();
+    fileService.updateBufferLong(0, incrIndex, 3L);
+    fileService.flushDirty();
+
+    reload();
+    // the checkpoint dropped the record
+    Assert.assertEquals(3L, fileService.getBufferLong(0, incrIndex));
+  }
+
+  @Test
+  public void test_c() throws IOException {
+    // more updates than the journal holds records
+    for (long i = 1; i <= 10; i++) {
+      counterJournal.updateBufferLong(0, incrIndex, i);
+    }
+    fileService.updateBufferLong(0, incrIndex, 3L);
+    fileService.flushDirty();
+
+    reload();
+    Assert.assertEquals(10L, fileService.getBufferLong(0, incrIndex));
+  }
+
+  @Test
+  public void test_d() throws Exception {
+    int threads = 4;
+    int updates = 1000;
+    int[] indexes = new int[threads];
+    for (int i = 0; i < threads; i++) {
+      CRComponent crc = createCRComponent("cr" + i, "[m z #incr(0)]");
+      fileService.addComponent(crc);
+      indexes[i] = crc.getPhyOffset() + CRComponent.incrNumberRelativeOffset;
+    }
+
+    // the journal holds 4 records, so the writers keep sealing halves and checkpointing
+    Thread[] writers = new Thread[threads];
+    for (int i = 0; i < threads; i++) {
+      int index = indexes[i];
+      writers[i] =
+          new Thread(
+              () -> {
+                for (long v = 1; v <= updates; v++) {
+                  counterJournal.updateBufferLong(0, index, v);
+                }
+              });
+      writers[i].start();
+    }
+    for (Thread writer : writers) {
+      writer.join(10000);
+      Assert.assertFalse(writer.isAlive());
+    }
+
+    reload();
+    for (int index : indexes) {
+      Assert.assertEquals((long) updates, fileService.getBufferLong(0, index));
+    }
+  }
+
+  private static void reload() throws IOException {
+    if (fileService != null) {
+      counterJournal.unload();
+      fileService.unload();
+    }
+    fileService = new FileService(storeConfig);
+    counterJournal = new CounterJournal(fileService, storeConfig);
+    Assert.assertTrue(fileService.load(counterJournal));
+  }
+
+  private static CRComponent createCRComponent(String key, String expression) {
+    byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    byte[] expressionBytes = expression.getBytes(StandardCharsets.UTF_8);
+    CRComponent crc = new CRComponent();
+    crc.setComponentLength(
+        (short)
+            (CRComponent.COMPONENT_FIXED_FIELD_LENGTH + keyBytes.length + expressionBytes.length));
+    crc.setStructure((byte) Structure.CR);
+    crc.setStatus((byte) 1);
+    crc.setCreateTime(1620061126000L);
+    crc.setUpdateTime(1620061126000L);
+    crc.setIncrNumber(3L);
+    crc.setKeyLength((short) keyBytes.length);
+    crc.setKey(key);
+    crc.setExpressionLength((short) expressionBytes.length);
+    crc.setExpression(expression);
+    return crc;
+  }
+
+  @AfterClass
+  public static void destroy() {
+    counterJournal.unload();
+    fileService.unload();
+    BlockFileTest.delFile(new File(base_dir));
+  }
+}
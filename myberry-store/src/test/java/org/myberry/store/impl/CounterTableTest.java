@@ -0,0 +1,248 @@
+/*
+* MIT License
+*
+* Copyright (c) 2021 MyBerry. All rights reserved.
+* https://myberry.org/
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+
+*   * Redistributions of source code must retain the above copyright notice, this
+* list of conditions and the following disclaimer.
+
+*   * Redistributions in binary form must reproduce the above copyright notice,
+* this list of conditions and the following disclaimer in the documentation
+* and/or other materials provided with the distribution.
+
+*   * Neither the name of MyBerry. nor the names of its contributors may be used
+* to endorse or promote products derived from this software without specific
+* prior written permission.
+
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+* SOFTWARE.
+*/
+package org.myberry.store.impl;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import org.myberry.common.structure.Structure;
+import org.myberry.store.CRComponent;
+import org.myberry.store.NSComponent;
+import org.myberry.store.config.StoreConfig;
+import org.myberry.store.config.StorePathConfigHelper;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class CounterTableTest {
+
+  private static String base_dir = new File("").getAbsolutePath() + File.separator + "counter";
+
+  private static StoreConfig storeConfig;
+  private static FileService fileService;
+  private static File counterFile;
+
+  private static int crPhyOffset;
+  private static int nsPhyOffset;
+
+  @BeforeClass
+  public static void init() {
+    storeConfig = new StoreConfig();
+    storeConfig.setStorePath(base_dir);
+    storeConfig.setBlockFileSize(1024);
+    storeConfig.setCounterTableEnable(true);
+
+    counterFile =
+        new File(
+            StorePathConfigHelper.getCounterFilePath(storeConfig.getStoreRootDir())
+                + File.separator
+                + StoreConfig.MYBERRY_STORE_FILE_NAME
+                + StoreConfig.MYBERRY_STORE_FILE_NAME_DELIMITER
+                + 0);
+
+    fileService = new FileService(storeConfig);
+    Assert.assertTrue(fileService.load());
+  }
+
+  @Test
+  public void test_a() {
+    CRComponent crc = createCRComponent("cr", "[m z #incr(0)]");
+    fileService.addComponent(crc);
+    NSComponent nsc = createNSComponent("ns", 5);
+    fileService.addComponent(nsc);
+    crPhyOffset = crc.getPhyOffset();
+    nsPhyOffset = nsc.getPhyOffset();
+
+    Assert.assertTrue(counterFile.exists());
+    BlockFile blockFile = fileService.getBlockFile(0);
+    Assert.assertEquals(
+        3L, blockFile.getBufferLong(crPhyOffset + CRComponent.incrNumberRelativeOffset));
+    Assert.assertEquals(
+        5, blockFile.getBufferInt(nsPhyOffset + NSComponent.currentNumberRelativeOffset));
+  }
+
+  @Test
+  public void test_b() {
+    fileService.updateBufferLong(0, crPhyOffset + CRComponent.incrNumberRelativeOffset, 42L);
+    fileService.updateBufferLong(0, crPhyOffset + CRComponent.updateTimeRelativeOffset, 1700L);
+    fileService.updateBufferInt(0, nsPhyOffset + NSComponent.currentNumberRelativeOffset, 7);
+    fileService.flushDirty();
+
+    BlockFile blockFile = fileService.getBlockFile(0);
+    Assert.assertEquals(
+        42L, blockFile.getBufferLong(crPhyOffset + CRComponent.incrNumberRelativeOffset));
+    Assert.assertEquals(
+        1700L, blockFile.getBufferLong(crPhyOffset + CRComponent.updateTimeRelativeOffset));
+    Assert.assertEquals(
+        7, blockFile.getBufferInt(nsPhyOffset + NSComponent.currentNumberRelativeOffset));
+    // not a counter, still in the record
+    Assert.assertEquals(
+        5, blockFile.getBufferInt(nsPhyOffset + NSComponent.initNumberRelativeOffset));
+
+    // the records keep the values they were appended with
+    ByteBuffer crRecord = record(blockFile, crPhyOffset);
+    Assert.assertEquals(3L, crRecord.getLong(CRComponent.incrNumberRelativeOffset));
+    ByteBuffer nsRecord = record(blockFile, nsPhyOffset);
+    Assert.assertEquals(5, nsRecord.getInt(NSComponent.currentNumberRelativeOffset));
+
+    Assert.assertEquals(42L, ((CRComponent) blockFile.readComponent(crPhyOffset)).getIncrNumber());
+  }
+
+  @Test
+  public void test_c() {
+    fileService.unload();
+    fileService = new FileService(storeConfig);
+    Assert.assertTrue(fileService.load());
+
+    CRComponent crc = (CRComponent) fileService.getComponentMap().get("cr");
+    Assert.assertEquals(42L, crc.getIncrNumber());
+    Assert.assertEquals(1700L, crc.getUpdateTime());
+    NSComponent nsc = (NSComponent) fileService.getComponentMap().get("ns");
+    Assert.assertEquals(7, nsc.getCurrentNumber().get());
+  }
+
+  @Test
+  public void test_d() {
+    fileService.unload();
+    storeConfig.setCounterTableEnable(false);
+    fileService = new FileService(storeConfig);
+    Assert.assertTrue(fileService.load());
+
+    Assert.assertFalse(counterFile.exists());
+    CRComponent crc = (CRComponent) fileService.getComponentMap().get("cr");
+    Assert.assertEquals(42L, crc.getIncrNumber());
+    NSComponent nsc = (NSComponent) fileService.getComponentMap().get("ns");
+    Assert.assertEquals(7, nsc.getCurrentNumber().get());
+    BlockFile blockFile = fileService.getBlockFile(0);
+    Assert.assertEquals(
+        7, blockFile.getBufferInt(nsPhyOffset + NSComponent.currentNumberRelativeOffset));
+  }
+
+  @Test
+  public void test_e() {
+    fileService.unload();
+    storeConfig.setCounterTableEnable(true);
+    fileService = new FileService(storeConfig);
+    // the counters are current in the records, so they are moved into a new table
+    Assert.assertTrue(fileService.load());
+    Assert.assertTrue(counterFile.exists());
+    fileService.updateBufferInt(0, nsPhyOffset + NSComponent.currentNumberRelativeOffset, 9);
+    fileService.flushDirty();
+    fileService.unload();
+
+    // the table is lost once in use, the records are stale
+    Assert.assertTrue(counterFile.delete());
+    fileService = new FileService(storeConfig);
+    Assert.assertFalse(fileService.load());
+
+    storeConfig.setCounterTableRebuildEnable(true);
+    fileService = new FileService(storeConfig);
+    Assert.assertTrue(fileService.load());
+    NSComponent nsc = (NSComponent) fileService.getComponentMap().get("ns");
+    Assert.assertEquals(7, nsc.getCurrentNumber().get());
+  }
+
+  @Test
+  public void test_f() {
+    // resolved while loading, the updates index the table without a lookup
+    CRComponent crc = (CRComponent) fileService.getComponentMap().get("cr");
+    Assert.assertEquals(0, crc.getCounterSlot());
+    NSComponent nsc = (NSComponent) fileService.getComponentMap().get("ns");
+    Assert.assertEquals(1, nsc.getCounterSlot());
+
+    fileService.updateCounterLong(crc, CRComponent.incrNumberRelativeOffset, 43L);
+    fileService.updateCounterInt(nsc, NSComponent.currentNumberRelativeOffset, 10);
+    BlockFile blockFile = fileService.getBlockFile(0);
+    Assert.assertEquals(
+        43L, blockFile.getBufferLong(crPhyOffset + CRComponent.incrNumberRelativeOffset));
+    Assert.assertEquals(
+        10, blockFile.getBufferInt(nsPhyOffset + NSComponent.currentNumberRelativeOffset));
+    // the record keeps what test_d restored into it
+    ByteBuffer crRecord = record(blockFile, crPhyOffset);
+    Assert.assertEquals(42L, crRecord.getLong(CRComponent.incrNumberRelativeOffset));
+  }
+
+  private static ByteBuffer record(BlockFile blockFile, int phyOffset) {
+    int length = blockFile.getComponentLengthByOffset(phyOffset);
+    return ByteBuffer.wrap(blockFile.getSyncData(phyOffset, length));
+  }
+
+  private static CRComponent createCRComponent(String key, String expression) {
+    byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    byte[] expressionBytes = expression.getBytes(StandardCharsets.UTF_8);
+    CRComponent crc = new CRComponent();
+    crc.setComponentLength(
+        (short)
+            (CRComponent.COMPONENT_FIXED_FIELD_LENGTH + keyBytes.length + expressionBytes.length));
+    crc.setStructure((byte) Structure.CR);
+    crc.setStatus((byte) 1);
+    crc.setCreateTime(1620061126000L);
+    crc.setUpdateTime(1620061126000L);
+    crc.setIncrNumber(3L);
+    crc.setKeyLength((short) keyBytes.length);
+    crc.setKey(key);
+    crc.setExpressionLength((short) expressionBytes.length);
+    crc.setExpression(expression);
+    return crc;
+  }
+
+  private static NSComponent createNSComponent(String key, int initNumber) {
+    byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    NSComponent nsc = new NSComponent();
+    nsc.setComponentLength((short) (NSComponent.COMPONENT_FIXED_FIELD_LENGTH + keyBytes.length));
+    nsc.setStructure((byte) Structure.NS);
+    nsc.setStatus((byte) 1);
+    nsc.setCreateTime(1620061126000L);
+    nsc.setUpdateTime(1620061126000L);
+    nsc.setInitNumber(initNumber);
+    nsc.setCurrentNumber(initNumber);
+    nsc.setStepSize(1);
+    nsc.setResetType((byte) 0);
+    nsc.setKeyLength((short) keyBytes.length);
+    nsc.setKey(key);
+    return nsc;
+  }
+
+  @AfterClass
+  public static void destroy() {
+    fileService.unload();
+    BlockFileTest.delFile(new File(base_dir));
+  }
+}
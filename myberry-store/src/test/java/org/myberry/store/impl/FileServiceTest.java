@@ -55,11 +55,12 @@ import org.myberry.store.config.StoreConfig;
 @FixMethodOrder(MethodSorters.NAME_ASCENDING)
 public class FileServiceTest {
 
+  private static StoreConfig storeConfig;
   private static FileService fileService;
 
   @BeforeClass
   public static void init() throws IllegalAccessException {
-    StoreConfig storeConfig = new StoreConfig();
+    storeConfig = new StoreConfig();
     storeConfig.setStorePath(new File("").getAbsolutePath());
     Field[] fields = storeConfig.getClass().getDeclaredFields();
     for (Field field : fields) {
@@ -208,6 +209,90 @@ public class FileServiceTest {
     Assert.assertEquals(43, syncData.length);
   }
 
+  @Test
+  public void test_l() {
+    Assert.assertNotNull(fileService.getBlockFile(1));
+    Assert.assertNull(fileService.getBlockFile(2));
+
+    // out of the block file table, logged and dropped
+    fileService.updateBufferLong(2, 32, 1L);
+    fileService.updateBufferInt(2, 32, 1);
+    Assert.assertEquals(277, fileService.getLogicOffset());
+  }
+
+  @Test
+  public void test_m() {
+    FileService reloaded = new FileService(storeConfig);
+    try {
+      Assert.assertTrue(reloaded.load());
+      Assert.assertEquals(
+          fileService.getComponentMap().keySet(), reloaded.getComponentMap().keySet());
+      Assert.assertEquals(0, reloaded.getComponentMap().get("key1").getBlockIndex());
+      Assert.assertEquals(1, reloaded.getComponentMap().get("key3").getBlockIndex());
+      Assert.assertEquals(1, reloaded.getMaxBlockIndex());
+      Assert.assertEquals(fileService.getLogicOffset(), reloaded.getLogicOffset());
+    } finally {
+      reloaded.unload();
+    }
+  }
+
+  @Test
+  public void test_n() {
+    Assert.assertTrue(fileService.checkpoint());
+
+    String key = "key4";
+    byte[] keyLength = key.getBytes(StandardCharsets.UTF_8);
+    NSComponent nsComponent = new NSComponent();
+    nsComponent.setComponentLength(
+        (short) (NSComponent.COMPONENT_FIXED_FIELD_LENGTH + keyLength.length));
+    nsComponent.setStatus((byte) 1);
+    nsComponent.setCreateTime(System.currentTimeMillis());
+    nsComponent.setUpdateTime(System.currentTimeMillis());
+    nsComponent.setInitNumber(1);
+    nsComponent.setCurrentNumber(1);
+    nsComponent.setStepSize(1);
+    nsComponent.setResetType((byte) 1);
+    nsComponent.setKeyLength((short) keyLength.length);
+    nsComponent.setKey(key);
+    fileService.addComponent(nsComponent);
+
+    // the checkpoint covers key1..key3, key4 is scanned after it
+    FileService reloaded = new FileService(storeConfig);
+    try {
+      Assert.assertTrue(reloaded.load());
+      Assert.assertEquals(
+          fileService.getComponentMap().keySet(), reloaded.getComponentMap().keySet());
+      Assert.assertEquals(
+          fileService.getComponentMap().get("key4").getPhyOffset(),
+          reloaded.getComponentMap().get("key4").getPhyOffset());
+      Assert.assertEquals(
+          ((CRComponent) fileService.getComponentMap().get("key2")).getIncrNumber(),
+          ((CRComponent) reloaded.getComponentMap().get("key2")).getIncrNumber());
+      Assert.assertEquals(fileService.getLogicOffset(), reloaded.getLogicOffset());
+      Assert.assertEquals(
+          fileService.getBlockFileLastPosition(), reloaded.getBlockFileLastPosition());
+    } finally {
+      reloaded.unload();
+    }
+  }
+
+  @Test
+  public void test_o() {
+    FileService reloaded = new FileService(storeConfig);
+    Assert.assertTrue(reloaded.load());
+    reloaded.unload();
+    try {
+      reloaded.updateBufferLong(0, 0, 1L);
+      Assert.fail("a write after unload must be refused");
+    } catch (IllegalStateException expected) {
+    }
+    try {
+      reloaded.getBufferLong(0, 0);
+      Assert.fail("a read after unload must be refused");
+    } catch (IllegalStateException expected) {
+    }
+  }
+
   @AfterClass
   public static void destroy() {
     fileService.unload();
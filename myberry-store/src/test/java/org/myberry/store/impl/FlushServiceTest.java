@@ -0,0 +1,110 @@
+/*
+* MIT License
+*
+* Copyright (c) 2021 MyBerry. All rights reserved.
+* https://myberry.org/
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+
+*   * Redistributions of source code must retain the above copyright notice, this
+* list of conditions and the following disclaimer.
+
+*   * Redistributions in binary form must reproduce the above copyright notice,
+* this list of conditions and the following disclaimer in the documentation
+* and/or other materials provided with the distribution.
+
+*   * Neither the name of MyBerry. nor the names of its contributors may be used
+* to endorse or promote products derived from this software without specific
+* prior written permission.
+
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+* SOFTWARE.
+*/
+package org.myberry.store.impl;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.myberry.store.CRComponent;
+import org.myberry.store.DefaultMyberryStoreTest;
+import org.myberry.store.config.FlushDiskType;
+import org.myberry.store.config.StoreConfig;
+
+public class FlushServiceTest {
+
+  private static FileService fileService;
+  private static FlushService flushService;
+
+  @BeforeClass
+  public static void init() {
+    StoreConfig storeConfig = new StoreConfig();
+    storeConfig.setStorePath(new File("").getAbsolutePath());
+    storeConfig.setBlockFileSize(200);
+    storeConfig.setFlushDiskType(FlushDiskType.GROUP_FLUSH.name());
+
+    fileService = new FileService(storeConfig);
+    flushService = new FlushService(fileService, storeConfig);
+    flushService.start();
+
+    String key = "key1";
+    String expression = "[#time(day) 2 3 #sid(0) #sid(1) m z #incr(0)]";
+    byte[] keyLength = key.getBytes(StandardCharsets.UTF_8);
+    byte[] expressionLength = expression.getBytes(StandardCharsets.UTF_8);
+    CRComponent crComponent = new CRComponent();
+    crComponent.setComponentLength(
+        (short)
+            (CRComponent.COMPONENT_FIXED_FIELD_LENGTH
+                + keyLength.length
+                + expressionLength.length));
+    crComponent.setStatus((byte) 1);
+    crComponent.setCreateTime(1620061126000L);
+    crComponent.setUpdateTime(1620061126000L);
+    crComponent.setIncrNumber(3L);
+    crComponent.setKeyLength((short) keyLength.length);
+    crComponent.setKey(key);
+    crComponent.setExpressionLength((short) expressionLength.length);
+    crComponent.setExpression(expression);
+    fileService.addComponent(crComponent);
+  }
+
+  @Test
+  public void commit() {
+    CRComponent crc = (CRComponent) fileService.getComponentMap().get("key1");
+    for (int i = 0; i < 10; i++) {
+      fileService.updateBufferLong(
+          crc.getBlockIndex(), crc.getPhyOffset() + CRComponent.incrNumberRelativeOffset, i);
+      flushService.onWrite();
+    }
+
+    flushService.commit();
+    Assert.assertEquals(10, flushService.getFlushedSeq());
+
+    flushService.commit();
+    Assert.assertEquals(10, flushService.getFlushedSeq());
+  }
+
+  @AfterClass
+  public static void destroy() {
+    flushService.shutdown();
+    fileService.unload();
+    StoreConfig storeConfig = new StoreConfig();
+    storeConfig.setStorePath(new File("").getAbsolutePath());
+    DefaultMyberryStoreTest.delFile(new File(storeConfig.getStoreRootDir()));
+  }
+}
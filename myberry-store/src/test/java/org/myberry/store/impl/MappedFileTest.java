@@ -71,6 +71,19 @@ public class MappedFileTest {
     Assert.assertEquals(17, v);
   }
 
+  @Test
+  public void test_b() {
+    MappedByteBuffer mappedByteBuffer = mappedFile.getMappedByteBuffer();
+    mappedByteBuffer.put(FILE_SLICE_SIZE - 1, (byte) 9);
+
+    mappedFile.warmup(FILE_SLICE_SIZE * 2);
+    // best effort, without the foreign linker it only logs a warning
+    mappedFile.mlock(FILE_SLICE_SIZE);
+
+    Assert.assertEquals(17, mappedByteBuffer.getInt(0));
+    Assert.assertEquals(9, mappedByteBuffer.get(FILE_SLICE_SIZE - 1));
+  }
+
   @AfterClass
   public static void destroy() {
     mappedFile.destroy();
@@ -0,0 +1,143 @@
+/*
+* MIT License
+*
+* Copyright (c) 2021 MyBerry. All rights reserved.
+* https://myberry.org/
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+
+*   * Redistributions of source code must retain the above copyright notice, this
+* list of conditions and the following disclaimer.
+
+*   * Redistributions in binary form must reproduce the above copyright notice,
+* this list of conditions and the following disclaimer in the documentation
+* and/or other materials provided with the distribution.
+
+*   * Neither the name of MyBerry. nor the names of its contributors may be used
+* to endorse or promote products derived from this software without specific
+* prior written permission.
+
+* The above copyright notice and this permission notice shall be included in all
+* copies or substantial portions of the Software.
+
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+* SOFTWARE.
+*/
+package org.myberry.store.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+import org.myberry.store.AbstractComponent;
+
+public class OffHeapKeyIndexTest {
+
+  @Test
+  public void testPutAndGet() {
+    Map<Long, byte[]> records = new HashMap<>();
+    OffHeapKeyIndex index =
+        new OffHeapKeyIndex((position, key) -> Arrays.equals(records.get(position), key));
+
+    int count = 10000;
+    for (int i = 0; i < count; i++) {
+      long position = AbstractComponent.position(i / 100, 32 + (i % 100) * 64);
+      byte[] key = ("key" + i).getBytes(StandardCharsets.UTF_8);
+      records.put(position, key);
+      index.put(key, position);
+    }
+
+    Assert.assertEquals(count, index.size());
+    Assert.assertTrue(index.capacity() >= count);
+    for (int i = 0; i < count; i++) {
+      long position = index.get(("key" + i).getBytes(StandardCharsets.UTF_8));
+      Assert.assertEquals(i / 100, AbstractComponent.positionBlockIndex(position));
+      Assert.assertEquals(32 + (i % 100) * 64, AbstractComponent.positionPhyOffset(position));
+    }
+    Assert.assertEquals(
+        AbstractComponent.NO_POSITION, index.get("key".getBytes(StandardCharsets.UTF_8)));
+    Assert.assertEquals(count, index.positions().length);
+  }
+
+  @Test
+  public void testMove() {
+    Map<Long, byte[]> records = new HashMap<>();
+    OffHeapKeyIndex index =
+        new OffHeapKeyIndex((position, key) -> Arrays.equals(records.get(position), key));
+
+    byte[] key = "key".getBytes(StandardCharsets.UTF_8);
+    records.put(AbstractComponent.position(0, 32), key);
+    index.put(key, AbstractComponent.position(0, 32));
+    records.put(AbstractComponent.position(1, 64), key);
+    index.put(key, AbstractComponent.position(1, 64));
+
+    Assert.assertEquals(1, index.size());
+    Assert.assertEquals(AbstractComponent.position(1, 64), index.get(key));
+  }
+
+  @Test
+  public void testRemoveAndReplace() {
+    Map<Long, byte[]> records = new HashMap<>();
+    OffHeapKeyIndex index =
+        new OffHeapKeyIndex((position, key) -> Arrays.equals(records.get(position), key));
+
+    int count = 3000;
+    for (int i = 0; i < count; i++) {
+      long position = AbstractComponent.position(0, 32 + i * 64);
+      byte[] key = ("key" + i).getBytes(StandardCharsets.UTF_8);
+      records.put(position, key);
+      Assert.assertEquals(AbstractComponent.NO_POSITION, index.put(key, position));
+    }
+
+    // removes every other key, the keys probed past their tombstones are still found
+    for (int i = 0; i < count; i += 2) {
+      byte[] key = ("key" + i).getBytes(StandardCharsets.UTF_8);
+      Assert.assertFalse(index.remove(key, AbstractComponent.position(1, 32)));
+      Assert.assertEquals(AbstractComponent.position(0, 32 + i * 64), index.remove(key));
+      Assert.assertEquals(AbstractComponent.NO_POSITION, index.remove(key));
+    }
+    Assert.assertEquals(count / 2, index.size());
+    Assert.assertEquals(count / 2, index.positions().length);
+    for (int i = 0; i < count; i++) {
+      byte[] key = ("key" + i).getBytes(StandardCharsets.UTF_8);
+      long expected =
+          i % 2 == 0 ? AbstractComponent.NO_POSITION : AbstractComponent.position(0, 32 + i * 64);
+      Assert.assertEquals(expected, index.get(key));
+    }
+
+    byte[] key = "key1".getBytes(StandardCharsets.UTF_8);
+    long moved = AbstractComponent.position(1, 32);
+    records.put(moved, key);
+    Assert.assertFalse(index.replace(key, moved, moved));
+    Assert.assertTrue(index.replace(key, AbstractComponent.position(0, 96), moved));
+    Assert.assertEquals(moved, index.putIfAbsent(key, AbstractComponent.position(0, 96)));
+    Assert.assertEquals(moved, index.put(key, AbstractComponent.position(0, 96)));
+    Assert.assertEquals(
+        AbstractComponent.NO_POSITION,
+        index.replace("key0".getBytes(StandardCharsets.UTF_8), moved));
+
+    // tombstones are reused, so removing and adding keys does not grow the table forever
+    int capacity = index.capacity();
+    for (int i = 0; i < count * 4; i++) {
+      byte[] k = ("key" + (i % 2 == 0 ? i : 0)).getBytes(StandardCharsets.UTF_8);
+      long position = AbstractComponent.position(2, 32 + i * 64);
+      records.put(position, k);
+      index.putIfAbsent(k, position);
+      index.remove(k);
+    }
+    Assert.assertEquals(count / 2, index.size());
+    Assert.assertEquals(capacity, index.capacity());
+  }
+}
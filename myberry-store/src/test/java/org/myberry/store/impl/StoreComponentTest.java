@@ -92,7 +92,7 @@ public class StoreComponentTest {
     Assert.assertEquals(5, crc.getPhyOffset());
     Assert.assertEquals(millis, crc.getCreateTime());
     Assert.assertEquals(millis, crc.getUpdateTime());
-    Assert.assertEquals(3L, crc.getIncrNumber().get());
+    Assert.assertEquals(3L, crc.getIncrNumber());
     Assert.assertEquals((short) keyLength.length, crc.getKeyLength());
     Assert.assertEquals(key, crc.getKey());
     Assert.assertEquals((short) expressionLength.length, crc.getExpressionLength());